@@ -0,0 +1,94 @@
+package org.knu.benchmarks;
+
+import org.knu.bll.ProgressListener;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * The BenchmarkImages class creates the synthetic inputs of the benchmarks.
+ * Images are generated from a fixed seed, so every run measures exactly the same pixels.
+ */
+final class BenchmarkImages {
+    private static final long SEED = 20240917L;
+
+    /**
+     * A ProgressListener that ignores all updates.
+     */
+    static final ProgressListener NO_PROGRESS = new ProgressListener() {
+        @Override
+        public void onProgressStart(int maximum) {
+        }
+
+        @Override
+        public void onProgressUpdate() {
+        }
+    };
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * Creates a deterministic test image: smooth gradients with a few sharp rectangles for edges
+     * and a share of random pixels as noise.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @param type   The BufferedImage type of the image.
+     * @return A new BufferedImage of the given type.
+     */
+    static BufferedImage create(int width, int height, int type) {
+        Random random = new Random(SEED);
+        int[] row = new int[width];
+        BufferedImage image = new BufferedImage(width, height, type);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = x * 255 / width;
+                int green = y * 255 / height;
+                int blue = ((x / 64 + y / 64) % 2 == 0) ? 200 : 40;
+                int alpha = 255 - (x + y) % 64;
+                if (random.nextInt(16) == 0) {
+                    red = random.nextInt(256);
+                    green = random.nextInt(256);
+                    blue = random.nextInt(256);
+                }
+                row[x] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    /**
+     * Returns the BufferedImage type constant for its name.
+     *
+     * @param name The name of the type, one of TYPE_INT_RGB, TYPE_INT_ARGB, TYPE_BYTE_GRAY and TYPE_3BYTE_BGR.
+     * @return The BufferedImage type constant.
+     * @throws IllegalArgumentException if the name is not a supported type.
+     */
+    static int imageType(String name) {
+        switch (name) {
+            case "TYPE_INT_RGB":
+                return BufferedImage.TYPE_INT_RGB;
+            case "TYPE_INT_ARGB":
+                return BufferedImage.TYPE_INT_ARGB;
+            case "TYPE_BYTE_GRAY":
+                return BufferedImage.TYPE_BYTE_GRAY;
+            case "TYPE_3BYTE_BGR":
+                return BufferedImage.TYPE_3BYTE_BGR;
+            default:
+                throw new IllegalArgumentException("Unsupported image type " + name);
+        }
+    }
+
+    /**
+     * Returns the edge length of a square image with roughly the given number of megapixels.
+     *
+     * @param megapixels The number of megapixels.
+     * @return The edge length in pixels.
+     */
+    static int edgeLength(int megapixels) {
+        return (int) Math.round(Math.sqrt(megapixels * 1_000_000.0));
+    }
+}
@@ -0,0 +1,44 @@
+package org.knu.benchmarks;
+
+import org.knu.bll.algorithms.blur.BoxBlur;
+import org.knu.bll.algorithms.blur.GaussBlur;
+import org.knu.bll.algorithms.blur.MedianBlur;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The BlurBenchmark class measures every BlurFilter over the image sizes, image types and kernel sizes.
+ */
+public class BlurBenchmark extends ImageBenchmark {
+
+    @Param({"3", "9", "25"})
+    public int kernelSize;
+
+    private GaussBlur gaussBlur;
+    private BoxBlur boxBlur;
+    private MedianBlur medianBlur;
+
+    @Override
+    protected void createOperators() {
+        gaussBlur = new GaussBlur(scheduler);
+        boxBlur = new BoxBlur(scheduler);
+        medianBlur = new MedianBlur(scheduler);
+    }
+
+    @Benchmark
+    public BufferedImage gaussBlur() {
+        return gaussBlur.applyFilter(image, kernelSize, BenchmarkImages.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public BufferedImage boxBlur() {
+        return boxBlur.applyFilter(image, kernelSize, BenchmarkImages.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public BufferedImage medianBlur() {
+        return medianBlur.applyFilter(image, kernelSize, BenchmarkImages.NO_PROGRESS);
+    }
+}
@@ -0,0 +1,50 @@
+package org.knu.benchmarks;
+
+import org.knu.bll.algorithms.clustering.KMeansBounds;
+import org.knu.bll.algorithms.clustering.KMeansCluster;
+import org.knu.bll.algorithms.clustering.MiniBatchKMeansCluster;
+import org.knu.bll.algorithms.clustering.OtsuThresholding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The ClusteringBenchmark class measures every Cluster implementation.
+ * The number of clusters applies to both K-Means variants, the bounds of the assignment step only to full K-Means.
+ */
+public class ClusteringBenchmark extends ImageBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int clusters;
+
+    @Param({"HAMERLY", "ELKAN"})
+    public KMeansBounds bounds;
+
+    private KMeansCluster kMeansCluster;
+    private MiniBatchKMeansCluster miniBatchKMeansCluster;
+    private OtsuThresholding otsuThresholding;
+
+    @Override
+    protected void createOperators() {
+        kMeansCluster = new KMeansCluster(scheduler, clusters, KMeansCluster.DEFAULT_TOLERANCE,
+                KMeansCluster.DEFAULT_MAX_ITERATIONS, bounds);
+        miniBatchKMeansCluster = new MiniBatchKMeansCluster(scheduler, clusters);
+        otsuThresholding = new OtsuThresholding(scheduler);
+    }
+
+    @Benchmark
+    public BufferedImage kMeans() {
+        return kMeansCluster.applyCluster(image, BenchmarkImages.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public BufferedImage miniBatchKMeans() {
+        return miniBatchKMeansCluster.applyCluster(image, BenchmarkImages.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public BufferedImage otsu() {
+        return otsuThresholding.applyCluster(image, BenchmarkImages.NO_PROGRESS);
+    }
+}
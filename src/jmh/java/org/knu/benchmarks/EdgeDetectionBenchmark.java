@@ -0,0 +1,60 @@
+package org.knu.benchmarks;
+
+import org.knu.bll.algorithms.CannyFilter;
+import org.knu.bll.algorithms.blur.GaussBlur;
+import org.knu.bll.algorithms.edges.PrewittOperator;
+import org.knu.bll.algorithms.edges.RobertsCrossOperator;
+import org.knu.bll.algorithms.edges.SobelOperator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The EdgeDetectionBenchmark class measures every EdgeDetectionOperator and the CannyFilter.
+ * The kernel size is the size of the Gaussian blur that Canny applies first; the gradient operators
+ * have a fixed kernel and ignore it.
+ */
+public class EdgeDetectionBenchmark extends ImageBenchmark {
+    private static final int LOW_THRESHOLD = 20;
+    private static final int HIGH_THRESHOLD = 60;
+
+    @Param({"3", "9"})
+    public int kernelSize;
+
+    private SobelOperator sobelOperator;
+    private PrewittOperator prewittOperator;
+    private RobertsCrossOperator robertsCrossOperator;
+    private GaussBlur gaussBlur;
+    private CannyFilter cannyFilter;
+
+    @Override
+    protected void createOperators() {
+        sobelOperator = new SobelOperator(scheduler);
+        prewittOperator = new PrewittOperator(scheduler);
+        robertsCrossOperator = new RobertsCrossOperator(scheduler);
+        gaussBlur = new GaussBlur(scheduler);
+        cannyFilter = new CannyFilter(scheduler);
+    }
+
+    @Benchmark
+    public BufferedImage sobel() {
+        return sobelOperator.applyOperator(image, BenchmarkImages.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public BufferedImage prewitt() {
+        return prewittOperator.applyOperator(image, BenchmarkImages.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public BufferedImage robertsCross() {
+        return robertsCrossOperator.applyOperator(image, BenchmarkImages.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public BufferedImage canny() throws InterruptedException {
+        return cannyFilter.applyFilter(image, LOW_THRESHOLD, HIGH_THRESHOLD, gaussBlur, kernelSize,
+                sobelOperator, BenchmarkImages.NO_PROGRESS);
+    }
+}
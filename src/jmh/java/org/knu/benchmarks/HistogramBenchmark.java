@@ -0,0 +1,48 @@
+package org.knu.benchmarks;
+
+import org.knu.bll.algorithms.ImageStatisticsCalculator;
+import org.knu.bll.algorithms.histograms.CLAHEProcessor;
+import org.knu.bll.algorithms.histograms.HistogramEqualizerProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The HistogramBenchmark class measures the histogram equalization, CLAHE and the image statistics.
+ * The tile size only applies to CLAHE; the other operations work on the whole image.
+ */
+public class HistogramBenchmark extends ImageBenchmark {
+    private static final boolean[] RGB_CHANNELS = {true, true, true, false};
+    private static final double CLIP_LIMIT = 4.0;
+    private static final int CDF_BLUR = 0;
+
+    @Param({"64", "256"})
+    public int tileSize;
+
+    private HistogramEqualizerProcessor equalizerProcessor;
+    private CLAHEProcessor claheProcessor;
+    private ImageStatisticsCalculator statisticsCalculator;
+
+    @Override
+    protected void createOperators() {
+        equalizerProcessor = new HistogramEqualizerProcessor(scheduler);
+        claheProcessor = new CLAHEProcessor(scheduler);
+        statisticsCalculator = new ImageStatisticsCalculator();
+    }
+
+    @Benchmark
+    public BufferedImage histogramEqualization() {
+        return equalizerProcessor.histogramEqualization(image, RGB_CHANNELS, BenchmarkImages.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public BufferedImage clahe() {
+        return claheProcessor.applyCLAHE(image, tileSize, CLIP_LIMIT, CDF_BLUR, BenchmarkImages.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public ImageStatisticsCalculator.ImageStatistics statistics() {
+        return statisticsCalculator.calculateStatistics(image);
+    }
+}
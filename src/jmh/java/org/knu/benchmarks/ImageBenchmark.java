@@ -0,0 +1,61 @@
+package org.knu.benchmarks;
+
+import org.knu.bll.TileScheduler;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ImageBenchmark class is the common state of the operator benchmarks. Every benchmark runs over a
+ * deterministic synthetic image of the given size and BufferedImage type, so the cost of reading and writing the
+ * different pixel layouts is part of the measurement. The operators share one TileScheduler per trial.
+ * <p>
+ * A single size or type can be selected with JMH parameters, for example {@code -Djmh.args="-p megapixels=4"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public abstract class ImageBenchmark {
+
+    @Param({"1", "4", "16", "64"})
+    public int megapixels;
+
+    @Param({"TYPE_INT_RGB", "TYPE_INT_ARGB", "TYPE_BYTE_GRAY", "TYPE_3BYTE_BGR"})
+    public String imageType;
+
+    protected TileScheduler scheduler;
+    protected BufferedImage image;
+
+    @Setup(Level.Trial)
+    public void createImage() {
+        int edge = BenchmarkImages.edgeLength(megapixels);
+        image = BenchmarkImages.create(edge, edge, BenchmarkImages.imageType(imageType));
+        scheduler = new TileScheduler();
+        createOperators();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdownScheduler() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Creates the operators under test after the image and the scheduler are ready.
+     */
+    protected abstract void createOperators();
+}
@@ -0,0 +1,102 @@
+package org.knu.benchmarks;
+
+import org.knu.bll.TileScheduler;
+import org.knu.bll.algorithms.blur.MedianBlur;
+import org.knu.bll.buffers.PixelBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MedianBlurScalingBenchmark class measures how MedianBlur scales with the number of worker threads.
+ * Every band of the image is filtered by one task that writes its own rows of a primitive output array,
+ * so the speedup should stay close to linear until the cores or the memory bandwidth run out.
+ * <p>
+ * Running the main method prints the speedup of every thread count relative to one thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MedianBlurScalingBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    @Param({"4"})
+    public int megapixels;
+
+    @Param({"15"})
+    public int kernelSize;
+
+    private TileScheduler scheduler;
+    private MedianBlur medianBlur;
+    private PixelBuffer image;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int edge = BenchmarkImages.edgeLength(megapixels);
+        image = PixelBuffer.wrap(BenchmarkImages.create(edge, edge, BufferedImage.TYPE_INT_RGB));
+        scheduler = new TileScheduler(threads);
+        medianBlur = new MedianBlur(scheduler);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    public PixelBuffer medianBlur() {
+        return medianBlur.applyFilter(image, kernelSize, BenchmarkImages.NO_PROGRESS);
+    }
+
+    /**
+     * Runs the benchmark for every thread count and prints the speedup table.
+     *
+     * @param args The command line arguments, unused.
+     * @throws RunnerException if JMH fails to run the benchmark.
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(MedianBlurScalingBenchmark.class.getSimpleName())
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        Map<Integer, Double> scores = new TreeMap<>();
+        for (RunResult result : results) {
+            int threadCount = Integer.parseInt(result.getParams().getParam("threads"));
+            scores.put(threadCount, result.getPrimaryResult().getScore());
+        }
+
+        Double baseline = scores.get(1);
+        System.out.printf("%8s %12s %8s%n", "threads", "ms/op", "speedup");
+        for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+            double speedup = baseline == null ? Double.NaN : baseline / entry.getValue();
+            System.out.printf("%8d %12.1f %8.2f%n", entry.getKey(), entry.getValue(), speedup);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.knu.benchmarks;
+
+import org.knu.bll.algorithms.clustering.KMeansCluster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The QuantizationBaselineBenchmark class measures full K-Means with the numbers of clusters of
+ * {@link QuantizationBenchmark}, as the baseline for the single-pass quantizers. It does not depend on the
+ * quantization method, so it runs once per number of clusters instead of once per method.
+ */
+public class QuantizationBaselineBenchmark extends ImageBenchmark {
+
+    @Param({"16", "64", "256"})
+    public int clusters;
+
+    private KMeansCluster kMeansCluster;
+
+    @Override
+    protected void createOperators() {
+        kMeansCluster = new KMeansCluster(scheduler, clusters);
+    }
+
+    @Benchmark
+    public BufferedImage kMeans() {
+        return kMeansCluster.applyCluster(image, BenchmarkImages.NO_PROGRESS);
+    }
+}
@@ -0,0 +1,60 @@
+package org.knu.benchmarks;
+
+import org.knu.bll.algorithms.clustering.ClusteringComparison;
+import org.knu.bll.algorithms.clustering.ClusteringResult;
+import org.knu.bll.algorithms.clustering.KMeansCluster;
+import org.knu.bll.algorithms.clustering.QuantizationMethod;
+import org.knu.bll.algorithms.clustering.QuantizerCluster;
+import org.knu.bll.buffers.PixelBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The QuantizationBenchmark class measures the single-pass quantizers and K-Means seeded with the palette of the
+ * quantizer; full K-Means with the same number of clusters is measured by {@link QuantizationBaselineBenchmark}.
+ * Time is what JMH measures; the quality is measured once per trial with {@link QuantizerCluster#compare} and printed
+ * at its end as the mean squared error of the quantizer and of K-Means on the benchmark image.
+ */
+public class QuantizationBenchmark extends ImageBenchmark {
+
+    @Param({"16", "64", "256"})
+    public int clusters;
+
+    @Param({"OCTREE", "MEDIAN_CUT", "VARIANCE_CUT"})
+    public QuantizationMethod method;
+
+    private QuantizerCluster quantizer;
+    private KMeansCluster kMeansCluster;
+    private PixelBuffer pixels;
+    private ClusteringComparison comparison;
+
+    @Override
+    protected void createOperators() {
+        quantizer = new QuantizerCluster(scheduler, method, clusters);
+        kMeansCluster = new KMeansCluster(scheduler, clusters);
+        pixels = PixelBuffer.wrap(image);
+        comparison = quantizer.compare(pixels, clusters, BenchmarkImages.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public BufferedImage quantize() {
+        return quantizer.applyCluster(image, BenchmarkImages.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public ClusteringResult seededKMeans() {
+        return kMeansCluster.cluster(pixels, quantizer.quantize(pixels, clusters, BenchmarkImages.NO_PROGRESS),
+                Double.POSITIVE_INFINITY, BenchmarkImages.NO_PROGRESS);
+    }
+
+    @TearDown(Level.Trial)
+    public void reportQuality() {
+        double count = (double) pixels.getWidth() * pixels.getHeight();
+        System.out.printf("%n%s, k %d: MSE %.2f vs K-Means %.2f, %s%n", quantizer, clusters,
+                comparison.getInertia() / count, comparison.getReferenceInertia() / count, comparison);
+    }
+}
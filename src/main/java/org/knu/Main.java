@@ -1,16 +1,22 @@
 package org.knu;
 
 import org.knu.bll.FileService;
+import org.knu.bll.TileScheduler;
 import org.knu.bll.algorithms.*;
 import org.knu.bll.algorithms.blur.*;
 import org.knu.bll.algorithms.clustering.Cluster;
 import org.knu.bll.algorithms.clustering.KMeansCluster;
+import org.knu.bll.algorithms.clustering.LocalMeanThresholding;
+import org.knu.bll.algorithms.clustering.MiniBatchKMeansCluster;
 import org.knu.bll.algorithms.clustering.OtsuThresholding;
+import org.knu.bll.algorithms.clustering.QuantizationMethod;
+import org.knu.bll.algorithms.clustering.QuantizerCluster;
 import org.knu.bll.algorithms.edges.EdgeDetectionOperator;
 import org.knu.bll.algorithms.edges.PrewittOperator;
 import org.knu.bll.algorithms.edges.RobertsCrossOperator;
 import org.knu.bll.algorithms.edges.SobelOperator;
 import org.knu.bll.algorithms.histograms.HistogramEqualization;
+import org.knu.cli.BatchCommand;
 import org.knu.ui.SwingUI;
 import org.knu.ui.swing.WorkingPanel;
 import org.knu.ui.tools.*;
@@ -21,22 +27,27 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class Main {
-    private static final int THREAD_POOL_SIZE = 10;
 
     public static void main(String[] args) {
-        FileService service = new FileService();
-        ExecutorService executorService = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+        if (args.length > 0) {
+            System.exit(new BatchCommand(System.out, System.err).run(args));
+        }
 
-        BlurFilter[] blurFilters = new BlurFilter[]{new GaussBlur(), new MedianBlur(executorService), new BoxBlur(), new NoneBlur()};
-        Cluster[] clusters = new Cluster[]{new KMeansCluster(), new OtsuThresholding()};
+        FileService service = new FileService();
+        TileScheduler scheduler = TileScheduler.shared();
+
+        BlurFilter[] blurFilters = new BlurFilter[]{new GaussBlur(scheduler), new MedianBlur(scheduler), new BoxBlur(scheduler), new NoneBlur()};
+        Cluster[] clusters = new Cluster[]{new KMeansCluster(scheduler), new MiniBatchKMeansCluster(scheduler),
+                new QuantizerCluster(scheduler, QuantizationMethod.VARIANCE_CUT),
+                new QuantizerCluster(scheduler, QuantizationMethod.MEDIAN_CUT),
+                new QuantizerCluster(scheduler, QuantizationMethod.OCTREE),
+                new OtsuThresholding(scheduler), new LocalMeanThresholding(scheduler)};
         EdgeDetectionOperator[] edgeDetection = new EdgeDetectionOperator[]{
-                new SobelOperator(),
-                new RobertsCrossOperator(),
-                new PrewittOperator()};
+                new SobelOperator(scheduler),
+                new RobertsCrossOperator(scheduler),
+                new PrewittOperator(scheduler)};
 
         WorkingPanel workingPanel = new WorkingPanel();
 
@@ -54,13 +65,13 @@ public class Main {
 
         tools.add(new SeparatorTool());
         tools.add(new EdgeDetectorOperatorTool(edgeDetection, workingPanel));
-        tools.add(new CannyFilterTool(new CannyFilter(), blurFilters, edgeDetection, workingPanel));
+        tools.add(new CannyFilterTool(new CannyFilter(scheduler), blurFilters, edgeDetection, workingPanel));
 
         tools.add(new SeparatorTool());
         tools.add(new ClusteringTool(clusters, workingPanel));
 
         tools.add(new SeparatorTool());
-        tools.add(new HistogramEqualizerTool(new HistogramEqualization(), workingPanel));
+        tools.add(new HistogramEqualizerTool(new HistogramEqualization(scheduler), workingPanel));
 
 //        tools.add(new SeparatorTool());
 //        tools.add(statisticTool);
@@ -0,0 +1,62 @@
+package org.knu.bll;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * The CancellationToken class lets the caller of a long-running operation ask it to stop. Cancellation is cooperative:
+ * operations poll the token through {@link #throwIfCancelled()} between tiles and between rows, so a cancel request
+ * takes effect within the time needed to process a single row.
+ * <p>
+ * The token of an operation is carried by its {@link ProgressListener}; {@link #of(ProgressListener)} returns it.
+ */
+public class CancellationToken {
+    /**
+     * A token that is never cancelled. Calling {@link #cancel()} on it has no effect.
+     */
+    public static final CancellationToken NONE = new CancellationToken() {
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private volatile boolean cancelled;
+
+    /**
+     * Returns the token carried by a listener.
+     *
+     * @param listener The listener of an operation. This can be null.
+     * @return The token of the listener, or {@link #NONE} if the listener is null.
+     */
+    public static CancellationToken of(ProgressListener listener) {
+        if (listener == null) return NONE;
+        CancellationToken token = listener.getCancellationToken();
+        return token == null ? NONE : token;
+    }
+
+    /**
+     * Requests the operations that poll this token to stop.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks whether cancellation has been requested.
+     *
+     * @return True if {@link #cancel()} has been called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stops the calling operation if cancellation has been requested.
+     *
+     * @throws CancellationException if the token has been cancelled.
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Operation was cancelled");
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package org.knu.bll;
 
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
+
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * The FileService class provides methods to load and save images from and to files.
@@ -29,6 +36,88 @@ public class FileService {
         }
     }
 
+    /**
+     * Loads a reduced copy of an image for previewing. The reader skips source rows and columns with
+     * {@link ImageReadParam#setSourceSubsampling}, so that neither side of the result is larger than the given size
+     * and decoding needs far less memory and work than loading the full image.
+     *
+     * @param path The file path of the image to load.
+     * @param maxSize The largest width or height of the preview.
+     * @return The subsampled image and the dimensions of the full image.
+     * @throws IllegalArgumentException if the size is not positive.
+     * @throws RuntimeException if the file does not exist, cannot be decoded or an error occurs while loading the image.
+     */
+    public ImageThumbnail loadPreview(String path, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Preview size must be positive");
+        }
+        File file = new File(path);
+        if (!file.exists()) {
+            throw new RuntimeException("File does not exist: " + file.getAbsolutePath());
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new RuntimeException("Unsupported image format: " + path);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int step = Math.max(1, (Math.max(width, height) + maxSize - 1) / maxSize);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return new ImageThumbnail(reader.read(0, param), width, height);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading image from " + path, e);
+        }
+    }
+
+    /**
+     * Opens an image for tiled access without decoding its pixels, for images that are too large for the heap.
+     *
+     * @param path The file path of the image to open.
+     * @return A TiledImageSource using the shared tile cache, to be closed by the caller.
+     * @throws RuntimeException if the file does not exist, has an unsupported format or cannot be read.
+     */
+    public TiledImageSource openTiled(String path) {
+        return TiledImageSource.open(path);
+    }
+
+    /**
+     * Loads an image from the specified file path into a pixel buffer.
+     * This is the boundary where decoded images enter the business layer.
+     *
+     * @param path The file path of the image to load.
+     * @return A PixelBuffer holding the pixels of the loaded image.
+     * @throws RuntimeException if the file does not exist, cannot be decoded or an error occurs while loading the image.
+     */
+    public PixelBuffer loadPixels(String path) {
+        BufferedImage image = loadImage(path);
+        if (image == null) {
+            throw new RuntimeException("Unsupported image format: " + path);
+        }
+        return PixelBuffer.wrap(image);
+    }
+
+    /**
+     * Saves a pixel buffer to the specified file.
+     *
+     * @param selectedFile The file to save the image to.
+     * @param pixels The pixels to save.
+     * @throws RuntimeException if the file cannot be created or written to, or if an error occurs while saving the image.
+     */
+    public void saveImage(File selectedFile, PixelBuffer pixels) {
+        if (pixels == null) {
+            throw new IllegalArgumentException("Invalid arguments: file, image, or format cannot be null or empty.");
+        }
+        saveImage(selectedFile, pixels.toImage());
+    }
+
     /**
      * Saves an image to the specified file.
      *
@@ -0,0 +1,54 @@
+package org.knu.bll;
+
+import org.knu.bll.buffers.TiledImageSource;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The ImageLoadListener interface receives the results of an {@link ImageLoader} run. The methods are called from
+ * the loader's worker threads, in no particular order between files; for every file either
+ * {@link #onPreview(int, ImageThumbnail)} is called before {@link #onLoaded(int, BufferedImage)} or
+ * {@link #onTiled(int, TiledImageSource)}, or {@link #onFailed(int, Exception)} is called. {@link #onFinished(LoadReport)} is called last, once.
+ */
+public interface ImageLoadListener {
+
+    /**
+     * Called when the subsampled preview of a file has been decoded.
+     *
+     * @param index The position of the file in the loaded list.
+     * @param thumbnail The preview and the dimensions of the full image.
+     */
+    void onPreview(int index, ImageThumbnail thumbnail);
+
+    /**
+     * Called when a file has been decoded at full resolution.
+     *
+     * @param index The position of the file in the loaded list.
+     * @param image The full-resolution image.
+     */
+    void onLoaded(int index, BufferedImage image);
+
+    /**
+     * Called instead of {@link #onLoaded(int, BufferedImage)} when a file is too large to be decoded into the heap
+     * and has been opened for tiled access instead.
+     *
+     * @param index The position of the file in the loaded list.
+     * @param source The opened source, to be closed by the receiver.
+     */
+    void onTiled(int index, TiledImageSource source);
+
+    /**
+     * Called when a file could not be decoded or its loading was cancelled.
+     *
+     * @param index The position of the file in the loaded list.
+     * @param error The cause, a {@link java.util.concurrent.CancellationException} if the loading was cancelled.
+     */
+    void onFailed(int index, Exception error);
+
+    /**
+     * Called after every file has been loaded or has failed.
+     *
+     * @param report The decode time of every file and the throughput of the run.
+     */
+    void onFinished(LoadReport report);
+}
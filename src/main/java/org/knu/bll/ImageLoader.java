@@ -0,0 +1,320 @@
+package org.knu.bll;
+
+import org.knu.bll.buffers.TiledImageSource;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ImageLoader class decodes many image files concurrently on a bounded pool of worker threads. Every file is
+ * first decoded with source subsampling, so that a preview of it can be shown quickly, and then at full resolution.
+ * The full decode of a file is queued only after its preview is done, behind the previews that are still waiting,
+ * so the previews of a large selection appear before the pool is busy with full-resolution decodes. Files that are
+ * not larger than the preview size are decoded only once, and files whose pixels would not fit into the heap are
+ * opened as a {@link TiledImageSource} instead of being decoded.
+ * <p>
+ * Besides the number of threads, the full decodes are limited by the bytes of their pixels: a decode waits until
+ * the pixels of the decodes already running and its own fit the decode memory of the loader, which is shared by all
+ * runs. A file larger than the whole decode memory is decoded alone. A decode that runs out of memory fails its file
+ * instead of stopping the run.
+ * <p>
+ * The preview and full decode time of every file are measured and reported together with the throughput of the run.
+ * Loading can be cancelled through the token of the progress listener; files that have not been decoded yet are then
+ * reported as cancelled.
+ */
+public class ImageLoader {
+    /**
+     * The largest width or height of the previews, in pixels.
+     */
+    public static final int DEFAULT_PREVIEW_SIZE = 512;
+
+    private static final long KILOBYTE = 1024;
+
+    private final FileService fileService;
+    private final int threads;
+    private final int previewSize;
+    private final int decodeKilobytes;
+    private final Semaphore decodeMemory;
+
+    /**
+     * Constructs an ImageLoader with one thread per available processor, the default preview size and half of the
+     * maximum heap as decode memory.
+     *
+     * @param fileService The FileService that decodes the files.
+     */
+    public ImageLoader(FileService fileService) {
+        this(fileService, Runtime.getRuntime().availableProcessors(), DEFAULT_PREVIEW_SIZE);
+    }
+
+    /**
+     * Constructs an ImageLoader with half of the maximum heap as decode memory.
+     *
+     * @param fileService The FileService that decodes the files.
+     * @param threads The largest number of files decoded at the same time.
+     * @param previewSize The largest width or height of the previews.
+     * @throws IllegalArgumentException if the number of threads or the preview size is not positive.
+     */
+    public ImageLoader(FileService fileService, int threads, int previewSize) {
+        this(fileService, threads, previewSize, Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    /**
+     * Constructs an ImageLoader.
+     *
+     * @param fileService The FileService that decodes the files.
+     * @param threads The largest number of files decoded at the same time.
+     * @param previewSize The largest width or height of the previews.
+     * @param decodeBytes The largest number of pixel bytes that full decodes may hold at the same time.
+     * @throws IllegalArgumentException if the number of threads, the preview size or the decode memory is not
+     *                                  positive.
+     */
+    public ImageLoader(FileService fileService, int threads, int previewSize, long decodeBytes) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        if (previewSize <= 0) {
+            throw new IllegalArgumentException("Preview size must be positive");
+        }
+        if (decodeBytes <= 0) {
+            throw new IllegalArgumentException("Decode memory must be positive");
+        }
+        this.fileService = fileService;
+        this.threads = threads;
+        this.previewSize = previewSize;
+        this.decodeKilobytes = (int) Math.min(Integer.MAX_VALUE, (decodeBytes + KILOBYTE - 1) / KILOBYTE);
+        this.decodeMemory = new Semaphore(decodeKilobytes, true);
+    }
+
+    /**
+     * Starts loading the given files and returns immediately. The results are passed to the listener from the worker
+     * threads, and the progress listener advances by one step for every file that is loaded or fails.
+     *
+     * @param files The files to load.
+     * @param listener The ImageLoadListener that receives the previews, the images and the report.
+     * @param progress The ProgressListener that tracks the loaded files and carries the cancellation token,
+     *                 or null.
+     * @throws NullPointerException if the files or the listener are null.
+     */
+    public void load(List<File> files, ImageLoadListener listener, ProgressListener progress) {
+        if (files == null) {
+            throw new NullPointerException("Files cannot be null");
+        }
+        if (listener == null) {
+            throw new NullPointerException("Listener cannot be null");
+        }
+        new LoadSession(List.copyOf(files), listener, progress).start();
+    }
+
+    /**
+     * The LoadSession class holds the state of one {@link #load} call: its own pool, which is shut down when the last
+     * file is done, and the timings of every file.
+     */
+    private class LoadSession {
+        private final List<File> files;
+        private final ImageLoadListener listener;
+        private final ProgressListener progress;
+        private final CancellationToken token;
+        private final long[] previewNanos;
+        private final long[] decodeNanos;
+        private final long[] pixels;
+        private final String[] errors;
+        private final boolean[] cancelled;
+        private final boolean[] tiled;
+        private final AtomicInteger remaining;
+        private ExecutorService executor;
+        private long start;
+
+        /**
+         * Constructs a LoadSession.
+         *
+         * @param files The files to load.
+         * @param listener The listener that receives the results.
+         * @param progress The listener that tracks the loaded files, or null.
+         */
+        LoadSession(List<File> files, ImageLoadListener listener, ProgressListener progress) {
+            this.files = files;
+            this.listener = listener;
+            this.progress = progress;
+            this.token = CancellationToken.of(progress);
+            int count = files.size();
+            previewNanos = new long[count];
+            decodeNanos = new long[count];
+            pixels = new long[count];
+            errors = new String[count];
+            cancelled = new boolean[count];
+            tiled = new boolean[count];
+            remaining = new AtomicInteger(count);
+        }
+
+        /**
+         * Queues the previews of all files, or reports an empty run at once.
+         */
+        void start() {
+            start = System.nanoTime();
+            if (progress != null) {
+                progress.onProgressStart(files.size());
+            }
+            if (files.isEmpty()) {
+                listener.onFinished(createReport());
+                return;
+            }
+            executor = Executors.newFixedThreadPool(Math.min(threads, files.size()), runnable -> {
+                Thread thread = new Thread(runnable, "image-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < files.size(); i++) {
+                int index = i;
+                executor.execute(() -> loadPreview(index));
+            }
+        }
+
+        /**
+         * Decodes the preview of one file and queues its full decode. A file that is not larger than the preview
+         * size is complete after the preview and is not decoded again.
+         *
+         * @param index The position of the file.
+         */
+        private void loadPreview(int index) {
+            try {
+                token.throwIfCancelled();
+                long begin = System.nanoTime();
+                ImageThumbnail thumbnail = fileService.loadPreview(files.get(index).getPath(), previewSize);
+                previewNanos[index] = System.nanoTime() - begin;
+                listener.onPreview(index, thumbnail);
+                if (thumbnail.isFullResolution()) {
+                    BufferedImage image = thumbnail.getImage();
+                    pixels[index] = (long) image.getWidth() * image.getHeight();
+                    listener.onLoaded(index, image);
+                    complete();
+                } else {
+                    executor.execute(() -> loadImage(index, thumbnail));
+                }
+            } catch (Throwable e) {
+                fail(index, e);
+            }
+        }
+
+        /**
+         * Decodes one file at full resolution, or opens it for tiled access if it is too large for the heap.
+         *
+         * @param index The position of the file.
+         * @param thumbnail The preview of the file, which carries its dimensions.
+         */
+        private void loadImage(int index, ImageThumbnail thumbnail) {
+            try {
+                token.throwIfCancelled();
+                long begin = System.nanoTime();
+                if (TiledImageSource.shouldTile(thumbnail.getSourceWidth(), thumbnail.getSourceHeight())) {
+                    TiledImageSource source = fileService.openTiled(files.get(index).getPath());
+                    decodeNanos[index] = System.nanoTime() - begin;
+                    pixels[index] = (long) source.getWidth() * source.getHeight();
+                    tiled[index] = true;
+                    listener.onTiled(index, source);
+                    complete();
+                    return;
+                }
+                int permits = decodePermits(thumbnail.getSourceWidth(), thumbnail.getSourceHeight());
+                acquireDecodeMemory(permits);
+                BufferedImage image;
+                try {
+                    image = fileService.loadImage(files.get(index).getPath());
+                } finally {
+                    decodeMemory.release(permits);
+                }
+                if (image == null) {
+                    throw new RuntimeException("Unsupported image format: " + files.get(index).getPath());
+                }
+                decodeNanos[index] = System.nanoTime() - begin;
+                pixels[index] = (long) image.getWidth() * image.getHeight();
+                listener.onLoaded(index, image);
+                complete();
+            } catch (Throwable e) {
+                fail(index, e);
+            }
+        }
+
+        /**
+         * Returns the decode memory a full decode takes, in kilobytes.
+         *
+         * @param width The width of the image.
+         * @param height The height of the image.
+         * @return The kilobytes of the pixels, at most the whole decode memory.
+         */
+        private int decodePermits(int width, int height) {
+            long bytes = (long) width * height * Integer.BYTES;
+            return (int) Math.max(1, Math.min(decodeKilobytes, (bytes + KILOBYTE - 1) / KILOBYTE));
+        }
+
+        /**
+         * Waits until the decode memory has room for a full decode, checking the cancellation token while waiting.
+         *
+         * @param permits The kilobytes the decode takes.
+         * @throws CancellationException if the loading was cancelled or the thread was interrupted.
+         */
+        private void acquireDecodeMemory(int permits) {
+            try {
+                while (!decodeMemory.tryAcquire(permits, 100, TimeUnit.MILLISECONDS)) {
+                    token.throwIfCancelled();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Loading was interrupted");
+            }
+        }
+
+        /**
+         * Records a failed or cancelled file and reports it. Errors such as an OutOfMemoryError are reported
+         * wrapped in a RuntimeException, so that the file fails instead of staying in loading.
+         *
+         * @param index The position of the file.
+         * @param error The cause of the failure.
+         */
+        private void fail(int index, Throwable error) {
+            String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+            if (error instanceof CancellationException) {
+                cancelled[index] = true;
+            } else {
+                errors[index] = message;
+            }
+            listener.onFailed(index, error instanceof Exception ? (Exception) error
+                    : new RuntimeException(error.getClass().getSimpleName() + ": " + message, error));
+            complete();
+        }
+
+        /**
+         * Counts one finished file and, after the last one, shuts the pool down and reports the run.
+         */
+        private void complete() {
+            if (progress != null) {
+                progress.onProgressUpdate();
+            }
+            if (remaining.decrementAndGet() == 0) {
+                executor.shutdown();
+                listener.onFinished(createReport());
+            }
+        }
+
+        /**
+         * Creates the report of the run.
+         *
+         * @return The report with the timings collected so far.
+         */
+        private LoadReport createReport() {
+            List<String> names = new ArrayList<>(files.size());
+            for (File file : files) {
+                names.add(file.getName());
+            }
+            return new LoadReport(names, previewNanos, decodeNanos, pixels, errors, cancelled, tiled,
+                    System.nanoTime() - start);
+        }
+    }
+}
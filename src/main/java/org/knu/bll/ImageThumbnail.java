@@ -0,0 +1,66 @@
+package org.knu.bll;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The ImageThumbnail class holds a reduced image decoded with source subsampling, together with the dimensions of the
+ * full-resolution image it was decoded from, so that a preview can be shown at the size the full image will have.
+ */
+public final class ImageThumbnail {
+    private final BufferedImage image;
+    private final int sourceWidth;
+    private final int sourceHeight;
+
+    /**
+     * Constructs an ImageThumbnail.
+     *
+     * @param image The subsampled image.
+     * @param sourceWidth The width of the full-resolution image.
+     * @param sourceHeight The height of the full-resolution image.
+     * @throws NullPointerException if the image is null.
+     */
+    public ImageThumbnail(BufferedImage image, int sourceWidth, int sourceHeight) {
+        if (image == null) {
+            throw new NullPointerException("Image cannot be null");
+        }
+        this.image = image;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+    }
+
+    /**
+     * Returns the subsampled image.
+     *
+     * @return The reduced image.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Checks whether the image was small enough to be decoded without subsampling.
+     *
+     * @return True if the thumbnail holds every pixel of the full image.
+     */
+    public boolean isFullResolution() {
+        return image.getWidth() == sourceWidth && image.getHeight() == sourceHeight;
+    }
+
+    /**
+     * Returns the width of the full-resolution image.
+     *
+     * @return The width in pixels.
+     */
+    public int getSourceWidth() {
+        return sourceWidth;
+    }
+
+    /**
+     * Returns the height of the full-resolution image.
+     *
+     * @return The height in pixels.
+     */
+    public int getSourceHeight() {
+        return sourceHeight;
+    }
+}
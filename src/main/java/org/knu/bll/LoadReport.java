@@ -0,0 +1,232 @@
+package org.knu.bll;
+
+import java.util.List;
+
+/**
+ * The LoadReport class holds the outcome of an {@link ImageLoader} run: the preview and full decode time of every
+ * file, which files failed or were cancelled, and the throughput of the whole run.
+ */
+public class LoadReport {
+    private final List<String> names;
+    private final long[] previewNanos;
+    private final long[] decodeNanos;
+    private final long[] pixels;
+    private final String[] errors;
+    private final boolean[] cancelled;
+    private final boolean[] tiled;
+    private final long elapsedNanos;
+
+    /**
+     * Constructs a LoadReport. The arrays are indexed like the names and are not copied.
+     *
+     * @param names The names of the files in the order they were requested.
+     * @param previewNanos The time spent decoding the preview of every file in nanoseconds.
+     * @param decodeNanos The time spent decoding every file at full resolution in nanoseconds.
+     * @param pixels The number of pixels of every loaded file.
+     * @param errors The error message of every failed file, or null for loaded and cancelled files.
+     * @param cancelled Whether the loading of every file was cancelled.
+     * @param tiled Whether every file was opened for tiled access instead of being decoded.
+     * @param elapsedNanos The wall-clock time of the run in nanoseconds.
+     * @throws IllegalArgumentException if the arrays do not match the names.
+     */
+    public LoadReport(List<String> names, long[] previewNanos, long[] decodeNanos, long[] pixels,
+                      String[] errors, boolean[] cancelled, boolean[] tiled, long elapsedNanos) {
+        int count = names.size();
+        if (previewNanos.length != count || decodeNanos.length != count || pixels.length != count
+                || errors.length != count || cancelled.length != count || tiled.length != count) {
+            throw new IllegalArgumentException("Report arrays do not match the number of files");
+        }
+        this.names = List.copyOf(names);
+        this.previewNanos = previewNanos;
+        this.decodeNanos = decodeNanos;
+        this.pixels = pixels;
+        this.errors = errors;
+        this.cancelled = cancelled;
+        this.tiled = tiled;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the number of requested files.
+     *
+     * @return The number of files.
+     */
+    public int getFileCount() {
+        return names.size();
+    }
+
+    /**
+     * Returns the name of a file.
+     *
+     * @param index The position of the file.
+     * @return The file name.
+     */
+    public String getFileName(int index) {
+        return names.get(index);
+    }
+
+    /**
+     * Checks whether a file was loaded at full resolution.
+     *
+     * @param index The position of the file.
+     * @return True if the file was loaded.
+     */
+    public boolean isLoaded(int index) {
+        return errors[index] == null && !cancelled[index];
+    }
+
+    /**
+     * Checks whether a file was opened for tiled access because it is too large for the heap.
+     *
+     * @param index The position of the file.
+     * @return True if the file was opened as a tiled source.
+     */
+    public boolean isTiled(int index) {
+        return tiled[index];
+    }
+
+    /**
+     * Returns the error message of a file.
+     *
+     * @param index The position of the file.
+     * @return The reason the file could not be decoded, or null if it was loaded or cancelled.
+     */
+    public String getError(int index) {
+        return errors[index];
+    }
+
+    /**
+     * Returns the time spent decoding the preview of a file.
+     *
+     * @param index The position of the file.
+     * @return The preview decode time in milliseconds.
+     */
+    public double getPreviewMillis(int index) {
+        return previewNanos[index] / 1e6;
+    }
+
+    /**
+     * Returns the time spent decoding a file at full resolution, or opening it for a tiled file.
+     *
+     * @param index The position of the file.
+     * @return The full decode time in milliseconds.
+     */
+    public double getDecodeMillis(int index) {
+        return decodeNanos[index] / 1e6;
+    }
+
+    /**
+     * Returns the number of files that were loaded at full resolution.
+     *
+     * @return The number of loaded files.
+     */
+    public int getLoadedImages() {
+        int loaded = 0;
+        for (int i = 0; i < names.size(); i++) {
+            if (isLoaded(i)) loaded++;
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the number of files that could not be decoded.
+     *
+     * @return The number of failed files, not counting cancelled ones.
+     */
+    public int getFailedImages() {
+        int failed = 0;
+        for (String error : errors) {
+            if (error != null) failed++;
+        }
+        return failed;
+    }
+
+    /**
+     * Returns the number of files whose loading was cancelled.
+     *
+     * @return The number of cancelled files.
+     */
+    public int getCancelledImages() {
+        int count = 0;
+        for (boolean c : cancelled) {
+            if (c) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the wall-clock time of the run.
+     *
+     * @return The elapsed time in seconds.
+     */
+    public double getElapsedSeconds() {
+        return elapsedNanos / 1e9;
+    }
+
+    /**
+     * Returns the number of loaded megapixels.
+     *
+     * @return The pixels of the loaded files in millions.
+     */
+    public double getMegapixels() {
+        long total = 0;
+        for (long p : pixels) {
+            total += p;
+        }
+        return total / 1e6;
+    }
+
+    /**
+     * Returns the throughput in images.
+     *
+     * @return The loaded images per second, or 0 if no time has elapsed.
+     */
+    public double getImagesPerSecond() {
+        return elapsedNanos == 0 ? 0 : getLoadedImages() / getElapsedSeconds();
+    }
+
+    /**
+     * Returns the throughput in pixels.
+     *
+     * @return The loaded megapixels per second, or 0 if no time has elapsed.
+     */
+    public double getMegapixelsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getMegapixels() / getElapsedSeconds();
+    }
+
+    /**
+     * Returns the summary followed by one line per file with its decode times or the reason it was not loaded.
+     *
+     * @return The per-file report.
+     */
+    public String getDetails() {
+        StringBuilder details = new StringBuilder(toString());
+        for (int i = 0; i < names.size(); i++) {
+            details.append(System.lineSeparator()).append(names.get(i)).append(": ");
+            if (cancelled[i]) {
+                details.append("cancelled");
+            } else if (errors[i] != null) {
+                details.append("failed, ").append(errors[i]);
+            } else if (tiled[i]) {
+                details.append(String.format("preview %.1f ms, opened tiled in %.1f ms, %.1f MP",
+                        getPreviewMillis(i), getDecodeMillis(i), pixels[i] / 1e6));
+            } else {
+                details.append(String.format("preview %.1f ms, decode %.1f ms, %.1f MP",
+                        getPreviewMillis(i), getDecodeMillis(i), pixels[i] / 1e6));
+            }
+        }
+        return details.toString();
+    }
+
+    /**
+     * Returns a summary of the run.
+     *
+     * @return The counts, the elapsed time and the throughput.
+     */
+    @Override
+    public String toString() {
+        return String.format("Loaded %d images (%.1f MP), %d failed, %d cancelled, in %.2f s: %.2f images/s, %.2f MP/s",
+                getLoadedImages(), getMegapixels(), getFailedImages(), getCancelledImages(), getElapsedSeconds(),
+                getImagesPerSecond(), getMegapixelsPerSecond());
+    }
+}
@@ -2,6 +2,11 @@ package org.knu.bll;
 
 /**
  * The ProgressListener interface defines a contract for receiving progress updates during a long-running operation.
+ * <p>
+ * A listener also carries the {@link CancellationToken} of the operation. Operations poll it between tiles and rows
+ * and stop with a {@link java.util.concurrent.CancellationException} once it is cancelled. Updates may arrive from
+ * several worker threads; implementations that drive a user interface should aggregate them and publish at a limited
+ * rate, as {@link ProgressTracker} does.
  */
 public interface ProgressListener {
 
@@ -16,4 +21,37 @@ public interface ProgressListener {
      * Called when the progress is updated.
      */
     void onProgressUpdate();
+
+    /**
+     * Returns the token that the operation polls for cancellation.
+     *
+     * @return The cancellation token. The default token is never cancelled.
+     */
+    default CancellationToken getCancellationToken() {
+        return CancellationToken.NONE;
+    }
+
+    /**
+     * Creates a listener for an inner stage of an operation that ignores progress updates, so that the stage does
+     * not restart the progress of the operation, but still stops when the operation is cancelled.
+     *
+     * @param token The cancellation token of the operation.
+     * @return A listener that only carries the token.
+     */
+    static ProgressListener withoutProgress(CancellationToken token) {
+        return new ProgressListener() {
+            @Override
+            public void onProgressStart(int maximum) {
+            }
+
+            @Override
+            public void onProgressUpdate() {
+            }
+
+            @Override
+            public CancellationToken getCancellationToken() {
+                return token;
+            }
+        };
+    }
 }
@@ -0,0 +1,153 @@
+package org.knu.bll;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The ProgressTracker class is a {@link ProgressListener} that worker threads can update without contention and that
+ * publishes its state at a limited rate. Updates only increment an atomic counter; at most once per publish interval,
+ * and once more when the last step completes, the tracker hands itself to a sink, which typically schedules a repaint
+ * of a progress bar. The tracker also estimates the remaining time from the rate observed since the start.
+ * <p>
+ * Each tracker carries its own {@link CancellationToken}, so cancelling it stops the operation it was passed to.
+ */
+public class ProgressTracker implements ProgressListener {
+    /**
+     * The default minimal time between two publications, about two frames of a 60 Hz display.
+     */
+    public static final long DEFAULT_PUBLISH_INTERVAL_MILLIS = 30;
+
+    private final CancellationToken token;
+    private final Consumer<ProgressTracker> sink;
+    private final long publishIntervalNanos;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong lastPublished = new AtomicLong();
+    private volatile int maximum;
+    private volatile long startNanos = System.nanoTime();
+
+    /**
+     * Constructs a ProgressTracker with a new cancellation token and the default publish interval.
+     *
+     * @param sink Receives the tracker whenever its state is published. This can be null.
+     */
+    public ProgressTracker(Consumer<ProgressTracker> sink) {
+        this(new CancellationToken(), sink, DEFAULT_PUBLISH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Constructs a ProgressTracker.
+     *
+     * @param token The token of the tracked operation. This token should not be null.
+     * @param sink Receives the tracker whenever its state is published. This can be null.
+     * @param publishIntervalMillis The minimal time between two publications in milliseconds.
+     * @throws NullPointerException if the token is null.
+     * @throws IllegalArgumentException if the interval is negative.
+     */
+    public ProgressTracker(CancellationToken token, Consumer<ProgressTracker> sink, long publishIntervalMillis) {
+        if (token == null) throw new NullPointerException("Token cannot be null");
+        if (publishIntervalMillis < 0) {
+            throw new IllegalArgumentException("Publish interval cannot be negative");
+        }
+        this.token = token;
+        this.sink = sink;
+        this.publishIntervalNanos = publishIntervalMillis * 1_000_000L;
+    }
+
+    /**
+     * Starts a new phase of the operation, resetting the counter and the time estimate, and publishes it at once.
+     *
+     * @param maximum The number of steps of the phase.
+     */
+    @Override
+    public void onProgressStart(int maximum) {
+        this.maximum = Math.max(0, maximum);
+        completed.set(0);
+        startNanos = System.nanoTime();
+        publish(startNanos);
+    }
+
+    /**
+     * Counts one completed step and publishes the state if the publish interval has passed or this was the last step.
+     */
+    @Override
+    public void onProgressUpdate() {
+        long done = completed.incrementAndGet();
+        long now = System.nanoTime();
+        long last = lastPublished.get();
+        if ((done >= maximum || now - last >= publishIntervalNanos) && lastPublished.compareAndSet(last, now)) {
+            publish(now);
+        }
+    }
+
+    /**
+     * Returns the token of the tracked operation.
+     *
+     * @return The cancellation token of this tracker.
+     */
+    @Override
+    public CancellationToken getCancellationToken() {
+        return token;
+    }
+
+    /**
+     * Requests the tracked operation to stop.
+     */
+    public void cancel() {
+        token.cancel();
+    }
+
+    /**
+     * Returns the number of steps completed in the current phase.
+     *
+     * @return The completed steps.
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Returns the number of steps of the current phase.
+     *
+     * @return The maximum passed to {@link #onProgressStart(int)}, or 0 before it was called.
+     */
+    public int getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * Returns the completed part of the current phase.
+     *
+     * @return A value between 0 and 1.
+     */
+    public double getFraction() {
+        int max = maximum;
+        if (max == 0) return 0;
+        return Math.min(1.0, (double) completed.get() / max);
+    }
+
+    /**
+     * Estimates the remaining time of the current phase from the average time per step so far.
+     *
+     * @return The estimated remaining time in milliseconds, or -1 while no step has completed.
+     */
+    public long getEtaMillis() {
+        long done = completed.get();
+        int max = maximum;
+        if (done == 0 || max == 0) return -1;
+        if (done >= max) return 0;
+        long elapsed = System.nanoTime() - startNanos;
+        return (long) ((double) elapsed / done * (max - done) / 1_000_000L);
+    }
+
+    /**
+     * Hands the tracker to the sink and remembers the publication time.
+     *
+     * @param now The current time in nanoseconds.
+     */
+    private void publish(long now) {
+        lastPublished.set(now);
+        if (sink != null) {
+            sink.accept(this);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package org.knu.bll;
+
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
+import org.knu.bll.buffers.TiledImageWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * The StreamingProcessor class runs image operations on images that are too large for the heap by streaming them
+ * tile by tile from a {@link TiledImageSource} to a {@link TiledImageWriter}. For every output tile it reads the tile
+ * together with a halo as wide as the reach of the operation's kernel, runs the ordinary in-memory operation on that
+ * region and writes only the core of the result. Since the halo supplies every pixel the kernel reads, the core equals
+ * the same part of the result computed on the whole image, while memory stays bounded by one tile and the cache of
+ * the source, whatever the size of the image.
+ * <p>
+ * Tiles are applied one after another, and the operation parallelizes the rows of each tile on its own
+ * {@link TileScheduler}. Global operations, which need statistics of the whole image before they can map a pixel,
+ * run in two passes: {@link #reduce} gathers the statistics from the tiles in parallel, and {@link #apply} maps them.
+ * Like the scheduler, the methods that take a list of tiles report one update per tile and leave calling
+ * ProgressListener.onProgressStart to the caller.
+ */
+public class StreamingProcessor {
+    /**
+     * The edge length of the tiles that are processed and written.
+     */
+    public static final int DEFAULT_TILE_SIZE = TiledImageWriter.DEFAULT_TILE_SIZE;
+
+    private final TileScheduler scheduler;
+    private final int tileSize;
+
+    /**
+     * Constructs a StreamingProcessor with the default tile size that runs on the shared scheduler.
+     */
+    public StreamingProcessor() {
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs a StreamingProcessor with the default tile size.
+     *
+     * @param scheduler The TileScheduler that runs the statistics passes.
+     */
+    public StreamingProcessor(TileScheduler scheduler) {
+        this(scheduler, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Constructs a StreamingProcessor.
+     *
+     * @param scheduler The TileScheduler that runs the statistics passes.
+     * @param tileSize The edge length of the tiles, a multiple of 16 as the tiled output requires.
+     * @throws IllegalArgumentException if the tile size is not a positive multiple of 16.
+     */
+    public StreamingProcessor(TileScheduler scheduler, int tileSize) {
+        if (tileSize <= 0 || tileSize % 16 != 0) {
+            throw new IllegalArgumentException("Tile size must be a positive multiple of 16");
+        }
+        this.scheduler = scheduler;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Splits a source into the tiles this processor reads and writes.
+     *
+     * @param source The image to split.
+     * @param halo The number of pixels around a tile that the operation reads.
+     * @return The tiles in row-major order.
+     * @throws IllegalArgumentException if the halo is negative.
+     */
+    public List<Tile> splitTiles(TiledImageSource source, int halo) {
+        return scheduler.splitTiles(source.getWidth(), source.getHeight(), tileSize, halo);
+    }
+
+    /**
+     * Streams a local operation over a source and writes the result to a tiled TIFF file.
+     * If the operation fails or is cancelled, the incomplete file is deleted.
+     *
+     * @param source The image to process. This source should not be null.
+     * @param halo The number of pixels around a pixel that the operation reads.
+     * @param output The file to write. An existing file is replaced.
+     * @param listener A ProgressListener that receives one update per tile. This listener should not be null.
+     * @param operation The in-memory operation to apply to every tile with its halo.
+     * @throws NullPointerException if the source or the listener is null.
+     * @throws IllegalArgumentException if the halo is negative or the output is the file of the source.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     * @throws RuntimeException if the source cannot be read or the output cannot be written.
+     */
+    public void apply(TiledImageSource source, int halo, File output, ProgressListener listener, TileOperation operation) {
+        if (source == null) throw new NullPointerException("Image cannot be null");
+        if (listener == null) throw new NullPointerException("Listener cannot be null");
+
+        List<Tile> tiles = splitTiles(source, halo);
+        listener.onProgressStart(tiles.size());
+        apply(source, tiles, output, listener, operation);
+    }
+
+    /**
+     * Streams an operation over the given tiles of a source and writes the result to a tiled TIFF file of the size of
+     * the source. If the operation fails or is cancelled, the incomplete file is deleted.
+     *
+     * @param source The image to process.
+     * @param tiles The tiles to process, from {@link #splitTiles(TiledImageSource, int)}, covering the whole image.
+     * @param output The file to write. An existing file is replaced.
+     * @param listener A ProgressListener that receives one update per tile.
+     * @param operation The in-memory operation to apply to every tile with its halo.
+     * @throws IllegalArgumentException if the output is the file of the source.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     * @throws RuntimeException if the source cannot be read or the output cannot be written.
+     */
+    public void apply(TiledImageSource source, List<Tile> tiles, File output, ProgressListener listener,
+                      TileOperation operation) {
+        if (operation == null) throw new NullPointerException("Operation cannot be null");
+        checkOutput(source, output);
+        CancellationToken token = CancellationToken.of(listener);
+        ProgressListener inner = ProgressListener.withoutProgress(token);
+        boolean completed = false;
+        TiledImageWriter writer = TiledImageWriter.create(output, source.getWidth(), source.getHeight(), false, tileSize);
+        try {
+            for (Tile tile : tiles) {
+                token.throwIfCancelled();
+                PixelBuffer result = operation.apply(source.read(tile), inner);
+                writer.write(tile.getX(), tile.getY(), crop(result, tile));
+                listener.onProgressUpdate();
+            }
+            completed = true;
+        } finally {
+            try {
+                writer.close();
+            } finally {
+                if (!completed) {
+                    output.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes a value for every tile of a source and merges the values in tile order. The tiles are read and
+     * mapped in parallel on the scheduler, so the mapper must not use the scheduler itself.
+     *
+     * @param source The image to read.
+     * @param tiles The tiles to read, from {@link #splitTiles(TiledImageSource, int)}. The list should not be empty.
+     * @param listener A ProgressListener that receives one update per tile.
+     * @param mapper The operation that computes the value of the pixels of one tile, including its halo.
+     * @param merger The operation that merges the values of two neighbouring ranges of tiles.
+     * @param <T> The type of the values.
+     * @return The merged value of all tiles.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     * @throws RuntimeException if the source cannot be read.
+     */
+    public <T> T reduce(TiledImageSource source, List<Tile> tiles, ProgressListener listener,
+                        Function<PixelBuffer, T> mapper, BinaryOperator<T> merger) {
+        return scheduler.reduce(tiles, listener, tile -> mapper.apply(source.read(tile)), merger);
+    }
+
+    /**
+     * Cuts the core of a tile out of the result computed for the tile and its halo.
+     *
+     * @param result The result of the operation for the tile and its halo.
+     * @param tile The tile.
+     * @return The pixels of the core of the tile.
+     * @throws IllegalStateException if the result does not have the size of the tile and its halo.
+     */
+    private static PixelBuffer crop(PixelBuffer result, Tile tile) {
+        int regionWidth = tile.getHaloEndX() - tile.getHaloX();
+        if (result.getWidth() != regionWidth || result.getHeight() != tile.getHaloEndY() - tile.getHaloY()) {
+            throw new IllegalStateException("Tile operation must keep the size of the tile");
+        }
+        if (result.getWidth() == tile.getWidth() && result.getHeight() == tile.getHeight()) {
+            return result;
+        }
+        int offsetX = tile.getX() - tile.getHaloX();
+        int offsetY = tile.getY() - tile.getHaloY();
+        int[] pixels = new int[tile.getWidth() * tile.getHeight()];
+        int[] resultPixels = result.getPixels();
+        for (int y = 0; y < tile.getHeight(); y++) {
+            System.arraycopy(resultPixels, (y + offsetY) * regionWidth + offsetX, pixels, y * tile.getWidth(), tile.getWidth());
+        }
+        return new PixelBuffer(tile.getWidth(), tile.getHeight(), pixels, result.hasAlpha());
+    }
+
+    /**
+     * Fails if the output would overwrite the file the source is reading.
+     *
+     * @param source The image being read.
+     * @param output The file to write.
+     * @throws IllegalArgumentException if the output is the file of the source.
+     */
+    private static void checkOutput(TiledImageSource source, File output) {
+        try {
+            if (new File(source.getPath()).getCanonicalFile().equals(output.getCanonicalFile())) {
+                throw new IllegalArgumentException("Output file must differ from the source file");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error resolving file path: " + output.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * The TileOperation interface is the in-memory operation that a StreamingProcessor applies to every tile.
+     */
+    @FunctionalInterface
+    public interface TileOperation {
+
+        /**
+         * Processes the pixels of one tile and its halo.
+         *
+         * @param region The pixels of the tile and its halo. The buffer may be modified.
+         * @param listener A listener that carries the cancellation token of the stream and ignores progress updates.
+         * @return A buffer of the same size as the region. Only its core is written.
+         */
+        PixelBuffer apply(PixelBuffer region, ProgressListener listener);
+    }
+}
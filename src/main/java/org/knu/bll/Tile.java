@@ -0,0 +1,155 @@
+package org.knu.bll;
+
+/**
+ * The Tile class describes one rectangular piece of an image that is processed independently.
+ * The core region is the part of the output the tile owns and writes. The halo region is the core
+ * extended by the halo width on every side and clipped to the image; it is the part of the input
+ * a neighbourhood operation may read to compute the core.
+ * <p>
+ * The cores of the tiles created by {@link TileScheduler} never overlap, so tiles can write their
+ * core regions of a shared output without synchronization.
+ */
+public final class Tile {
+    private final int index;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+    private final int haloX;
+    private final int haloY;
+    private final int haloEndX;
+    private final int haloEndY;
+
+    /**
+     * Constructs a Tile.
+     *
+     * @param index       The position of the tile in the list it belongs to.
+     * @param x           The left edge of the core region.
+     * @param y           The top edge of the core region.
+     * @param width       The width of the core region.
+     * @param height      The height of the core region.
+     * @param halo        The number of pixels the halo region extends the core on every side.
+     * @param imageWidth  The width of the image.
+     * @param imageHeight The height of the image.
+     */
+    public Tile(int index, int x, int y, int width, int height, int halo, int imageWidth, int imageHeight) {
+        this.index = index;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.haloX = Math.max(0, x - halo);
+        this.haloY = Math.max(0, y - halo);
+        this.haloEndX = Math.min(imageWidth, x + width + halo);
+        this.haloEndY = Math.min(imageHeight, y + height + halo);
+    }
+
+    /**
+     * Returns the position of the tile in the list it belongs to.
+     *
+     * @return The tile index.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the left edge of the core region.
+     *
+     * @return The x-coordinate of the first core column.
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Returns the top edge of the core region.
+     *
+     * @return The y-coordinate of the first core row.
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Returns the width of the core region.
+     *
+     * @return The number of core columns.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the core region.
+     *
+     * @return The number of core rows.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the right edge of the core region.
+     *
+     * @return The x-coordinate after the last core column.
+     */
+    public int getEndX() {
+        return x + width;
+    }
+
+    /**
+     * Returns the bottom edge of the core region.
+     *
+     * @return The y-coordinate after the last core row.
+     */
+    public int getEndY() {
+        return y + height;
+    }
+
+    /**
+     * Returns the left edge of the halo region.
+     *
+     * @return The x-coordinate of the first column that may be read.
+     */
+    public int getHaloX() {
+        return haloX;
+    }
+
+    /**
+     * Returns the top edge of the halo region.
+     *
+     * @return The y-coordinate of the first row that may be read.
+     */
+    public int getHaloY() {
+        return haloY;
+    }
+
+    /**
+     * Returns the right edge of the halo region.
+     *
+     * @return The x-coordinate after the last column that may be read.
+     */
+    public int getHaloEndX() {
+        return haloEndX;
+    }
+
+    /**
+     * Returns the bottom edge of the halo region.
+     *
+     * @return The y-coordinate after the last row that may be read.
+     */
+    public int getHaloEndY() {
+        return haloEndY;
+    }
+
+    /**
+     * Returns a string representation of the tile.
+     *
+     * @return The core region of the tile.
+     */
+    @Override
+    public String toString() {
+        return "Tile " + index + " [" + x + ", " + y + ", " + width + "x" + height + "]";
+    }
+}
@@ -0,0 +1,284 @@
+package org.knu.bll;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * The TileScheduler class runs image operations in parallel. An image is split into row bands or
+ * two-dimensional tiles with halo regions (see {@link Tile}), and a kernel callback is invoked for every tile
+ * on a ForkJoinPool sized to the available cores.
+ * <p>
+ * Kernels write only the core region of their tile into a shared primitive output, so results are merged
+ * without locks. Operations that produce a value per tile, such as histograms or cluster sums, use
+ * {@link #reduce(List, ProgressListener, Function, BinaryOperator)}, which merges the partial results in tile order.
+ * <p>
+ * Progress is reported with one ProgressListener.onProgressUpdate call per finished tile. The caller is responsible
+ * for calling ProgressListener.onProgressStart with the total number of tiles it schedules.
+ */
+public class TileScheduler {
+    private static final int BANDS_PER_THREAD = 4;
+    private static TileScheduler shared;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a TileScheduler with one worker per available processor.
+     */
+    public TileScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a TileScheduler with the given number of workers.
+     *
+     * @param parallelism The number of worker threads.
+     * @throws IllegalArgumentException if the parallelism is not positive.
+     */
+    public TileScheduler(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Returns the scheduler used by operators that were constructed without one.
+     *
+     * @return The shared TileScheduler with one worker per available processor.
+     */
+    public static synchronized TileScheduler shared() {
+        if (shared == null) {
+            shared = new TileScheduler();
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return The parallelism of the underlying pool.
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Splits an image into full-width row bands. There are a few bands per worker for load balancing,
+     * but every band is at least twice the halo high, so the rows read around a band never dominate its own rows.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @param halo   The number of rows above and below a band that the operation reads.
+     * @return The bands in top-to-bottom order.
+     * @throws IllegalArgumentException if the dimensions are not positive or the halo is negative.
+     */
+    public List<Tile> splitBands(int width, int height, int halo) {
+        validate(width, height, halo);
+        int bands = Math.max(1, Math.min(getParallelism() * BANDS_PER_THREAD, height / Math.max(1, 2 * halo)));
+        int bandHeight = (height + bands - 1) / bands;
+
+        List<Tile> tiles = new ArrayList<>();
+        for (int y = 0; y < height; y += bandHeight) {
+            tiles.add(new Tile(tiles.size(), 0, y, width, Math.min(bandHeight, height - y), halo, width, height));
+        }
+        return tiles;
+    }
+
+    /**
+     * Splits an image into square tiles in row-major order. Tiles on the right and bottom edges may be smaller.
+     *
+     * @param width    The width of the image.
+     * @param height   The height of the image.
+     * @param tileSize The edge length of a tile.
+     * @param halo     The number of pixels around a tile that the operation reads.
+     * @return The tiles in row-major order.
+     * @throws IllegalArgumentException if the dimensions or the tile size are not positive or the halo is negative.
+     */
+    public List<Tile> splitTiles(int width, int height, int tileSize, int halo) {
+        validate(width, height, halo);
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+
+        List<Tile> tiles = new ArrayList<>();
+        for (int y = 0; y < height; y += tileSize) {
+            for (int x = 0; x < width; x += tileSize) {
+                tiles.add(new Tile(tiles.size(), x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y),
+                        halo, width, height));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Runs the kernel for every tile and waits until all tiles are done.
+     * A RuntimeException thrown by a kernel is rethrown to the caller. Tiles that have not started when the
+     * cancellation token of the listener is cancelled are skipped.
+     *
+     * @param tiles    The tiles to process.
+     * @param listener A ProgressListener that receives one update per finished tile. This can be null.
+     * @param kernel   The operation to run for every tile.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public void forEach(List<Tile> tiles, ProgressListener listener, TileKernel kernel) {
+        if (kernel == null) throw new NullPointerException("Kernel cannot be null");
+        if (tiles.isEmpty()) return;
+        pool.invoke(new TileAction(tiles, 0, tiles.size(), listener, kernel));
+    }
+
+    /**
+     * Computes a value for every tile and merges the values in tile order.
+     * A RuntimeException thrown by the mapper or the merger is rethrown to the caller. Tiles that have not started
+     * when the cancellation token of the listener is cancelled are skipped.
+     *
+     * @param tiles    The tiles to process. The list should not be empty.
+     * @param listener A ProgressListener that receives one update per finished tile. This can be null.
+     * @param mapper   The operation that computes the value of one tile.
+     * @param merger   The operation that merges the values of two neighbouring ranges of tiles.
+     * @param <T>      The type of the values.
+     * @return The merged value of all tiles.
+     * @throws IllegalArgumentException if the list of tiles is empty.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public <T> T reduce(List<Tile> tiles, ProgressListener listener, Function<Tile, T> mapper, BinaryOperator<T> merger) {
+        if (tiles.isEmpty()) {
+            throw new IllegalArgumentException("There are no tiles to reduce");
+        }
+        return pool.invoke(new TileReduction<>(tiles, 0, tiles.size(), listener, mapper, merger));
+    }
+
+    /**
+     * Stops the worker threads after the running tasks have finished.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Validates the dimensions of an image and the halo width.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @param halo   The halo width.
+     * @throws IllegalArgumentException if the dimensions are not positive or the halo is negative.
+     */
+    private static void validate(int width, int height, int halo) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image dimensions must be positive");
+        }
+        if (halo < 0) {
+            throw new IllegalArgumentException("Halo cannot be negative");
+        }
+    }
+
+    /**
+     * Reports one finished tile. Listeners are not required to be thread-safe, so updates are serialized, except for
+     * a {@link ProgressTracker}, which counts updates atomically.
+     *
+     * @param listener The listener to notify. This can be null.
+     */
+    private static void reportProgress(ProgressListener listener) {
+        if (listener instanceof ProgressTracker) {
+            listener.onProgressUpdate();
+        } else if (listener != null) {
+            synchronized (listener) {
+                listener.onProgressUpdate();
+            }
+        }
+    }
+
+    /**
+     * The TileKernel interface is the callback through which an operation processes one tile.
+     */
+    @FunctionalInterface
+    public interface TileKernel {
+
+        /**
+         * Processes one tile. Implementations must only write the core region of the tile.
+         *
+         * @param tile The tile to process.
+         */
+        void process(Tile tile);
+    }
+
+    /**
+     * The TileAction class processes a range of tiles by splitting it in halves until one tile is left.
+     */
+    private static final class TileAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Tile> tiles;
+        private final int from;
+        private final int to;
+        private final ProgressListener listener;
+        private final TileKernel kernel;
+
+        private TileAction(List<Tile> tiles, int from, int to, ProgressListener listener, TileKernel kernel) {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+            this.listener = listener;
+            this.kernel = kernel;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                CancellationToken.of(listener).throwIfCancelled();
+                kernel.process(tiles.get(from));
+                reportProgress(listener);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TileAction(tiles, from, middle, listener, kernel),
+                    new TileAction(tiles, middle, to, listener, kernel));
+        }
+    }
+
+    /**
+     * The TileReduction class computes and merges the values of a range of tiles by splitting it in halves.
+     *
+     * @param <T> The type of the values.
+     */
+    private static final class TileReduction<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Tile> tiles;
+        private final int from;
+        private final int to;
+        private final ProgressListener listener;
+        private final Function<Tile, T> mapper;
+        private final BinaryOperator<T> merger;
+
+        private TileReduction(List<Tile> tiles, int from, int to, ProgressListener listener,
+                              Function<Tile, T> mapper, BinaryOperator<T> merger) {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+            this.listener = listener;
+            this.mapper = mapper;
+            this.merger = merger;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from == 1) {
+                CancellationToken.of(listener).throwIfCancelled();
+                T value = mapper.apply(tiles.get(from));
+                reportProgress(listener);
+                return value;
+            }
+            int middle = (from + to) >>> 1;
+            TileReduction<T> left = new TileReduction<>(tiles, from, middle, listener, mapper, merger);
+            TileReduction<T> right = new TileReduction<>(tiles, middle, to, listener, mapper, merger);
+            right.fork();
+            T leftValue = left.compute();
+            return merger.apply(leftValue, right.join());
+        }
+    }
+}
@@ -1,19 +1,69 @@
 package org.knu.bll.algorithms;
 
+import org.knu.bll.CancellationToken;
 import org.knu.bll.ProgressListener;
-import org.knu.bll.algorithms.edges.EdgeDetectionOperator;
+import org.knu.bll.StreamingProcessor;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
 import org.knu.bll.algorithms.blur.BlurFilter;
-import org.knu.bll.helpers.ImageHelper;
+import org.knu.bll.algorithms.edges.EdgeDetectionOperator;
+import org.knu.bll.algorithms.edges.GradientDirection;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
 /**
  * The CannyFilter class implements the Canny edge detection algorithm to detect edges in an image.
  * This class applies a series of steps including blur, gradient calculation, non-maximum suppression,
  * double thresholding and edge tracking by hysteresis.
+ * <p>
+ * The stages work on single-channel planes instead of full images. The image is reduced to one gray byte plane
+ * and blurred into another. Gradients are then computed per row band into band-local float magnitude and
+ * quantized direction rows, which are suppressed and thresholded right away into a byte plane of edge classes.
+ * The last stage traces every chain of weak edges that reaches a strong edge with an {@link EdgeTracker}, which
+ * labels the edge classes in the int pixels of the output before it writes the edges there. Apart from the output,
+ * the filter keeps about three bytes per pixel, and the bands of every stage run in parallel on a
+ * {@link TileScheduler}.
+ * <p>
+ * Images that are too large for the heap are filtered tile by tile with a {@link StreamingProcessor}. Blur,
+ * gradients and suppression are local, but hysteresis follows edge chains of any length, so a streamed tile only
+ * sees the chains within {@link #STREAMING_TRACKING_HALO} pixels around it: a weak chain that reaches a strong edge
+ * only further away is dropped at the tile.
  */
 public class CannyFilter {
+    /**
+     * The number of pixels beyond the reach of the kernels that a streamed tile reads, so that edge chains leaving
+     * the tile can still be traced to a strong edge.
+     */
+    public static final int STREAMING_TRACKING_HALO = 64;
+
+    private static final byte NO_EDGE = EdgeTracker.NO_EDGE;
+    private static final byte WEAK_EDGE = EdgeTracker.WEAK_EDGE;
+    private static final byte STRONG_EDGE = EdgeTracker.STRONG_EDGE;
+    private final TileScheduler scheduler;
+    private final EdgeTracker edgeTracker;
+
+    /**
+     * Constructs a CannyFilter that runs on the shared scheduler.
+     */
+    public CannyFilter() {
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs a CannyFilter.
+     *
+     * @param scheduler The TileScheduler that runs the row bands.
+     */
+    public CannyFilter(TileScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.edgeTracker = new EdgeTracker(scheduler);
+    }
 
     /**
      * Applies the Canny edge detection algorithm to the given image.
@@ -35,182 +85,188 @@ public class CannyFilter {
      */
     public BufferedImage applyFilter(BufferedImage image, int lowThreshold, int highThreshold, BlurFilter blurFilter, int kernelSize,
                                      EdgeDetectionOperator edgeDetectionOperator, ProgressListener listener) throws InterruptedException {
-        validateLowThreshold(lowThreshold);
-        listener.onProgressStart(6);
-        ProgressListener mockListener = new ProgressListener() {
-            @Override
-            public void onProgressStart(int maximum) {
-
-            }
-
-            @Override
-            public void onProgressUpdate() {
-
-            }
-        };
-
-        BufferedImage bufferedImage = ImageHelper.copyImage(image, BufferedImage.TYPE_INT_RGB);
-
-        ImageHelper.convertToGrayscale(bufferedImage);
-        listener.onProgressUpdate();
-
-        if(blurFilter != null)
-        bufferedImage = blurFilter.applyFilter(bufferedImage, kernelSize, mockListener);
-        listener.onProgressUpdate();
+        if (image == null) throw new NullPointerException("Image cannot be null");
+        return applyFilter(PixelBuffer.wrap(image), lowThreshold, highThreshold, blurFilter, kernelSize,
+                edgeDetectionOperator, listener).toImage();
+    }
 
-        bufferedImage = edgeDetectionOperator.applyOperator(bufferedImage, mockListener);
-        listener.onProgressUpdate();
+    /**
+     * Applies the Canny edge detection algorithm to the given pixel buffer.
+     *
+     * @param image The original pixels to which the Canny edge detection algorithm will be applied.
+     *              This buffer should not be null and is not modified.
+     * @param lowThreshold The low threshold value for edge detection.
+     * @param highThreshold The high threshold value for edge detection.
+     * @param blurFilter The blur filter to apply Gaussian blur to the image. This can be null to skip the blur.
+     * @param kernelSize The size of the blur kernel.
+     * @param edgeDetectionOperator The edge detection operator to calculate gradients.
+     * @param listener A ProgressListener to receive progress updates during the Canny edge detection
+     *                process. This listener should not be null.
+     * @return A new opaque PixelBuffer that represents the edge-detected version of the original pixels.
+     * @throws InterruptedException if the thread is interrupted during the process.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public PixelBuffer applyFilter(PixelBuffer image, int lowThreshold, int highThreshold, BlurFilter blurFilter, int kernelSize,
+                                   EdgeDetectionOperator edgeDetectionOperator, ProgressListener listener) throws InterruptedException {
+        validateLowThreshold(lowThreshold);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        List<Tile> bands = scheduler.splitBands(width, height, 1);
+        CancellationToken token = CancellationToken.of(listener);
+        listener.onProgressStart(3 * bands.size() + 2);
 
-        nonmaxSuppression(bufferedImage, edgeDetectionOperator.getGradientDirections());
+        GrayBuffer gray = image.toGray();
         listener.onProgressUpdate();
+        checkInterrupted();
 
-        doubleThresholding(bufferedImage, highThreshold, lowThreshold);
+        GrayBuffer smoothed = blurFilter == null ? gray : blurFilter.applyFilter(gray, kernelSize, ProgressListener.withoutProgress(token));
         listener.onProgressUpdate();
+        checkInterrupted();
 
-        hysteresis(bufferedImage, 255, lowThreshold);
-        listener.onProgressUpdate();
+        byte[] edges = new byte[width * height];
+        scheduler.forEach(bands, listener, band -> classifyBand(smoothed, edgeDetectionOperator,
+                lowThreshold, highThreshold, band, edges, token));
+        checkInterrupted();
 
-        return bufferedImage;
+        PixelBuffer output = PixelBuffer.create(width, height, false);
+        edgeTracker.trace(edges, output, bands, listener);
+        return output;
     }
 
     /**
-     * Applies non-maximum suppression to the given image using the gradient directions.
+     * Applies the Canny edge detection algorithm to an image that is too large for the heap, streaming it tile by
+     * tile into a tiled TIFF file. Every tile is read with a halo that covers the blur kernel, the gradient kernel,
+     * non-maximum suppression and {@link #STREAMING_TRACKING_HALO} pixels for edge tracking.
      *
-     * @param suppressedImage The image to apply non-maximum suppression to.
-     * @param directions The gradient directions for each pixel.
+     * @param source The original image. This source should not be null.
+     * @param lowThreshold The low threshold value for edge detection.
+     * @param highThreshold The high threshold value for edge detection.
+     * @param blurFilter The blur filter to apply Gaussian blur to the image. This can be null to skip the blur.
+     * @param kernelSize The size of the blur kernel.
+     * @param edgeDetectionOperator The edge detection operator to calculate gradients.
+     * @param output The file to write. An existing file is replaced.
+     * @param listener A ProgressListener that receives one update per tile. This listener should not be null.
+     * @throws InterruptedException if the thread is interrupted during the process.
+     * @throws NullPointerException if the source or the listener is null.
+     * @throws IllegalArgumentException if the low threshold is not between 0 and 255 or the output is the file of the source.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     * @throws RuntimeException if the source cannot be read or the output cannot be written.
      */
-    private void nonmaxSuppression(BufferedImage suppressedImage, double[][] directions) {
-        int width = suppressedImage.getWidth();
-        int height = suppressedImage.getHeight();
-
-        for (int x = 1; x < width - 1; x++) {
-            for (int y = 1; y < height - 1; y++) {
-                int currentMagnitude = ImageHelper.getGradient(suppressedImage.getRGB(x, y));
-                double angle = Math.toDegrees(directions[x][y]) % 180;
-                angle = (angle + 180) % 180; // Normalize angle to [0, 180]
-
-                int neighbor1 = 0;
-                int neighbor2 = 0;
-
-                // Determine neighbor directions
-                if ((angle >= 0 && angle < 22.5) || (angle >= 157.5 && angle <= 180)) {
-                    neighbor1 = ImageHelper.getGradient(suppressedImage.getRGB(x - 1, y));
-                    neighbor2 = ImageHelper.getGradient(suppressedImage.getRGB(x + 1, y));
-                } else if (angle >= 22.5 && angle < 67.5) {
-                    neighbor1 = ImageHelper.getGradient(suppressedImage.getRGB(x - 1, y - 1));
-                    neighbor2 = ImageHelper.getGradient(suppressedImage.getRGB(x + 1, y + 1));
-                } else if (angle >= 67.5 && angle < 112.5) {
-                    neighbor1 = ImageHelper.getGradient(suppressedImage.getRGB(x, y - 1));
-                    neighbor2 = ImageHelper.getGradient(suppressedImage.getRGB(x, y + 1));
-                } else if (angle >= 112.5 && angle < 157.5) {
-                    neighbor1 = ImageHelper.getGradient(suppressedImage.getRGB(x - 1, y + 1));
-                    neighbor2 = ImageHelper.getGradient(suppressedImage.getRGB(x + 1, y - 1));
-                }
-
-                // Suppress non-maximum points
-                if (currentMagnitude < neighbor1 || currentMagnitude < neighbor2) {
-                    suppressedImage.setRGB(x, y, Color.BLACK.getRGB());
+    public void applyFilter(TiledImageSource source, int lowThreshold, int highThreshold, BlurFilter blurFilter, int kernelSize,
+                            EdgeDetectionOperator edgeDetectionOperator, File output, ProgressListener listener)
+            throws InterruptedException {
+        validateLowThreshold(lowThreshold);
+        int halo = (blurFilter == null ? 0 : kernelSize / 2) + 2 + STREAMING_TRACKING_HALO;
+        try {
+            new StreamingProcessor(scheduler).apply(source, halo, output, listener, (region, inner) -> {
+                try {
+                    return applyFilter(region, lowThreshold, highThreshold, blurFilter, kernelSize,
+                            edgeDetectionOperator, inner);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Canny filter was interrupted");
                 }
-            }
+            });
+        } catch (CancellationException e) {
+            checkInterrupted();
+            throw e;
         }
     }
 
     /**
-     * Applies double thresholding to the given image.
+     * Computes the gradients of one row band and its neighbouring rows, applies non-maximum suppression
+     * and double thresholding, and stores the edge class of every pixel of the band.
      *
-     * @param image The image to apply double thresholding to.
-     * @param highThreshold The high threshold value.
+     * @param image The blurred intensities.
+     * @param operator The edge detection operator to calculate gradients.
      * @param lowThreshold The low threshold value.
+     * @param highThreshold The high threshold value.
+     * @param band The row band to classify.
+     * @param edges The edge classes of the whole image.
+     * @param token The token polled before every row.
      */
-    private void doubleThresholding(BufferedImage image, double highThreshold, double lowThreshold) {
+    private void classifyBand(GrayBuffer image, EdgeDetectionOperator operator, int lowThreshold, int highThreshold,
+                              Tile band, byte[] edges, CancellationToken token) {
         int width = image.getWidth();
         int height = image.getHeight();
+        int fromRow = Math.max(0, band.getY() - 1);
+        int toRow = Math.min(height, band.getEndY() + 1);
+        float[] magnitudes = new float[(toRow - fromRow) * width];
+        byte[] directions = new byte[magnitudes.length];
+        operator.computeGradients(image, fromRow, toRow, magnitudes, directions);
 
-        // Iterate over each pixel in the image
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int pixel = ImageHelper.getGradient(image.getRGB(x, y));
-
-                if (pixel >= highThreshold) {
-                    // Strong edge
-                    image.setRGB(x, y, Color.WHITE.getRGB());
-                } else if (pixel >= lowThreshold) {
-                    // Weak edge
-                    image.setRGB(x, y, Color.RED.getRGB());
-                } else {
-                    // Suppressed pixel
-                    image.setRGB(x, y, Color.BLACK.getRGB());
+        for (int y = band.getY(); y < band.getEndY(); y++) {
+            token.throwIfCancelled();
+            int local = (y - fromRow) * width;
+            int global = y * width;
+            for (int x = 0; x < width; x++) {
+                if (x == 0 || y == 0 || x == width - 1 || y == height - 1) {
+                    edges[global + x] = NO_EDGE;
+                    continue;
                 }
+                float magnitude = nonmaxSuppression(magnitudes, directions[local + x], local + x, width);
+                edges[global + x] = doubleThresholding(magnitude, highThreshold, lowThreshold);
             }
         }
     }
 
     /**
-     * Applies hysteresis thresholding to the given image.
+     * Applies non-maximum suppression to one pixel: the magnitude is kept only if it is not smaller than
+     * the magnitudes of its two neighbours along the gradient direction.
      *
-     * @param output The image to apply hysteresis thresholding to.
-     * @param highThreshold The high threshold value.
-     * @param lowThreshold The low threshold value.
+     * @param magnitudes The gradient magnitudes of the band and its neighbouring rows.
+     * @param direction The quantized gradient direction of the pixel.
+     * @param index The index of the pixel in the magnitudes.
+     * @param width The width of the image.
+     * @return The magnitude of the pixel, or 0 if it is suppressed.
      */
-    private void hysteresis(BufferedImage output, int highThreshold, int lowThreshold) {
-        int width = output.getWidth();
-        int height = output.getHeight();
-
-        // Iterate over each pixel in the image
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                // Get the brightness value of the current pixel
-                int brightness = ImageHelper.getGradient(output.getRGB(x, y));
+    private float nonmaxSuppression(float[] magnitudes, byte direction, int index, int width) {
+        int offset;
+        switch (direction) {
+            case GradientDirection.DEGREES_45:
+                offset = width + 1;
+                break;
+            case GradientDirection.DEGREES_90:
+                offset = width;
+                break;
+            case GradientDirection.DEGREES_135:
+                offset = width - 1;
+                break;
+            default:
+                offset = 1;
+                break;
+        }
 
-                // If the pixel is weak and has no strong neighbors, make it black
-                if (brightness < lowThreshold) {
-                    output.setRGB(x, y, Color.BLACK.getRGB());
-                }
-                // If the pixel is strong, keep it white
-                else if (brightness >= highThreshold) {
-                    output.setRGB(x, y, Color.WHITE.getRGB());
-                }
-                // If the pixel is weak and has a strong neighbor, make it white
-                else {
-                    if (isConnectedToStrongPixel(output, x, y, width, height, highThreshold)) {
-                        output.setRGB(x, y, Color.WHITE.getRGB());
-                    } else {
-                        output.setRGB(x, y, Color.BLACK.getRGB());
-                    }
-                }
-            }
+        float magnitude = magnitudes[index];
+        if (magnitude < magnitudes[index - offset] || magnitude < magnitudes[index + offset]) {
+            return 0;
         }
+        return magnitude;
     }
 
     /**
-     * Checks if a weak pixel is connected to a strong pixel.
+     * Applies double thresholding to one magnitude.
      *
-     * @param image The image to check.
-     * @param x The x-coordinate of the pixel.
-     * @param y The y-coordinate of the pixel.
-     * @param width The width of the image.
-     * @param height The height of the image.
+     * @param magnitude The gradient magnitude after non-maximum suppression.
      * @param highThreshold The high threshold value.
-     * @return True if the weak pixel is connected to a strong pixel, false otherwise.
+     * @param lowThreshold The low threshold value.
+     * @return The edge class of the pixel.
      */
-    private boolean isConnectedToStrongPixel(BufferedImage image, int x, int y, int width, int height, int highThreshold) {
-        // Check 8 neighbors for the pixel (x, y)
-        for (int dy = -1; dy <= 1; dy++) {
-            for (int dx = -1; dx <= 1; dx++) {
-                int nx = x + dx;
-                int ny = y + dy;
-
-                // Skip out-of-bounds neighbors
-                if (nx >= 0 && ny >= 0 && nx < width && ny < height) {
-                    int neighborBrightness = ImageHelper.getGradient(image.getRGB(nx, ny));
-                    // If the neighbor is strong, return true
-                    if (neighborBrightness >= highThreshold) {
-                        return true;
-                    }
-                }
-            }
+    private byte doubleThresholding(float magnitude, int highThreshold, int lowThreshold) {
+        if (magnitude >= highThreshold) return STRONG_EDGE;
+        if (magnitude >= lowThreshold && magnitude > 0) return WEAK_EDGE;
+        return NO_EDGE;
+    }
+
+    /**
+     * Stops the filter between stages when the thread has been interrupted.
+     *
+     * @throws InterruptedException if the thread is interrupted.
+     */
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException("Canny filter was interrupted");
         }
-        return false;
     }
 
     /**
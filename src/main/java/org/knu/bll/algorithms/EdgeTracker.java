@@ -0,0 +1,263 @@
+package org.knu.bll.algorithms;
+
+import org.knu.bll.CancellationToken;
+import org.knu.bll.ProgressListener;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The EdgeTracker class performs the edge tracking by hysteresis of the Canny filter. A weak edge pixel is kept
+ * if it is connected to a strong edge pixel through a chain of weak or strong pixels in 8-connectivity, however
+ * long the chain is and in whatever direction it runs.
+ * <p>
+ * Every row band is labeled independently: a stack-based flood fill assigns a band-local label to every connected
+ * component of edge pixels and records whether the component contains a strong pixel. Components that touch
+ * across the seam between two bands are then merged with a union-find over the labels, which only visits the two
+ * seam rows. Finally every band writes its pixels from the merged components. The result is deterministic and the
+ * work is linear in the number of pixels.
+ * <p>
+ * The labels are stored in the pixels of the output, which every band overwrites with its edges in the last pass,
+ * so tracking needs no memory per pixel beyond the edge classes and the output.
+ */
+final class EdgeTracker {
+    static final byte NO_EDGE = 0;
+    static final byte WEAK_EDGE = 1;
+    static final byte STRONG_EDGE = 2;
+
+    private static final int EDGE_RGB = 0xffffffff;
+    private static final int BACKGROUND_RGB = 0xff000000;
+
+    private final TileScheduler scheduler;
+
+    /**
+     * Constructs an EdgeTracker.
+     *
+     * @param scheduler The TileScheduler that runs the row bands.
+     */
+    EdgeTracker(TileScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Traces the edges of the whole image and writes them to the output pixels.
+     * The listener receives two updates per band.
+     *
+     * @param edges The edge class of every pixel: NO_EDGE, WEAK_EDGE or STRONG_EDGE.
+     * @param output The pixels that receive the edges in white on black. They hold the labels until the last pass.
+     * @param bands The full-width row bands the image is split into, in top-to-bottom order.
+     * @param listener A ProgressListener to receive progress updates. This can be null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    void trace(byte[] edges, PixelBuffer output, List<Tile> bands, ProgressListener listener) {
+        int width = output.getWidth();
+        CancellationToken token = CancellationToken.of(listener);
+        int[] labels = output.getPixels();
+        BandComponents[] components = new BandComponents[bands.size()];
+        scheduler.forEach(bands, listener, band -> components[band.getIndex()] = labelBand(edges, labels, width, band,
+                token));
+
+        int[] offsets = new int[bands.size()];
+        int total = 0;
+        for (int i = 0; i < components.length; i++) {
+            offsets[i] = total;
+            total += components[i].count;
+        }
+
+        int[] parent = new int[total];
+        for (int i = 0; i < total; i++) {
+            parent[i] = i;
+        }
+        for (int i = 0; i + 1 < bands.size(); i++) {
+            mergeSeam(labels, width, bands.get(i).getEndY() - 1, offsets[i], offsets[i + 1], parent);
+        }
+        boolean[] connected = resolveStrongComponents(components, offsets, parent);
+
+        scheduler.forEach(bands, listener, band -> {
+            int offset = offsets[band.getIndex()] - 1;
+            for (int i = band.getY() * width; i < band.getEndY() * width; i++) {
+                labels[i] = labels[i] != 0 && connected[offset + labels[i]] ? EDGE_RGB : BACKGROUND_RGB;
+            }
+        });
+    }
+
+    /**
+     * Labels the connected components of edge pixels within one band with a stack-based flood fill.
+     * Labels start at 1 in every band; 0 marks pixels that are not edges.
+     *
+     * @param edges The edge classes of the whole image.
+     * @param labels The label plane of the whole image. Only the rows of the band are cleared and written.
+     * @param width The width of the image.
+     * @param band The row band to label.
+     * @param token The token polled at the start of every row.
+     * @return The number of components of the band and which of them contain a strong pixel.
+     */
+    private BandComponents labelBand(byte[] edges, int[] labels, int width, Tile band, CancellationToken token) {
+        BandComponents components = new BandComponents();
+        int[] stack = new int[64];
+        int from = band.getY() * width;
+        int to = band.getEndY() * width;
+        Arrays.fill(labels, from, to, 0);
+
+        for (int start = from; start < to; start++) {
+            if ((start - from) % width == 0) {
+                token.throwIfCancelled();
+            }
+            if (edges[start] == NO_EDGE || labels[start] != 0) continue;
+
+            int label = components.add();
+            boolean strong = false;
+            int size = 0;
+            labels[start] = label;
+            stack[size++] = start;
+
+            while (size > 0) {
+                int index = stack[--size];
+                strong |= edges[index] == STRONG_EDGE;
+                int x = index % width;
+                for (int dy = -width; dy <= width; dy += width) {
+                    int row = index + dy - x;
+                    if (row < from || row >= to) continue;
+                    for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                        int neighbor = row + nx;
+                        if (edges[neighbor] != NO_EDGE && labels[neighbor] == 0) {
+                            labels[neighbor] = label;
+                            if (size == stack.length) {
+                                stack = Arrays.copyOf(stack, size * 2);
+                            }
+                            stack[size++] = neighbor;
+                        }
+                    }
+                }
+            }
+            components.setStrong(label, strong);
+        }
+        return components;
+    }
+
+    /**
+     * Merges the components that touch across the seam between a row and the row below it.
+     *
+     * @param labels The label plane of the whole image.
+     * @param width The width of the image.
+     * @param row The last row of the upper band.
+     * @param upperOffset The first global component index of the upper band.
+     * @param lowerOffset The first global component index of the lower band.
+     * @param parent The union-find forest over the global component indices.
+     */
+    private void mergeSeam(int[] labels, int width, int row, int upperOffset, int lowerOffset, int[] parent) {
+        int upperRow = row * width;
+        int lowerRow = upperRow + width;
+        for (int x = 0; x < width; x++) {
+            int upper = labels[upperRow + x];
+            if (upper == 0) continue;
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                int lower = labels[lowerRow + nx];
+                if (lower != 0) {
+                    union(parent, upperOffset + upper - 1, lowerOffset + lower - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines which components are connected to a strong pixel after the seams have been merged.
+     *
+     * @param components The components of every band.
+     * @param offsets The first global component index of every band.
+     * @param parent The union-find forest over the global component indices.
+     * @return For every global component index, whether its merged component contains a strong pixel.
+     */
+    private boolean[] resolveStrongComponents(BandComponents[] components, int[] offsets, int[] parent) {
+        boolean[] strongRoots = new boolean[parent.length];
+        for (int band = 0; band < components.length; band++) {
+            for (int label = 1; label <= components[band].count; label++) {
+                if (components[band].isStrong(label)) {
+                    strongRoots[find(parent, offsets[band] + label - 1)] = true;
+                }
+            }
+        }
+
+        boolean[] connected = new boolean[parent.length];
+        for (int i = 0; i < parent.length; i++) {
+            connected[i] = strongRoots[find(parent, i)];
+        }
+        return connected;
+    }
+
+    /**
+     * Finds the root of a component and halves the path to it.
+     *
+     * @param parent The union-find forest.
+     * @param index The component index.
+     * @return The root index.
+     */
+    private static int find(int[] parent, int index) {
+        while (parent[index] != index) {
+            parent[index] = parent[parent[index]];
+            index = parent[index];
+        }
+        return index;
+    }
+
+    /**
+     * Merges the sets of two components. The smaller root becomes the root of the merged set.
+     *
+     * @param parent The union-find forest.
+     * @param first The first component index.
+     * @param second The second component index.
+     */
+    private static void union(int[] parent, int first, int second) {
+        int firstRoot = find(parent, first);
+        int secondRoot = find(parent, second);
+        if (firstRoot < secondRoot) {
+            parent[secondRoot] = firstRoot;
+        } else if (secondRoot < firstRoot) {
+            parent[firstRoot] = secondRoot;
+        }
+    }
+
+    /**
+     * The BandComponents class records the components found in one band and which of them are strong.
+     */
+    private static final class BandComponents {
+        private int count;
+        private boolean[] strong = new boolean[16];
+
+        /**
+         * Adds a component.
+         *
+         * @return The label of the new component, starting at 1.
+         */
+        int add() {
+            count++;
+            if (count >= strong.length) {
+                strong = Arrays.copyOf(strong, strong.length * 2);
+            }
+            return count;
+        }
+
+        /**
+         * Records whether a component contains a strong pixel.
+         *
+         * @param label The label of the component.
+         * @param value True if the component contains a strong pixel.
+         */
+        void setStrong(int label, boolean value) {
+            strong[label] = value;
+        }
+
+        /**
+         * Returns whether a component contains a strong pixel.
+         *
+         * @param label The label of the component.
+         * @return True if the component contains a strong pixel.
+         */
+        boolean isStrong(int label) {
+            return strong[label];
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package org.knu.bll.algorithms;
 
+import org.knu.bll.CancellationToken;
+import org.knu.bll.ProgressListener;
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
 import org.knu.bll.helpers.ImageHelper;
 
 import java.awt.image.BufferedImage;
-import java.util.Arrays;
 
 /**
  * The ImageStatisticsCalculator class calculates various statistical measures for an image, including mean intensity,
@@ -22,98 +25,114 @@ public class ImageStatisticsCalculator {
         if (image == null) {
             throw new NullPointerException("Image cannot be null");
         }
+        return calculateStatistics(PixelBuffer.wrap(image));
+    }
+
+    /**
+     * Calculates the statistics for the given pixel buffer. Every statistic is derived from the intensity
+     * histogram, so the intensities of the pixels are never stored.
+     *
+     * @param image The pixels to calculate statistics for. This buffer should not be null.
+     * @return An ImageStatistics object containing the calculated statistics.
+     * @throws NullPointerException if the image is null.
+     */
+    public ImageStatistics calculateStatistics(PixelBuffer image) {
+        if (image == null) {
+            throw new NullPointerException("Image cannot be null");
+        }
 
         int width = image.getWidth();
         int height = image.getHeight();
-        int totalPixels = width * height;
+        int[] pixels = image.getPixels();
+        long[] histogram = new long[256];
+        for (int i = 0; i < width * height; i++) {
+            histogram[ImageHelper.getGradient(pixels[i])]++;
+        }
 
         ImageStatistics imageStatistics = new ImageStatistics();
-
         imageStatistics.setImageWidth(width);
         imageStatistics.setImageHeight(height);
-
-        int[] intensity = new int[totalPixels];
-        image.getRGB(0, 0, width, height, intensity, 0, width);
-        intensity = Arrays.stream(intensity).map(ImageHelper::getGradient).toArray();
-
-        double mean = calculateMean(intensity);
-        imageStatistics.setMeanIntensity(mean);
-
-        double variance = calculateVariance(intensity, mean);
-        imageStatistics.setVariance(variance);
-
-        double stdDev = Math.sqrt(variance);
-        imageStatistics.setStdDeviation(stdDev);
-
-        double entropy = calculateEntropy(intensity);
-        imageStatistics.setEntropy(entropy);
-
-        double energy = calculateEnergy(intensity);
-        imageStatistics.setEnergy(energy);
-
-        int contrast = calculateContrast(intensity);
-        imageStatistics.setContrast(contrast);
-
+        fillFromHistogram(imageStatistics, histogram);
         return imageStatistics;
     }
 
     /**
-     * Calculates the mean intensity of the given values.
+     * Calculates the statistics of an image that is read tile by tile, so that it never has to be in memory as a
+     * whole. Every statistic is derived from the intensity histogram, which is accumulated over the tiles.
      *
-     * @param values The array of intensity values.
-     * @return The mean intensity.
-     */
-    private static double calculateMean(int[] values) {
-        return (double) Arrays.stream(values).sum() / values.length;
-    }
-
-    /**
-     * Calculates the variance of the given values.
-     *
-     * @param values The array of intensity values.
-     * @param mean The mean intensity.
-     * @return The variance.
+     * @param source The tiled image to calculate statistics for. This source should not be null.
+     * @param listener A ProgressListener that advances once per tile row. This listener should not be null.
+     * @return An ImageStatistics object containing the calculated statistics.
+     * @throws NullPointerException if the source is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
      */
-    private static double calculateVariance(int[] values, double mean) {
-        return Arrays.stream(values).mapToDouble(e -> Math.pow(e - mean, 2)).sum() / values.length;
-    }
+    public ImageStatistics calculateStatistics(TiledImageSource source, ProgressListener listener) {
+        if (source == null) {
+            throw new NullPointerException("Image cannot be null");
+        }
+        if (listener == null) {
+            throw new NullPointerException("Listener cannot be null");
+        }
 
-    /**
-     * Calculates the entropy of the given values.
-     *
-     * @param values The array of intensity values.
-     * @return The entropy.
-     */
-    private static double calculateEntropy(int[] values) {
-        int[] histogram = new int[256];
-        for (int v : values)
-            histogram[v]++;
-
-        return Arrays
-                .stream(histogram)
-                .filter(e -> e > 0)
-                .mapToDouble(e -> ((double) e / values.length) * (Math.log((double) e / values.length) / Math.log(2)))
-                .sum() * -1;
-    }
+        CancellationToken token = CancellationToken.of(listener);
+        long[] histogram = new long[256];
+        listener.onProgressStart(source.getRows());
+        for (int row = 0; row < source.getRows(); row++) {
+            for (int column = 0; column < source.getColumns(); column++) {
+                token.throwIfCancelled();
+                for (int rgb : source.getTile(column, row).getPixels()) {
+                    histogram[ImageHelper.getGradient(rgb)]++;
+                }
+            }
+            listener.onProgressUpdate();
+        }
 
-    /**
-     * Calculates the energy of the given values.
-     *
-     * @param values The array of intensity values.
-     * @return The energy.
-     */
-    private static double calculateEnergy(int[] values) {
-        return Arrays.stream(values).mapToDouble(e -> Math.pow(e / 255.0, 2)).sum() / values.length;
+        ImageStatistics imageStatistics = new ImageStatistics();
+        imageStatistics.setImageWidth(source.getWidth());
+        imageStatistics.setImageHeight(source.getHeight());
+        fillFromHistogram(imageStatistics, histogram);
+        return imageStatistics;
     }
 
     /**
-     * Calculates the contrast of the given values.
+     * Sets the mean intensity, variance, standard deviation, entropy, energy and contrast from an intensity
+     * histogram. The results equal those computed from the individual pixels.
      *
-     * @param values The array of intensity values.
-     * @return The contrast.
+     * @param statistics The statistics to fill.
+     * @param histogram The number of pixels of every intensity from 0 to 255.
      */
-    private static int calculateContrast(int[] values) {
-        return Arrays.stream(values).max().orElse(0) - Arrays.stream(values).min().orElse(250);
+    private static void fillFromHistogram(ImageStatistics statistics, long[] histogram) {
+        double count = 0;
+        double sum = 0;
+        double sumOfSquares = 0;
+        int min = -1;
+        int max = -1;
+        for (int v = 0; v < histogram.length; v++) {
+            if (histogram[v] == 0) continue;
+            count += histogram[v];
+            sum += (double) v * histogram[v];
+            sumOfSquares += (double) v * v * histogram[v];
+            if (min < 0) min = v;
+            max = v;
+        }
+
+        double mean = sum / count;
+        double variance = Math.max(0, sumOfSquares / count - mean * mean);
+        double entropy = 0;
+        for (long frequency : histogram) {
+            if (frequency > 0) {
+                double p = frequency / count;
+                entropy -= p * (Math.log(p) / Math.log(2));
+            }
+        }
+
+        statistics.setMeanIntensity(mean);
+        statistics.setVariance(variance);
+        statistics.setStdDeviation(Math.sqrt(variance));
+        statistics.setEntropy(entropy);
+        statistics.setEnergy(sumOfSquares / (255.0 * 255.0) / count);
+        statistics.setContrast(max - min);
     }
 
     /**
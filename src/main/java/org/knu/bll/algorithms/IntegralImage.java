@@ -0,0 +1,201 @@
+package org.knu.bll.algorithms;
+
+import org.knu.bll.buffers.GrayBuffer;
+
+/**
+ * The IntegralImage class is a summed-area table over a single channel of intensities.
+ * After one pass over the image the sum, mean and variance of any axis-aligned rectangle
+ * can be read in constant time, whatever the size of the rectangle.
+ * <p>
+ * The table stores (width + 1) * (height + 1) longs, plus the same amount again when squared sums are kept.
+ * Rectangles are clipped to the image, so windows near the edges only cover the pixels inside the image.
+ */
+public class IntegralImage {
+    private final int width;
+    private final int height;
+    private final long[] sums;
+    private final long[] squaredSums;
+
+    /**
+     * Constructs an IntegralImage over the given row-major intensities.
+     *
+     * @param values  The intensities in row-major order, at least width * height long.
+     * @param width   The width of the image.
+     * @param height  The height of the image.
+     * @param squares True if squared sums should be kept, which is required for variances.
+     * @throws IllegalArgumentException if the dimensions do not match the array.
+     * @throws NullPointerException if the values are null.
+     */
+    public IntegralImage(int[] values, int width, int height, boolean squares) {
+        if (values == null) throw new NullPointerException("Values cannot be null");
+        if (width <= 0 || height <= 0 || values.length < width * height) {
+            throw new IllegalArgumentException("Values do not match the size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.sums = new long[(width + 1) * (height + 1)];
+        this.squaredSums = squares ? new long[(width + 1) * (height + 1)] : null;
+
+        int stride = width + 1;
+        for (int y = 0; y < height; y++) {
+            long rowSum = 0;
+            long rowSquaredSum = 0;
+            int row = (y + 1) * stride;
+            for (int x = 0; x < width; x++) {
+                long value = values[y * width + x];
+                rowSum += value;
+                sums[row + x + 1] = sums[row - stride + x + 1] + rowSum;
+                if (squaredSums != null) {
+                    rowSquaredSum += value * value;
+                    squaredSums[row + x + 1] = squaredSums[row - stride + x + 1] + rowSquaredSum;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates an IntegralImage over the samples of a grayscale buffer.
+     *
+     * @param image   The intensities to sum. This buffer should not be null.
+     * @param squares True if squared sums should be kept, which is required for variances.
+     * @return A new IntegralImage.
+     * @throws NullPointerException if the image is null.
+     */
+    public static IntegralImage of(GrayBuffer image, boolean squares) {
+        if (image == null) throw new NullPointerException("Image cannot be null");
+
+        byte[] samples = image.getSamples();
+        int[] values = new int[image.getWidth() * image.getHeight()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = samples[i] & 0xff;
+        }
+        return new IntegralImage(values, image.getWidth(), image.getHeight(), squares);
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the sum of the values in the rectangle from (x0, y0) inclusive to (x1, y1) exclusive.
+     * The rectangle is clipped to the image.
+     *
+     * @param x0 The left edge of the rectangle.
+     * @param y0 The top edge of the rectangle.
+     * @param x1 The right edge of the rectangle, exclusive.
+     * @param y1 The bottom edge of the rectangle, exclusive.
+     * @return The sum of the values, or 0 for an empty rectangle.
+     */
+    public long sum(int x0, int y0, int x1, int y1) {
+        return rectangle(sums, x0, y0, x1, y1);
+    }
+
+    /**
+     * Returns the sum of the squared values in the rectangle from (x0, y0) inclusive to (x1, y1) exclusive.
+     * The rectangle is clipped to the image.
+     *
+     * @param x0 The left edge of the rectangle.
+     * @param y0 The top edge of the rectangle.
+     * @param x1 The right edge of the rectangle, exclusive.
+     * @param y1 The bottom edge of the rectangle, exclusive.
+     * @return The sum of the squared values, or 0 for an empty rectangle.
+     * @throws IllegalStateException if the table was built without squared sums.
+     */
+    public long sumOfSquares(int x0, int y0, int x1, int y1) {
+        if (squaredSums == null) {
+            throw new IllegalStateException("Integral image was built without squared sums");
+        }
+        return rectangle(squaredSums, x0, y0, x1, y1);
+    }
+
+    /**
+     * Returns the number of pixels of the rectangle that lie inside the image.
+     *
+     * @param x0 The left edge of the rectangle.
+     * @param y0 The top edge of the rectangle.
+     * @param x1 The right edge of the rectangle, exclusive.
+     * @param y1 The bottom edge of the rectangle, exclusive.
+     * @return The number of pixels inside the image.
+     */
+    public int count(int x0, int y0, int x1, int y1) {
+        int w = clamp(x1, width) - clamp(x0, width);
+        int h = clamp(y1, height) - clamp(y0, height);
+        return w > 0 && h > 0 ? w * h : 0;
+    }
+
+    /**
+     * Returns the mean of the square window of the given radius centred at (x, y).
+     *
+     * @param x      The x-coordinate of the window centre.
+     * @param y      The y-coordinate of the window centre.
+     * @param radius The radius of the window.
+     * @return The mean of the pixels of the window that lie inside the image.
+     */
+    public double windowMean(int x, int y, int radius) {
+        int count = count(x - radius, y - radius, x + radius + 1, y + radius + 1);
+        return count == 0 ? 0 : (double) sum(x - radius, y - radius, x + radius + 1, y + radius + 1) / count;
+    }
+
+    /**
+     * Returns the variance of the square window of the given radius centred at (x, y).
+     *
+     * @param x      The x-coordinate of the window centre.
+     * @param y      The y-coordinate of the window centre.
+     * @param radius The radius of the window.
+     * @return The variance of the pixels of the window that lie inside the image.
+     * @throws IllegalStateException if the table was built without squared sums.
+     */
+    public double windowVariance(int x, int y, int radius) {
+        int count = count(x - radius, y - radius, x + radius + 1, y + radius + 1);
+        if (count == 0) return 0;
+        double mean = (double) sum(x - radius, y - radius, x + radius + 1, y + radius + 1) / count;
+        double meanOfSquares = (double) sumOfSquares(x - radius, y - radius, x + radius + 1, y + radius + 1) / count;
+        return Math.max(0, meanOfSquares - mean * mean);
+    }
+
+    /**
+     * Reads a rectangle sum from the given table.
+     *
+     * @param table The summed-area table.
+     * @param x0    The left edge of the rectangle.
+     * @param y0    The top edge of the rectangle.
+     * @param x1    The right edge of the rectangle, exclusive.
+     * @param y1    The bottom edge of the rectangle, exclusive.
+     * @return The sum of the rectangle clipped to the image.
+     */
+    private long rectangle(long[] table, int x0, int y0, int x1, int y1) {
+        x0 = clamp(x0, width);
+        x1 = clamp(x1, width);
+        y0 = clamp(y0, height);
+        y1 = clamp(y1, height);
+        if (x1 <= x0 || y1 <= y0) return 0;
+
+        int stride = width + 1;
+        return table[y1 * stride + x1] - table[y0 * stride + x1] - table[y1 * stride + x0] + table[y0 * stride + x0];
+    }
+
+    /**
+     * Clamps a table coordinate to the range 0 to limit.
+     *
+     * @param value The coordinate.
+     * @param limit The largest allowed coordinate.
+     * @return The clamped coordinate.
+     */
+    private static int clamp(int value, int limit) {
+        return Math.min(Math.max(value, 0), limit);
+    }
+}
@@ -1,8 +1,14 @@
 package org.knu.bll.algorithms.blur;
 
 import org.knu.bll.ProgressListener;
+import org.knu.bll.StreamingProcessor;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
 
 /**
  * The BlurFilter interface defines a contract for applying a blur effect to an image.
@@ -22,5 +28,63 @@ public interface BlurFilter {
      *                 operation.
      * @return A new BufferedImage that represents the blurred version of the original image.
      */
-    BufferedImage applyFilter(BufferedImage image, int kernelSize, ProgressListener listener);
+    default BufferedImage applyFilter(BufferedImage image, int kernelSize, ProgressListener listener) {
+        return applyFilter(PixelBuffer.wrap(image), kernelSize, listener).toImage();
+    }
+
+    /**
+     * Applies a blur filter to the given pixel buffer.
+     *
+     * @param image The original pixels to which the blur filter will be applied.
+     *              This buffer should not be null and is not modified.
+     * @param kernelSize The size of the blur kernel. This value determines the extent
+     *                   of the blur effect. A larger kernel size results in a more pronounced blur.
+     * @param listener A ProgressListener to receive progress updates during the blur
+     *                 operation.
+     * @return A PixelBuffer that represents the blurred version of the original pixels.
+     */
+    PixelBuffer applyFilter(PixelBuffer image, int kernelSize, ProgressListener listener);
+
+    /**
+     * Applies a blur filter to a single grayscale plane. The default implementation expands the plane to
+     * pixels and blurs those; filters that can work on the samples directly should override it.
+     *
+     * @param image The original intensities to which the blur filter will be applied.
+     *              This buffer should not be null and is not modified.
+     * @param kernelSize The size of the blur kernel.
+     * @param listener A ProgressListener to receive progress updates during the blur
+     *                 operation.
+     * @return A GrayBuffer that represents the blurred version of the original intensities.
+     */
+    default GrayBuffer applyFilter(GrayBuffer image, int kernelSize, ProgressListener listener) {
+        return GrayBuffer.fromGrayPixels(applyFilter(image.toPixelBuffer(), kernelSize, listener));
+    }
+
+    /**
+     * Applies a blur filter to an image that is too large for the heap, streaming it tile by tile into a tiled TIFF
+     * file. Every tile is blurred with a halo of half the kernel size, so the result equals blurring the whole image.
+     *
+     * @param source The original image. This source should not be null.
+     * @param kernelSize The size of the blur kernel.
+     * @param output The file to write. An existing file is replaced.
+     * @param listener A ProgressListener that receives one update per tile. This listener should not be null.
+     * @throws NullPointerException if the source or the listener is null.
+     * @throws IllegalArgumentException if the output is the file of the source.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     * @throws RuntimeException if the source cannot be read or the output cannot be written.
+     */
+    default void applyFilter(TiledImageSource source, int kernelSize, File output, ProgressListener listener) {
+        new StreamingProcessor(getScheduler()).apply(source, kernelSize / 2, output, listener,
+                (region, inner) -> applyFilter(region, kernelSize, inner));
+    }
+
+    /**
+     * Returns the TileScheduler the filter runs on, which also splits the tiles of streamed images.
+     * The default implementation returns the shared scheduler.
+     *
+     * @return The TileScheduler of the filter.
+     */
+    default TileScheduler getScheduler() {
+        return TileScheduler.shared();
+    }
 }
@@ -1,72 +1,258 @@
 package org.knu.bll.algorithms.blur;
 
+import org.knu.bll.CancellationToken;
 import org.knu.bll.ProgressListener;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
 import org.knu.bll.helpers.ImageHelper;
 
-import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
-import java.awt.image.BufferedImage;
 
 /**
  * The BoxBlur class implements the BlurFilter interface to apply a box blur effect to an image.
  * This class uses a simple averaging technique to blur the image, where each pixel's color is
  * averaged with its neighboring pixels within a specified kernel size.
+ * Pixels outside the image repeat the nearest edge pixel.
+ * <p>
+ * The sums are kept as running column sums that are updated by one row at a time, and every output row slides
+ * a running window over them, so the cost per pixel does not depend on the kernel size. Row bands are blurred
+ * in parallel by a {@link TileScheduler}, every band starts its own running sums.
  */
 public class BoxBlur implements BlurFilter {
+    private final TileScheduler scheduler;
+
+    /**
+     * Constructs a BoxBlur object that runs on the shared scheduler.
+     */
+    public BoxBlur() {
+        this(TileScheduler.shared());
+    }
 
     /**
-     * Applies a box blur filter to the given image.
+     * Constructs a BoxBlur object.
      *
-     * @param image The original image to which the blur filter will be applied.
-     *              This image should not be null.
+     * @param scheduler The TileScheduler that runs the row bands.
+     */
+    public BoxBlur(TileScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Applies a box blur filter to the given pixel buffer.
+     *
+     * @param image The original pixels to which the blur filter will be applied.
+     *              This buffer should not be null.
      * @param kernelSize The size of the blur kernel. This value determines the extent
      *                   of the blur effect. A larger kernel size results in a more pronounced blur.
      *                   The kernel size should be a positive odd integer.
      * @param listener A ProgressListener to receive progress updates during the blur
      *                 operation.
-     * @return A new BufferedImage that represents the blurred version of the original image.
+     * @return A new opaque PixelBuffer that represents the blurred version of the original pixels.
+     * @throws IllegalArgumentException if the kernelSize is not a positive odd integer.
+     * @throws NullPointerException if the image is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    @Override
+    public PixelBuffer applyFilter(PixelBuffer image, int kernelSize, ProgressListener listener) {
+        validateFilterSize(kernelSize);
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        PixelBuffer blurredImage = PixelBuffer.create(width, height, false);
+
+        List<Tile> bands = scheduler.splitBands(width, height, kernelSize / 2);
+        CancellationToken token = CancellationToken.of(listener);
+        listener.onProgressStart(bands.size());
+        scheduler.forEach(bands, listener, band -> blurRows(image.getPixels(), blurredImage.getPixels(), width, height,
+                kernelSize, band.getY(), band.getEndY(), token));
+
+        return blurredImage;
+    }
+
+    /**
+     * Applies a box blur filter to a single grayscale plane.
+     *
+     * @param image The original intensities to which the blur filter will be applied.
+     *              This buffer should not be null and is not modified.
+     * @param kernelSize The size of the blur kernel. The kernel size should be a positive odd integer.
+     * @param listener A ProgressListener to receive progress updates during the blur
+     *                 operation.
+     * @return A new GrayBuffer that represents the blurred version of the original intensities.
      * @throws IllegalArgumentException if the kernelSize is not a positive odd integer.
      * @throws NullPointerException if the image is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
      */
     @Override
-    public BufferedImage applyFilter(BufferedImage image, int kernelSize, ProgressListener listener) {
+    public GrayBuffer applyFilter(GrayBuffer image, int kernelSize, ProgressListener listener) {
         validateFilterSize(kernelSize);
 
         int width = image.getWidth();
         int height = image.getHeight();
-        BufferedImage blurredImage = ImageHelper.copyImage(image, BufferedImage.TYPE_INT_RGB);
-        listener.onProgressStart(image.getWidth());
+        GrayBuffer blurredImage = GrayBuffer.create(width, height);
 
+        List<Tile> bands = scheduler.splitBands(width, height, kernelSize / 2);
+        CancellationToken token = CancellationToken.of(listener);
+        listener.onProgressStart(bands.size());
+        scheduler.forEach(bands, listener, band -> blurGrayRows(image.getSamples(), blurredImage.getSamples(),
+                width, height, kernelSize, band.getY(), band.getEndY(), token));
+
+        return blurredImage;
+    }
+
+    /**
+     * Blurs the rows fromRow (inclusive) to toRow (exclusive) of a grayscale plane with running sums.
+     *
+     * @param samples        The intensities of the original image.
+     * @param blurredSamples The intensities of the output image.
+     * @param width          The width of the image.
+     * @param height         The height of the image.
+     * @param kernelSize     The size of the blur kernel.
+     * @param fromRow        The first row to compute.
+     * @param toRow          The row after the last row to compute.
+     * @param token          The token polled before every row.
+     */
+    private void blurGrayRows(byte[] samples, byte[] blurredSamples, int width, int height, int kernelSize,
+                              int fromRow, int toRow, CancellationToken token) {
         int radius = kernelSize / 2;
+        int count = kernelSize * kernelSize;
+        int[] columnSums = new int[width];
+
+        for (int ky = -radius; ky <= radius; ky++) {
+            addGrayRow(samples, clamp(fromRow + ky, height) * width, width, columnSums, 1);
+        }
 
-        for (int y = 0; y < height; y++) {
+        for (int y = fromRow; y < toRow; y++) {
+            token.throwIfCancelled();
+            int sum = 0;
+            for (int kx = -radius; kx <= radius; kx++) {
+                sum += columnSums[clamp(kx, width)];
+            }
+            int rowOffset = y * width;
             for (int x = 0; x < width; x++) {
-                int sumRed = 0, sumGreen = 0, sumBlue = 0;
-
-                for (int ky = -radius; ky <= radius; ky++) {
-                    for (int kx = -radius; kx <= radius; kx++) {
-                        int px = Math.min(Math.max(x + kx, 0), width - 1);
-                        int py = Math.min(Math.max(y + ky, 0), height - 1);
-                        int rgb = image.getRGB(px, py);
-
-                        sumRed += ImageHelper.getRedByte(rgb);
-                        sumGreen += ImageHelper.getGreenByte(rgb);
-                        sumBlue += ImageHelper.getBlueByte(rgb);
-                    }
-                }
-                blurredImage.setRGB(x, y, getAverageRgb(kernelSize, sumRed, sumGreen, sumBlue));
+                blurredSamples[rowOffset + x] = (byte) (sum / count);
+                sum += columnSums[clamp(x + radius + 1, width)] - columnSums[clamp(x - radius, width)];
+            }
+
+            if (y + 1 < toRow) {
+                addGrayRow(samples, clamp(y - radius, height) * width, width, columnSums, -1);
+                addGrayRow(samples, clamp(y + radius + 1, height) * width, width, columnSums, 1);
             }
-            listener.onProgressUpdate();
         }
+    }
 
-        return blurredImage;
+    /**
+     * Adds or subtracts one row of a grayscale plane to the running column sums.
+     *
+     * @param samples    The intensities of the image.
+     * @param rowOffset  The index of the first sample of the row.
+     * @param width      The width of the image.
+     * @param columnSums The running sums per column.
+     * @param sign       1 to add the row, -1 to subtract it.
+     */
+    private void addGrayRow(byte[] samples, int rowOffset, int width, int[] columnSums, int sign) {
+        for (int x = 0; x < width; x++) {
+            columnSums[x] += sign * (samples[rowOffset + x] & 0xff);
+        }
+    }
+
+    /**
+     * Blurs the rows fromRow (inclusive) to toRow (exclusive) with running sums.
+     *
+     * @param pixels        The pixels of the original image.
+     * @param blurredPixels The pixels of the output image.
+     * @param width         The width of the image.
+     * @param height        The height of the image.
+     * @param kernelSize    The size of the blur kernel.
+     * @param fromRow       The first row to compute.
+     * @param toRow         The row after the last row to compute.
+     * @param token         The token polled before every row.
+     */
+    private void blurRows(int[] pixels, int[] blurredPixels, int width, int height, int kernelSize, int fromRow, int toRow,
+                          CancellationToken token) {
+        int radius = kernelSize / 2;
+        int[] columnRed = new int[width];
+        int[] columnGreen = new int[width];
+        int[] columnBlue = new int[width];
+
+        for (int ky = -radius; ky <= radius; ky++) {
+            addRow(pixels, clamp(fromRow + ky, height) * width, width, columnRed, columnGreen, columnBlue, 1);
+        }
+
+        for (int y = fromRow; y < toRow; y++) {
+            token.throwIfCancelled();
+            blurRow(blurredPixels, y * width, width, radius, kernelSize, columnRed, columnGreen, columnBlue);
+
+            if (y + 1 < toRow) {
+                addRow(pixels, clamp(y - radius, height) * width, width, columnRed, columnGreen, columnBlue, -1);
+                addRow(pixels, clamp(y + radius + 1, height) * width, width, columnRed, columnGreen, columnBlue, 1);
+            }
+        }
+    }
+
+    /**
+     * Adds or subtracts one image row to the running column sums.
+     *
+     * @param pixels      The pixels of the image.
+     * @param rowOffset   The index of the first pixel of the row.
+     * @param width       The width of the image.
+     * @param columnRed   The running sums of the red components per column.
+     * @param columnGreen The running sums of the green components per column.
+     * @param columnBlue  The running sums of the blue components per column.
+     * @param sign        1 to add the row, -1 to subtract it.
+     */
+    private void addRow(int[] pixels, int rowOffset, int width, int[] columnRed, int[] columnGreen, int[] columnBlue, int sign) {
+        for (int x = 0; x < width; x++) {
+            int rgb = pixels[rowOffset + x];
+            columnRed[x] += sign * ImageHelper.getRedByte(rgb);
+            columnGreen[x] += sign * ImageHelper.getGreenByte(rgb);
+            columnBlue[x] += sign * ImageHelper.getBlueByte(rgb);
+        }
+    }
+
+    /**
+     * Slides a horizontal window over the column sums to produce one output row.
+     *
+     * @param blurredPixels The pixels of the output image.
+     * @param rowOffset     The index of the first pixel of the output row.
+     * @param width         The width of the image.
+     * @param radius        The radius of the blur kernel.
+     * @param kernelSize    The size of the blur kernel.
+     * @param columnRed     The sums of the red components of the kernel rows per column.
+     * @param columnGreen   The sums of the green components of the kernel rows per column.
+     * @param columnBlue    The sums of the blue components of the kernel rows per column.
+     */
+    private void blurRow(int[] blurredPixels, int rowOffset, int width, int radius, int kernelSize,
+                         int[] columnRed, int[] columnGreen, int[] columnBlue) {
+        int sumRed = 0, sumGreen = 0, sumBlue = 0;
+        for (int kx = -radius; kx <= radius; kx++) {
+            int px = clamp(kx, width);
+            sumRed += columnRed[px];
+            sumGreen += columnGreen[px];
+            sumBlue += columnBlue[px];
+        }
+
+        for (int x = 0; x < width; x++) {
+            blurredPixels[rowOffset + x] = getAverageRgb(kernelSize, sumRed, sumGreen, sumBlue);
+
+            int removed = clamp(x - radius, width);
+            int added = clamp(x + radius + 1, width);
+            sumRed += columnRed[added] - columnRed[removed];
+            sumGreen += columnGreen[added] - columnGreen[removed];
+            sumBlue += columnBlue[added] - columnBlue[removed];
+        }
+    }
+
+    /**
+     * Clamps a coordinate to the edges of the image.
+     *
+     * @param value  The coordinate, possibly outside the image.
+     * @param length The number of pixels along the axis.
+     * @return The nearest coordinate inside the image.
+     */
+    private static int clamp(int value, int length) {
+        return Math.min(Math.max(value, 0), length - 1);
     }
 
     /**
@@ -99,6 +285,16 @@ public class BoxBlur implements BlurFilter {
         }
     }
 
+    /**
+     * Returns the TileScheduler the filter runs on.
+     *
+     * @return The TileScheduler of the filter.
+     */
+    @Override
+    public TileScheduler getScheduler() {
+        return scheduler;
+    }
+
     /**
      * Returns a string name for the filter.
      *
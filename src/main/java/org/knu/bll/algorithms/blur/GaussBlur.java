@@ -1,175 +1,192 @@
 package org.knu.bll.algorithms.blur;
 
+import org.knu.bll.CancellationToken;
 import org.knu.bll.ProgressListener;
-import org.knu.bll.helpers.ImageHelper;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.algorithms.convolution.Kernels;
+import org.knu.bll.algorithms.convolution.SeparableConvolution;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
 
-import java.awt.image.BufferedImage;
-import java.util.Arrays;
+import java.util.List;
 
 /**
  * The GaussBlur class implements the BlurFilter interface to apply a Gaussian blur effect to an image.
  * This class uses a Gaussian kernel to blur the image, where each pixel's color is weighted by the kernel values.
+ * The two-dimensional kernel is applied as a vertical and a horizontal one-dimensional pass,
+ * samples outside the image count as zero. Row bands are blurred in parallel by a {@link TileScheduler}.
+ * <p>
+ * The filter is immutable: the sigma given to the constructor is only the default for the {@link BlurFilter}
+ * methods, and the overloads that take a sigma use it for that call alone, so one instance can serve any number
+ * of threads. {@link #withSigma(double)} creates a filter with another default for APIs that take a BlurFilter.
  */
 public class GaussBlur implements BlurFilter {
-    private double sigma;
+    /**
+     * The sigma used when none is given.
+     */
+    public static final double DEFAULT_SIGMA = 1;
+
+    private final TileScheduler scheduler;
+    private final double sigma;
 
     /**
-     * Constructs a GaussBlur object with a default sigma value of 1.
+     * Constructs a GaussBlur object with a default sigma value of 1 that runs on the shared scheduler.
      */
     public GaussBlur() {
-        this.sigma = 1;
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs a GaussBlur object with a default sigma value of 1.
+     *
+     * @param scheduler The TileScheduler that runs the row bands.
+     */
+    public GaussBlur(TileScheduler scheduler) {
+        this(scheduler, DEFAULT_SIGMA);
+    }
+
+    /**
+     * Constructs a GaussBlur object.
+     *
+     * @param scheduler The TileScheduler that runs the row bands.
+     * @param sigma The standard deviation used by the {@link BlurFilter} methods.
+     * @throws IllegalArgumentException if sigma is not positive.
+     */
+    public GaussBlur(TileScheduler scheduler, double sigma) {
+        validateSigma(sigma);
+        this.scheduler = scheduler;
+        this.sigma = sigma;
     }
 
     /**
-     * Applies a Gaussian blur filter to the given image.
+     * Applies a Gaussian blur filter to the given pixel buffer.
      *
-     * @param image The original image to which the blur filter will be applied.
-     *              This image should not be null.
+     * @param image The original pixels to which the blur filter will be applied.
+     *              This buffer should not be null.
      * @param kernelSize The size of the blur kernel. This value determines the extent
      *                   of the blur effect. A larger kernel size results in a more pronounced blur.
      *                   The kernel size should be a positive odd integer.
      * @param listener A ProgressListener to receive progress updates during the blur
      *                 operation.
-     * @return A new BufferedImage that represents the blurred version of the original image.
-     *         If the input image is null, the method should return null.
+     * @return A new PixelBuffer that represents the blurred version of the original pixels.
+     *         The alpha channel is blurred as well when the source has one.
      * @throws IllegalArgumentException if the kernelSize is not a positive odd integer.
      * @throws NullPointerException if the image is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
      */
     @Override
-    public BufferedImage applyFilter(BufferedImage image, int kernelSize, ProgressListener listener) {
-        validateFilterSize(kernelSize);
-        listener.onProgressStart(image.getWidth());
-        double[] kernel = createGaussianKernel(kernelSize, sigma);
-        return applyGaussianBlur(image, kernel, kernelSize, listener);
+    public PixelBuffer applyFilter(PixelBuffer image, int kernelSize, ProgressListener listener) {
+        return applyFilter(image, kernelSize, sigma, listener);
     }
 
     /**
-     * Applies a Gaussian blur to the given image using the specified kernel.
+     * Applies a Gaussian blur filter with the given sigma to the given pixel buffer.
      *
-     * @param image The original image to which the blur filter will be applied.
-     * @param kernel The Gaussian kernel to be used for blurring.
-     * @param kernelSize The size of the blur kernel.
+     * @param image The original pixels to which the blur filter will be applied.
+     *              This buffer should not be null.
+     * @param kernelSize The size of the blur kernel. The kernel size should be a positive odd integer.
+     * @param sigma The standard deviation of the Gaussian distribution for this call.
      * @param listener A ProgressListener to receive progress updates during the blur
-     *                 operation. This can be null if progress reporting is not required.
-     * @return A new BufferedImage that represents the blurred version of the original image.
+     *                 operation.
+     * @return A new PixelBuffer that represents the blurred version of the original pixels.
+     *         The alpha channel is blurred as well when the source has one.
+     * @throws IllegalArgumentException if the kernelSize is not a positive odd integer or sigma is not positive.
+     * @throws NullPointerException if the image is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
      */
-    private BufferedImage applyGaussianBlur(BufferedImage image, double[] kernel, int kernelSize, ProgressListener listener) {
-        int radius = kernelSize / 2;
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage blurredImage = ImageHelper.copyImage(image, BufferedImage.TYPE_INT_ARGB);
-
-        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
-        int[] blurredPixels = applyGaussianBlurToArray(pixels, width, height, kernel, radius);
-        blurredImage.setRGB(0, 0, width, height, blurredPixels, 0, width);
+    public PixelBuffer applyFilter(PixelBuffer image, int kernelSize, double sigma, ProgressListener listener) {
+        validateFilterSize(kernelSize);
+        SeparableConvolution convolution = new SeparableConvolution(Kernels.gaussian(kernelSize, sigma),
+                SeparableConvolution.BorderMode.ZERO);
+        PixelBuffer blurredImage = PixelBuffer.createCompatible(image);
 
-        listener.onProgressUpdate();
+        List<Tile> bands = scheduler.splitBands(image.getWidth(), image.getHeight(), kernelSize / 2);
+        CancellationToken token = CancellationToken.of(listener);
+        listener.onProgressStart(bands.size());
+        scheduler.forEach(bands, listener, band -> convolveBand(convolution, image, blurredImage, band, token));
         return blurredImage;
     }
 
     /**
-     * Applies a Gaussian blur to an array of pixels using the specified kernel.
+     * Applies a Gaussian blur filter to a single grayscale plane.
      *
-     * @param pixels The array of pixels to which the blur filter will be applied.
-     * @param width The width of the image.
-     * @param height The height of the image.
-     * @param kernel The Gaussian kernel to be used for blurring.
-     * @param radius The radius of the blur kernel.
-     * @return An array of blurred pixels.
-     */
-    private int[] applyGaussianBlurToArray(int[] pixels, int width, int height, double[] kernel, int radius) {
-        int[] blurredPixels = new int[pixels.length];
-        Arrays.fill(blurredPixels, 0);
-
-        for (int x = 0; x < width; x++) {
-            applyGaussianKernelToArray(pixels, blurredPixels, width, height, kernel, radius, x);
-        }
-        return blurredPixels;
+     * @param image The original intensities to which the blur filter will be applied.
+     *              This buffer should not be null and is not modified.
+     * @param kernelSize The size of the blur kernel. The kernel size should be a positive odd integer.
+     * @param listener A ProgressListener to receive progress updates during the blur
+     *                 operation.
+     * @return A new GrayBuffer that represents the blurred version of the original intensities.
+     * @throws IllegalArgumentException if the kernelSize is not a positive odd integer.
+     * @throws NullPointerException if the image is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    @Override
+    public GrayBuffer applyFilter(GrayBuffer image, int kernelSize, ProgressListener listener) {
+        return applyFilter(image, kernelSize, sigma, listener);
     }
 
     /**
-     * Applies the Gaussian kernel to a specific column of pixels.
+     * Applies a Gaussian blur filter with the given sigma to a single grayscale plane.
      *
-     * @param pixels The array of pixels to which the blur filter will be applied.
-     * @param blurredPixels The array to store the blurred pixels.
-     * @param width The width of the image.
-     * @param height The height of the image.
-     * @param kernel The Gaussian kernel to be used for blurring.
-     * @param radius The radius of the blur kernel.
-     * @param x The current column index.
-     */
-    private void applyGaussianKernelToArray(int[] pixels, int[] blurredPixels, int width, int height,
-                                            double[] kernel, int radius, int x) {
-        for (int y = 0; y < height; y++) {
-            double[] colorChannelsArr = new double[4];
-            int kernelIndex = 0;
-
-            for (int kx = -radius; kx <= radius; kx++) {
-                for (int ky = -radius; ky <= radius; ky++) {
-                    int px = x + kx;
-                    int py = y + ky;
-
-                    if (px >= 0 && px < width && py >= 0 && py < height)
-                        getAndIncrementColorChannels(colorChannelsArr, pixels[py * width + px], kernel[kernelIndex]);
-                    kernelIndex++;
-                }
-            }
-            blurredPixels[y * width + x] = createColorFromChannels(colorChannelsArr);
-        }
-    }
+     * @param image The original intensities to which the blur filter will be applied.
+     *              This buffer should not be null and is not modified.
+     * @param kernelSize The size of the blur kernel. The kernel size should be a positive odd integer.
+     * @param sigma The standard deviation of the Gaussian distribution for this call.
+     * @param listener A ProgressListener to receive progress updates during the blur
+     *                 operation.
+     * @return A new GrayBuffer that represents the blurred version of the original intensities.
+     * @throws IllegalArgumentException if the kernelSize is not a positive odd integer or sigma is not positive.
+     * @throws NullPointerException if the image is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public GrayBuffer applyFilter(GrayBuffer image, int kernelSize, double sigma, ProgressListener listener) {
+        validateFilterSize(kernelSize);
+        SeparableConvolution convolution = new SeparableConvolution(Kernels.gaussian(kernelSize, sigma),
+                SeparableConvolution.BorderMode.ZERO);
+        GrayBuffer blurredImage = GrayBuffer.create(image.getWidth(), image.getHeight());
 
-    /**
-     * Creates an ARGB color value from the given color channels.
-     *
-     * @param colorChannelsArr The array containing the color channels (alpha, red, green, blue).
-     * @return An integer representing the ARGB color value.
-     */
-    private static int createColorFromChannels(double[] colorChannelsArr) {
-        int alpha = Math.min(255, Math.max(0, (int) colorChannelsArr[0]));
-        int red = Math.min(255, Math.max(0, (int) colorChannelsArr[1]));
-        int green = Math.min(255, Math.max(0, (int) colorChannelsArr[2]));
-        int blue = Math.min(255, Math.max(0, (int) colorChannelsArr[3]));
-        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+        List<Tile> bands = scheduler.splitBands(image.getWidth(), image.getHeight(), kernelSize / 2);
+        CancellationToken token = CancellationToken.of(listener);
+        listener.onProgressStart(bands.size());
+        scheduler.forEach(bands, listener, band -> convolveBand(convolution, image, blurredImage, band, token));
+        return blurredImage;
     }
 
     /**
-     * Increments the color channels array with the weighted color values from the given RGB value.
+     * Convolves one row band of a pixel buffer, polling the cancellation token before every row.
      *
-     * @param colorChannelsArr The array containing the color channels (alpha, red, green, blue).
-     * @param rgb The RGB value to be added to the color channels.
-     * @param kernel The weight of the kernel value.
-     */
-    private static void getAndIncrementColorChannels(double[] colorChannelsArr, int rgb, double kernel) {
-        colorChannelsArr[0] += ((rgb >> 24) & 0xff) * kernel;
-        colorChannelsArr[1] += ((rgb >> 16) & 0xff) * kernel;
-        colorChannelsArr[2] += ((rgb >> 8) & 0xff) * kernel;
-        colorChannelsArr[3] += (rgb & 0xff) * kernel;
+     * @param convolution The Gaussian convolution.
+     * @param image The original pixels.
+     * @param blurredImage The buffer to store the blurred result.
+     * @param band The row band to compute.
+     * @param token The token polled before every row.
+     */
+    private void convolveBand(SeparableConvolution convolution, PixelBuffer image, PixelBuffer blurredImage, Tile band,
+                              CancellationToken token) {
+        double[] scratch = SeparableConvolution.createRowScratch(image.getWidth());
+        for (int y = band.getY(); y < band.getEndY(); y++) {
+            token.throwIfCancelled();
+            convolution.convolveRows(image, blurredImage, y, y + 1, scratch);
+        }
     }
 
     /**
-     * Creates a Gaussian kernel of the specified size and sigma value.
+     * Convolves one row band of a grayscale plane, polling the cancellation token before every row.
      *
-     * @param size The size of the kernel.
-     * @param sigma The standard deviation of the Gaussian distribution.
-     * @return A double array representing the Gaussian kernel.
-     */
-    private double[] createGaussianKernel(int size, double sigma) {
-        double[] kernel = new double[size * size];
-        int radius = size / 2;
-        double sum = 0.0;
-
-        for (int y = -radius; y <= radius; y++) {
-            for (int x = -radius; x <= radius; x++) {
-                double value = Math.exp(-(x * x + y * y) / (2 * sigma * sigma));
-                kernel[(y + radius) * size + (x + radius)] = value;
-                sum += value;
-            }
-        }
-
-        for (int i = 0; i < kernel.length; i++) {
-            kernel[i] /= sum;
+     * @param convolution The Gaussian convolution.
+     * @param image The original intensities.
+     * @param blurredImage The plane to store the blurred result.
+     * @param band The row band to compute.
+     * @param token The token polled before every row.
+     */
+    private void convolveBand(SeparableConvolution convolution, GrayBuffer image, GrayBuffer blurredImage, Tile band,
+                              CancellationToken token) {
+        double[] scratch = SeparableConvolution.createRowScratch(image.getWidth());
+        for (int y = band.getY(); y < band.getEndY(); y++) {
+            token.throwIfCancelled();
+            convolution.convolveRows(image, blurredImage, y, y + 1, scratch);
         }
-        return kernel;
     }
 
     /**
@@ -185,12 +202,46 @@ public class GaussBlur implements BlurFilter {
     }
 
     /**
-     * Sets the sigma value for the Gaussian blur.
+     * Validates that sigma is positive.
      *
      * @param sigma The standard deviation of the Gaussian distribution.
+     * @throws IllegalArgumentException if sigma is not positive.
      */
-    public void setSigma(double sigma) {
-        this.sigma = sigma;
+    private static void validateSigma(double sigma) {
+        if (!(sigma > 0)) {
+            throw new IllegalArgumentException("Sigma must be positive");
+        }
+    }
+
+    /**
+     * Returns the sigma used by the {@link BlurFilter} methods.
+     *
+     * @return The default standard deviation of this filter.
+     */
+    public double getSigma() {
+        return sigma;
+    }
+
+    /**
+     * Creates a Gaussian blur with another default sigma that runs on the same scheduler.
+     *
+     * @param sigma The standard deviation of the Gaussian distribution.
+     * @return A new GaussBlur, or this filter if the sigma is unchanged.
+     * @throws IllegalArgumentException if sigma is not positive.
+     */
+    public GaussBlur withSigma(double sigma) {
+        if (sigma == this.sigma) return this;
+        return new GaussBlur(scheduler, sigma);
+    }
+
+    /**
+     * Returns the TileScheduler the filter runs on.
+     *
+     * @return The TileScheduler of the filter.
+     */
+    @Override
+    public TileScheduler getScheduler() {
+        return scheduler;
     }
 
     /**
@@ -0,0 +1,209 @@
+package org.knu.bll.algorithms.blur;
+
+import org.knu.bll.CancellationToken;
+
+import java.util.Arrays;
+
+/**
+ * The HistogramMedian class computes the median filter of one 8-bit channel in constant time per pixel,
+ * following Perreault and Hebert, "Median Filtering in Constant Time".
+ * <p>
+ * Every image column keeps a histogram of the kernel rows above and below the current row. Moving down one row
+ * removes one pixel from and adds one pixel to every column histogram. Within a row the kernel histogram is the sum
+ * of the column histograms of the window and slides right by adding one column histogram and removing another.
+ * Histograms are split into 16 coarse and 256 fine bins: the coarse kernel histogram is updated for every pixel,
+ * while a 16-bin fine segment is only brought up to date when the median search actually enters it.
+ * <p>
+ * Pixels outside the image repeat the nearest edge pixel. An instance holds the histograms of one row band
+ * and must only be used by one thread at a time.
+ */
+final class HistogramMedian {
+    private static final int BINS = 256;
+    private static final int COARSE_BINS = 16;
+    private static final int FINE_SHIFT = 4;
+    private static final int NOT_SYNCED = Integer.MIN_VALUE;
+
+    private final int width;
+    private final int height;
+    private final int radius;
+    private final int size;
+    private final short[] columnFine;
+    private final short[] columnCoarse;
+    private final int[] kernelFine = new int[BINS];
+    private final int[] kernelCoarse = new int[COARSE_BINS];
+    private final int[] segmentColumn = new int[COARSE_BINS];
+
+    /**
+     * Constructs a HistogramMedian for images of the given size.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @param radius The radius of the kernel. The kernel covers 2 * radius + 1 rows and columns.
+     */
+    HistogramMedian(int width, int height, int radius) {
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+        this.size = 2 * radius + 1;
+        this.columnFine = new short[width * BINS];
+        this.columnCoarse = new short[width * COARSE_BINS];
+    }
+
+    /**
+     * Filters one channel of the rows fromRow (inclusive) to toRow (exclusive).
+     * The median of every pixel is ORed into the target at the given bit position,
+     * so the target rows must be zero in that channel beforehand.
+     *
+     * @param source  The packed pixels of the image.
+     * @param target  The packed pixels that receive the result.
+     * @param shift   The bit position of the channel, 16 for red, 8 for green and 0 for blue.
+     * @param fromRow The first row to compute.
+     * @param toRow   The row after the last row to compute.
+     * @param token   The token polled before every row.
+     * @throws java.util.concurrent.CancellationException if the token is cancelled.
+     */
+    void filterRows(int[] source, int[] target, int shift, int fromRow, int toRow, CancellationToken token) {
+        Arrays.fill(columnFine, (short) 0);
+        Arrays.fill(columnCoarse, (short) 0);
+        for (int dy = -radius; dy <= radius; dy++) {
+            updateColumns(source, clampRow(fromRow + dy), shift, 1);
+        }
+
+        for (int y = fromRow; y < toRow; y++) {
+            token.throwIfCancelled();
+            if (y > fromRow) {
+                updateColumns(source, clampRow(y - radius - 1), shift, -1);
+                updateColumns(source, clampRow(y + radius), shift, 1);
+            }
+            filterRow(target, y, shift);
+        }
+    }
+
+    /**
+     * Adds or removes one image row to every column histogram.
+     *
+     * @param source The packed pixels of the image.
+     * @param row    The row to add or remove.
+     * @param shift  The bit position of the channel.
+     * @param sign   1 to add the row, -1 to remove it.
+     */
+    private void updateColumns(int[] source, int row, int shift, int sign) {
+        int rowOffset = row * width;
+        for (int x = 0; x < width; x++) {
+            int value = (source[rowOffset + x] >> shift) & 0xff;
+            columnFine[x * BINS + value] += sign;
+            columnCoarse[x * COARSE_BINS + (value >> FINE_SHIFT)] += sign;
+        }
+    }
+
+    /**
+     * Slides the kernel histogram along one row and writes the median of every pixel.
+     *
+     * @param target The packed pixels that receive the result.
+     * @param y      The row to compute.
+     * @param shift  The bit position of the channel.
+     */
+    private void filterRow(int[] target, int y, int shift) {
+        Arrays.fill(kernelCoarse, 0);
+        Arrays.fill(segmentColumn, NOT_SYNCED);
+        for (int dx = -radius; dx <= radius; dx++) {
+            addCoarse(clampColumn(dx), 1);
+        }
+
+        int rank = size * size / 2;
+        int rowOffset = y * width;
+        for (int x = 0; x < width; x++) {
+            if (x > 0) {
+                addCoarse(clampColumn(x + radius), 1);
+                addCoarse(clampColumn(x - radius - 1), -1);
+            }
+
+            int below = 0;
+            int segment = 0;
+            while (below + kernelCoarse[segment] <= rank) {
+                below += kernelCoarse[segment++];
+            }
+
+            syncSegment(segment, x);
+            int value = segment << FINE_SHIFT;
+            while (below + kernelFine[value] <= rank) {
+                below += kernelFine[value++];
+            }
+            target[rowOffset + x] |= value << shift;
+        }
+    }
+
+    /**
+     * Adds or removes one column histogram to the coarse kernel histogram.
+     *
+     * @param column The column to add or remove.
+     * @param sign   1 to add the column, -1 to remove it.
+     */
+    private void addCoarse(int column, int sign) {
+        int offset = column * COARSE_BINS;
+        for (int i = 0; i < COARSE_BINS; i++) {
+            kernelCoarse[i] += sign * columnCoarse[offset + i];
+        }
+    }
+
+    /**
+     * Brings one fine segment of the kernel histogram up to date with the window centred at column x.
+     * The segment is rebuilt from the column histograms when it is too far behind, otherwise the
+     * columns that entered and left the window since the last update are applied.
+     *
+     * @param segment The coarse bin whose fine bins are needed.
+     * @param x       The current column.
+     */
+    private void syncSegment(int segment, int x) {
+        int last = segmentColumn[segment];
+        if (last == x) return;
+
+        if (last == NOT_SYNCED || x - last > size) {
+            Arrays.fill(kernelFine, segment << FINE_SHIFT, (segment + 1) << FINE_SHIFT, 0);
+            for (int dx = -radius; dx <= radius; dx++) {
+                addFine(segment, clampColumn(x + dx), 1);
+            }
+        } else {
+            for (int column = last + 1; column <= x; column++) {
+                addFine(segment, clampColumn(column + radius), 1);
+                addFine(segment, clampColumn(column - radius - 1), -1);
+            }
+        }
+        segmentColumn[segment] = x;
+    }
+
+    /**
+     * Adds or removes one fine segment of a column histogram to the kernel histogram.
+     *
+     * @param segment The coarse bin whose fine bins are updated.
+     * @param column  The column to add or remove.
+     * @param sign    1 to add the column, -1 to remove it.
+     */
+    private void addFine(int segment, int column, int sign) {
+        int from = segment << FINE_SHIFT;
+        int offset = column * BINS;
+        for (int i = from; i < from + (1 << FINE_SHIFT); i++) {
+            kernelFine[i] += sign * columnFine[offset + i];
+        }
+    }
+
+    /**
+     * Clamps a row index to the edges of the image.
+     *
+     * @param y The row index, possibly outside the image.
+     * @return The nearest row inside the image.
+     */
+    private int clampRow(int y) {
+        return Math.min(Math.max(y, 0), height - 1);
+    }
+
+    /**
+     * Clamps a column index to the edges of the image.
+     *
+     * @param x The column index, possibly outside the image.
+     * @return The nearest column inside the image.
+     */
+    private int clampColumn(int x) {
+        return Math.min(Math.max(x, 0), width - 1);
+    }
+}
@@ -1,62 +1,69 @@
 package org.knu.bll.algorithms.blur;
 
+import org.knu.bll.CancellationToken;
 import org.knu.bll.ProgressListener;
-import org.knu.bll.helpers.ImageHelper;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.PixelBuffer;
 
-import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The MedianBlur class implements the BlurFilter interface to apply a median blur effect to an image.
  * This class uses a median filter to reduce noise in the image by replacing each pixel's value with the median
  * value of its neighboring pixels within a specified kernel size. The median filter is particularly effective
  * in preserving edges while reducing noise.
+ * <p>
+ * The median is taken separately for the red, green and blue channels with {@link HistogramMedian}, so the cost
+ * per pixel does not depend on the kernel size. The image is split into row bands that are filtered concurrently
+ * by a {@link TileScheduler}; every band writes its own rows of the output, so no locking is needed. Pixels outside
+ * the image repeat the nearest edge pixel. The cancellation token of the listener is polled before every row.
  */
 public class MedianBlur implements BlurFilter {
-    private final ExecutorService executorService;
-    private final Lock lock;
+    private static final int[] CHANNEL_SHIFTS = {16, 8, 0};
+
+    private final TileScheduler scheduler;
 
     /**
-     * Constructs a MedianBlur object with the specified ExecutorService.
+     * Constructs a MedianBlur object that runs on the shared scheduler.
+     */
+    public MedianBlur() {
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs a MedianBlur object with the specified TileScheduler.
      *
-     * @param executorService The ExecutorService to manage the concurrent execution of filter tasks.
+     * @param scheduler The TileScheduler that runs the row bands.
      */
-    public MedianBlur(ExecutorService executorService) {
-        this.executorService = executorService;
-        this.lock = new ReentrantLock();
+    public MedianBlur(TileScheduler scheduler) {
+        this.scheduler = scheduler;
     }
 
     /**
-     * Applies a median blur filter to the given image.
+     * Applies a median blur filter to the given pixel buffer.
      *
-     * @param image The original image to which the blur filter will be applied.
-     *              This image should not be null.
+     * @param image The original pixels to which the blur filter will be applied.
+     *              This buffer should not be null.
      * @param kernelSize The size of the blur kernel. This value determines the extent
      *                   of the blur effect. A larger kernel size results in a more pronounced blur.
      *                   The kernel size should be a positive odd integer.
      * @param listener A ProgressListener to receive progress updates during the blur
      *                 operation.
-     * @return A new BufferedImage that represents the blurred version of the original image.
+     * @return A new opaque PixelBuffer that represents the blurred version of the original pixels.
      * @throws IllegalArgumentException if the kernelSize is not a positive odd integer.
      * @throws NullPointerException if the image is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
      */
     @Override
-    public BufferedImage applyFilter(BufferedImage image, int kernelSize, ProgressListener listener) {
+    public PixelBuffer applyFilter(PixelBuffer image, int kernelSize, ProgressListener listener) {
         validateFilterSize(kernelSize);
-        BufferedImage outputImage = ImageHelper.copyImage(image, BufferedImage.TYPE_INT_RGB);
-        try {
-            List<Callable<Void>> tasks = createFilterTasks(image, outputImage, kernelSize, listener);
-            listener.onProgressStart(tasks.size());
-            executorService.invokeAll(tasks);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        PixelBuffer outputImage = PixelBuffer.create(image.getWidth(), image.getHeight(), false);
+
+        List<Tile> bands = scheduler.splitBands(image.getWidth(), image.getHeight(), kernelSize / 2);
+        CancellationToken token = CancellationToken.of(listener);
+        listener.onProgressStart(bands.size());
+        scheduler.forEach(bands, listener, band -> filterBand(image, outputImage, kernelSize, band, token));
         return outputImage;
     }
 
@@ -73,92 +80,30 @@ public class MedianBlur implements BlurFilter {
     }
 
     /**
-     * Creates a list of filter tasks to be executed concurrently.
-     *
-     * @param image The original image to which the blur filter will be applied.
-     * @param outputImage The image to store the blurred result.
-     * @param size The size of the blur kernel.
-     * @param listener A ProgressListener to receive progress updates during the blur
-     *                 operation. This can be null if progress reporting is not required.
-     * @return A list of Callable tasks to be executed concurrently.
-     */
-    private List<Callable<Void>> createFilterTasks(BufferedImage image, BufferedImage outputImage, int size, ProgressListener listener) {
-        List<Callable<Void>> tasks = new ArrayList<>();
-        int width = image.getWidth();
-        int offset = size / 2;
-
-        for (int x = offset; x < width - offset; x++) {
-            tasks.add(createFilterTask(image, outputImage, size, offset, x, listener));
-        }
-
-        return tasks;
-    }
-
-    /**
-     * Creates a filter task to be executed concurrently.
-     *
-     * @param image The original image to which the blur filter will be applied.
-     * @param outputImage The image to store the blurred result.
-     * @param size The size of the blur kernel.
-     * @param offset The offset from the edge of the image to the start of the kernel.
-     * @param x The current column index.
-     * @param listener A ProgressListener to receive progress updates during the blur
-     *                 operation. This can be null if progress reporting is not required.
-     * @return A Callable task to be executed concurrently.
-     */
-    private Callable<Void> createFilterTask(BufferedImage image, BufferedImage outputImage, int size, int offset, int x, ProgressListener listener) {
-        return () -> {
-            int height = image.getHeight();
-            for (int y = offset; y < height - offset; y++) {
-                int[] window = extractPixelWindow(image, size, offset, x, y);
-                int medianPixel = calculateMedian(window);
-
-                lock.lock();
-                try {
-                    outputImage.setRGB(x, y, medianPixel);
-                } finally {
-                    lock.unlock();
-                }
-            }
-            listener.onProgressUpdate();
-            return null;
-        };
-    }
-
-    /**
-     * Extracts a window of pixels around the specified coordinates.
+     * Computes the median of every channel for one row band.
      *
-     * @param image The original image to which the blur filter will be applied.
+     * @param image The original pixels to which the blur filter will be applied.
+     * @param outputImage The buffer to store the blurred result.
      * @param size The size of the blur kernel.
-     * @param offset The offset from the edge of the image to the start of the kernel.
-     * @param x The current column index.
-     * @param y The current row index.
-     * @return An array of pixel values within the window.
+     * @param band The row band to compute.
+     * @param token The token polled before every row.
      */
-    private int[] extractPixelWindow(BufferedImage image, int size, int offset, int x, int y) {
-        int[] window = new int[size * size];
-        int index = 0;
-
-        for (int dx = 0; dx < size; dx++) {
-            for (int dy = 0; dy < size; dy++) {
-                int nx = x + dx - offset;
-                int ny = y + dy - offset;
-                window[index++] = image.getRGB(nx, ny);
-            }
+    private void filterBand(PixelBuffer image, PixelBuffer outputImage, int size, Tile band, CancellationToken token) {
+        HistogramMedian median = new HistogramMedian(image.getWidth(), image.getHeight(), size / 2);
+        for (int shift : CHANNEL_SHIFTS) {
+            median.filterRows(image.getPixels(), outputImage.getPixels(), shift, band.getY(), band.getEndY(),
+                    token);
         }
-
-        return window;
     }
 
     /**
-     * Calculates the median value of the given array of pixel values.
+     * Returns the TileScheduler the filter runs on.
      *
-     * @param window An array of pixel values.
-     * @return The median pixel value.
+     * @return The TileScheduler of the filter.
      */
-    private int calculateMedian(int[] window) {
-        Arrays.sort(window);
-        return window[window.length / 2];
+    @Override
+    public TileScheduler getScheduler() {
+        return scheduler;
     }
 
     /**
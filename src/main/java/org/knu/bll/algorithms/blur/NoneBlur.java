@@ -1,6 +1,8 @@
 package org.knu.bll.algorithms.blur;
 
 import org.knu.bll.ProgressListener;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
 
 import java.awt.image.BufferedImage;
 
@@ -24,6 +26,32 @@ public class NoneBlur implements BlurFilter {
         return image;
     }
 
+    /**
+     * Returns the given pixel buffer unchanged.
+     *
+     * @param image      The original pixels.
+     * @param kernelSize Ignored.
+     * @param listener   Ignored.
+     * @return The same PixelBuffer.
+     */
+    @Override
+    public PixelBuffer applyFilter(PixelBuffer image, int kernelSize, ProgressListener listener) {
+        return image;
+    }
+
+    /**
+     * Returns the given grayscale plane unchanged.
+     *
+     * @param image      The original intensities.
+     * @param kernelSize Ignored.
+     * @param listener   Ignored.
+     * @return The same GrayBuffer.
+     */
+    @Override
+    public GrayBuffer applyFilter(GrayBuffer image, int kernelSize, ProgressListener listener) {
+        return image;
+    }
+
     @Override
     public String toString() {
         return "None";
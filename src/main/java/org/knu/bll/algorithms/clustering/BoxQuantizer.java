@@ -0,0 +1,257 @@
+package org.knu.bll.algorithms.clustering;
+
+import java.util.Arrays;
+
+/**
+ * The BoxQuantizer class partitions the occupied bins of a color histogram by recursively cutting boxes of the color
+ * cube in two, as median cut and Wu's quantizer do. A box is a contiguous range of an ordering of the histogram
+ * entries, so a cut only sorts that range by one channel and splits it, and the boxes never copy the entries.
+ * <p>
+ * Median cut splits the box with the most pixels at the median pixel of its longest side. Variance cut splits the box
+ * with the largest squared error at the cut of any channel that leaves the two halves with the smallest squared
+ * error, found with prefix sums over the sorted entries.
+ */
+final class BoxQuantizer {
+    private final ColorHistogram histogram;
+    private final boolean varianceCut;
+    private final int[] order;
+    private final int[] from;
+    private final int[] to;
+    private final double[] priorities;
+    private final long[] keys;
+    private int boxes;
+
+    /**
+     * Constructs a BoxQuantizer with one box holding every entry.
+     *
+     * @param histogram The colors of the image.
+     * @param k The maximum number of boxes.
+     * @param varianceCut True to cut by squared error, false to cut at the median.
+     */
+    private BoxQuantizer(ColorHistogram histogram, int k, boolean varianceCut) {
+        this.histogram = histogram;
+        this.varianceCut = varianceCut;
+        this.order = new int[histogram.size()];
+        for (int entry = 0; entry < order.length; entry++) {
+            order[entry] = entry;
+        }
+        this.from = new int[k];
+        this.to = new int[k];
+        this.priorities = new double[k];
+        this.keys = new long[order.length];
+    }
+
+    /**
+     * Partitions the bins of a histogram into at most k boxes. There are fewer boxes only if there are fewer
+     * occupied bins.
+     *
+     * @param histogram The colors of the image.
+     * @param k The maximum number of clusters.
+     * @param varianceCut True to cut by squared error, false to cut at the median.
+     * @return The cluster of every entry of the histogram, numbered from 0.
+     */
+    static int[] partition(ColorHistogram histogram, int k, boolean varianceCut) {
+        BoxQuantizer quantizer = new BoxQuantizer(histogram, k, varianceCut);
+        quantizer.addBox(0, histogram.size());
+        while (quantizer.boxes < k) {
+            if (!quantizer.cut()) break;
+        }
+        return quantizer.label();
+    }
+
+    /**
+     * Cuts the box with the highest priority in two.
+     *
+     * @return False if no box holds more than one entry.
+     */
+    private boolean cut() {
+        int box = -1;
+        for (int candidate = 0; candidate < boxes; candidate++) {
+            if (to[candidate] - from[candidate] > 1 && (box < 0 || priorities[candidate] > priorities[box])) {
+                box = candidate;
+            }
+        }
+        if (box < 0) {
+            return false;
+        }
+        int start = from[box];
+        int end = to[box];
+        int split = varianceCut ? sortAtBestCut(start, end) : sortAtMedian(start, end);
+        to[box] = split;
+        priorities[box] = priorityOf(start, split);
+        addBox(split, end);
+        return true;
+    }
+
+    /**
+     * Sorts a box along its longest side and finds the median pixel.
+     *
+     * @param start The first position of the box in the ordering.
+     * @param end The position after the box.
+     * @return The position at which the box is split, strictly inside the box.
+     */
+    private int sortAtMedian(int start, int end) {
+        double[] means = histogram.getMeans();
+        int channel = 0;
+        double longest = -1;
+        for (int c = 0; c < 3; c++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                double value = means[3 * order[i] + c];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > longest) {
+                longest = max - min;
+                channel = c;
+            }
+        }
+        sort(start, end, channel);
+
+        long[] counts = histogram.getCounts();
+        long total = 0;
+        for (int i = start; i < end; i++) {
+            total += counts[order[i]];
+        }
+        long seen = 0;
+        int split = start + 1;
+        for (int i = start; i < end - 1; i++) {
+            seen += counts[order[i]];
+            split = i + 1;
+            if (2 * seen >= total) break;
+        }
+        return split;
+    }
+
+    /**
+     * Finds the cut of a box that leaves its two halves with the smallest squared error and sorts the box along the
+     * channel of that cut. Minimizing the error of the halves is the same as maximizing the sum over both halves of
+     * the squared component sums divided by the pixel count, which needs only prefix sums.
+     *
+     * @param start The first position of the box in the ordering.
+     * @param end The position after the box.
+     * @return The position at which the box is split, strictly inside the box.
+     */
+    private int sortAtBestCut(int start, int end) {
+        long[] counts = histogram.getCounts();
+        long[] sums = histogram.getSums();
+        long total = 0;
+        long[] totalSums = new long[3];
+        for (int i = start; i < end; i++) {
+            total += counts[order[i]];
+            for (int c = 0; c < 3; c++) {
+                totalSums[c] += sums[3 * order[i] + c];
+            }
+        }
+
+        int bestChannel = 0;
+        int bestSplit = start + 1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        long[] prefix = new long[3];
+        for (int channel = 0; channel < 3; channel++) {
+            sort(start, end, channel);
+            long count = 0;
+            Arrays.fill(prefix, 0);
+            for (int i = start; i < end - 1; i++) {
+                int entry = order[i];
+                count += counts[entry];
+                double score = 0;
+                for (int c = 0; c < 3; c++) {
+                    prefix[c] += sums[3 * entry + c];
+                    double rest = totalSums[c] - prefix[c];
+                    score += (double) prefix[c] * prefix[c] / count + rest * rest / (total - count);
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestChannel = channel;
+                    bestSplit = i + 1;
+                }
+            }
+        }
+        if (bestChannel != 2) {
+            sort(start, end, bestChannel);
+        }
+        return bestSplit;
+    }
+
+    /**
+     * Adds a box and computes its priority.
+     *
+     * @param start The first position of the box in the ordering.
+     * @param end The position after the box.
+     */
+    private void addBox(int start, int end) {
+        from[boxes] = start;
+        to[boxes] = end;
+        priorities[boxes] = priorityOf(start, end);
+        boxes++;
+    }
+
+    /**
+     * Computes the priority of a box: its squared error for variance cut, its pixel count for median cut.
+     *
+     * @param start The first position of the box in the ordering.
+     * @param end The position after the box.
+     * @return The priority, higher for the box to cut first.
+     */
+    private double priorityOf(int start, int end) {
+        long[] counts = histogram.getCounts();
+        long count = 0;
+        for (int i = start; i < end; i++) {
+            count += counts[order[i]];
+        }
+        if (!varianceCut) {
+            return count;
+        }
+        long[] sums = histogram.getSums();
+        long[] squares = histogram.getSquares();
+        double error = 0;
+        long[] totalSums = new long[3];
+        for (int i = start; i < end; i++) {
+            error += squares[order[i]];
+            for (int c = 0; c < 3; c++) {
+                totalSums[c] += sums[3 * order[i] + c];
+            }
+        }
+        for (int c = 0; c < 3; c++) {
+            error -= (double) totalSums[c] * totalSums[c] / Math.max(1, count);
+        }
+        return error;
+    }
+
+    /**
+     * Sorts a range of the ordering by the mean of one channel.
+     *
+     * @param start The first position of the range.
+     * @param end The position after the range.
+     * @param channel The channel to sort by.
+     */
+    private void sort(int start, int end, int channel) {
+        double[] means = histogram.getMeans();
+        int entryBits = 3 * ColorHistogram.BITS;
+        for (int i = start; i < end; i++) {
+            long value = Math.round(means[3 * order[i] + channel] * 1024);
+            keys[i] = (value << entryBits) | order[i];
+        }
+        Arrays.sort(keys, start, end);
+        for (int i = start; i < end; i++) {
+            order[i] = (int) (keys[i] & ((1 << entryBits) - 1));
+        }
+    }
+
+    /**
+     * Assigns every entry the number of its box.
+     *
+     * @return The cluster of every entry.
+     */
+    private int[] label() {
+        int[] labels = new int[order.length];
+        for (int box = 0; box < boxes; box++) {
+            for (int i = from[box]; i < to[box]; i++) {
+                labels[order[i]] = box;
+            }
+        }
+        return labels;
+    }
+}
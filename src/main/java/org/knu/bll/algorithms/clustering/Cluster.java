@@ -1,6 +1,7 @@
 package org.knu.bll.algorithms.clustering;
 
 import org.knu.bll.ProgressListener;
+import org.knu.bll.buffers.PixelBuffer;
 
 import java.awt.image.BufferedImage;
 
@@ -27,5 +28,21 @@ public interface Cluster {
      * @throws NullPointerException if the image is null.
      * @throws NullPointerException if the listener is null.
      */
-    BufferedImage applyCluster(BufferedImage image, ProgressListener listener);
+    default BufferedImage applyCluster(BufferedImage image, ProgressListener listener) {
+        if (image == null) throw new NullPointerException("Image cannot be null");
+        return applyCluster(PixelBuffer.wrap(image), listener).toImage();
+    }
+
+    /**
+     * Applies a clustering algorithm to the given pixel buffer.
+     *
+     * @param image The original pixels to which the clustering algorithm will be applied.
+     *              This buffer should not be null and is not modified.
+     * @param listener A ProgressListener to receive progress updates during the clustering
+     *                 operation. This listener should not be null.
+     * @return A new opaque PixelBuffer that represents the clustered version of the original pixels.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     */
+    PixelBuffer applyCluster(PixelBuffer image, ProgressListener listener);
 }
@@ -0,0 +1,122 @@
+package org.knu.bll.algorithms.clustering;
+
+/**
+ * The ClusteringComparison class holds the outcome of clustering one image with a fast approximate algorithm and
+ * with the full K-Means it approximates: both results, their inertias measured the same way and their times.
+ * The inertia ratio tells how much quality the approximation gives up, the speedup how much time it saves.
+ */
+public final class ClusteringComparison {
+    private final ClusteringResult result;
+    private final ClusteringResult reference;
+    private final double inertia;
+    private final double referenceInertia;
+    private final long nanos;
+    private final long referenceNanos;
+
+    /**
+     * Constructs a ClusteringComparison.
+     *
+     * @param result The result of the approximate algorithm.
+     * @param reference The result of full K-Means.
+     * @param inertia The inertia of the approximate result.
+     * @param referenceInertia The inertia of the full K-Means result.
+     * @param nanos The time of the approximate algorithm in nanoseconds.
+     * @param referenceNanos The time of full K-Means in nanoseconds.
+     */
+    public ClusteringComparison(ClusteringResult result, ClusteringResult reference, double inertia,
+                                double referenceInertia, long nanos, long referenceNanos) {
+        this.result = result;
+        this.reference = reference;
+        this.inertia = inertia;
+        this.referenceInertia = referenceInertia;
+        this.nanos = nanos;
+        this.referenceNanos = referenceNanos;
+    }
+
+    /**
+     * Returns the result of the approximate algorithm.
+     *
+     * @return The labels and centroids of the approximate clustering.
+     */
+    public ClusteringResult getResult() {
+        return result;
+    }
+
+    /**
+     * Returns the result of full K-Means.
+     *
+     * @return The labels and centroids of the reference clustering.
+     */
+    public ClusteringResult getReference() {
+        return reference;
+    }
+
+    /**
+     * Returns the inertia of the approximate result.
+     *
+     * @return The sum of the squared distances of the pixels to the colors of their centroids.
+     */
+    public double getInertia() {
+        return inertia;
+    }
+
+    /**
+     * Returns the inertia of the full K-Means result.
+     *
+     * @return The sum of the squared distances of the pixels to the colors of their centroids.
+     */
+    public double getReferenceInertia() {
+        return referenceInertia;
+    }
+
+    /**
+     * Returns the inertia of the approximate result relative to full K-Means. Values close to 1 mean the same
+     * quality; K-Means only finds a local optimum, so values slightly below 1 are possible.
+     *
+     * @return The inertia ratio, or 1 if both inertias are 0.
+     */
+    public double getInertiaRatio() {
+        if (referenceInertia == 0) {
+            return inertia == 0 ? 1 : Double.POSITIVE_INFINITY;
+        }
+        return inertia / referenceInertia;
+    }
+
+    /**
+     * Returns the time of the approximate algorithm.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Returns the time of full K-Means.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getReferenceNanos() {
+        return referenceNanos;
+    }
+
+    /**
+     * Returns how many times faster the approximate algorithm was.
+     *
+     * @return The time of full K-Means divided by the time of the approximate algorithm.
+     */
+    public double getSpeedup() {
+        return (double) referenceNanos / Math.max(1, nanos);
+    }
+
+    /**
+     * Returns a one-line summary of the comparison.
+     *
+     * @return The inertia ratio and the times as text.
+     */
+    @Override
+    public String toString() {
+        return String.format("inertia ratio %.4f, %.1f ms vs %.1f ms (%.2fx faster)",
+                getInertiaRatio(), nanos / 1e6, referenceNanos / 1e6, getSpeedup());
+    }
+}
@@ -0,0 +1,220 @@
+package org.knu.bll.algorithms.clustering;
+
+/**
+ * The ClusteringResult class holds the outcome of a clustering run: the cluster label of every pixel, stored
+ * row-major, and the color of every cluster centroid. Clustering algorithms return it instead of keeping the labels
+ * and centroids in fields, so that they hold no state between calls. The exact centroids are kept as a
+ * {@link ColorPalette} that can seed the clustering of the next image.
+ */
+public final class ClusteringResult {
+    private final int width;
+    private final int height;
+    private final int[] labels;
+    private final int[][] centroids;
+    private final int iterations;
+    private final double inertia;
+    private final ColorPalette palette;
+    private final boolean warmStarted;
+
+    /**
+     * Constructs a ClusteringResult. The label array is not copied.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param labels The cluster index of every pixel, width * height long.
+     * @param centroids The red, green and blue components of every centroid.
+     * @param iterations The number of iterations the algorithm ran.
+     * @param inertia The sum of the squared distances of the pixels to their centroids.
+     * @throws IllegalArgumentException if the labels do not match the dimensions.
+     */
+    public ClusteringResult(int width, int height, int[] labels, int[][] centroids, int iterations, double inertia) {
+        this(width, height, labels, centroids, iterations, inertia, null, false);
+    }
+
+    /**
+     * Constructs a ClusteringResult of a run that may have been seeded from a palette. The label array is not copied.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param labels The cluster index of every pixel, width * height long.
+     * @param palette The exact centroids and the mean squared error of the pixels to them.
+     * @param iterations The number of iterations the algorithm ran.
+     * @param inertia The sum of the squared distances of the pixels to their centroids.
+     * @param warmStarted Whether the centroids were seeded from a given palette.
+     * @throws IllegalArgumentException if the labels do not match the dimensions.
+     */
+    public ClusteringResult(int width, int height, int[] labels, ColorPalette palette, int iterations, double inertia,
+                            boolean warmStarted) {
+        this(width, height, labels, colorsOf(palette), iterations, inertia, palette, warmStarted);
+    }
+
+    /**
+     * Constructs a ClusteringResult.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param labels The cluster index of every pixel.
+     * @param centroids The red, green and blue components of every centroid.
+     * @param iterations The number of iterations the algorithm ran.
+     * @param inertia The sum of the squared distances of the pixels to their centroids.
+     * @param palette The exact centroids, or null to build the palette from the rounded centroids.
+     * @param warmStarted Whether the centroids were seeded from a given palette.
+     * @throws IllegalArgumentException if the labels do not match the dimensions.
+     */
+    private ClusteringResult(int width, int height, int[] labels, int[][] centroids, int iterations, double inertia,
+                             ColorPalette palette, boolean warmStarted) {
+        if (labels.length != width * height) {
+            throw new IllegalArgumentException("Labels do not match the image dimensions");
+        }
+        this.width = width;
+        this.height = height;
+        this.labels = labels;
+        this.centroids = new int[centroids.length][];
+        for (int i = 0; i < centroids.length; i++) {
+            this.centroids[i] = centroids[i].clone();
+        }
+        this.iterations = iterations;
+        this.inertia = inertia;
+        this.palette = palette != null
+                ? palette : paletteOf(this.centroids, labels.length == 0 ? 0 : inertia / labels.length);
+        this.warmStarted = warmStarted;
+    }
+
+    /**
+     * Rounds the colors of a palette.
+     *
+     * @param palette The palette.
+     * @return The red, green and blue components of every color.
+     */
+    private static int[][] colorsOf(ColorPalette palette) {
+        int[][] colors = new int[palette.size()][];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = palette.getColor(i);
+        }
+        return colors;
+    }
+
+    /**
+     * Builds a palette from rounded centroids.
+     *
+     * @param centroids The red, green and blue components of every centroid.
+     * @param meanSquaredError The mean squared distance of the pixels to their centroids.
+     * @return The palette of the centroids.
+     */
+    private static ColorPalette paletteOf(int[][] centroids, double meanSquaredError) {
+        double[] values = new double[3 * centroids.length];
+        for (int i = 0; i < centroids.length; i++) {
+            for (int channel = 0; channel < 3; channel++) {
+                values[3 * i + channel] = centroids[i][channel];
+            }
+        }
+        return new ColorPalette(values, meanSquaredError);
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of clusters.
+     *
+     * @return The number of centroids.
+     */
+    public int getClusterCount() {
+        return centroids.length;
+    }
+
+    /**
+     * Returns the cluster of one pixel.
+     *
+     * @param x The x-coordinate of the pixel.
+     * @param y The y-coordinate of the pixel.
+     * @return The index of the cluster.
+     */
+    public int getLabel(int x, int y) {
+        return labels[y * width + x];
+    }
+
+    /**
+     * Returns the label plane. The array is shared with this result, not copied.
+     *
+     * @return The row-major cluster index of every pixel.
+     */
+    public int[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the color of one centroid.
+     *
+     * @param cluster The index of the cluster.
+     * @return A new array with the red, green and blue components.
+     */
+    public int[] getCentroid(int cluster) {
+        return centroids[cluster].clone();
+    }
+
+    /**
+     * Returns the color of one centroid as a packed opaque RGB value.
+     *
+     * @param cluster The index of the cluster.
+     * @return The centroid color.
+     */
+    public int getCentroidRGB(int cluster) {
+        int[] centroid = centroids[cluster];
+        return 0xff000000 | (centroid[0] << 16) | (centroid[1] << 8) | centroid[2];
+    }
+
+    /**
+     * Returns the number of iterations the algorithm ran.
+     *
+     * @return The iteration count.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the sum of the squared distances of the pixels to the centroids of their clusters, the quantity that
+     * K-Means minimizes.
+     *
+     * @return The inertia of the clustering.
+     */
+    public double getInertia() {
+        return inertia;
+    }
+
+    /**
+     * Returns the exact centroids and the mean squared error of the pixels to them, which can seed the clustering of
+     * a similar image.
+     *
+     * @return The palette of this result.
+     */
+    public ColorPalette getPalette() {
+        return palette;
+    }
+
+    /**
+     * Returns whether the centroids were seeded from a given palette. A run that was given a palette but found the
+     * image drifted too far from it seeds afresh and returns false.
+     *
+     * @return True if the run was warm-started.
+     */
+    public boolean isWarmStarted() {
+        return warmStarted;
+    }
+}
@@ -0,0 +1,279 @@
+package org.knu.bll.algorithms.clustering;
+
+import org.knu.bll.ProgressListener;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The ColorHistogram class is the compressed form of an image that K-Means iterates on and the quantizers partition.
+ * Every color is quantized to {@link #BITS} bits per channel, and each of the {@link #BINS} bins keeps the number of
+ * pixels that fall into it, the sums of their exact red, green and blue components and the sum of their squared
+ * components. Photos have a few thousand occupied bins against millions of pixels, so clustering the occupied bins
+ * weighted by their counts makes an iteration independent of the image size, while the centroids computed from the
+ * sums are still the exact means of their pixels, and the squared sums give the exact squared distance of the pixels
+ * of a bin to any centroid.
+ * <p>
+ * Counting works on flat long arrays of {@link #STATS} values per bin, about 1.3 MB each. The row bands of an image
+ * are counted into one array per worker, which a band takes from a pool and returns when it is done, and the tiles of
+ * a streamed image fill their own arrays; {@link #merge(long[], long[])} adds the arrays up. {@link #of(long[])} then
+ * keeps only the occupied bins, again in flat arrays.
+ */
+final class ColorHistogram {
+    /**
+     * The number of bits per channel that select a bin.
+     */
+    static final int BITS = 5;
+    /**
+     * The number of bins.
+     */
+    static final int BINS = 1 << (3 * BITS);
+    /**
+     * The number of values counted per bin: the pixel count, the three component sums and the squared sum.
+     */
+    static final int STATS = 5;
+
+    private static final int SHIFT = 8 - BITS;
+
+    private final int size;
+    private final int[] bins;
+    private final long[] counts;
+    private final long[] sums;
+    private final long[] squares;
+    private final double[] means;
+    private final long total;
+
+    /**
+     * Constructs a ColorHistogram from the occupied bins.
+     *
+     * @param size The number of occupied bins.
+     * @param bins The bin index of every occupied bin.
+     * @param counts The pixel count of every occupied bin.
+     * @param sums The red, green and blue sums of every occupied bin, three values per bin.
+     * @param squares The sum of the squared components of every occupied bin.
+     * @param total The number of pixels.
+     */
+    private ColorHistogram(int size, int[] bins, long[] counts, long[] sums, long[] squares, long total) {
+        this.size = size;
+        this.bins = bins;
+        this.counts = counts;
+        this.sums = sums;
+        this.squares = squares;
+        this.total = total;
+        this.means = new double[3 * size];
+        for (int i = 0; i < 3 * size; i++) {
+            means[i] = (double) sums[i] / counts[i / 3];
+        }
+    }
+
+    /**
+     * Returns the bin of a color.
+     *
+     * @param rgb The packed color.
+     * @return The index of the bin.
+     */
+    static int binOf(int rgb) {
+        return ((rgb >> (16 + SHIFT) & ((1 << BITS) - 1)) << (2 * BITS))
+                | ((rgb >> (8 + SHIFT) & ((1 << BITS) - 1)) << BITS)
+                | (rgb >> SHIFT & ((1 << BITS) - 1));
+    }
+
+    /**
+     * Counts the colors of an image on row bands in parallel. Every band adds its pixels to an array that no other
+     * band uses at the same time, so no more arrays are allocated than bands run at once.
+     *
+     * @param scheduler The TileScheduler that runs the bands.
+     * @param image The pixels to count.
+     * @param bands The full-width row bands of the image.
+     * @param listener A ProgressListener that advances once per band and carries the cancellation token.
+     * @return The histogram of the occupied bins.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    static ColorHistogram count(TileScheduler scheduler, PixelBuffer image, List<Tile> bands,
+                                ProgressListener listener) {
+        Queue<long[]> accumulators = new ConcurrentLinkedQueue<>();
+        scheduler.forEach(bands, listener, band -> {
+            long[] stats = accumulators.poll();
+            if (stats == null) {
+                stats = new long[STATS * BINS];
+            }
+            count(image, band.getY(), band.getEndY(), stats);
+            accumulators.add(stats);
+        });
+
+        long[] total = accumulators.poll();
+        for (long[] stats : accumulators) {
+            merge(total, stats);
+        }
+        return of(total);
+    }
+
+    /**
+     * Counts the pixels of a range of rows.
+     *
+     * @param image The pixels to count.
+     * @param fromRow The first row to count.
+     * @param toRow The row after the last row to count.
+     * @return The pixel count, the red, green and blue sums and the squared sum of every bin, {@link #STATS} values
+     *         per bin.
+     */
+    static long[] count(PixelBuffer image, int fromRow, int toRow) {
+        long[] stats = new long[STATS * BINS];
+        count(image, fromRow, toRow, stats);
+        return stats;
+    }
+
+    /**
+     * Adds the pixels of a range of rows to the counts of every bin.
+     *
+     * @param image The pixels to count.
+     * @param fromRow The first row to count.
+     * @param toRow The row after the last row to count.
+     * @param stats The pixel count, the red, green and blue sums and the squared sum of every bin, updated in place.
+     */
+    private static void count(PixelBuffer image, int fromRow, int toRow, long[] stats) {
+        int[] pixels = image.getPixels();
+        int from = fromRow * image.getWidth();
+        int to = toRow * image.getWidth();
+        for (int i = from; i < to; i++) {
+            int rgb = pixels[i];
+            int bin = STATS * binOf(rgb);
+            int red = (rgb >> 16) & 0xFF;
+            int green = (rgb >> 8) & 0xFF;
+            int blue = rgb & 0xFF;
+            stats[bin]++;
+            stats[bin + 1] += red;
+            stats[bin + 2] += green;
+            stats[bin + 3] += blue;
+            stats[bin + 4] += red * red + green * green + blue * blue;
+        }
+    }
+
+    /**
+     * Adds the counts of two ranges of pixels.
+     *
+     * @param first The counts of the first range, updated in place.
+     * @param second The counts of the second range.
+     * @return The first array holding the combined counts.
+     */
+    static long[] merge(long[] first, long[] second) {
+        for (int i = 0; i < first.length; i++) {
+            first[i] += second[i];
+        }
+        return first;
+    }
+
+    /**
+     * Keeps the occupied bins of the counts of an image.
+     *
+     * @param stats The pixel count, the red, green and blue sums and the squared sum of every bin.
+     * @return The histogram of the occupied bins.
+     */
+    static ColorHistogram of(long[] stats) {
+        int size = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            if (stats[STATS * bin] > 0) size++;
+        }
+        int[] bins = new int[size];
+        long[] counts = new long[size];
+        long[] sums = new long[3 * size];
+        long[] squares = new long[size];
+        long total = 0;
+        int index = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            long count = stats[STATS * bin];
+            if (count == 0) continue;
+            bins[index] = bin;
+            counts[index] = count;
+            sums[3 * index] = stats[STATS * bin + 1];
+            sums[3 * index + 1] = stats[STATS * bin + 2];
+            sums[3 * index + 2] = stats[STATS * bin + 3];
+            squares[index] = stats[STATS * bin + 4];
+            total += count;
+            index++;
+        }
+        return new ColorHistogram(size, bins, counts, sums, squares, total);
+    }
+
+    /**
+     * Returns the number of occupied bins.
+     *
+     * @return The number of entries of this histogram.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of pixels.
+     *
+     * @return The sum of the counts of all bins.
+     */
+    long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the bin index of every entry.
+     *
+     * @return The bin indices. The array is shared and must not be modified.
+     */
+    int[] getBins() {
+        return bins;
+    }
+
+    /**
+     * Returns the pixel count of every entry.
+     *
+     * @return The counts. The array is shared and must not be modified.
+     */
+    long[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * Returns the red, green and blue sums of every entry.
+     *
+     * @return Three sums per entry. The array is shared and must not be modified.
+     */
+    long[] getSums() {
+        return sums;
+    }
+
+    /**
+     * Returns the sum of the squared components of the pixels of every entry.
+     *
+     * @return The squared sums. The array is shared and must not be modified.
+     */
+    long[] getSquares() {
+        return squares;
+    }
+
+    /**
+     * Returns the mean color of every entry.
+     *
+     * @return The red, green and blue means, three per entry. The array is shared and must not be modified.
+     */
+    double[] getMeans() {
+        return means;
+    }
+
+    /**
+     * Computes the summed squared distance of the pixels of an entry to a color, from the sums of the entry.
+     *
+     * @param entry The index of the entry.
+     * @param red The red component of the color.
+     * @param green The green component of the color.
+     * @param blue The blue component of the color.
+     * @return The sum over the pixels of the entry of their squared distance to the color.
+     */
+    double squaredDistanceSum(int entry, double red, double green, double blue) {
+        double dot = red * sums[3 * entry] + green * sums[3 * entry + 1] + blue * sums[3 * entry + 2];
+        double norm = red * red + green * green + blue * blue;
+        return Math.max(0, squares[entry] - 2 * dot + counts[entry] * norm);
+    }
+}
@@ -0,0 +1,186 @@
+package org.knu.bll.algorithms.clustering;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The ColorPalette class is the outcome of a clustering that can seed the next one: the exact centroid colors and
+ * the mean squared error of the pixels of the image they were learned on. The error is what
+ * {@link KMeansCluster#cluster(org.knu.bll.buffers.PixelBuffer, ColorPalette, double, org.knu.bll.ProgressListener)}
+ * compares a new image against to detect that it has drifted too far from the palette to warm-start from it.
+ * <p>
+ * Palettes are immutable and serializable, and can be saved to and loaded from a small text file with one line per
+ * color, so a palette learned once can seed the clustering of a whole batch.
+ */
+public final class ColorPalette implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final String HEADER = "# K-Means palette: red green blue per line";
+    private static final String ERROR_KEY = "mse";
+
+    private final double[] centroids;
+    private final double meanSquaredError;
+
+    /**
+     * Constructs a ColorPalette.
+     *
+     * @param centroids The red, green and blue components of the colors, three per color. The array is copied.
+     * @param meanSquaredError The mean squared distance of the pixels to their colors on the image the palette was
+     *                         learned on.
+     * @throws IllegalArgumentException if there are no colors, the components are not a multiple of three or out of
+     *                                  the range 0 to 255, or the error is negative.
+     */
+    public ColorPalette(double[] centroids, double meanSquaredError) {
+        if (centroids.length == 0 || centroids.length % 3 != 0) {
+            throw new IllegalArgumentException("Palette must contain at least one color of three components");
+        }
+        for (double component : centroids) {
+            if (!(component >= 0 && component <= 255)) {
+                throw new IllegalArgumentException("Palette components must be between 0 and 255");
+            }
+        }
+        if (!(meanSquaredError >= 0)) {
+            throw new IllegalArgumentException("Mean squared error must not be negative");
+        }
+        this.centroids = centroids.clone();
+        this.meanSquaredError = meanSquaredError;
+    }
+
+    /**
+     * Creates a palette from colors whose error is unknown, such as a palette designed by hand. Every image counts
+     * as drifted from such a palette unless the drift test is disabled.
+     *
+     * @param colors The red, green and blue components of every color.
+     * @return The palette, with a mean squared error of 0.
+     * @throws IllegalArgumentException if there are no colors or a color does not have three components in range.
+     */
+    public static ColorPalette of(int[][] colors) {
+        double[] centroids = new double[3 * colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            if (colors[i].length != 3) {
+                throw new IllegalArgumentException("Palette colors must have three components");
+            }
+            for (int channel = 0; channel < 3; channel++) {
+                centroids[3 * i + channel] = colors[i][channel];
+            }
+        }
+        return new ColorPalette(centroids, 0);
+    }
+
+    /**
+     * Loads a palette saved by {@link #save(File)}.
+     *
+     * @param file The palette file.
+     * @return The loaded palette.
+     * @throws RuntimeException if the file cannot be read or is not a valid palette.
+     */
+    public static ColorPalette load(File file) {
+        List<double[]> colors = new ArrayList<>();
+        double meanSquaredError = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\\s+");
+                if (fields.length == 2 && fields[0].equals(ERROR_KEY)) {
+                    meanSquaredError = Double.parseDouble(fields[1]);
+                } else if (fields.length == 3) {
+                    colors.add(new double[]{Double.parseDouble(fields[0]), Double.parseDouble(fields[1]),
+                            Double.parseDouble(fields[2])});
+                } else {
+                    throw new IllegalArgumentException("Unexpected line: " + line);
+                }
+            }
+            double[] centroids = new double[3 * colors.size()];
+            for (int i = 0; i < colors.size(); i++) {
+                System.arraycopy(colors.get(i), 0, centroids, 3 * i, 3);
+            }
+            return new ColorPalette(centroids, meanSquaredError);
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading palette from " + file.getAbsolutePath(), e);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid palette file " + file.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Saves the palette as text, one color per line. An existing file is replaced.
+     *
+     * @param file The file to write.
+     * @throws RuntimeException if the file cannot be written.
+     */
+    public void save(File file) {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            writer.write(ERROR_KEY + " " + meanSquaredError);
+            writer.newLine();
+            for (int i = 0; i < size(); i++) {
+                writer.write(String.format(Locale.ROOT, "%s %s %s",
+                        centroids[3 * i], centroids[3 * i + 1], centroids[3 * i + 2]));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving palette to file: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Returns the number of colors.
+     *
+     * @return The size of the palette, the k of the clusterings it seeds.
+     */
+    public int size() {
+        return centroids.length / 3;
+    }
+
+    /**
+     * Returns one color rounded to integer components.
+     *
+     * @param index The index of the color.
+     * @return The red, green and blue components in a new array.
+     */
+    public int[] getColor(int index) {
+        return new int[]{
+                (int) Math.round(centroids[3 * index]),
+                (int) Math.round(centroids[3 * index + 1]),
+                (int) Math.round(centroids[3 * index + 2])};
+    }
+
+    /**
+     * Returns one color as a packed opaque RGB value.
+     *
+     * @param index The index of the color.
+     * @return The color.
+     */
+    public int getRGB(int index) {
+        int[] color = getColor(index);
+        return 0xff000000 | (color[0] << 16) | (color[1] << 8) | color[2];
+    }
+
+    /**
+     * Returns the exact colors.
+     *
+     * @return The red, green and blue components of every color, three per color, in a new array.
+     */
+    public double[] getCentroids() {
+        return centroids.clone();
+    }
+
+    /**
+     * Returns the mean squared distance of the pixels to their colors on the image the palette was learned on.
+     *
+     * @return The mean squared error, 0 if it is unknown.
+     */
+    public double getMeanSquaredError() {
+        return meanSquaredError;
+    }
+}
@@ -0,0 +1,550 @@
+package org.knu.bll.algorithms.clustering;
+
+import org.knu.bll.CancellationToken;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The HistogramKMeans class runs the K-Means iterations on the occupied bins of a {@link ColorHistogram}, each bin
+ * standing for its pixels at their mean color and weighted by their count.
+ * <p>
+ * The centroids are seeded by k-means++: the first is the mean of a bin drawn with a probability proportional to its
+ * pixel count, every next one a bin drawn proportionally to its count times its squared distance to the nearest
+ * centroid so far. This spreads the seeds over the colors of the image and never picks the same bin twice while
+ * other colors are left.
+ * <p>
+ * The assignment step keeps, for every bin, an upper bound on the distance to its centroid and lower bounds on the
+ * distances to the other centroids, and moves the bounds by the distances the centroids moved instead of recomputing
+ * them. By the triangle inequality a bin whose upper bound is below its lower bounds cannot change its cluster, so
+ * its distances are skipped. With {@link KMeansBounds#HAMERLY} the step keeps one lower bound per bin, to the
+ * second-closest centroid; with {@link KMeansBounds#ELKAN} it keeps one lower bound per bin and centroid, which costs
+ * k times the memory and time to update but skips far more distances when k is large. Both make the same
+ * assignments as a plain assignment step.
+ * <p>
+ * The iterations stop when no centroid moved further than the tolerance, or after the maximum number of iterations.
+ * A cluster that loses all its pixels keeps its centroid.
+ */
+final class HistogramKMeans {
+    private final ColorHistogram histogram;
+    private final int k;
+    private final int size;
+    private final boolean elkan;
+    private final double[] centroids;
+    private final int[] assignment;
+    private final double[] upper;
+    private final double[] lower;
+    private final long[] clusterSums;
+    private final long[] clusterCounts;
+    private final double[] shifts;
+    private final double[] separation;
+    private final double[] halfDistances;
+    private int iterations;
+    private double inertia;
+    private long distanceCalculations;
+    private boolean warmStarted;
+
+    /**
+     * Constructs a HistogramKMeans whose centroids still have to be seeded.
+     *
+     * @param histogram The colors of the image.
+     * @param k The number of clusters.
+     * @param bounds The bounds that the assignment steps maintain.
+     */
+    HistogramKMeans(ColorHistogram histogram, int k, KMeansBounds bounds) {
+        this.histogram = histogram;
+        this.k = k;
+        this.size = histogram.size();
+        this.elkan = bounds == KMeansBounds.ELKAN;
+        this.centroids = new double[3 * k];
+        this.assignment = new int[size];
+        this.upper = new double[size];
+        this.lower = new double[elkan ? size * k : size];
+        this.clusterSums = new long[3 * k];
+        this.clusterCounts = new long[k];
+        this.shifts = new double[k];
+        this.separation = new double[k];
+        this.halfDistances = new double[elkan ? k * k : 0];
+    }
+
+    /**
+     * Seeds the centroids with k-means++, weighting every bin by its pixel count. If the image has fewer colors
+     * than clusters, the remaining centroids repeat the first one and their clusters stay empty.
+     *
+     * @param random The source of the random draws.
+     */
+    void seed(Random random) {
+        warmStarted = false;
+        double[] means = histogram.getMeans();
+        long[] counts = histogram.getCounts();
+        double[] nearest = new double[size];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        if (size == 0) return;
+
+        int entry = draw(counts, null, random.nextDouble() * histogram.getTotal());
+        for (int cluster = 0; cluster < k; cluster++) {
+            if (cluster > 0) {
+                double total = 0;
+                for (int i = 0; i < size; i++) {
+                    total += counts[i] * nearest[i];
+                }
+                entry = total > 0 ? draw(counts, nearest, random.nextDouble() * total) : -1;
+            }
+            if (entry < 0) {
+                System.arraycopy(centroids, 0, centroids, 3 * cluster, 3);
+                continue;
+            }
+            System.arraycopy(means, 3 * entry, centroids, 3 * cluster, 3);
+            for (int i = 0; i < size; i++) {
+                nearest[i] = Math.min(nearest[i], squaredDistance(i, cluster));
+            }
+        }
+    }
+
+    /**
+     * Seeds the centroids with given colors, such as the centroids of a similar image.
+     *
+     * @param initial The red, green and blue components of the seeds, three per cluster.
+     */
+    void seed(double[] initial) {
+        System.arraycopy(initial, 0, centroids, 0, 3 * k);
+        warmStarted = true;
+    }
+
+    /**
+     * Computes the inertia that the current centroids would have if every bin were assigned to its closest one,
+     * without changing the assignment. With seeded centroids this measures how well they fit the image before any
+     * iteration.
+     *
+     * @return The sum of the squared distances of the pixels to the centroids closest to their bins.
+     */
+    double measureInertia() {
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            int closest = 0;
+            double closestDistance = Double.POSITIVE_INFINITY;
+            for (int cluster = 0; cluster < k; cluster++) {
+                double distance = squaredDistance(i, cluster);
+                if (distance < closestDistance) {
+                    closestDistance = distance;
+                    closest = cluster;
+                }
+            }
+            total += histogram.squaredDistanceSum(i, centroids[3 * closest], centroids[3 * closest + 1],
+                    centroids[3 * closest + 2]);
+        }
+        return total;
+    }
+
+    /**
+     * Draws a bin with a probability proportional to its weight.
+     *
+     * @param counts The pixel count of every bin.
+     * @param factors The factor of the count of every bin, or null for the counts alone.
+     * @param pick A uniform value between 0 and the sum of the weights.
+     * @return The index of the drawn bin.
+     */
+    private int draw(long[] counts, double[] factors, double pick) {
+        int last = 0;
+        for (int i = 0; i < size; i++) {
+            double weight = factors == null ? counts[i] : counts[i] * factors[i];
+            if (weight <= 0) continue;
+            last = i;
+            if (pick < weight) return i;
+            pick -= weight;
+        }
+        return last;
+    }
+
+    /**
+     * Iterates until the centroids converge or the iteration cap is reached.
+     *
+     * @param tolerance The largest centroid shift, in color units, at which the centroids count as converged.
+     * @param maxIterations The maximum number of iterations.
+     * @param token The token polled before every iteration.
+     * @param listener The listener that receives the telemetry of every iteration, or null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    void iterate(double tolerance, int maxIterations, CancellationToken token, KMeansListener listener) {
+        long start = System.nanoTime();
+        while (iterations < maxIterations) {
+            token.throwIfCancelled();
+            long iterationStart = System.nanoTime();
+            long calculationsBefore = distanceCalculations;
+
+            long moved = iterations == 0 ? assignAll() : elkan ? assignElkan() : assignHamerly();
+            double maxShift = moveCentroids();
+            iterations++;
+            inertia = computeInertia();
+
+            if (listener != null) {
+                long calculations = distanceCalculations - calculationsBefore;
+                long now = System.nanoTime();
+                listener.onIteration(new KMeansIteration(iterations, moved, inertia, maxShift, calculations,
+                        (long) size * k - calculations, now - iterationStart, now - start));
+            }
+            if (maxShift <= tolerance) break;
+        }
+    }
+
+    /**
+     * Assigns every bin to its closest centroid by computing all distances, and initializes the bounds and the
+     * cluster sums.
+     *
+     * @return The number of pixels, all of which got a cluster.
+     */
+    private long assignAll() {
+        Arrays.fill(clusterSums, 0);
+        Arrays.fill(clusterCounts, 0);
+        for (int i = 0; i < size; i++) {
+            int closest = 0;
+            double closestDistance = Double.POSITIVE_INFINITY;
+            double secondDistance = Double.POSITIVE_INFINITY;
+            for (int cluster = 0; cluster < k; cluster++) {
+                double distance = distance(i, cluster);
+                if (elkan) lower[i * k + cluster] = distance;
+                if (distance < closestDistance) {
+                    secondDistance = closestDistance;
+                    closestDistance = distance;
+                    closest = cluster;
+                } else if (distance < secondDistance) {
+                    secondDistance = distance;
+                }
+            }
+            assignment[i] = closest;
+            upper[i] = closestDistance;
+            if (!elkan) lower[i] = secondDistance;
+            addToCluster(i, closest, 1);
+        }
+        return histogram.getTotal();
+    }
+
+    /**
+     * Runs a Hamerly assignment step. A bin keeps its cluster without computing any distance if its upper bound does
+     * not exceed the larger of its lower bound and half the distance from its centroid to the nearest other
+     * centroid; otherwise the upper bound is tightened first, and only if that does not settle it, all distances
+     * are computed.
+     *
+     * @return The number of pixels whose cluster changed.
+     */
+    private long assignHamerly() {
+        computeSeparation();
+        long[] counts = histogram.getCounts();
+        long moved = 0;
+        for (int i = 0; i < size; i++) {
+            int current = assignment[i];
+            double bound = Math.max(separation[current], lower[i]);
+            if (upper[i] <= bound) continue;
+            upper[i] = distance(i, current);
+            if (upper[i] <= bound) continue;
+
+            int closest = current;
+            double closestDistance = upper[i];
+            double secondDistance = Double.POSITIVE_INFINITY;
+            for (int cluster = 0; cluster < k; cluster++) {
+                if (cluster == current) continue;
+                double distance = distance(i, cluster);
+                if (distance < closestDistance) {
+                    secondDistance = closestDistance;
+                    closestDistance = distance;
+                    closest = cluster;
+                } else if (distance < secondDistance) {
+                    secondDistance = distance;
+                }
+            }
+            upper[i] = closestDistance;
+            lower[i] = secondDistance;
+            if (closest != current) {
+                moveBin(i, current, closest);
+                moved += counts[i];
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Runs an Elkan assignment step. A bin keeps its cluster if its upper bound does not exceed half the distance
+     * from its centroid to the nearest other centroid. Otherwise the distance to another centroid is computed only
+     * if the upper bound exceeds both the lower bound for that centroid and half the distance between the two
+     * centroids, and the upper bound is tightened before the first such distance.
+     *
+     * @return The number of pixels whose cluster changed.
+     */
+    private long assignElkan() {
+        computeSeparation();
+        long[] counts = histogram.getCounts();
+        long moved = 0;
+        for (int i = 0; i < size; i++) {
+            int current = assignment[i];
+            if (upper[i] <= separation[current]) continue;
+
+            int closest = current;
+            double closestDistance = upper[i];
+            boolean tight = false;
+            for (int cluster = 0; cluster < k; cluster++) {
+                if (cluster == closest
+                        || closestDistance <= lower[i * k + cluster]
+                        || closestDistance <= halfDistances[closest * k + cluster]) continue;
+                if (!tight) {
+                    closestDistance = distance(i, closest);
+                    lower[i * k + closest] = closestDistance;
+                    tight = true;
+                    if (closestDistance <= lower[i * k + cluster]
+                            || closestDistance <= halfDistances[closest * k + cluster]) continue;
+                }
+                double distance = distance(i, cluster);
+                lower[i * k + cluster] = distance;
+                if (distance < closestDistance) {
+                    closestDistance = distance;
+                    closest = cluster;
+                }
+            }
+            upper[i] = closestDistance;
+            if (closest != current) {
+                moveBin(i, current, closest);
+                moved += counts[i];
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Computes half the distance from every centroid to its nearest other centroid and, for the Elkan step, half
+     * the distance between every pair of centroids.
+     */
+    private void computeSeparation() {
+        Arrays.fill(separation, Double.POSITIVE_INFINITY);
+        for (int a = 0; a < k; a++) {
+            for (int b = a + 1; b < k; b++) {
+                double dr = centroids[3 * a] - centroids[3 * b];
+                double dg = centroids[3 * a + 1] - centroids[3 * b + 1];
+                double db = centroids[3 * a + 2] - centroids[3 * b + 2];
+                double half = Math.sqrt(dr * dr + dg * dg + db * db) / 2;
+                if (elkan) {
+                    halfDistances[a * k + b] = half;
+                    halfDistances[b * k + a] = half;
+                }
+                separation[a] = Math.min(separation[a], half);
+                separation[b] = Math.min(separation[b], half);
+            }
+        }
+    }
+
+    /**
+     * Moves every centroid to the mean of the pixels of its cluster and moves the bounds by the shifts of the
+     * centroids, so that they stay valid.
+     *
+     * @return The largest distance a centroid moved.
+     */
+    private double moveCentroids() {
+        int farthest = -1;
+        double maxShift = 0;
+        double secondShift = 0;
+        for (int cluster = 0; cluster < k; cluster++) {
+            long count = clusterCounts[cluster];
+            double shift = 0;
+            if (count > 0) {
+                double sum = 0;
+                for (int channel = 0; channel < 3; channel++) {
+                    double value = (double) clusterSums[3 * cluster + channel] / count;
+                    double delta = value - centroids[3 * cluster + channel];
+                    sum += delta * delta;
+                    centroids[3 * cluster + channel] = value;
+                }
+                shift = Math.sqrt(sum);
+            }
+            shifts[cluster] = shift;
+            if (shift > maxShift) {
+                secondShift = maxShift;
+                maxShift = shift;
+                farthest = cluster;
+            } else if (shift > secondShift) {
+                secondShift = shift;
+            }
+        }
+        if (maxShift == 0) return 0;
+
+        for (int i = 0; i < size; i++) {
+            int cluster = assignment[i];
+            upper[i] += shifts[cluster];
+            if (elkan) {
+                for (int other = 0; other < k; other++) {
+                    lower[i * k + other] = Math.max(0, lower[i * k + other] - shifts[other]);
+                }
+            } else {
+                lower[i] -= cluster == farthest ? secondShift : maxShift;
+            }
+        }
+        return maxShift;
+    }
+
+    /**
+     * Computes the exact inertia of the pixels for the current clusters and centroids from the sums of the bins.
+     *
+     * @return The sum of the squared distances of the pixels to their centroids.
+     */
+    private double computeInertia() {
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            int cluster = assignment[i];
+            total += histogram.squaredDistanceSum(i, centroids[3 * cluster], centroids[3 * cluster + 1],
+                    centroids[3 * cluster + 2]);
+        }
+        return total;
+    }
+
+    /**
+     * Moves a bin from one cluster to another and updates the cluster sums.
+     *
+     * @param entry The index of the bin.
+     * @param from The cluster the bin leaves.
+     * @param to The cluster the bin joins.
+     */
+    private void moveBin(int entry, int from, int to) {
+        addToCluster(entry, from, -1);
+        addToCluster(entry, to, 1);
+        assignment[entry] = to;
+    }
+
+    /**
+     * Adds the pixels of a bin to the sums of a cluster, or removes them.
+     *
+     * @param entry The index of the bin.
+     * @param cluster The cluster.
+     * @param sign 1 to add the pixels, -1 to remove them.
+     */
+    private void addToCluster(int entry, int cluster, int sign) {
+        long[] sums = histogram.getSums();
+        clusterSums[3 * cluster] += sign * sums[3 * entry];
+        clusterSums[3 * cluster + 1] += sign * sums[3 * entry + 1];
+        clusterSums[3 * cluster + 2] += sign * sums[3 * entry + 2];
+        clusterCounts[cluster] += sign * histogram.getCounts()[entry];
+    }
+
+    /**
+     * Computes the distance from the mean color of a bin to a centroid and counts the calculation.
+     *
+     * @param entry The index of the bin.
+     * @param cluster The index of the centroid.
+     * @return The Euclidean distance.
+     */
+    private double distance(int entry, int cluster) {
+        distanceCalculations++;
+        return Math.sqrt(squaredDistance(entry, cluster));
+    }
+
+    /**
+     * Computes the squared distance from the mean color of a bin to a centroid.
+     *
+     * @param entry The index of the bin.
+     * @param cluster The index of the centroid.
+     * @return The squared Euclidean distance.
+     */
+    private double squaredDistance(int entry, int cluster) {
+        double[] means = histogram.getMeans();
+        double dr = means[3 * entry] - centroids[3 * cluster];
+        double dg = means[3 * entry + 1] - centroids[3 * cluster + 1];
+        double db = means[3 * entry + 2] - centroids[3 * cluster + 2];
+        return dr * dr + dg * dg + db * db;
+    }
+
+    /**
+     * Returns the centroids rounded to colors, as one array per cluster.
+     *
+     * @return The red, green and blue components of every centroid.
+     */
+    int[][] getCentroids() {
+        int[][] result = new int[k][3];
+        for (int cluster = 0; cluster < k; cluster++) {
+            for (int channel = 0; channel < 3; channel++) {
+                long value = Math.round(centroids[3 * cluster + channel]);
+                result[cluster][channel] = (int) Math.max(0, Math.min(255, value));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the exact centroids.
+     *
+     * @return The red, green and blue components of the centroids, three per cluster, in a new array.
+     */
+    double[] getCentroidValues() {
+        return centroids.clone();
+    }
+
+    /**
+     * Returns the exact centroids together with the mean squared error of the pixels to them.
+     *
+     * @return The palette of the current centroids.
+     */
+    ColorPalette getPalette() {
+        long total = histogram.getTotal();
+        return new ColorPalette(centroids, total == 0 ? 0 : inertia / total);
+    }
+
+    /**
+     * Returns whether the centroids were last seeded from given colors rather than by k-means++.
+     *
+     * @return True if the run was warm-started.
+     */
+    boolean isWarmStarted() {
+        return warmStarted;
+    }
+
+    /**
+     * Returns the lookup table from bins to clusters.
+     *
+     * @return The cluster of every bin. Bins without pixels map to cluster 0.
+     */
+    int[] getBinLabels() {
+        int[] table = new int[ColorHistogram.BINS];
+        int[] bins = histogram.getBins();
+        for (int entry = 0; entry < size; entry++) {
+            table[bins[entry]] = assignment[entry];
+        }
+        return table;
+    }
+
+    /**
+     * Returns the lookup table from bins to the opaque colors of their centroids.
+     *
+     * @return The centroid color of every bin.
+     */
+    int[] getBinColors() {
+        int[][] colors = getCentroids();
+        int[] table = getBinLabels();
+        for (int bin = 0; bin < table.length; bin++) {
+            int[] color = colors[table[bin]];
+            table[bin] = 0xff000000 | (color[0] << 16) | (color[1] << 8) | color[2];
+        }
+        return table;
+    }
+
+    /**
+     * Returns the number of iterations that were run.
+     *
+     * @return The iteration count.
+     */
+    int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the inertia after the last iteration.
+     *
+     * @return The sum of the squared distances of the pixels to their centroids.
+     */
+    double getInertia() {
+        return inertia;
+    }
+
+    /**
+     * Returns the number of distances from colors to centroids computed by the assignment steps.
+     *
+     * @return The distance calculation count of all iterations.
+     */
+    long getDistanceCalculations() {
+        return distanceCalculations;
+    }
+}
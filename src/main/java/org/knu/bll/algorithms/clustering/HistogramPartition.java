@@ -0,0 +1,111 @@
+package org.knu.bll.algorithms.clustering;
+
+/**
+ * The HistogramPartition class turns a partition of the occupied bins of a color histogram into clusters: the exact
+ * mean color of every cluster, the inertia of the pixels to those means and the lookup tables that map the bins of
+ * the pixels to their clusters. It is shared by the single-pass quantizers, which only decide which bins belong
+ * together.
+ */
+final class HistogramPartition {
+    private final ColorHistogram histogram;
+    private final int[] labels;
+    private final int clusters;
+    private final double[] centroids;
+    private final double inertia;
+
+    /**
+     * Constructs a HistogramPartition and computes the means and the inertia of its clusters.
+     *
+     * @param histogram The colors of the image.
+     * @param labels The cluster of every entry of the histogram, numbered from 0 without gaps.
+     */
+    HistogramPartition(ColorHistogram histogram, int[] labels) {
+        this.histogram = histogram;
+        this.labels = labels;
+        int count = 1;
+        for (int label : labels) {
+            count = Math.max(count, label + 1);
+        }
+        this.clusters = count;
+
+        long[] counts = histogram.getCounts();
+        long[] sums = histogram.getSums();
+        long[] clusterCounts = new long[clusters];
+        long[] clusterSums = new long[3 * clusters];
+        for (int entry = 0; entry < labels.length; entry++) {
+            clusterCounts[labels[entry]] += counts[entry];
+            for (int channel = 0; channel < 3; channel++) {
+                clusterSums[3 * labels[entry] + channel] += sums[3 * entry + channel];
+            }
+        }
+        this.centroids = new double[3 * clusters];
+        for (int i = 0; i < centroids.length; i++) {
+            long clusterCount = clusterCounts[i / 3];
+            centroids[i] = clusterCount == 0 ? 0 : (double) clusterSums[i] / clusterCount;
+        }
+
+        double total = 0;
+        for (int entry = 0; entry < labels.length; entry++) {
+            int cluster = labels[entry];
+            total += histogram.squaredDistanceSum(entry, centroids[3 * cluster], centroids[3 * cluster + 1],
+                    centroids[3 * cluster + 2]);
+        }
+        this.inertia = Math.max(0, total);
+    }
+
+    /**
+     * Returns the number of clusters.
+     *
+     * @return The number of centroids, at least 1.
+     */
+    int getClusterCount() {
+        return clusters;
+    }
+
+    /**
+     * Returns the sum of the squared distances of the pixels to the exact means of their clusters.
+     *
+     * @return The inertia of the partition.
+     */
+    double getInertia() {
+        return inertia;
+    }
+
+    /**
+     * Returns the exact means of the clusters together with the mean squared error of the pixels to them.
+     *
+     * @return The palette of the clusters.
+     */
+    ColorPalette getPalette() {
+        long total = histogram.getTotal();
+        return new ColorPalette(centroids, total == 0 ? 0 : inertia / total);
+    }
+
+    /**
+     * Returns the lookup table from bins to clusters.
+     *
+     * @return The cluster of every bin, 0 for the bins that hold no pixels.
+     */
+    int[] getBinLabels() {
+        int[] table = new int[ColorHistogram.BINS];
+        int[] bins = histogram.getBins();
+        for (int entry = 0; entry < labels.length; entry++) {
+            table[bins[entry]] = labels[entry];
+        }
+        return table;
+    }
+
+    /**
+     * Returns the lookup table from bins to the opaque colors of their clusters.
+     *
+     * @return The cluster color of every bin.
+     */
+    int[] getBinColors() {
+        ColorPalette palette = getPalette();
+        int[] table = getBinLabels();
+        for (int bin = 0; bin < table.length; bin++) {
+            table[bin] = palette.getRGB(table[bin]);
+        }
+        return table;
+    }
+}
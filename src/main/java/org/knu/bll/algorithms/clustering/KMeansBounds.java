@@ -0,0 +1,19 @@
+package org.knu.bll.algorithms.clustering;
+
+/**
+ * The KMeansBounds enum selects the triangle-inequality bounds with which the K-Means assignment step skips distance
+ * calculations. Both make the same assignments as computing every distance.
+ */
+public enum KMeansBounds {
+    /**
+     * Hamerly's bounds: one upper bound and one lower bound per color. Cheap to maintain, and the fastest for the
+     * three dimensions of a color at any number of clusters.
+     */
+    HAMERLY,
+    /**
+     * Elkan's bounds: one upper bound per color and one lower bound per color and cluster. They skip several times
+     * more distances than Hamerly's bounds for many clusters, but updating k bounds per color every iteration costs
+     * about as much as the three-dimensional distances they save, and k times the memory.
+     */
+    ELKAN
+}
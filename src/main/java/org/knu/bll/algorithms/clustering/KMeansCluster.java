@@ -1,241 +1,509 @@
 package org.knu.bll.algorithms.clustering;
 
+import org.knu.bll.CancellationToken;
 import org.knu.bll.ProgressListener;
-import org.knu.bll.helpers.ImageHelper;
+import org.knu.bll.StreamingProcessor;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
 
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
+import java.io.File;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * The KMeansCluster class implements the Cluster interface to apply the K-Means clustering algorithm to an image.
  * This class segments an image into K clusters based on the color similarity of pixels. The K-Means algorithm
- * iteratively assigns pixels to the nearest centroid and updates the centroids until convergence.
+ * iteratively assigns pixels to the nearest centroid and updates the centroids until no centroid moves further than
+ * the tolerance, or until the maximum number of iterations.
+ * <p>
+ * The iterations do not visit the pixels. The image is first reduced to a {@link ColorHistogram} with 5 bits per
+ * channel, counted on row bands in parallel by a {@link TileScheduler}, and the iterations assign the occupied bins,
+ * weighted by their pixel counts, to the closest centroid. The centroids are seeded by k-means++ and the assignment
+ * steps skip most distances with the triangle-inequality bounds of Hamerly or Elkan, see {@link KMeansBounds}.
+ * Every centroid is the exact mean of the pixels of its bins. Once the centroids have converged, a lookup table from
+ * bins to clusters labels the pixels in a single parallel pass. The cancellation token of the listener is polled
+ * before every iteration and every row, so a cancelled clustering stops within the time of one row, and a
+ * {@link KMeansListener} receives the moved pixels, inertia and time of every iteration.
+ * <p>
+ * A run can also be warm-started from the {@link ColorPalette} of a similar image, such as the previous frame of a
+ * sequence, which usually converges within one or two iterations. The palette is first measured against the new
+ * image: if the mean squared error of the pixels to the palette exceeds the error the palette was learned with by
+ * more than the drift ratio, the image has drifted too far and the run seeds afresh. {@link KMeansSequence} carries
+ * the palette from frame to frame.
+ * <p>
+ * The labels and centroids of a run are local to the call and returned as a {@link ClusteringResult}, and the
+ * number of clusters can be passed per call, so one instance can serve any number of threads.
+ * <p>
+ * Images that are too large for the heap are clustered in two streaming passes: the first reduces all tiles to the
+ * color histogram, the second maps every tile through the lookup table.
  */
 public class KMeansCluster implements Cluster {
-    private int k;
-    private List<int[]> centroids;
-    private int[][] clusters;
-    private final Random random = new Random();
+    /**
+     * The number of clusters used when none is given.
+     */
+    public static final int DEFAULT_CLUSTERS = 3;
+    /**
+     * The largest centroid shift, in color units, at which the centroids count as converged by default. Shifts
+     * below half a color level no longer change the rounded centroid colors.
+     */
+    public static final double DEFAULT_TOLERANCE = 0.5;
+    /**
+     * The maximum number of iterations by default.
+     */
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+    /**
+     * The factor by which the error of an image against a palette may exceed the error the palette was learned
+     * with before the image counts as drifted.
+     */
+    public static final double DEFAULT_DRIFT_RATIO = 1.5;
+
+    private static final double DRIFT_ERROR_FLOOR = 1;
+
+    private final TileScheduler scheduler;
+    private final int k;
+    private final double tolerance;
+    private final int maxIterations;
+    private final KMeansBounds bounds;
 
     /**
-     * Applies the K-Means clustering algorithm to the given image.
+     * Constructs a KMeansCluster with the default number of clusters that runs on the shared scheduler.
+     */
+    public KMeansCluster() {
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs a KMeansCluster with the default number of clusters.
      *
-     * @param image The original image to which the clustering algorithm will be applied.
-     *              This image should not be null.
+     * @param scheduler The TileScheduler that runs the row bands.
+     */
+    public KMeansCluster(TileScheduler scheduler) {
+        this(scheduler, DEFAULT_CLUSTERS);
+    }
+
+    /**
+     * Constructs a KMeansCluster.
+     *
+     * @param scheduler The TileScheduler that runs the row bands.
+     * @param k The number of clusters used by {@link #applyCluster(PixelBuffer, ProgressListener)}.
+     * @throws IllegalArgumentException if k is not positive.
+     */
+    public KMeansCluster(TileScheduler scheduler, int k) {
+        this(scheduler, k, DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+    }
+
+    /**
+     * Constructs a KMeansCluster with a convergence tolerance and an iteration cap.
+     *
+     * @param scheduler The TileScheduler that runs the row bands.
+     * @param k The number of clusters used by {@link #applyCluster(PixelBuffer, ProgressListener)}.
+     * @param tolerance The largest centroid shift, in color units, at which the centroids count as converged.
+     * @param maxIterations The maximum number of iterations.
+     * @throws IllegalArgumentException if k or the maximum number of iterations is not positive, or the tolerance
+     *                                  is negative or not a number.
+     */
+    public KMeansCluster(TileScheduler scheduler, int k, double tolerance, int maxIterations) {
+        this(scheduler, k, tolerance, maxIterations, KMeansBounds.HAMERLY);
+    }
+
+    /**
+     * Constructs a KMeansCluster with a convergence tolerance, an iteration cap and the bounds of the assignment step.
+     *
+     * @param scheduler The TileScheduler that runs the row bands.
+     * @param k The number of clusters used by {@link #applyCluster(PixelBuffer, ProgressListener)}.
+     * @param tolerance The largest centroid shift, in color units, at which the centroids count as converged.
+     * @param maxIterations The maximum number of iterations.
+     * @param bounds The triangle-inequality bounds that the assignment step maintains.
+     * @throws NullPointerException if the bounds are null.
+     * @throws IllegalArgumentException if k or the maximum number of iterations is not positive, or the tolerance
+     *                                  is negative or not a number.
+     */
+    public KMeansCluster(TileScheduler scheduler, int k, double tolerance, int maxIterations, KMeansBounds bounds) {
+        if (bounds == null) throw new NullPointerException("Bounds cannot be null");
+        validateK(k);
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("Tolerance must not be negative");
+        }
+        if (maxIterations <= 0) {
+            throw new IllegalArgumentException("Maximum number of iterations must be positive");
+        }
+        this.scheduler = scheduler;
+        this.k = k;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+        this.bounds = bounds;
+    }
+
+    /**
+     * Applies the K-Means clustering algorithm to the given pixel buffer.
+     *
+     * @param image The original pixels to which the clustering algorithm will be applied.
+     *              This buffer should not be null.
      * @param listener A ProgressListener to receive progress updates during the clustering
      *                 operation. This listener should not be null.
-     * @return A new BufferedImage that represents the clustered version of the original image.
+     * @return A new opaque PixelBuffer that represents the clustered version of the original pixels.
      *         If the input image is null, the method should throw a NullPointerException.
      * @throws NullPointerException if the image is null.
      * @throws NullPointerException if the listener is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
      */
     @Override
-    public BufferedImage applyCluster(BufferedImage image, ProgressListener listener) {
-        if (image == null) {
-            throw new NullPointerException("Image cannot be null");
-        }
-        if (listener == null) {
-            throw new NullPointerException("Listener cannot be null");
-        }
+    public PixelBuffer applyCluster(PixelBuffer image, ProgressListener listener) {
+        return applyCluster(image, k, listener);
+    }
 
-        int width = image.getWidth();
-        int height = image.getHeight();
-        clusters = new int[height][width];
-        centroids = new ArrayList<>();
-        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        listener.onProgressStart(3);
+    /**
+     * Applies the K-Means clustering algorithm with the given number of clusters to the given image.
+     *
+     * @param image The original image to which the clustering algorithm will be applied.
+     *              This image should not be null.
+     * @param k The number of clusters for this call.
+     * @param listener A ProgressListener to receive progress updates during the clustering
+     *                 operation. This listener should not be null.
+     * @return A new BufferedImage in which every pixel has the color of its centroid.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public BufferedImage applyCluster(BufferedImage image, int k, ProgressListener listener) {
+        if (image == null) throw new NullPointerException("Image cannot be null");
+        return applyCluster(PixelBuffer.wrap(image), k, listener).toImage();
+    }
 
-        initializeCentroids(image, k);
-        listener.onProgressUpdate();
+    /**
+     * Applies the K-Means clustering algorithm with the given number of clusters to the given pixel buffer.
+     *
+     * @param image The original pixels to which the clustering algorithm will be applied.
+     *              This buffer should not be null.
+     * @param k The number of clusters for this call.
+     * @param listener A ProgressListener to receive progress updates during the clustering
+     *                 operation. This listener should not be null.
+     * @return A new opaque PixelBuffer in which every pixel has the color of its centroid.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public PixelBuffer applyCluster(PixelBuffer image, int k, ProgressListener listener) {
+        validateArguments(image, k, listener);
+        CancellationToken token = CancellationToken.of(listener);
+        List<Tile> bands = scheduler.splitBands(image.getWidth(), image.getHeight(), 0);
+        listener.onProgressStart(bands.size() + 2);
+
+        ColorHistogram histogram = ColorHistogram.count(scheduler, image, bands, listener);
 
-        checkAndUpdateClusters(image);
+        HistogramKMeans model = computeModel(histogram, k, null, 0, listener, token);
         listener.onProgressUpdate();
 
-        segmentImage(height, width, bufferedImage);
+        PixelBuffer segmentedImage = PixelBuffer.create(image.getWidth(), image.getHeight(), false);
+        mapPixels(image, segmentedImage.getPixels(), model.getBinColors(), token);
         listener.onProgressUpdate();
 
-        return bufferedImage;
+        return segmentedImage;
     }
 
     /**
-     * Initializes the centroids by randomly selecting K pixels from the image.
+     * Clusters the given pixel buffer and returns the labels and centroids instead of an image.
      *
-     * @param image The original image from which to select initial centroids.
+     * @param image The original pixels to be clustered. This buffer should not be null.
      * @param k The number of clusters.
+     * @param listener A ProgressListener to receive progress updates during the clustering
+     *                 operation. This listener should not be null.
+     * @return The cluster of every pixel and the color of every centroid.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
      */
-    private void initializeCentroids(BufferedImage image, int k) {
-        for (int i = 0; i < k; i++) {
-            int x = random.nextInt(image.getWidth());
-            int y = random.nextInt(image.getHeight());
-            int rgb = image.getRGB(x, y);
-
-            int[] centroid = {ImageHelper.getRedByte(rgb), ImageHelper.getGreenByte(rgb), ImageHelper.getBlueByte(rgb)};
-            centroids.add(centroid);
-        }
+    public ClusteringResult cluster(PixelBuffer image, int k, ProgressListener listener) {
+        validateArguments(image, k, listener);
+        return clusterFrom(image, k, null, 0, listener);
     }
 
     /**
-     * Iteratively assigns pixels to the nearest centroid and updates the centroids until convergence.
+     * Clusters the given pixel buffer warm-started from a palette with the default drift ratio.
      *
-     * @param image The original image to be clustered.
+     * @param image The original pixels to be clustered. This buffer should not be null.
+     * @param seed The palette whose colors seed the centroids. Its size is the number of clusters.
+     * @param listener A ProgressListener to receive progress updates during the clustering
+     *                 operation. This listener should not be null.
+     * @return The cluster of every pixel, the color of every centroid and whether the run was warm-started.
+     * @throws NullPointerException if the image, the palette or the listener is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
      */
-    private void checkAndUpdateClusters(BufferedImage image) {
-        boolean converged = false;
-        while (!converged) {
-            clusters = assignClusters(image, centroids);
-            List<int[]> newCentroids = updateCentroids(image, clusters, k);
-            converged = checkConvergence(centroids, newCentroids);
-            centroids = newCentroids;
-        }
+    public ClusteringResult cluster(PixelBuffer image, ColorPalette seed, ProgressListener listener) {
+        return cluster(image, seed, DEFAULT_DRIFT_RATIO, listener);
     }
 
     /**
-     * Assigns each pixel to the nearest centroid.
+     * Clusters the given pixel buffer warm-started from a palette. If the image has drifted from the palette, the
+     * centroids are seeded by k-means++ instead.
      *
-     * @param image The original image to be clustered.
-     * @param centroids The list of current centroids.
-     * @return A 2D array representing the cluster assignment for each pixel.
+     * @param image The original pixels to be clustered. This buffer should not be null.
+     * @param seed The palette whose colors seed the centroids. Its size is the number of clusters.
+     * @param driftRatio The factor by which the mean squared error of the image against the palette may exceed the
+     *                   error of the palette before the image counts as drifted. Infinity always warm-starts.
+     * @param listener A ProgressListener to receive progress updates during the clustering
+     *                 operation. This listener should not be null.
+     * @return The cluster of every pixel, the color of every centroid and whether the run was warm-started.
+     * @throws NullPointerException if the image, the palette or the listener is null.
+     * @throws IllegalArgumentException if the drift ratio is less than 1 or not a number.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
      */
-    private int[][] assignClusters(BufferedImage image, List<int[]> centroids) {
-        int[][] clusters = new int[image.getHeight()][image.getWidth()];
-
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                int rgb = image.getRGB(x, y);
-
-                int closestCentroidIndex = -1;
-                double minDistance = Double.MAX_VALUE;
-
-                for (int i = 0; i < centroids.size(); i++) {
-                    int[] centroid = centroids.get(i);
-                    double distance = euclideanDistance(
-                            ImageHelper.getRedByte(rgb),
-                            ImageHelper.getGreenByte(rgb),
-                            ImageHelper.getBlueByte(rgb),
-                            centroid[0], centroid[1], centroid[2]);
-
-                    if (distance < minDistance) {
-                        minDistance = distance;
-                        closestCentroidIndex = i;
-                    }
-                }
+    public ClusteringResult cluster(PixelBuffer image, ColorPalette seed, double driftRatio,
+                                    ProgressListener listener) {
+        validateSeed(image, seed, driftRatio, listener);
+        return clusterFrom(image, seed.size(), seed, driftRatio, listener);
+    }
 
-                clusters[y][x] = closestCentroidIndex;
-            }
-        }
+    /**
+     * Applies K-Means warm-started from a palette to the given pixel buffer. If the image has drifted from the
+     * palette, the centroids are seeded by k-means++ instead.
+     *
+     * @param image The original pixels. This buffer should not be null.
+     * @param seed The palette whose colors seed the centroids. Its size is the number of clusters.
+     * @param driftRatio The factor by which the mean squared error of the image against the palette may exceed the
+     *                   error of the palette before the image counts as drifted. Infinity always warm-starts.
+     * @param listener A ProgressListener to receive progress updates during the clustering
+     *                 operation. This listener should not be null.
+     * @return A new opaque PixelBuffer in which every pixel has the color of its centroid.
+     * @throws NullPointerException if the image, the palette or the listener is null.
+     * @throws IllegalArgumentException if the drift ratio is less than 1 or not a number.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public PixelBuffer applyCluster(PixelBuffer image, ColorPalette seed, double driftRatio,
+                                    ProgressListener listener) {
+        validateSeed(image, seed, driftRatio, listener);
+        CancellationToken token = CancellationToken.of(listener);
+        List<Tile> bands = scheduler.splitBands(image.getWidth(), image.getHeight(), 0);
+        listener.onProgressStart(bands.size() + 2);
+
+        ColorHistogram histogram = ColorHistogram.count(scheduler, image, bands, listener);
+
+        HistogramKMeans model = computeModel(histogram, seed.size(), seed, driftRatio, listener, token);
+        listener.onProgressUpdate();
+
+        PixelBuffer segmentedImage = PixelBuffer.create(image.getWidth(), image.getHeight(), false);
+        mapPixels(image, segmentedImage.getPixels(), model.getBinColors(), token);
+        listener.onProgressUpdate();
 
-        return clusters;
+        return segmentedImage;
     }
 
     /**
-     * Updates the centroids based on the current cluster assignments.
+     * Applies the K-Means clustering algorithm to an image that is too large for the heap in two streaming passes,
+     * writing the result to a tiled TIFF file.
      *
-     * @param image The original image to be clustered.
-     * @param clusters The 2D array representing the cluster assignment for each pixel.
+     * @param source The original image. This source should not be null.
      * @param k The number of clusters.
-     * @return A list of new centroids.
+     * @param output The file to write. An existing file is replaced.
+     * @param listener A ProgressListener that receives one update per tile of each pass and one for the iterations.
+     *                 This listener should not be null.
+     * @throws NullPointerException if the source or the listener is null.
+     * @throws IllegalArgumentException if k is not positive or the output is the file of the source.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     * @throws RuntimeException if the source cannot be read or the output cannot be written.
      */
-    private List<int[]> updateCentroids(BufferedImage image, int[][] clusters, int k) {
-        List<int[]> newCentroids = new ArrayList<>();
-        int[][] sums = new int[k][3];
-        int[] counts = new int[k];
-
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                int cluster = clusters[y][x];
-                int rgb = image.getRGB(x, y);
-                int red = (rgb >> 16) & 0xFF;
-                int green = (rgb >> 8) & 0xFF;
-                int blue = rgb & 0xFF;
-
-                sums[cluster][0] += red;
-                sums[cluster][1] += green;
-                sums[cluster][2] += blue;
-                counts[cluster]++;
-            }
-        }
+    public void applyCluster(TiledImageSource source, int k, File output, ProgressListener listener) {
+        if (source == null) throw new NullPointerException("Image cannot be null");
+        if (listener == null) throw new NullPointerException("Listener cannot be null");
+        validateK(k);
+        CancellationToken token = CancellationToken.of(listener);
+        StreamingProcessor streaming = new StreamingProcessor(scheduler);
+        List<Tile> tiles = streaming.splitTiles(source, 0);
+        listener.onProgressStart(2 * tiles.size() + 1);
 
-        for (int i = 0; i < k; i++) {
-            int[] centroid = new int[3];
-            if (counts[i] > 0) {
-                centroid[0] = sums[i][0] / counts[i];
-                centroid[1] = sums[i][1] / counts[i];
-                centroid[2] = sums[i][2] / counts[i];
+        long[] stats = streaming.reduce(source, tiles, listener,
+                tile -> ColorHistogram.count(tile, 0, tile.getHeight()), ColorHistogram::merge);
+        HistogramKMeans model = computeModel(ColorHistogram.of(stats), k, null, 0, listener, token);
+        listener.onProgressUpdate();
+
+        int[] binColors = model.getBinColors();
+        streaming.apply(source, tiles, output, listener, (tile, inner) -> {
+            CancellationToken tileToken = CancellationToken.of(inner);
+            int width = tile.getWidth();
+            int[] pixels = tile.getPixels();
+            PixelBuffer segmented = PixelBuffer.create(width, tile.getHeight(), false);
+            int[] segmentedPixels = segmented.getPixels();
+            for (int y = 0; y < tile.getHeight(); y++) {
+                tileToken.throwIfCancelled();
+                for (int i = y * width; i < (y + 1) * width; i++) {
+                    segmentedPixels[i] = binColors[ColorHistogram.binOf(pixels[i])];
+                }
             }
-            newCentroids.add(centroid);
-        }
+            return segmented;
+        });
+    }
 
-        return newCentroids;
+    /**
+     * Returns the number of clusters used when none is given.
+     *
+     * @return The default k of this instance.
+     */
+    public int getK() {
+        return k;
     }
 
     /**
-     * Segments the image by assigning each pixel the color of its corresponding centroid.
+     * Returns the largest centroid shift at which the centroids count as converged.
      *
-     * @param height The height of the image.
-     * @param width The width of the image.
-     * @param segmentedImage The image to store the segmented result.
+     * @return The tolerance in color units.
      */
-    private void segmentImage(int height, int width, BufferedImage segmentedImage) {
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int cluster = clusters[y][x];
-                int[] centroid = centroids.get(cluster);
-                int rgb = (centroid[0] << 16) | (centroid[1] << 8) | centroid[2];
-                segmentedImage.setRGB(x, y, rgb);
-            }
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Returns the maximum number of iterations.
+     *
+     * @return The iteration cap.
+     */
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Returns the bounds that the assignment step maintains.
+     *
+     * @return The bounds of this instance.
+     */
+    public KMeansBounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Validates the arguments of a clustering call.
+     *
+     * @param image The original pixels.
+     * @param k The number of clusters.
+     * @param listener The listener of the call.
+     * @throws NullPointerException if the image or the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     */
+    private static void validateArguments(PixelBuffer image, int k, ProgressListener listener) {
+        if (image == null) {
+            throw new NullPointerException("Image cannot be null");
+        }
+        if (listener == null) {
+            throw new NullPointerException("Listener cannot be null");
         }
+        validateK(k);
     }
 
     /**
-     * Checks if the centroids have converged.
+     * Validates the number of clusters.
      *
-     * @param oldCentroids The list of old centroids.
-     * @param newCentroids The list of new centroids.
-     * @return True if the centroids have converged, false otherwise.
+     * @param k The number of clusters.
+     * @throws IllegalArgumentException if k is not positive.
      */
-    private boolean checkConvergence(List<int[]> oldCentroids, List<int[]> newCentroids) {
-        for (int i = 0; i < oldCentroids.size(); i++) {
-            if (!arraysEqual(oldCentroids.get(i), newCentroids.get(i))) {
-                return false;
-            }
+    private static void validateK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Number of clusters must be positive");
         }
-        return true;
     }
 
     /**
-     * Checks if two arrays are equal.
+     * Validates the arguments of a warm-started clustering call.
      *
-     * @param arr1 The first array.
-     * @param arr2 The second array.
-     * @return True if the arrays are equal, false otherwise.
+     * @param image The original pixels.
+     * @param seed The palette that seeds the centroids.
+     * @param driftRatio The drift ratio.
+     * @param listener The listener of the call.
+     * @throws NullPointerException if the image, the palette or the listener is null.
+     * @throws IllegalArgumentException if the drift ratio is less than 1 or not a number.
      */
-    private boolean arraysEqual(int[] arr1, int[] arr2) {
-        if (arr1.length != arr2.length) {
-            return false;
+    private static void validateSeed(PixelBuffer image, ColorPalette seed, double driftRatio,
+                                     ProgressListener listener) {
+        if (seed == null) throw new NullPointerException("Palette cannot be null");
+        if (!(driftRatio >= 1)) {
+            throw new IllegalArgumentException("Drift ratio must be at least 1");
         }
-        for (int i = 0; i < arr1.length; i++) {
-            if (arr1[i] != arr2[i]) {
-                return false;
-            }
+        validateArguments(image, seed.size(), listener);
+    }
+
+    /**
+     * Clusters a pixel buffer into labels, optionally warm-started from a palette.
+     *
+     * @param image The original pixels.
+     * @param k The number of clusters.
+     * @param seed The palette that seeds the centroids, or null to seed by k-means++.
+     * @param driftRatio The drift ratio, used with a palette.
+     * @param listener The listener of the call.
+     * @return The cluster of every pixel and the palette of the centroids.
+     */
+    private ClusteringResult clusterFrom(PixelBuffer image, int k, ColorPalette seed, double driftRatio,
+                                         ProgressListener listener) {
+        CancellationToken token = CancellationToken.of(listener);
+        List<Tile> bands = scheduler.splitBands(image.getWidth(), image.getHeight(), 0);
+        listener.onProgressStart(bands.size() + 2);
+
+        ColorHistogram histogram = ColorHistogram.count(scheduler, image, bands, listener);
+
+        HistogramKMeans model = computeModel(histogram, k, seed, driftRatio, listener, token);
+        listener.onProgressUpdate();
+
+        int[] labels = new int[image.getWidth() * image.getHeight()];
+        mapPixels(image, labels, model.getBinLabels(), token);
+        listener.onProgressUpdate();
+
+        return new ClusteringResult(image.getWidth(), image.getHeight(), labels, model.getPalette(),
+                model.getIterations(), model.getInertia(), model.isWarmStarted());
+    }
+
+    /**
+     * Seeds the centroids and iterates on the histogram until convergence or the iteration cap. A palette seeds the
+     * centroids unless the mean squared error of the image against it exceeds the error of the palette, or one
+     * squared color level if that is larger, by more than the drift ratio.
+     *
+     * @param histogram The colors of the image.
+     * @param k The number of clusters.
+     * @param seed The palette that seeds the centroids, or null to seed by k-means++.
+     * @param driftRatio The drift ratio, used with a palette.
+     * @param listener The listener of the call, which receives the telemetry if it is a {@link KMeansListener}.
+     * @param token The token polled before every iteration.
+     * @return The centroids after convergence and the cluster of every bin.
+     */
+    private HistogramKMeans computeModel(ColorHistogram histogram, int k, ColorPalette seed, double driftRatio,
+                                         ProgressListener listener, CancellationToken token) {
+        HistogramKMeans model = new HistogramKMeans(histogram, k, bounds);
+        boolean warm = false;
+        if (seed != null && histogram.getTotal() > 0) {
+            model.seed(seed.getCentroids());
+            double error = model.measureInertia() / histogram.getTotal();
+            warm = error <= driftRatio * Math.max(seed.getMeanSquaredError(), DRIFT_ERROR_FLOOR);
         }
-        return true;
+        if (!warm) {
+            model.seed(ThreadLocalRandom.current());
+        }
+        KMeansListener telemetry = listener instanceof KMeansListener kMeansListener ? kMeansListener : null;
+        model.iterate(tolerance, maxIterations, token, telemetry);
+        return model;
     }
 
     /**
-     * Calculates the Euclidean distance between two points in 3D space.
+     * Maps every pixel through a table indexed by the bin of its color, on row bands in parallel.
      *
-     * @param r1 The red component of the first point.
-     * @param g1 The green component of the first point.
-     * @param b1 The blue component of the first point.
-     * @param r2 The red component of the second point.
-     * @param g2 The green component of the second point.
-     * @param b2 The blue component of the second point.
-     * @return The Euclidean distance between the two points.
+     * @param image The original pixels.
+     * @param target The row-major array that receives the mapped value of every pixel.
+     * @param table The value of every bin.
+     * @param token The token polled before every row.
      */
-    private double euclideanDistance(int r1, int g1, int b1, int r2, int g2, int b2) {
-        return Math.sqrt(Math.pow(r1 - r2, 2) + Math.pow(g1 - g2, 2) + Math.pow(b1 - b2, 2));
+    private void mapPixels(PixelBuffer image, int[] target, int[] table, CancellationToken token) {
+        int width = image.getWidth();
+        int[] pixels = image.getPixels();
+        List<Tile> bands = scheduler.splitBands(width, image.getHeight(), 0);
+        scheduler.forEach(bands, null, band -> {
+            for (int y = band.getY(); y < band.getEndY(); y++) {
+                token.throwIfCancelled();
+                for (int i = y * width; i < (y + 1) * width; i++) {
+                    target[i] = table[ColorHistogram.binOf(pixels[i])];
+                }
+            }
+        });
     }
 
     /**
@@ -247,13 +515,4 @@ public class KMeansCluster implements Cluster {
     public String toString() {
         return "K-Means";
     }
-
-    /**
-     * Sets the number of clusters (K).
-     *
-     * @param k The number of clusters.
-     */
-    public void setK(int k) {
-        this.k = k;
-    }
 }
@@ -0,0 +1,126 @@
+package org.knu.bll.algorithms.clustering;
+
+/**
+ * The KMeansIteration class holds the telemetry of one K-Means iteration: how many pixels changed their cluster,
+ * the inertia after the centroids were moved, how far the centroids moved, how many color distances were computed
+ * and how long the iteration took.
+ */
+public final class KMeansIteration {
+    private final int iteration;
+    private final long movedPixels;
+    private final double inertia;
+    private final double maxShift;
+    private final long distanceCalculations;
+    private final long skippedCalculations;
+    private final long nanos;
+    private final long elapsedNanos;
+
+    /**
+     * Constructs a KMeansIteration.
+     *
+     * @param iteration The number of the iteration, starting at 1.
+     * @param movedPixels The number of pixels whose cluster changed, all pixels in the first iteration.
+     * @param inertia The sum of the squared distances of the pixels to their centroids after the update.
+     * @param maxShift The largest distance a centroid moved in the update.
+     * @param distanceCalculations The number of distances from colors to centroids computed by the assignment step.
+     * @param skippedCalculations The number of distances that the bounds proved unnecessary.
+     * @param nanos The time of the iteration in nanoseconds.
+     * @param elapsedNanos The time since the iterations started in nanoseconds.
+     */
+    public KMeansIteration(int iteration, long movedPixels, double inertia, double maxShift, long distanceCalculations,
+                           long skippedCalculations, long nanos, long elapsedNanos) {
+        this.iteration = iteration;
+        this.movedPixels = movedPixels;
+        this.inertia = inertia;
+        this.maxShift = maxShift;
+        this.distanceCalculations = distanceCalculations;
+        this.skippedCalculations = skippedCalculations;
+        this.nanos = nanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the number of the iteration.
+     *
+     * @return The iteration number, starting at 1.
+     */
+    public int getIteration() {
+        return iteration;
+    }
+
+    /**
+     * Returns the number of pixels whose cluster changed in the assignment step.
+     *
+     * @return The moved pixel count.
+     */
+    public long getMovedPixels() {
+        return movedPixels;
+    }
+
+    /**
+     * Returns the sum of the squared distances of the pixels to the centroids of their clusters after the update.
+     *
+     * @return The inertia.
+     */
+    public double getInertia() {
+        return inertia;
+    }
+
+    /**
+     * Returns the largest distance a centroid moved in the update step, which the convergence test compares with
+     * the tolerance.
+     *
+     * @return The largest centroid shift in color units.
+     */
+    public double getMaxShift() {
+        return maxShift;
+    }
+
+    /**
+     * Returns the number of distances from colors to centroids computed by the assignment step.
+     *
+     * @return The distance calculation count.
+     */
+    public long getDistanceCalculations() {
+        return distanceCalculations;
+    }
+
+    /**
+     * Returns the number of color distances that the triangle-inequality bounds proved unnecessary, out of the
+     * distances from every color to every centroid that a plain assignment step computes.
+     *
+     * @return The skipped calculation count.
+     */
+    public long getSkippedCalculations() {
+        return skippedCalculations;
+    }
+
+    /**
+     * Returns the time of the iteration.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Returns the time since the iterations started, including this iteration.
+     *
+     * @return The elapsed time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns a one-line summary of the iteration.
+     *
+     * @return The telemetry as text.
+     */
+    @Override
+    public String toString() {
+        return String.format("iteration %d: moved %d pixels, inertia %.4g, shift %.3f, %d distances (%d skipped), %.2f ms",
+                iteration, movedPixels, inertia, maxShift, distanceCalculations, skippedCalculations, nanos / 1e6);
+    }
+}
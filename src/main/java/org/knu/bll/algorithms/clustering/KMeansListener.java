@@ -0,0 +1,18 @@
+package org.knu.bll.algorithms.clustering;
+
+import org.knu.bll.ProgressListener;
+
+/**
+ * The KMeansListener interface is a {@link ProgressListener} that also receives the telemetry of every K-Means
+ * iteration. {@link KMeansCluster} reports iterations to any listener that implements it, and progress only to other
+ * listeners. The method is called from the thread that runs the clustering, before the next iteration starts.
+ */
+public interface KMeansListener extends ProgressListener {
+
+    /**
+     * Called after every iteration of K-Means.
+     *
+     * @param iteration The telemetry of the iteration.
+     */
+    void onIteration(KMeansIteration iteration);
+}
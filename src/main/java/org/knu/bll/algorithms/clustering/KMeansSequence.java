@@ -0,0 +1,114 @@
+package org.knu.bll.algorithms.clustering;
+
+import org.knu.bll.ProgressListener;
+import org.knu.bll.buffers.PixelBuffer;
+
+/**
+ * The KMeansSequence class clusters a sequence of similar images, such as the frames of a video or the photos of
+ * one shoot, with the centroids of each image seeding the next. Neighbouring frames have nearly the same colors, so
+ * a warm-started run usually converges within one or two iterations instead of the dozens a fresh k-means++ seeding
+ * needs. When a frame drifts too far from the palette, as on a scene cut, that frame is seeded afresh and its
+ * centroids seed the frames that follow.
+ * <p>
+ * The current palette can be saved with {@link ColorPalette#save(java.io.File)} and passed back to
+ * {@link #KMeansSequence(KMeansCluster, ColorPalette, double)} to continue a sequence in another session. Calls to
+ * {@link #next(PixelBuffer, ProgressListener)} are serialized, since every frame depends on the one before it.
+ */
+public class KMeansSequence {
+    private final KMeansCluster cluster;
+    private final int k;
+    private final double driftRatio;
+    private ColorPalette palette;
+    private int frames;
+    private int reseeds;
+
+    /**
+     * Constructs a KMeansSequence whose first frame is seeded by k-means++.
+     *
+     * @param cluster The K-Means configuration used for every frame.
+     * @param k The number of clusters.
+     * @throws NullPointerException if the cluster is null.
+     * @throws IllegalArgumentException if k is not positive.
+     */
+    public KMeansSequence(KMeansCluster cluster, int k) {
+        if (cluster == null) throw new NullPointerException("Cluster cannot be null");
+        if (k <= 0) throw new IllegalArgumentException("Number of clusters must be positive");
+        this.cluster = cluster;
+        this.k = k;
+        this.driftRatio = KMeansCluster.DEFAULT_DRIFT_RATIO;
+    }
+
+    /**
+     * Constructs a KMeansSequence whose first frame is warm-started from a palette, such as one saved by an
+     * earlier sequence.
+     *
+     * @param cluster The K-Means configuration used for every frame.
+     * @param initial The palette that seeds the first frame. Its size is the number of clusters.
+     * @param driftRatio The factor by which the mean squared error of a frame against the palette may exceed the
+     *                   error of the palette before the frame is seeded afresh.
+     * @throws NullPointerException if the cluster or the palette is null.
+     * @throws IllegalArgumentException if the drift ratio is less than 1 or not a number.
+     */
+    public KMeansSequence(KMeansCluster cluster, ColorPalette initial, double driftRatio) {
+        if (cluster == null) throw new NullPointerException("Cluster cannot be null");
+        if (initial == null) throw new NullPointerException("Palette cannot be null");
+        if (!(driftRatio >= 1)) throw new IllegalArgumentException("Drift ratio must be at least 1");
+        this.cluster = cluster;
+        this.k = initial.size();
+        this.driftRatio = driftRatio;
+        this.palette = initial;
+    }
+
+    /**
+     * Clusters the next frame, warm-started from the palette of the previous one, and keeps its palette for the
+     * frame after it.
+     *
+     * @param frame The pixels of the frame. This buffer should not be null.
+     * @param listener A ProgressListener to receive progress updates during the clustering
+     *                 operation. This listener should not be null.
+     * @return The cluster of every pixel and the palette of the frame.
+     * @throws NullPointerException if the frame or the listener is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled, in which case the palette
+     *                                                    is left unchanged.
+     */
+    public synchronized ClusteringResult next(PixelBuffer frame, ProgressListener listener) {
+        ClusteringResult result = palette == null
+                ? cluster.cluster(frame, k, listener)
+                : cluster.cluster(frame, palette, driftRatio, listener);
+        if (!result.isWarmStarted()) {
+            reseeds++;
+        }
+        frames++;
+        palette = result.getPalette();
+        return result;
+    }
+
+    /**
+     * Returns the palette that seeds the next frame.
+     *
+     * @return The palette of the last frame, or the initial palette if no frame was clustered yet. Null if the
+     *         sequence started without a palette and no frame was clustered yet.
+     */
+    public synchronized ColorPalette getPalette() {
+        return palette;
+    }
+
+    /**
+     * Returns the number of clustered frames.
+     *
+     * @return The frame count.
+     */
+    public synchronized int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the number of frames that were seeded by k-means++, including the first frame of a sequence that
+     * started without a palette.
+     *
+     * @return The number of fresh seedings.
+     */
+    public synchronized int getReseeds() {
+        return reseeds;
+    }
+}
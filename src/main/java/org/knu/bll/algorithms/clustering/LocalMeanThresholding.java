@@ -0,0 +1,136 @@
+package org.knu.bll.algorithms.clustering;
+
+import org.knu.bll.CancellationToken;
+import org.knu.bll.ProgressListener;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.algorithms.IntegralImage;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.util.List;
+
+/**
+ * The LocalMeanThresholding class implements the Cluster interface to binarize an image against the mean of the
+ * window around every pixel instead of one threshold for the whole image, so unevenly lit images keep their
+ * details. A pixel becomes white when its gray value is above the mean of its window minus the offset.
+ * <p>
+ * The window means are read from an {@link IntegralImage}, so the cost per pixel is the same whatever the radius.
+ * Windows near the edges only cover the pixels inside the image.
+ */
+public class LocalMeanThresholding implements Cluster {
+    public static final int DEFAULT_RADIUS = 7;
+    public static final int DEFAULT_OFFSET = 5;
+
+    private final TileScheduler scheduler;
+    private final int radius;
+    private final int offset;
+
+    /**
+     * Constructs a LocalMeanThresholding with the default window radius and offset that runs on the shared scheduler.
+     */
+    public LocalMeanThresholding() {
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs a LocalMeanThresholding with the default window radius and offset.
+     *
+     * @param scheduler The TileScheduler that thresholds the bands of the image.
+     */
+    public LocalMeanThresholding(TileScheduler scheduler) {
+        this(scheduler, DEFAULT_RADIUS, DEFAULT_OFFSET);
+    }
+
+    /**
+     * Constructs a LocalMeanThresholding.
+     *
+     * @param scheduler The TileScheduler that thresholds the bands of the image.
+     * @param radius The radius of the square window around every pixel.
+     * @param offset The value subtracted from the window mean before it is compared with the pixel.
+     * @throws IllegalArgumentException if the radius is negative.
+     */
+    public LocalMeanThresholding(TileScheduler scheduler, int radius, int offset) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Window radius cannot be negative");
+        }
+        this.scheduler = scheduler;
+        this.radius = radius;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the radius of the window.
+     *
+     * @return The window radius in pixels.
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Returns the value subtracted from the window mean.
+     *
+     * @return The offset.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Binarizes the given pixel buffer against the local window means.
+     *
+     * @param image The original pixels to which the thresholding will be applied.
+     *              This buffer should not be null and is not modified.
+     * @param listener A ProgressListener to receive progress updates during the thresholding
+     *                 operation. This listener should not be null.
+     * @return A new opaque PixelBuffer that represents the binarized version of the original pixels.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    @Override
+    public PixelBuffer applyCluster(PixelBuffer image, ProgressListener listener) {
+        if (image == null) throw new NullPointerException("Image cannot be null");
+        if (listener == null) throw new NullPointerException("Listener cannot be null");
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        List<Tile> bands = scheduler.splitBands(width, height, 0);
+        listener.onProgressStart(bands.size() + 1);
+
+        GrayBuffer gray = image.toGray();
+        IntegralImage integral = IntegralImage.of(gray, false);
+        listener.onProgressUpdate();
+        CancellationToken.of(listener).throwIfCancelled();
+
+        byte[] samples = gray.getSamples();
+        PixelBuffer binary = PixelBuffer.create(width, height, false);
+        int[] pixels = binary.getPixels();
+        scheduler.forEach(bands, listener, band -> {
+            for (int y = band.getY(); y < band.getEndY(); y++) {
+                int y0 = y - radius;
+                int y1 = y + radius + 1;
+                for (int x = 0; x < width; x++) {
+                    int x0 = x - radius;
+                    int x1 = x + radius + 1;
+                    long count = integral.count(x0, y0, x1, y1);
+                    long threshold = integral.sum(x0, y0, x1, y1) - offset * count;
+                    int i = y * width + x;
+                    pixels[i] = (samples[i] & 0xff) * count > threshold ? 0xFFFFFF : 0x000000;
+                }
+            }
+        });
+        return binary;
+    }
+
+    /**
+     * Returns a string representation of the local mean thresholding algorithm.
+     *
+     * @return The string "Local Mean".
+     */
+    @Override
+    public String toString() {
+        return "Local Mean";
+    }
+}
@@ -0,0 +1,600 @@
+package org.knu.bll.algorithms.clustering;
+
+import org.knu.bll.CancellationToken;
+import org.knu.bll.ProgressListener;
+import org.knu.bll.StreamingProcessor;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The MiniBatchKMeansCluster class implements the Cluster interface with mini-batch K-Means, which learns the
+ * centroids from small random samples of the pixels instead of the whole image.
+ * <p>
+ * The centroids are seeded by k-means++ on the first batch. Every batch samples its pixels and assigns them to
+ * their closest centroids in parallel chunks on a {@link TileScheduler}, and then moves each centroid towards its
+ * pixels one at a time, with a learning rate of one over the number of pixels that centroid has received so far, so
+ * every centroid is the running mean of the samples it was given. The cost of learning depends on the batch size
+ * and the number of batches, not on the image size, which makes the final labeling pass the only one over all
+ * pixels, where full K-Means first needs another pass to count the colors. That pass maps every pixel through a
+ * lookup table from its color bin to a centroid on row bands in parallel, and sums the inertia on the way.
+ * <p>
+ * The result is usually slightly worse than the converged full K-Means of {@link KMeansCluster};
+ * {@link #compare(PixelBuffer, int, ProgressListener)} runs both on an image and reports the inertia ratio and the
+ * speedup, so the batch size and number of batches can be chosen per job. Images that are too large for the heap
+ * are sampled from random tiles and labeled in one streaming pass.
+ */
+public class MiniBatchKMeansCluster implements Cluster {
+    /**
+     * The number of pixels sampled per batch by default.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    /**
+     * The number of batches by default.
+     */
+    public static final int DEFAULT_BATCHES = 100;
+
+    private static final int SAMPLES_PER_TILE = 512;
+
+    private final TileScheduler scheduler;
+    private final int k;
+    private final int batchSize;
+    private final int batches;
+
+    /**
+     * Constructs a MiniBatchKMeansCluster with the default number of clusters and batches that runs on the shared
+     * scheduler.
+     */
+    public MiniBatchKMeansCluster() {
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs a MiniBatchKMeansCluster with the default number of clusters and batches.
+     *
+     * @param scheduler The TileScheduler that runs the labeling pass.
+     */
+    public MiniBatchKMeansCluster(TileScheduler scheduler) {
+        this(scheduler, KMeansCluster.DEFAULT_CLUSTERS);
+    }
+
+    /**
+     * Constructs a MiniBatchKMeansCluster with the default batches.
+     *
+     * @param scheduler The TileScheduler that runs the labeling pass.
+     * @param k The number of clusters used by {@link #applyCluster(PixelBuffer, ProgressListener)}.
+     * @throws IllegalArgumentException if k is not positive.
+     */
+    public MiniBatchKMeansCluster(TileScheduler scheduler, int k) {
+        this(scheduler, k, DEFAULT_BATCH_SIZE, DEFAULT_BATCHES);
+    }
+
+    /**
+     * Constructs a MiniBatchKMeansCluster.
+     *
+     * @param scheduler The TileScheduler that runs the labeling pass.
+     * @param k The number of clusters used by {@link #applyCluster(PixelBuffer, ProgressListener)}.
+     * @param batchSize The number of pixels sampled per batch.
+     * @param batches The number of batches.
+     * @throws IllegalArgumentException if k, the batch size or the number of batches is not positive.
+     */
+    public MiniBatchKMeansCluster(TileScheduler scheduler, int k, int batchSize, int batches) {
+        validateK(k);
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        if (batches <= 0) {
+            throw new IllegalArgumentException("Number of batches must be positive");
+        }
+        this.scheduler = scheduler;
+        this.k = k;
+        this.batchSize = batchSize;
+        this.batches = batches;
+    }
+
+    /**
+     * Applies mini-batch K-Means to the given pixel buffer.
+     *
+     * @param image The original pixels to which the clustering algorithm will be applied.
+     *              This buffer should not be null.
+     * @param listener A ProgressListener to receive progress updates during the clustering
+     *                 operation. This listener should not be null.
+     * @return A new opaque PixelBuffer in which every pixel has the color of its centroid.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    @Override
+    public PixelBuffer applyCluster(PixelBuffer image, ProgressListener listener) {
+        return applyCluster(image, k, listener);
+    }
+
+    /**
+     * Applies mini-batch K-Means with the given number of clusters to the given image.
+     *
+     * @param image The original image. This image should not be null.
+     * @param k The number of clusters for this call.
+     * @param listener A ProgressListener to receive progress updates during the clustering
+     *                 operation. This listener should not be null.
+     * @return A new BufferedImage in which every pixel has the color of its centroid.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public BufferedImage applyCluster(BufferedImage image, int k, ProgressListener listener) {
+        if (image == null) throw new NullPointerException("Image cannot be null");
+        return applyCluster(PixelBuffer.wrap(image), k, listener).toImage();
+    }
+
+    /**
+     * Applies mini-batch K-Means with the given number of clusters to the given pixel buffer.
+     *
+     * @param image The original pixels. This buffer should not be null.
+     * @param k The number of clusters for this call.
+     * @param listener A ProgressListener that receives one update per batch and one for the labeling pass.
+     *                 This listener should not be null.
+     * @return A new opaque PixelBuffer in which every pixel has the color of its centroid.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public PixelBuffer applyCluster(PixelBuffer image, int k, ProgressListener listener) {
+        validateArguments(image, k, listener);
+        CancellationToken token = CancellationToken.of(listener);
+        listener.onProgressStart(batches + 1);
+
+        int[] centroids = learn(pixelSampler(image), k, token, listener);
+
+        PixelBuffer segmentedImage = PixelBuffer.create(image.getWidth(), image.getHeight(), false);
+        label(image, centroids, segmentedImage.getPixels(), colorsOf(centroids), token);
+        listener.onProgressUpdate();
+        return segmentedImage;
+    }
+
+    /**
+     * Clusters the given pixel buffer and returns the labels and centroids instead of an image.
+     *
+     * @param image The original pixels to be clustered. This buffer should not be null.
+     * @param k The number of clusters.
+     * @param listener A ProgressListener that receives one update per batch and one for the labeling pass.
+     *                 This listener should not be null.
+     * @return The cluster of every pixel, the color of every centroid, the number of batches as the iteration count
+     *         and the inertia of the pixels to the centroid colors.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public ClusteringResult cluster(PixelBuffer image, int k, ProgressListener listener) {
+        validateArguments(image, k, listener);
+        CancellationToken token = CancellationToken.of(listener);
+        listener.onProgressStart(batches + 1);
+
+        int[] centroids = learn(pixelSampler(image), k, token, listener);
+
+        int[] labels = new int[image.getWidth() * image.getHeight()];
+        int[] identity = new int[k];
+        for (int cluster = 0; cluster < k; cluster++) {
+            identity[cluster] = cluster;
+        }
+        long inertia = label(image, centroids, labels, identity, token);
+        listener.onProgressUpdate();
+
+        return new ClusteringResult(image.getWidth(), image.getHeight(), labels, toArrays(centroids), batches, inertia);
+    }
+
+    /**
+     * Clusters an image both with this mini-batch K-Means and with the full K-Means of {@link KMeansCluster}, and
+     * compares the quality and time of the two. Both inertias are measured on the pixels against the centroid colors
+     * of the clusters, so the ratio compares the images the two produce.
+     *
+     * @param image The original pixels to be clustered. This buffer should not be null.
+     * @param k The number of clusters.
+     * @param listener A ProgressListener that receives one update per finished clustering. This listener should
+     *                 not be null.
+     * @return The results, inertias and times of both clusterings.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public ClusteringComparison compare(PixelBuffer image, int k, ProgressListener listener) {
+        validateArguments(image, k, listener);
+        CancellationToken token = CancellationToken.of(listener);
+        ProgressListener inner = ProgressListener.withoutProgress(token);
+        listener.onProgressStart(2);
+
+        long start = System.nanoTime();
+        ClusteringResult miniBatch = cluster(image, k, inner);
+        long miniBatchNanos = System.nanoTime() - start;
+        listener.onProgressUpdate();
+
+        start = System.nanoTime();
+        ClusteringResult full = new KMeansCluster(scheduler, k).cluster(image, k, inner);
+        long fullNanos = System.nanoTime() - start;
+        listener.onProgressUpdate();
+
+        return new ClusteringComparison(miniBatch, full, miniBatch.getInertia(), measureInertia(image, full, token),
+                miniBatchNanos, fullNanos);
+    }
+
+    /**
+     * Applies mini-batch K-Means to an image that is too large for the heap. The batches are sampled from random
+     * tiles, and the labeled tiles are streamed to a tiled TIFF file.
+     *
+     * @param source The original image. This source should not be null.
+     * @param k The number of clusters.
+     * @param output The file to write. An existing file is replaced.
+     * @param listener A ProgressListener that receives one update per batch and one per tile. This listener should
+     *                 not be null.
+     * @throws NullPointerException if the source or the listener is null.
+     * @throws IllegalArgumentException if k is not positive or the output is the file of the source.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     * @throws RuntimeException if the source cannot be read or the output cannot be written.
+     */
+    public void applyCluster(TiledImageSource source, int k, File output, ProgressListener listener) {
+        if (source == null) throw new NullPointerException("Image cannot be null");
+        if (listener == null) throw new NullPointerException("Listener cannot be null");
+        validateK(k);
+        CancellationToken token = CancellationToken.of(listener);
+        StreamingProcessor streaming = new StreamingProcessor(scheduler);
+        List<Tile> tiles = streaming.splitTiles(source, 0);
+        listener.onProgressStart(batches + tiles.size());
+
+        int[] centroids = learn(tileSampler(source, tiles), k, token, listener);
+
+        int[] colors = colorsOf(centroids);
+        streaming.apply(source, tiles, output, listener, (tile, inner) -> {
+            PixelBuffer segmented = PixelBuffer.create(tile.getWidth(), tile.getHeight(), false);
+            label(tile, centroids, segmented.getPixels(), colors, CancellationToken.of(inner));
+            return segmented;
+        });
+    }
+
+    /**
+     * Returns the number of clusters used when none is given.
+     *
+     * @return The default k of this instance.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the number of pixels sampled per batch.
+     *
+     * @return The batch size.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the number of batches.
+     *
+     * @return The batch count.
+     */
+    public int getBatches() {
+        return batches;
+    }
+
+    /**
+     * Validates the arguments of a clustering call.
+     *
+     * @param image The original pixels.
+     * @param k The number of clusters.
+     * @param listener The listener of the call.
+     * @throws NullPointerException if the image or the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     */
+    private static void validateArguments(PixelBuffer image, int k, ProgressListener listener) {
+        if (image == null) {
+            throw new NullPointerException("Image cannot be null");
+        }
+        if (listener == null) {
+            throw new NullPointerException("Listener cannot be null");
+        }
+        validateK(k);
+    }
+
+    /**
+     * Validates the number of clusters.
+     *
+     * @param k The number of clusters.
+     * @throws IllegalArgumentException if k is not positive.
+     */
+    private static void validateK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Number of clusters must be positive");
+        }
+    }
+
+    /**
+     * Creates a sampler that draws uniformly from the pixels of an image.
+     *
+     * @param image The pixels to sample.
+     * @return The sampler.
+     */
+    private static Sampler pixelSampler(PixelBuffer image) {
+        int[] pixels = image.getPixels();
+        int count = image.getWidth() * image.getHeight();
+        return (batch, from, to, random) -> {
+            for (int i = from; i < to; i++) {
+                batch[i] = pixels[random.nextInt(count)];
+            }
+        };
+    }
+
+    /**
+     * Creates a sampler that draws {@link #SAMPLES_PER_TILE} pixels at a time from a random tile of a tiled image,
+     * so that a batch reads only a few tiles, most of them from the cache of the source once the image has been
+     * sampled for a while.
+     *
+     * @param source The image to sample.
+     * @param tiles The tiles of the image.
+     * @return The sampler.
+     */
+    private static Sampler tileSampler(TiledImageSource source, List<Tile> tiles) {
+        return (batch, from, to, random) -> {
+            for (int start = from; start < to; start += SAMPLES_PER_TILE) {
+                PixelBuffer tile = source.read(tiles.get(random.nextInt(tiles.size())));
+                int[] pixels = tile.getPixels();
+                int count = tile.getWidth() * tile.getHeight();
+                for (int i = start; i < Math.min(to, start + SAMPLES_PER_TILE); i++) {
+                    batch[i] = pixels[random.nextInt(count)];
+                }
+            }
+        };
+    }
+
+    /**
+     * Learns the centroids from the batches of a sampler. The first batch seeds the centroids by k-means++, then
+     * every batch moves each centroid towards its assigned samples with a per-centroid learning rate of one over the
+     * number of samples it has received. The batches are sampled and assigned in parallel chunks; the updates depend
+     * on their order and run on the calling thread.
+     *
+     * @param sampler The source of the batches.
+     * @param k The number of clusters.
+     * @param token The token polled before every batch.
+     * @param listener The listener that receives one update per batch.
+     * @return The red, green and blue components of the centroids rounded to colors, three per cluster.
+     */
+    private int[] learn(Sampler sampler, int k, CancellationToken token, ProgressListener listener) {
+        int[] batch = new int[batchSize];
+        int[] assignment = new int[batchSize];
+        List<Tile> chunks = scheduler.splitBands(1, batchSize, 0);
+        scheduler.forEach(chunks, null, chunk ->
+                sampler.fill(batch, chunk.getY(), chunk.getEndY(), ThreadLocalRandom.current()));
+        double[] centroids = seed(batch, k, ThreadLocalRandom.current());
+        long[] received = new long[k];
+
+        for (int round = 0; round < batches; round++) {
+            token.throwIfCancelled();
+            boolean sample = round > 0;
+            scheduler.forEach(chunks, null, chunk -> {
+                if (sample) {
+                    sampler.fill(batch, chunk.getY(), chunk.getEndY(), ThreadLocalRandom.current());
+                }
+                for (int i = chunk.getY(); i < chunk.getEndY(); i++) {
+                    assignment[i] = findClosestCentroid(batch[i], centroids, k);
+                }
+            });
+            for (int i = 0; i < batchSize; i++) {
+                int cluster = assignment[i];
+                double rate = 1.0 / ++received[cluster];
+                int rgb = batch[i];
+                centroids[3 * cluster] += rate * (((rgb >> 16) & 0xFF) - centroids[3 * cluster]);
+                centroids[3 * cluster + 1] += rate * (((rgb >> 8) & 0xFF) - centroids[3 * cluster + 1]);
+                centroids[3 * cluster + 2] += rate * ((rgb & 0xFF) - centroids[3 * cluster + 2]);
+            }
+            listener.onProgressUpdate();
+        }
+
+        int[] rounded = new int[3 * k];
+        for (int i = 0; i < 3 * k; i++) {
+            rounded[i] = (int) Math.max(0, Math.min(255, Math.round(centroids[i])));
+        }
+        return rounded;
+    }
+
+    /**
+     * Seeds the centroids by k-means++ on the colors of a batch.
+     *
+     * @param batch The sampled pixels.
+     * @param k The number of clusters.
+     * @param random The source of the random draws.
+     * @return The red, green and blue components of the seeds, three per cluster.
+     */
+    private static double[] seed(int[] batch, int k, Random random) {
+        PixelBuffer samples = new PixelBuffer(batch.length, 1, batch, false);
+        HistogramKMeans seeding = new HistogramKMeans(ColorHistogram.of(ColorHistogram.count(samples, 0, 1)), k,
+                KMeansBounds.HAMERLY);
+        seeding.seed(random);
+        return seeding.getCentroidValues();
+    }
+
+    /**
+     * Finds the centroid closest to a color.
+     *
+     * @param rgb The packed color.
+     * @param centroids The red, green and blue components of the centroids, three per cluster.
+     * @param k The number of clusters.
+     * @return The index of the closest centroid.
+     */
+    private static int findClosestCentroid(int rgb, double[] centroids, int k) {
+        double red = (rgb >> 16) & 0xFF;
+        double green = (rgb >> 8) & 0xFF;
+        double blue = rgb & 0xFF;
+        int closest = 0;
+        double minDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < k; i++) {
+            double dr = red - centroids[3 * i];
+            double dg = green - centroids[3 * i + 1];
+            double db = blue - centroids[3 * i + 2];
+            double distance = dr * dr + dg * dg + db * db;
+            if (distance < minDistance) {
+                minDistance = distance;
+                closest = i;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Assigns every pixel of an image to a centroid, on row bands in parallel, and writes the value of the cluster.
+     * Like the labeling pass of {@link KMeansCluster}, the pixels are mapped through a lookup table from their
+     * {@link ColorHistogram} bin to the centroid closest to the center of the bin, which costs one memory read per
+     * pixel instead of k distances.
+     *
+     * @param image The original pixels.
+     * @param centroids The red, green and blue components of the centroids, three per cluster.
+     * @param target The row-major array that receives the value of the cluster of every pixel.
+     * @param values The value written for every cluster.
+     * @param token The token polled before every row.
+     * @return The sum of the squared distances of the pixels to the centroids of their clusters.
+     */
+    private long label(PixelBuffer image, int[] centroids, int[] target, int[] values, CancellationToken token) {
+        int[] table = binLabels(centroids, values.length);
+        int width = image.getWidth();
+        int[] pixels = image.getPixels();
+        List<Tile> bands = scheduler.splitBands(width, image.getHeight(), 0);
+        return scheduler.reduce(bands, null, band -> {
+            long inertia = 0;
+            for (int y = band.getY(); y < band.getEndY(); y++) {
+                token.throwIfCancelled();
+                for (int i = y * width; i < (y + 1) * width; i++) {
+                    int rgb = pixels[i];
+                    int cluster = table[ColorHistogram.binOf(rgb)];
+                    int dr = ((rgb >> 16) & 0xFF) - centroids[3 * cluster];
+                    int dg = ((rgb >> 8) & 0xFF) - centroids[3 * cluster + 1];
+                    int db = (rgb & 0xFF) - centroids[3 * cluster + 2];
+                    inertia += dr * dr + dg * dg + db * db;
+                    target[i] = values[cluster];
+                }
+            }
+            return inertia;
+        }, Long::sum);
+    }
+
+    /**
+     * Builds the lookup table from the bins of a {@link ColorHistogram} to the centroid closest to the center of
+     * every bin.
+     *
+     * @param centroids The red, green and blue components of the centroids, three per cluster.
+     * @param k The number of clusters.
+     * @return The cluster of every bin.
+     */
+    private static int[] binLabels(int[] centroids, int k) {
+        double[] values = new double[centroids.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = centroids[i];
+        }
+        int shift = 8 - ColorHistogram.BITS;
+        int mask = (1 << ColorHistogram.BITS) - 1;
+        int half = 1 << shift >> 1;
+        int[] table = new int[ColorHistogram.BINS];
+        for (int bin = 0; bin < table.length; bin++) {
+            int red = ((bin >> (2 * ColorHistogram.BITS)) << shift) + half;
+            int green = (((bin >> ColorHistogram.BITS) & mask) << shift) + half;
+            int blue = ((bin & mask) << shift) + half;
+            table[bin] = findClosestCentroid((red << 16) | (green << 8) | blue, values, k);
+        }
+        return table;
+    }
+
+    /**
+     * Measures the inertia of a clustering on the pixels, against the centroid colors of the clusters.
+     *
+     * @param image The clustered pixels.
+     * @param result The labels and centroids of the clustering.
+     * @param token The token polled before every row.
+     * @return The sum of the squared distances of the pixels to the colors of their centroids.
+     */
+    private long measureInertia(PixelBuffer image, ClusteringResult result, CancellationToken token) {
+        int width = image.getWidth();
+        int[] pixels = image.getPixels();
+        int[] labels = result.getLabels();
+        List<Tile> bands = scheduler.splitBands(width, image.getHeight(), 0);
+        return scheduler.reduce(bands, null, band -> {
+            long inertia = 0;
+            for (int y = band.getY(); y < band.getEndY(); y++) {
+                token.throwIfCancelled();
+                for (int i = y * width; i < (y + 1) * width; i++) {
+                    int rgb = pixels[i];
+                    int[] centroid = result.getCentroid(labels[i]);
+                    int dr = ((rgb >> 16) & 0xFF) - centroid[0];
+                    int dg = ((rgb >> 8) & 0xFF) - centroid[1];
+                    int db = (rgb & 0xFF) - centroid[2];
+                    inertia += dr * dr + dg * dg + db * db;
+                }
+            }
+            return inertia;
+        }, Long::sum);
+    }
+
+    /**
+     * Packs the centroids into opaque colors.
+     *
+     * @param centroids The red, green and blue components of the centroids, three per cluster.
+     * @return The color of every cluster.
+     */
+    private static int[] colorsOf(int[] centroids) {
+        int[] colors = new int[centroids.length / 3];
+        for (int cluster = 0; cluster < colors.length; cluster++) {
+            colors[cluster] = 0xff000000 | (centroids[3 * cluster] << 16) | (centroids[3 * cluster + 1] << 8)
+                    | centroids[3 * cluster + 2];
+        }
+        return colors;
+    }
+
+    /**
+     * Splits the centroids into one array per cluster.
+     *
+     * @param centroids The red, green and blue components of the centroids, three per cluster.
+     * @return The components of every centroid.
+     */
+    private static int[][] toArrays(int[] centroids) {
+        int[][] result = new int[centroids.length / 3][];
+        for (int cluster = 0; cluster < result.length; cluster++) {
+            result[cluster] = new int[]{centroids[3 * cluster], centroids[3 * cluster + 1], centroids[3 * cluster + 2]};
+        }
+        return result;
+    }
+
+    /**
+     * Returns a string representation of mini-batch K-Means.
+     *
+     * @return The string "Mini-batch K-Means".
+     */
+    @Override
+    public String toString() {
+        return "Mini-batch K-Means";
+    }
+
+    /**
+     * The Sampler interface fills a batch with randomly drawn pixels of an image. Disjoint ranges of a batch may be
+     * filled concurrently.
+     */
+    @FunctionalInterface
+    private interface Sampler {
+
+        /**
+         * Fills a range of the batch.
+         *
+         * @param batch The array that receives the sampled pixels.
+         * @param from The first index to fill.
+         * @param to The index after the last index to fill.
+         * @param random The source of the random draws.
+         */
+        void fill(int[] batch, int from, int to, Random random);
+    }
+}
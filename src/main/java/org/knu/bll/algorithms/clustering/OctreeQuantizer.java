@@ -0,0 +1,216 @@
+package org.knu.bll.algorithms.clustering;
+
+import java.util.Arrays;
+
+/**
+ * The OctreeQuantizer class partitions the occupied bins of a color histogram with an octree. A node of level L
+ * holds the colors whose red, green and blue components share their L highest bits, so the bins are the leaves of
+ * level {@link ColorHistogram#BITS} and the tree needs no pointers: the index of the ancestor of a bin at any level
+ * is computed from the bits of the bin. Levels are reduced from the bottom up, merging the nodes with the fewest
+ * pixels first, so the few colors of large areas keep their own leaves the longest. When merging all children of
+ * a node would leave fewer than k leaves, only its smallest children are merged into one leaf, so the partition has
+ * exactly k clusters unless the image has fewer occupied bins.
+ */
+final class OctreeQuantizer {
+
+    private OctreeQuantizer() {
+    }
+
+    /**
+     * Partitions the bins of a histogram into at most k clusters.
+     *
+     * @param histogram The colors of the image.
+     * @param k The maximum number of clusters.
+     * @return The cluster of every entry of the histogram, numbered from 0.
+     */
+    static int[] partition(ColorHistogram histogram, int k) {
+        int levels = ColorHistogram.BITS;
+        int size = histogram.size();
+        int[] bins = histogram.getBins();
+        long[] counts = histogram.getCounts();
+
+        long[][] pixels = new long[levels][];
+        int[][] children = new int[levels][];
+        for (int level = 0; level < levels; level++) {
+            pixels[level] = new long[1 << (3 * level)];
+            children[level] = new int[1 << (3 * level)];
+        }
+        for (int entry = 0; entry < size; entry++) {
+            for (int level = 0; level < levels; level++) {
+                pixels[level][nodeOf(bins[entry], level)] += counts[entry];
+            }
+            children[levels - 1][nodeOf(bins[entry], levels - 1)]++;
+        }
+        for (int level = 1; level < levels; level++) {
+            for (int node = 0; node < pixels[level].length; node++) {
+                if (pixels[level][node] > 0) {
+                    children[level - 1][parentOf(node, level)]++;
+                }
+            }
+        }
+
+        boolean[][] merged = new boolean[levels][];
+        int[][] clusters = new int[levels + 1][];
+        for (int level = 0; level <= levels; level++) {
+            clusters[level] = new int[1 << (3 * level)];
+            Arrays.fill(clusters[level], -1);
+        }
+        int leaves = size;
+        for (int level = levels - 1; level >= 0 && leaves > k; level--) {
+            merged[level] = new boolean[1 << (3 * level)];
+            for (int node : byPixels(pixels[level], children[level])) {
+                if (leaves <= k) break;
+                if (leaves - (children[level][node] - 1) < k) {
+                    int[] group = smallestChildren(node, level, leaves - k + 1, pixels, bins, counts);
+                    for (int child : group) {
+                        clusters[level + 1][child] = 0;
+                    }
+                    leaves = k;
+                    break;
+                }
+                merged[level][node] = true;
+                leaves -= children[level][node] - 1;
+            }
+        }
+
+        return label(bins, merged, clusters);
+    }
+
+    /**
+     * Selects the children of a node with the fewest pixels, which are merged into one leaf when merging all
+     * children would leave fewer than k leaves.
+     *
+     * @param node The index of the node within its level.
+     * @param level The level of the node.
+     * @param count The number of children to select.
+     * @param pixels The pixel count of every node of the levels above the bins.
+     * @param bins The bin index of every entry.
+     * @param counts The pixel count of every entry.
+     * @return The indices of the selected children within the level below the node.
+     */
+    private static int[] smallestChildren(int node, int level, int count, long[][] pixels, int[] bins,
+                                          long[] counts) {
+        int child = level + 1;
+        int mask = (1 << level) - 1;
+        int red = (node >> (2 * level)) & mask;
+        int green = (node >> level) & mask;
+        int blue = node & mask;
+        long[] childPixels = new long[8];
+        int[] childNodes = new int[8];
+        for (int octant = 0; octant < 8; octant++) {
+            childNodes[octant] = (((red << 1) | (octant >> 2)) << (2 * child))
+                    | (((green << 1) | ((octant >> 1) & 1)) << child)
+                    | ((blue << 1) | (octant & 1));
+            if (child < ColorHistogram.BITS) {
+                childPixels[octant] = pixels[child][childNodes[octant]];
+            } else {
+                int entry = Arrays.binarySearch(bins, childNodes[octant]);
+                childPixels[octant] = entry < 0 ? 0 : counts[entry];
+            }
+        }
+        long[] keys = new long[8];
+        int occupied = 0;
+        for (int octant = 0; octant < 8; octant++) {
+            if (childPixels[octant] > 0) {
+                keys[occupied++] = (childPixels[octant] << 3) | octant;
+            }
+        }
+        Arrays.sort(keys, 0, occupied);
+        int[] group = new int[count];
+        for (int i = 0; i < count; i++) {
+            group[i] = childNodes[(int) (keys[i] & 7)];
+        }
+        return group;
+    }
+
+    /**
+     * Numbers the leaves and assigns every bin the number of its leaf, which is its highest merged ancestor or the
+     * bin itself. Leaves that were merged by a partial merge are marked with the same number beforehand and keep it.
+     *
+     * @param bins The bin index of every entry.
+     * @param merged The merged nodes of every reduced level, or null for a level that was not reduced.
+     * @param clusters The number of every node of every level, -1 for nodes that are not numbered yet.
+     * @return The cluster of every entry.
+     */
+    private static int[] label(int[] bins, boolean[][] merged, int[][] clusters) {
+        int levels = ColorHistogram.BITS;
+        int[] labels = new int[bins.length];
+        int next = 1;
+        boolean grouped = false;
+        for (int entry = 0; entry < bins.length; entry++) {
+            int level = 0;
+            while (level < levels && (merged[level] == null || !merged[level][nodeOf(bins[entry], level)])) {
+                level++;
+            }
+            int node = nodeOf(bins[entry], level);
+            if (clusters[level][node] == 0) {
+                grouped = true;
+            } else if (clusters[level][node] < 0) {
+                clusters[level][node] = next++;
+            }
+            labels[entry] = clusters[level][node];
+        }
+        if (!grouped) {
+            for (int entry = 0; entry < labels.length; entry++) {
+                labels[entry]--;
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * Orders the nodes of a level that have children by their pixel count, fewest first.
+     *
+     * @param pixels The pixel count of every node of the level.
+     * @param children The number of occupied children of every node of the level.
+     * @return The indices of the nodes.
+     */
+    private static int[] byPixels(long[] pixels, int[] children) {
+        int nodes = 0;
+        long[] keys = new long[pixels.length];
+        for (int node = 0; node < pixels.length; node++) {
+            if (children[node] > 0) {
+                keys[nodes++] = (pixels[node] << (3 * ColorHistogram.BITS)) | node;
+            }
+        }
+        Arrays.sort(keys, 0, nodes);
+        int[] order = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            order[i] = (int) (keys[i] & ((1 << (3 * ColorHistogram.BITS)) - 1));
+        }
+        return order;
+    }
+
+    /**
+     * Returns the ancestor of a bin at a level.
+     *
+     * @param bin The bin index.
+     * @param level The level of the ancestor, from 0 for the root to {@link ColorHistogram#BITS} for the bin.
+     * @return The index of the node within its level.
+     */
+    private static int nodeOf(int bin, int level) {
+        int bits = ColorHistogram.BITS;
+        int shift = bits - level;
+        int mask = (1 << bits) - 1;
+        int red = (bin >> (2 * bits)) & mask;
+        int green = (bin >> bits) & mask;
+        int blue = bin & mask;
+        return ((red >> shift) << (2 * level)) | ((green >> shift) << level) | (blue >> shift);
+    }
+
+    /**
+     * Returns the parent of a node.
+     *
+     * @param node The index of the node within its level.
+     * @param level The level of the node, at least 1.
+     * @return The index of the parent within the level above.
+     */
+    private static int parentOf(int node, int level) {
+        int mask = (1 << level) - 1;
+        int red = (node >> (2 * level)) & mask;
+        int green = (node >> level) & mask;
+        int blue = node & mask;
+        int parent = level - 1;
+        return ((red >> 1) << (2 * parent)) | ((green >> 1) << parent) | (blue >> 1);
+    }
+}
@@ -1,62 +1,95 @@
 package org.knu.bll.algorithms.clustering;
 
+import org.knu.bll.CancellationToken;
 import org.knu.bll.ProgressListener;
+import org.knu.bll.StreamingProcessor;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
 import org.knu.bll.helpers.ImageHelper;
 
-import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
 
 /**
  * The OtsuThresholding class implements the Cluster interface to apply Otsu's thresholding method to an image.
  * This class converts an image to grayscale and then applies Otsu's thresholding to binarize the image.
  * Otsu's method is an adaptive thresholding technique that automatically determines the optimal threshold value
  * by maximizing the variance between two classes of pixels (foreground and background).
+ * <p>
+ * Images that are too large for the heap are thresholded in two streaming passes: the first counts the gray
+ * histogram of all tiles, the second binarizes every tile with the threshold of the whole image.
  *
  * @author Your Name
  * @version 1.0
  * @since 2023-10-01
  */
 public class OtsuThresholding implements Cluster {
+    private final TileScheduler scheduler;
 
     /**
-     * Applies Otsu's thresholding to the given image.
+     * Constructs an OtsuThresholding whose streaming passes run on the shared scheduler.
+     */
+    public OtsuThresholding() {
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs an OtsuThresholding.
+     *
+     * @param scheduler The TileScheduler that runs the histogram pass over the tiles of a streamed image.
+     */
+    public OtsuThresholding(TileScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Applies Otsu's thresholding to the given pixel buffer.
      *
-     * @param image The original image to which the thresholding will be applied.
-     *              This image should not be null.
+     * @param image The original pixels to which the thresholding will be applied.
+     *              This buffer should not be null.
      * @param listener A ProgressListener to receive progress updates during the thresholding
      *                 operation. This listener should not be null.
-     * @return A new BufferedImage that represents the binarized version of the original image.
+     * @return A new opaque PixelBuffer that represents the binarized version of the original pixels.
      *         If the input image is null, the method should throw a NullPointerException.
      * @throws NullPointerException if the image is null.
      * @throws NullPointerException if the listener is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
      */
     @Override
-    public BufferedImage applyCluster(BufferedImage image, ProgressListener listener) {
+    public PixelBuffer applyCluster(PixelBuffer image, ProgressListener listener) {
         if (image == null) throw new NullPointerException("Image cannot be null");
         if (listener == null) throw new NullPointerException("Listener cannot be null");
 
+        CancellationToken token = CancellationToken.of(listener);
         listener.onProgressStart(5);
 
-        BufferedImage bufferedImage = ImageHelper.copyImage(image);
-        ImageHelper.grayscale(bufferedImage);
+        PixelBuffer bufferedImage = image.copy();
+        ImageHelper.convertToGrayscale(bufferedImage);
         listener.onProgressUpdate();
 
 
         int width = bufferedImage.getWidth();
         int height = bufferedImage.getHeight();
 
+        token.throwIfCancelled();
         // Calculate histogram
         int[] histogram = ImageHelper.calculateCountIntensities(bufferedImage, 256)[3];
         listener.onProgressUpdate();
 
+        token.throwIfCancelled();
         // Calculate probabilities
         int totalPixels = width * height;
         double[] probabilities = calculateProbabilities(histogram, totalPixels);
         listener.onProgressUpdate();
 
+        token.throwIfCancelled();
         // Calculate threshold value
         int threshold = calculateThreshold(probabilities);
         listener.onProgressUpdate();
 
+        token.throwIfCancelled();
         // Apply threshold value
         bufferedImage =  applyThreshold(bufferedImage, width, height, threshold);
         listener.onProgressUpdate();
@@ -65,23 +98,72 @@ public class OtsuThresholding implements Cluster {
     }
 
 
+    /**
+     * Applies Otsu's thresholding to an image that is too large for the heap in two streaming passes, writing the
+     * result to a tiled TIFF file. The result equals thresholding the whole image.
+     *
+     * @param source The original image. This source should not be null.
+     * @param output The file to write. An existing file is replaced.
+     * @param listener A ProgressListener that receives one update per tile of each pass and one for the threshold.
+     *                 This listener should not be null.
+     * @throws NullPointerException if the source or the listener is null.
+     * @throws IllegalArgumentException if the output is the file of the source.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     * @throws RuntimeException if the source cannot be read or the output cannot be written.
+     */
+    public void applyCluster(TiledImageSource source, File output, ProgressListener listener) {
+        if (source == null) throw new NullPointerException("Image cannot be null");
+        if (listener == null) throw new NullPointerException("Listener cannot be null");
+
+        StreamingProcessor streaming = new StreamingProcessor(scheduler);
+        List<Tile> tiles = streaming.splitTiles(source, 0);
+        listener.onProgressStart(2 * tiles.size() + 1);
+
+        long[] histogram = streaming.reduce(source, tiles, listener, tile -> {
+            ImageHelper.convertToGrayscale(tile);
+            int[] counts = ImageHelper.calculateCountIntensities(tile, 256)[3];
+            long[] tileHistogram = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                tileHistogram[i] = counts[i];
+            }
+            return tileHistogram;
+        }, (first, second) -> {
+            for (int i = 0; i < first.length; i++) {
+                first[i] += second[i];
+            }
+            return first;
+        });
+
+        double[] probabilities = new double[256];
+        long totalPixels = (long) source.getWidth() * source.getHeight();
+        for (int i = 0; i < 256; i++) {
+            probabilities[i] = (double) histogram[i] / totalPixels;
+        }
+        int threshold = calculateThreshold(probabilities);
+        listener.onProgressUpdate();
+
+        streaming.apply(source, tiles, output, listener, (tile, inner) -> {
+            ImageHelper.convertToGrayscale(tile);
+            return applyThreshold(tile, tile.getWidth(), tile.getHeight(), threshold);
+        });
+    }
+
     /**
      * Applies the calculated threshold value to the grayscale image to create a binary image.
      *
-     * @param bufferedImage The grayscale image to which the thresholding will be applied.
+     * @param bufferedImage The grayscale pixels to which the thresholding will be applied.
      * @param width The width of the image.
      * @param height The height of the image.
      * @param threshold The threshold value to be applied.
-     * @return A new BufferedImage that represents the binarized version of the grayscale image.
+     * @return A new PixelBuffer that represents the binarized version of the grayscale pixels.
      */
-    private static BufferedImage applyThreshold(BufferedImage bufferedImage, int width, int height, int threshold) {
-        BufferedImage binaryImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int gray = (bufferedImage.getRGB(x, y) >> 16) & 0xFF;
-                int binary = (gray >= threshold) ? 0xFFFFFF : 0x000000;
-                binaryImage.setRGB(x, y, binary);
-            }
+    private static PixelBuffer applyThreshold(PixelBuffer bufferedImage, int width, int height, int threshold) {
+        int[] grayPixels = bufferedImage.getPixels();
+        PixelBuffer binaryImage = PixelBuffer.create(width, height, false);
+        int[] binaryPixels = binaryImage.getPixels();
+        for (int i = 0; i < width * height; i++) {
+            int gray = (grayPixels[i] >> 16) & 0xFF;
+            binaryPixels[i] = (gray >= threshold) ? 0xFFFFFF : 0x000000;
         }
         return binaryImage;
     }
@@ -0,0 +1,26 @@
+package org.knu.bll.algorithms.clustering;
+
+/**
+ * The QuantizationMethod enum selects how a {@link QuantizerCluster} partitions the color cube of an image into
+ * clusters. All methods work on the occupied bins of the 5-bit color histogram in a single pass, without iterations,
+ * and produce the exact mean colors of their clusters.
+ */
+public enum QuantizationMethod {
+    /**
+     * Octree quantization: the bins are the leaves of an octree over the color cube, and the nodes of the deepest
+     * level with the fewest pixels are merged into their parents until k leaves remain. The cheapest partition, but
+     * the clusters follow the fixed cells of the octree, so the error is the highest of the three.
+     */
+    OCTREE,
+    /**
+     * Median cut: the box with the most pixels is split at the median pixel of its longest side until there are k
+     * boxes, as in Heckbert's algorithm.
+     */
+    MEDIAN_CUT,
+    /**
+     * Variance cut: the box with the largest squared error is split at the point of the axis that minimizes the
+     * squared error of the two halves, the greedy orthogonal bipartition of Wu's quantizer. Slightly slower than
+     * median cut and usually the closest to K-Means.
+     */
+    VARIANCE_CUT
+}
@@ -0,0 +1,408 @@
+package org.knu.bll.algorithms.clustering;
+
+import org.knu.bll.CancellationToken;
+import org.knu.bll.ProgressListener;
+import org.knu.bll.StreamingProcessor;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+
+/**
+ * The QuantizerCluster class implements the Cluster interface with a single-pass color quantizer: octree, median cut
+ * or variance cut, selected by a {@link QuantizationMethod}. Like {@link KMeansCluster}, it counts the colors of the
+ * image into the 5-bit color histogram on row bands in parallel and maps the pixels back through a lookup table, but
+ * instead of iterating it partitions the occupied bins once, in time linear in the number of pixels and memory
+ * bounded by the size of the histogram. Every cluster gets the exact mean color of its pixels.
+ * <p>
+ * The result is close to K-Means and deterministic, which makes the palette of a quantizer a good seed for it:
+ * <pre>{@code
+ * ColorPalette seed = quantizer.quantize(image, k, listener);
+ * ClusteringResult result = kMeans.cluster(image, seed, Double.POSITIVE_INFINITY, listener);
+ * }</pre>
+ * K-Means seeded this way starts close to a good optimum and usually needs far fewer iterations than from a k-means++
+ * seeding. {@link #compare(PixelBuffer, int, ProgressListener)} reports the quality and time of a quantizer against
+ * full K-Means on an image.
+ */
+public class QuantizerCluster implements Cluster {
+    private final TileScheduler scheduler;
+    private final QuantizationMethod method;
+    private final int k;
+
+    /**
+     * Constructs a QuantizerCluster with the default number of clusters that runs on the shared scheduler.
+     *
+     * @param method The quantization method.
+     * @throws NullPointerException if the method is null.
+     */
+    public QuantizerCluster(QuantizationMethod method) {
+        this(TileScheduler.shared(), method);
+    }
+
+    /**
+     * Constructs a QuantizerCluster with the default number of clusters.
+     *
+     * @param scheduler The TileScheduler that runs the row bands.
+     * @param method The quantization method.
+     * @throws NullPointerException if the method is null.
+     */
+    public QuantizerCluster(TileScheduler scheduler, QuantizationMethod method) {
+        this(scheduler, method, KMeansCluster.DEFAULT_CLUSTERS);
+    }
+
+    /**
+     * Constructs a QuantizerCluster.
+     *
+     * @param scheduler The TileScheduler that runs the row bands.
+     * @param method The quantization method.
+     * @param k The number of clusters used by {@link #applyCluster(PixelBuffer, ProgressListener)}.
+     * @throws NullPointerException if the method is null.
+     * @throws IllegalArgumentException if k is not positive.
+     */
+    public QuantizerCluster(TileScheduler scheduler, QuantizationMethod method, int k) {
+        if (method == null) throw new NullPointerException("Method cannot be null");
+        validateK(k);
+        this.scheduler = scheduler;
+        this.method = method;
+        this.k = k;
+    }
+
+    /**
+     * Applies the quantizer to the given pixel buffer.
+     *
+     * @param image The original pixels to which the clustering algorithm will be applied.
+     *              This buffer should not be null.
+     * @param listener A ProgressListener to receive progress updates during the clustering
+     *                 operation. This listener should not be null.
+     * @return A new opaque PixelBuffer in which every pixel has the color of its cluster.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    @Override
+    public PixelBuffer applyCluster(PixelBuffer image, ProgressListener listener) {
+        return applyCluster(image, k, listener);
+    }
+
+    /**
+     * Applies the quantizer with the given number of clusters to the given image.
+     *
+     * @param image The original image. This image should not be null.
+     * @param k The number of clusters for this call.
+     * @param listener A ProgressListener to receive progress updates during the clustering
+     *                 operation. This listener should not be null.
+     * @return A new BufferedImage in which every pixel has the color of its cluster.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public BufferedImage applyCluster(BufferedImage image, int k, ProgressListener listener) {
+        if (image == null) throw new NullPointerException("Image cannot be null");
+        return applyCluster(PixelBuffer.wrap(image), k, listener).toImage();
+    }
+
+    /**
+     * Applies the quantizer with the given number of clusters to the given pixel buffer.
+     *
+     * @param image The original pixels. This buffer should not be null.
+     * @param k The number of clusters for this call.
+     * @param listener A ProgressListener that receives one update for counting the colors, one for the partition
+     *                 and one for mapping the pixels. This listener should not be null.
+     * @return A new opaque PixelBuffer in which every pixel has the color of its cluster.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public PixelBuffer applyCluster(PixelBuffer image, int k, ProgressListener listener) {
+        validateArguments(image, k, listener);
+        CancellationToken token = CancellationToken.of(listener);
+        List<Tile> bands = scheduler.splitBands(image.getWidth(), image.getHeight(), 0);
+        listener.onProgressStart(bands.size() + 2);
+
+        ColorHistogram histogram = ColorHistogram.count(scheduler, image, bands, listener);
+
+        HistogramPartition partition = partition(histogram, k);
+        listener.onProgressUpdate();
+
+        PixelBuffer segmentedImage = PixelBuffer.create(image.getWidth(), image.getHeight(), false);
+        mapPixels(image, segmentedImage.getPixels(), partition.getBinColors(), token);
+        listener.onProgressUpdate();
+
+        return segmentedImage;
+    }
+
+    /**
+     * Clusters the given pixel buffer and returns the labels and centroids instead of an image.
+     *
+     * @param image The original pixels to be clustered. This buffer should not be null.
+     * @param k The number of clusters.
+     * @param listener A ProgressListener that receives one update for counting the colors, one for the partition
+     *                 and one for labeling the pixels. This listener should not be null.
+     * @return The cluster of every pixel, the palette of the exact cluster means, no iterations and the inertia of
+     *         the pixels to the means. There are fewer than k clusters only if the image has fewer colors.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public ClusteringResult cluster(PixelBuffer image, int k, ProgressListener listener) {
+        validateArguments(image, k, listener);
+        CancellationToken token = CancellationToken.of(listener);
+        List<Tile> bands = scheduler.splitBands(image.getWidth(), image.getHeight(), 0);
+        listener.onProgressStart(bands.size() + 2);
+
+        ColorHistogram histogram = ColorHistogram.count(scheduler, image, bands, listener);
+
+        HistogramPartition partition = partition(histogram, k);
+        listener.onProgressUpdate();
+
+        int[] labels = new int[image.getWidth() * image.getHeight()];
+        mapPixels(image, labels, partition.getBinLabels(), token);
+        listener.onProgressUpdate();
+
+        return new ClusteringResult(image.getWidth(), image.getHeight(), labels, partition.getPalette(), 0,
+                partition.getInertia(), false);
+    }
+
+    /**
+     * Computes the palette of the given pixel buffer without labeling its pixels, for example to seed K-Means with
+     * {@link KMeansCluster#cluster(PixelBuffer, ColorPalette, double, ProgressListener)}.
+     *
+     * @param image The original pixels. This buffer should not be null.
+     * @param k The number of colors.
+     * @param listener A ProgressListener that receives one update for counting the colors and one for the
+     *                 partition. This listener should not be null.
+     * @return The exact mean colors of the clusters and the mean squared error of the pixels to them.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public ColorPalette quantize(PixelBuffer image, int k, ProgressListener listener) {
+        validateArguments(image, k, listener);
+        List<Tile> bands = scheduler.splitBands(image.getWidth(), image.getHeight(), 0);
+        listener.onProgressStart(bands.size() + 1);
+
+        ColorHistogram histogram = ColorHistogram.count(scheduler, image, bands, listener);
+
+        ColorPalette palette = partition(histogram, k).getPalette();
+        listener.onProgressUpdate();
+        return palette;
+    }
+
+    /**
+     * Clusters an image both with this quantizer and with the full K-Means of {@link KMeansCluster}, and compares
+     * the quality and time of the two. Both inertias are measured on the pixels against the centroid colors of the
+     * clusters, so the ratio compares the images the two produce.
+     *
+     * @param image The original pixels to be clustered. This buffer should not be null.
+     * @param k The number of clusters.
+     * @param listener A ProgressListener that receives one update per finished clustering. This listener should
+     *                 not be null.
+     * @return The results, inertias and times of both clusterings.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public ClusteringComparison compare(PixelBuffer image, int k, ProgressListener listener) {
+        validateArguments(image, k, listener);
+        CancellationToken token = CancellationToken.of(listener);
+        ProgressListener inner = ProgressListener.withoutProgress(token);
+        listener.onProgressStart(2);
+
+        long start = System.nanoTime();
+        ClusteringResult quantized = cluster(image, k, inner);
+        long quantizedNanos = System.nanoTime() - start;
+        listener.onProgressUpdate();
+
+        start = System.nanoTime();
+        ClusteringResult full = new KMeansCluster(scheduler, k).cluster(image, k, inner);
+        long fullNanos = System.nanoTime() - start;
+        listener.onProgressUpdate();
+
+        return new ClusteringComparison(quantized, full, measureInertia(image, quantized, token),
+                measureInertia(image, full, token), quantizedNanos, fullNanos);
+    }
+
+    /**
+     * Applies the quantizer to an image that is too large for the heap. The colors are counted tile by tile, and the
+     * mapped tiles are streamed to a tiled TIFF file.
+     *
+     * @param source The original image. This source should not be null.
+     * @param k The number of clusters.
+     * @param output The file to write. An existing file is replaced.
+     * @param listener A ProgressListener that receives one update per tile of each pass and one for the partition.
+     *                 This listener should not be null.
+     * @throws NullPointerException if the source or the listener is null.
+     * @throws IllegalArgumentException if k is not positive or the output is the file of the source.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     * @throws RuntimeException if the source cannot be read or the output cannot be written.
+     */
+    public void applyCluster(TiledImageSource source, int k, File output, ProgressListener listener) {
+        if (source == null) throw new NullPointerException("Image cannot be null");
+        if (listener == null) throw new NullPointerException("Listener cannot be null");
+        validateK(k);
+        StreamingProcessor streaming = new StreamingProcessor(scheduler);
+        List<Tile> tiles = streaming.splitTiles(source, 0);
+        listener.onProgressStart(2 * tiles.size() + 1);
+
+        long[] stats = streaming.reduce(source, tiles, listener,
+                tile -> ColorHistogram.count(tile, 0, tile.getHeight()), ColorHistogram::merge);
+        int[] binColors = partition(ColorHistogram.of(stats), k).getBinColors();
+        listener.onProgressUpdate();
+
+        streaming.apply(source, tiles, output, listener, (tile, inner) -> {
+            PixelBuffer segmented = PixelBuffer.create(tile.getWidth(), tile.getHeight(), false);
+            mapPixels(tile, segmented.getPixels(), binColors, CancellationToken.of(inner));
+            return segmented;
+        });
+    }
+
+    /**
+     * Returns the number of clusters used when none is given.
+     *
+     * @return The default k of this instance.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the quantization method.
+     *
+     * @return The method of this instance.
+     */
+    public QuantizationMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * Validates the arguments of a clustering call.
+     *
+     * @param image The original pixels.
+     * @param k The number of clusters.
+     * @param listener The listener of the call.
+     * @throws NullPointerException if the image or the listener is null.
+     * @throws IllegalArgumentException if k is not positive.
+     */
+    private static void validateArguments(PixelBuffer image, int k, ProgressListener listener) {
+        if (image == null) {
+            throw new NullPointerException("Image cannot be null");
+        }
+        if (listener == null) {
+            throw new NullPointerException("Listener cannot be null");
+        }
+        validateK(k);
+    }
+
+    /**
+     * Validates the number of clusters.
+     *
+     * @param k The number of clusters.
+     * @throws IllegalArgumentException if k is not positive.
+     */
+    private static void validateK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Number of clusters must be positive");
+        }
+    }
+
+    /**
+     * Partitions the occupied bins of a histogram with the method of this instance.
+     *
+     * @param histogram The colors of the image.
+     * @param k The number of clusters.
+     * @return The clusters of the bins.
+     */
+    private HistogramPartition partition(ColorHistogram histogram, int k) {
+        int[] labels;
+        switch (method) {
+            case OCTREE:
+                labels = OctreeQuantizer.partition(histogram, k);
+                break;
+            case MEDIAN_CUT:
+                labels = BoxQuantizer.partition(histogram, k, false);
+                break;
+            default:
+                labels = BoxQuantizer.partition(histogram, k, true);
+                break;
+        }
+        return new HistogramPartition(histogram, labels);
+    }
+
+    /**
+     * Maps every pixel through a table indexed by the bin of its color, on row bands in parallel.
+     *
+     * @param image The original pixels.
+     * @param target The row-major array that receives the mapped value of every pixel.
+     * @param table The value of every bin.
+     * @param token The token polled before every row.
+     */
+    private void mapPixels(PixelBuffer image, int[] target, int[] table, CancellationToken token) {
+        int width = image.getWidth();
+        int[] pixels = image.getPixels();
+        List<Tile> bands = scheduler.splitBands(width, image.getHeight(), 0);
+        scheduler.forEach(bands, null, band -> {
+            for (int y = band.getY(); y < band.getEndY(); y++) {
+                token.throwIfCancelled();
+                for (int i = y * width; i < (y + 1) * width; i++) {
+                    target[i] = table[ColorHistogram.binOf(pixels[i])];
+                }
+            }
+        });
+    }
+
+    /**
+     * Measures the inertia of a clustering on the pixels against the rounded centroid colors.
+     *
+     * @param image The original pixels.
+     * @param result The clustering of the pixels.
+     * @param token The token polled before every row.
+     * @return The sum of the squared distances of the pixels to the colors of their centroids.
+     */
+    private long measureInertia(PixelBuffer image, ClusteringResult result, CancellationToken token) {
+        int width = image.getWidth();
+        int[] pixels = image.getPixels();
+        int[] labels = result.getLabels();
+        List<Tile> bands = scheduler.splitBands(width, image.getHeight(), 0);
+        return scheduler.reduce(bands, null, band -> {
+            long inertia = 0;
+            for (int y = band.getY(); y < band.getEndY(); y++) {
+                token.throwIfCancelled();
+                for (int i = y * width; i < (y + 1) * width; i++) {
+                    int rgb = pixels[i];
+                    int[] centroid = result.getCentroid(labels[i]);
+                    int dr = ((rgb >> 16) & 0xFF) - centroid[0];
+                    int dg = ((rgb >> 8) & 0xFF) - centroid[1];
+                    int db = (rgb & 0xFF) - centroid[2];
+                    inertia += dr * dr + dg * dg + db * db;
+                }
+            }
+            return inertia;
+        }, Long::sum);
+    }
+
+    /**
+     * Returns a string representation of the quantizer.
+     *
+     * @return The name of the quantization method.
+     */
+    @Override
+    public String toString() {
+        switch (method) {
+            case OCTREE:
+                return "Octree quantizer";
+            case MEDIAN_CUT:
+                return "Median cut quantizer";
+            default:
+                return "Variance cut quantizer";
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.knu.bll.algorithms.convolution;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The Kernels class creates the one-dimensional kernels used by {@link SeparableConvolution}.
+ * Gaussian kernels are cached per (size, sigma) pair, so repeated filter runs do not rebuild them. The cache keeps
+ * only the 32 most recently used kernels, because the live preview scales sigma with the zoom and would otherwise
+ * add a kernel for every zoom level it is shown at.
+ * <p>
+ * The returned arrays are shared and must not be modified.
+ */
+public final class Kernels {
+    /**
+     * The smoothing part of the Sobel operator.
+     */
+    public static final double[] SOBEL_SMOOTHING = {1, 2, 1};
+
+    /**
+     * The derivative part of the Sobel and Prewitt operators.
+     */
+    public static final double[] CENTRAL_DIFFERENCE = {-1, 0, 1};
+
+    /**
+     * The smoothing part of the Prewitt operator.
+     */
+    public static final double[] PREWITT_SMOOTHING = {1, 1, 1};
+
+    private static final int GAUSSIAN_CACHE_SIZE = 32;
+    private static final Map<GaussianKey, double[]> GAUSSIAN_CACHE =
+            new LinkedHashMap<>(GAUSSIAN_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<GaussianKey, double[]> eldest) {
+                    return size() > GAUSSIAN_CACHE_SIZE;
+                }
+            };
+
+    private Kernels() {
+    }
+
+    /**
+     * Returns the normalized one-dimensional Gaussian kernel of the given size.
+     * The outer product of this kernel with itself equals the normalized two-dimensional Gaussian kernel.
+     *
+     * @param size  The size of the kernel. The size should be a positive odd integer.
+     * @param sigma The standard deviation of the Gaussian distribution.
+     * @return A shared array with the kernel weights that sum to one.
+     * @throws IllegalArgumentException if the size is not a positive odd integer or sigma is not positive.
+     */
+    public static double[] gaussian(int size, double sigma) {
+        validateSize(size);
+        if (!(sigma > 0)) {
+            throw new IllegalArgumentException("Sigma must be positive");
+        }
+        synchronized (GAUSSIAN_CACHE) {
+            return GAUSSIAN_CACHE.computeIfAbsent(new GaussianKey(size, sigma), Kernels::createGaussian);
+        }
+    }
+
+    /**
+     * Returns the number of cached Gaussian kernels.
+     *
+     * @return The number of kernels, at most the size of the cache.
+     */
+    static int cachedGaussians() {
+        synchronized (GAUSSIAN_CACHE) {
+            return GAUSSIAN_CACHE.size();
+        }
+    }
+
+    /**
+     * Returns the normalized box kernel of the given size.
+     *
+     * @param size The size of the kernel. The size should be a positive odd integer.
+     * @return A new array where every weight equals 1 / size.
+     * @throws IllegalArgumentException if the size is not a positive odd integer.
+     */
+    public static double[] box(int size) {
+        validateSize(size);
+        double[] kernel = new double[size];
+        Arrays.fill(kernel, 1.0 / size);
+        return kernel;
+    }
+
+    /**
+     * Creates the normalized Gaussian kernel for the given key.
+     *
+     * @param key The size and sigma of the kernel.
+     * @return A new array with the kernel weights.
+     */
+    private static double[] createGaussian(GaussianKey key) {
+        double[] kernel = new double[key.size()];
+        int radius = key.size() / 2;
+        double sum = 0.0;
+
+        for (int x = -radius; x <= radius; x++) {
+            double value = Math.exp(-(x * x) / (2 * key.sigma() * key.sigma()));
+            kernel[x + radius] = value;
+            sum += value;
+        }
+
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] /= sum;
+        }
+        return kernel;
+    }
+
+    /**
+     * Validates that the kernel size is a positive odd integer.
+     *
+     * @param size The size of the kernel.
+     * @throws IllegalArgumentException if the size is not a positive odd integer.
+     */
+    private static void validateSize(int size) {
+        if (size <= 0 || size % 2 == 0) {
+            throw new IllegalArgumentException("Kernel size must be a positive odd number");
+        }
+    }
+
+    /**
+     * The cache key of a Gaussian kernel.
+     *
+     * @param size  The size of the kernel.
+     * @param sigma The standard deviation of the Gaussian distribution.
+     */
+    private record GaussianKey(int size, double sigma) {
+    }
+}
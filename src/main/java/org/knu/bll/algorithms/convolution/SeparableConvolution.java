@@ -0,0 +1,311 @@
+package org.knu.bll.algorithms.convolution;
+
+import org.knu.bll.CancellationToken;
+import org.knu.bll.ProgressListener;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.util.Arrays;
+
+/**
+ * The SeparableConvolution class convolves an image with a kernel that is the outer product of a vertical
+ * and a horizontal one-dimensional kernel. Instead of size * size multiply-adds per pixel it performs
+ * size + size: every output row is first accumulated vertically into a row scratch buffer, and the
+ * scratch row is then convolved horizontally into the target.
+ * <p>
+ * Instances are immutable and can be shared between threads. Every thread needs its own scratch buffer,
+ * see {@link #createRowScratch(int)}.
+ */
+public class SeparableConvolution {
+    private static final int CHANNELS = 4;
+
+    private final double[] horizontal;
+    private final double[] vertical;
+    private final BorderMode borderMode;
+
+    /**
+     * The BorderMode enum defines how samples outside the image are treated.
+     */
+    public enum BorderMode {
+        /**
+         * Samples outside the image are zero, the kernel is not renormalized near the edges.
+         */
+        ZERO,
+        /**
+         * Samples outside the image repeat the nearest edge pixel.
+         */
+        CLAMP
+    }
+
+    /**
+     * Constructs a SeparableConvolution with the given kernels.
+     *
+     * @param horizontal The kernel applied along the rows. The size should be a positive odd integer.
+     * @param vertical   The kernel applied along the columns. The size should be a positive odd integer.
+     * @param borderMode The treatment of samples outside the image.
+     * @throws IllegalArgumentException if a kernel size is not a positive odd integer.
+     * @throws NullPointerException if any argument is null.
+     */
+    public SeparableConvolution(double[] horizontal, double[] vertical, BorderMode borderMode) {
+        if (borderMode == null) throw new NullPointerException("Border mode cannot be null");
+        validateKernel(horizontal);
+        validateKernel(vertical);
+        this.horizontal = horizontal;
+        this.vertical = vertical;
+        this.borderMode = borderMode;
+    }
+
+    /**
+     * Constructs a SeparableConvolution that applies the same kernel along rows and columns.
+     *
+     * @param kernel     The one-dimensional kernel. The size should be a positive odd integer.
+     * @param borderMode The treatment of samples outside the image.
+     */
+    public SeparableConvolution(double[] kernel, BorderMode borderMode) {
+        this(kernel, kernel, borderMode);
+    }
+
+    /**
+     * Returns the number of rows above and below an output row that the convolution reads.
+     *
+     * @return The vertical radius of the kernel.
+     */
+    public int getVerticalRadius() {
+        return vertical.length / 2;
+    }
+
+    /**
+     * Returns the number of columns left and right of an output pixel that the convolution reads.
+     *
+     * @return The horizontal radius of the kernel.
+     */
+    public int getHorizontalRadius() {
+        return horizontal.length / 2;
+    }
+
+    /**
+     * Creates a scratch buffer large enough for one row of the given width.
+     * The buffer can be reused for any number of calls on images of at most this width.
+     *
+     * @param width The width of the image.
+     * @return A new scratch buffer.
+     */
+    public static double[] createRowScratch(int width) {
+        return new double[width * CHANNELS];
+    }
+
+    /**
+     * Convolves every channel of the given pixel buffer, including alpha.
+     * Results are truncated and clamped to the range 0 to 255.
+     *
+     * @param source   The pixels to convolve. This buffer should not be null and is not modified.
+     * @param listener A ProgressListener that receives one update per output row and whose cancellation token is
+     *                 polled before every row. This can be null.
+     * @return A new PixelBuffer with the convolved pixels and the alpha mode of the source.
+     * @throws NullPointerException if the source is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public PixelBuffer apply(PixelBuffer source, ProgressListener listener) {
+        if (source == null) throw new NullPointerException("Image cannot be null");
+
+        PixelBuffer target = PixelBuffer.createCompatible(source);
+        double[] scratch = createRowScratch(source.getWidth());
+        CancellationToken token = CancellationToken.of(listener);
+        for (int y = 0; y < source.getHeight(); y++) {
+            token.throwIfCancelled();
+            convolveRows(source, target, y, y + 1, scratch);
+            if (listener != null) listener.onProgressUpdate();
+        }
+        return target;
+    }
+
+    /**
+     * Convolves the rows fromRow (inclusive) to toRow (exclusive) of the source into the same rows of the target.
+     * Rows outside this range are only read, so disjoint row ranges can be processed concurrently.
+     *
+     * @param source  The pixels to convolve.
+     * @param target  The buffer that receives the result. It must have the same size as the source
+     *                and must not share its pixel array.
+     * @param fromRow The first row to compute.
+     * @param toRow   The row after the last row to compute.
+     * @param scratch A scratch buffer created by {@link #createRowScratch(int)} for at least the source width.
+     */
+    public void convolveRows(PixelBuffer source, PixelBuffer target, int fromRow, int toRow, double[] scratch) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] sourcePixels = source.getPixels();
+        int[] targetPixels = target.getPixels();
+        int verticalRadius = vertical.length / 2;
+        int horizontalRadius = horizontal.length / 2;
+
+        for (int y = fromRow; y < toRow; y++) {
+            Arrays.fill(scratch, 0, width * CHANNELS, 0);
+
+            for (int k = 0; k < vertical.length; k++) {
+                int py = borderIndex(y + k - verticalRadius, height);
+                if (py < 0) continue;
+                double weight = vertical[k];
+                int rowOffset = py * width;
+                for (int x = 0, s = 0; x < width; x++, s += CHANNELS) {
+                    int rgb = sourcePixels[rowOffset + x];
+                    scratch[s] += ((rgb >>> 24) & 0xff) * weight;
+                    scratch[s + 1] += ((rgb >> 16) & 0xff) * weight;
+                    scratch[s + 2] += ((rgb >> 8) & 0xff) * weight;
+                    scratch[s + 3] += (rgb & 0xff) * weight;
+                }
+            }
+
+            int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                double alpha = 0;
+                double red = 0;
+                double green = 0;
+                double blue = 0;
+                for (int k = 0; k < horizontal.length; k++) {
+                    int px = borderIndex(x + k - horizontalRadius, width);
+                    if (px < 0) continue;
+                    double weight = horizontal[k];
+                    int s = px * CHANNELS;
+                    alpha += scratch[s] * weight;
+                    red += scratch[s + 1] * weight;
+                    green += scratch[s + 2] * weight;
+                    blue += scratch[s + 3] * weight;
+                }
+                targetPixels[rowOffset + x] = (toByte(alpha) << 24) | (toByte(red) << 16) | (toByte(green) << 8) | toByte(blue);
+            }
+        }
+    }
+
+    /**
+     * Convolves a grayscale plane without clamping, which is what gradient kernels need.
+     *
+     * @param source The intensities to convolve. This buffer should not be null and is not modified.
+     * @return A new row-major array with the convolved values.
+     * @throws NullPointerException if the source is null.
+     */
+    public float[] apply(GrayBuffer source) {
+        if (source == null) throw new NullPointerException("Image cannot be null");
+
+        float[] target = new float[source.getWidth() * source.getHeight()];
+        convolveRows(source, target, 0, source.getHeight(), createRowScratch(source.getWidth()));
+        return target;
+    }
+
+    /**
+     * Convolves the rows fromRow (inclusive) to toRow (exclusive) of a grayscale plane into the same rows
+     * of the target array. Disjoint row ranges can be processed concurrently.
+     *
+     * @param source  The intensities to convolve.
+     * @param target  The row-major array that receives the result, at least width * height long.
+     * @param fromRow The first row to compute.
+     * @param toRow   The row after the last row to compute.
+     * @param scratch A scratch buffer created by {@link #createRowScratch(int)} for at least the source width.
+     */
+    public void convolveRows(GrayBuffer source, float[] target, int fromRow, int toRow, double[] scratch) {
+        int width = source.getWidth();
+        for (int y = fromRow; y < toRow; y++) {
+            convolveGrayRow(source, y, scratch);
+            int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                target[rowOffset + x] = (float) scratch[width + x];
+            }
+        }
+    }
+
+    /**
+     * Convolves the rows fromRow (inclusive) to toRow (exclusive) of a grayscale plane into the same rows
+     * of the target plane. Values are truncated and clamped like the channels of a PixelBuffer.
+     * Disjoint row ranges can be processed concurrently.
+     *
+     * @param source  The intensities to convolve.
+     * @param target  The plane that receives the result. It must have the same size as the source
+     *                and must not share its sample array.
+     * @param fromRow The first row to compute.
+     * @param toRow   The row after the last row to compute.
+     * @param scratch A scratch buffer created by {@link #createRowScratch(int)} for at least the source width.
+     */
+    public void convolveRows(GrayBuffer source, GrayBuffer target, int fromRow, int toRow, double[] scratch) {
+        int width = source.getWidth();
+        byte[] targetSamples = target.getSamples();
+        for (int y = fromRow; y < toRow; y++) {
+            convolveGrayRow(source, y, scratch);
+            int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                targetSamples[rowOffset + x] = (byte) toByte(scratch[width + x]);
+            }
+        }
+    }
+
+    /**
+     * Convolves one row of a grayscale plane. The vertical sums are kept in the first width entries
+     * of the scratch buffer and the result in the next width entries.
+     *
+     * @param source  The intensities to convolve.
+     * @param y       The row to compute.
+     * @param scratch A scratch buffer created by {@link #createRowScratch(int)} for at least the source width.
+     */
+    private void convolveGrayRow(GrayBuffer source, int y, double[] scratch) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        byte[] samples = source.getSamples();
+        int verticalRadius = vertical.length / 2;
+        int horizontalRadius = horizontal.length / 2;
+
+        Arrays.fill(scratch, 0, width, 0);
+        for (int k = 0; k < vertical.length; k++) {
+            int py = borderIndex(y + k - verticalRadius, height);
+            if (py < 0) continue;
+            double weight = vertical[k];
+            if (weight == 0) continue;
+            int rowOffset = py * width;
+            for (int x = 0; x < width; x++) {
+                scratch[x] += (samples[rowOffset + x] & 0xff) * weight;
+            }
+        }
+
+        for (int x = 0; x < width; x++) {
+            double sum = 0;
+            for (int k = 0; k < horizontal.length; k++) {
+                int px = borderIndex(x + k - horizontalRadius, width);
+                if (px >= 0) sum += scratch[px] * horizontal[k];
+            }
+            scratch[width + x] = sum;
+        }
+    }
+
+    /**
+     * Maps a sample index to an index inside the image according to the border mode.
+     *
+     * @param index  The index of the sample, possibly outside the image.
+     * @param length The number of samples along the axis.
+     * @return The index to read, or -1 if the sample is zero.
+     */
+    private int borderIndex(int index, int length) {
+        if (index >= 0 && index < length) return index;
+        if (borderMode == BorderMode.ZERO) return -1;
+        return index < 0 ? 0 : length - 1;
+    }
+
+    /**
+     * Truncates a channel value and clamps it to the range 0 to 255.
+     *
+     * @param value The channel value.
+     * @return The clamped channel value.
+     */
+    private static int toByte(double value) {
+        return Math.min(255, Math.max(0, (int) value));
+    }
+
+    /**
+     * Validates that the kernel size is a positive odd integer.
+     *
+     * @param kernel The kernel to validate.
+     * @throws IllegalArgumentException if the size is not a positive odd integer.
+     */
+    private static void validateKernel(double[] kernel) {
+        if (kernel == null) throw new NullPointerException("Kernel cannot be null");
+        if (kernel.length % 2 == 0) {
+            throw new IllegalArgumentException("Kernel size must be a positive odd number");
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package org.knu.bll.algorithms.edges;
 
 import org.knu.bll.ProgressListener;
+import org.knu.bll.StreamingProcessor;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
 
 /**
  * The EdgeDetectionOperator interface defines a contract for applying edge detection algorithms to an image.
@@ -23,13 +29,82 @@ public interface EdgeDetectionOperator {
      * @throws NullPointerException if the image is null.
      * @throws NullPointerException if the listener is null.
      */
-    BufferedImage applyOperator(BufferedImage image, ProgressListener listener);
+    default BufferedImage applyOperator(BufferedImage image, ProgressListener listener) {
+        if (image == null) throw new NullPointerException("Image cannot be null");
+        return applyOperator(PixelBuffer.wrap(image), listener).toImage();
+    }
 
     /**
-     * Returns the gradient directions calculated during the edge detection process.
+     * Applies an edge detection operator to the given pixel buffer.
      *
-     * @return A 2D array representing the gradient directions for each pixel.
+     * @param image The original pixels to which the edge detection operator will be applied.
+     *              This buffer should not be null and is not modified.
+     * @param listener A ProgressListener to receive progress updates during the edge detection
+     *                 operation. This listener should not be null.
+     * @return A new opaque PixelBuffer that represents the gradient magnitudes of the original pixels.
+     * @throws NullPointerException if the image is null.
+     * @throws NullPointerException if the listener is null.
+     */
+    PixelBuffer applyOperator(PixelBuffer image, ProgressListener listener);
+
+    /**
+     * Applies an edge detection operator to an image that is too large for the heap, streaming it tile by tile into
+     * a tiled TIFF file. The kernels reach one pixel around the pixel they compute, so every tile is read with a halo
+     * of one pixel.
+     *
+     * @param source The original image. This source should not be null.
+     * @param output The file to write. An existing file is replaced.
+     * @param listener A ProgressListener that receives one update per tile. This listener should not be null.
+     * @throws NullPointerException if the source or the listener is null.
+     * @throws IllegalArgumentException if the output is the file of the source.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     * @throws RuntimeException if the source cannot be read or the output cannot be written.
+     */
+    default void applyOperator(TiledImageSource source, File output, ProgressListener listener) {
+        new StreamingProcessor(getScheduler()).apply(source, 1, output, listener, this::applyOperator);
+    }
+
+    /**
+     * Returns the TileScheduler the operator runs on, which also splits the tiles of streamed images.
+     * The default implementation returns the shared scheduler.
+     *
+     * @return The TileScheduler of the operator.
+     */
+    default TileScheduler getScheduler() {
+        return TileScheduler.shared();
+    }
+
+    /**
+     * Computes the gradient magnitudes and the quantized gradient directions of the rows fromRow (inclusive)
+     * to toRow (exclusive) of a grayscale plane. Row y is stored at offset (y - fromRow) * width of both arrays.
+     * Pixels on the image border, where the kernel does not fit, get a magnitude of 0.
+     * Disjoint row ranges can be computed concurrently.
+     *
+     * @param image The intensities to differentiate. This buffer should not be null and is not modified.
+     * @param fromRow The first row to compute.
+     * @param toRow The row after the last row to compute.
+     * @param magnitudes The array that receives the unclamped gradient magnitudes, at least
+     *                   (toRow - fromRow) * width long.
+     * @param directions The array that receives the directions as {@link GradientDirection} constants, at least
+     *                   (toRow - fromRow) * width long.
      */
-    double[][] getGradientDirections();
+    void computeGradients(GrayBuffer image, int fromRow, int toRow, float[] magnitudes, byte[] directions);
 
+    /**
+     * Computes the gradient magnitudes and the quantized gradient directions of a whole grayscale plane.
+     * The result is returned instead of kept by the operator, so one instance can serve several threads.
+     *
+     * @param image The intensities to differentiate. This buffer should not be null and is not modified.
+     * @return A new GradientField with the magnitude and direction of every pixel.
+     * @throws NullPointerException if the image is null.
+     */
+    default GradientField computeGradients(GrayBuffer image) {
+        if (image == null) throw new NullPointerException("Image cannot be null");
+        int width = image.getWidth();
+        int height = image.getHeight();
+        float[] magnitudes = new float[width * height];
+        byte[] directions = new byte[width * height];
+        computeGradients(image, 0, height, magnitudes, directions);
+        return new GradientField(width, height, magnitudes, directions);
+    }
 }
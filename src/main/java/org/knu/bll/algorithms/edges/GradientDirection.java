@@ -0,0 +1,54 @@
+package org.knu.bll.algorithms.edges;
+
+/**
+ * The GradientDirection class quantizes gradient directions to the four orientations used by non-maximum
+ * suppression. An orientation names the axis along which the gradient changes, so a direction and its opposite
+ * share one orientation.
+ */
+public final class GradientDirection {
+    /** The gradient is horizontal: neighbours are compared left and right. */
+    public static final byte DEGREES_0 = 0;
+    /** The gradient runs from the top left to the bottom right. */
+    public static final byte DEGREES_45 = 1;
+    /** The gradient is vertical: neighbours are compared above and below. */
+    public static final byte DEGREES_90 = 2;
+    /** The gradient runs from the bottom left to the top right. */
+    public static final byte DEGREES_135 = 3;
+
+    private static final double TAN_22_5 = Math.tan(Math.toRadians(22.5));
+    private static final double TAN_67_5 = Math.tan(Math.toRadians(67.5));
+
+    private GradientDirection() {
+    }
+
+    /**
+     * Quantizes the angle Math.atan2(y, x) without evaluating it. Angles below 22.5 or from 157.5 degrees
+     * are horizontal, 22.5 to 67.5 degrees are DEGREES_45, 67.5 to 112.5 degrees are vertical and the rest
+     * are DEGREES_135, modulo 180 degrees.
+     *
+     * @param y The first argument of atan2.
+     * @param x The second argument of atan2.
+     * @return One of the orientation constants.
+     */
+    public static byte quantize(double y, double x) {
+        if (y < 0) {
+            y = -y;
+            x = -x;
+        }
+        double absX = Math.abs(x);
+        if (y <= TAN_22_5 * absX) return DEGREES_0;
+        if (y >= TAN_67_5 * absX) return DEGREES_90;
+        return x > 0 ? DEGREES_45 : DEGREES_135;
+    }
+
+    /**
+     * Quantizes an angle given in radians.
+     *
+     * @param angle The angle in radians. NaN is treated as horizontal.
+     * @return One of the orientation constants.
+     */
+    public static byte quantize(double angle) {
+        if (Double.isNaN(angle)) return DEGREES_0;
+        return quantize(Math.sin(angle), Math.cos(angle));
+    }
+}
@@ -0,0 +1,107 @@
+package org.knu.bll.algorithms.edges;
+
+import org.knu.bll.buffers.PixelBuffer;
+
+/**
+ * The GradientField class holds the result of differentiating an image: the gradient magnitude and the quantized
+ * gradient direction of every pixel, stored row-major in two planes. Edge detection operators return it instead of
+ * keeping the directions in a field, so that they hold no state between calls.
+ */
+public final class GradientField {
+    private final int width;
+    private final int height;
+    private final float[] magnitudes;
+    private final byte[] directions;
+
+    /**
+     * Constructs a GradientField over the given planes. The arrays are not copied.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param magnitudes The unclamped gradient magnitudes, width * height long.
+     * @param directions The directions as {@link GradientDirection} constants, width * height long.
+     * @throws IllegalArgumentException if the planes do not match the dimensions.
+     */
+    public GradientField(int width, int height, float[] magnitudes, byte[] directions) {
+        if (magnitudes.length != width * height || directions.length != width * height) {
+            throw new IllegalArgumentException("Gradient planes do not match the image dimensions");
+        }
+        this.width = width;
+        this.height = height;
+        this.magnitudes = magnitudes;
+        this.directions = directions;
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the gradient magnitude of one pixel.
+     *
+     * @param x The x-coordinate of the pixel.
+     * @param y The y-coordinate of the pixel.
+     * @return The unclamped magnitude.
+     */
+    public float getMagnitude(int x, int y) {
+        return magnitudes[y * width + x];
+    }
+
+    /**
+     * Returns the quantized gradient direction of one pixel.
+     *
+     * @param x The x-coordinate of the pixel.
+     * @param y The y-coordinate of the pixel.
+     * @return One of the {@link GradientDirection} constants.
+     */
+    public byte getDirection(int x, int y) {
+        return directions[y * width + x];
+    }
+
+    /**
+     * Returns the magnitude plane. The array is shared with this field, not copied.
+     *
+     * @return The row-major magnitudes.
+     */
+    public float[] getMagnitudes() {
+        return magnitudes;
+    }
+
+    /**
+     * Returns the direction plane. The array is shared with this field, not copied.
+     *
+     * @return The row-major directions.
+     */
+    public byte[] getDirections() {
+        return directions;
+    }
+
+    /**
+     * Renders the magnitudes as a gray image, clamped to 255.
+     *
+     * @return A new opaque PixelBuffer.
+     */
+    public PixelBuffer toPixelBuffer() {
+        PixelBuffer output = PixelBuffer.create(width, height, false);
+        int[] pixels = output.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            int value = (int) Math.min(255, magnitudes[i]);
+            pixels[i] = 0xff000000 | (value << 16) | (value << 8) | value;
+        }
+        return output;
+    }
+}
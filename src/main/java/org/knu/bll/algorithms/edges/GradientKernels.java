@@ -0,0 +1,56 @@
+package org.knu.bll.algorithms.edges;
+
+import org.knu.bll.buffers.GrayBuffer;
+
+import java.util.Arrays;
+
+/**
+ * The GradientKernels class computes gradient planes with a pair of 3x3 masks directly on grayscale samples.
+ * It is shared by the operators whose masks are indexed as mask[dx + 1][dy + 1].
+ */
+final class GradientKernels {
+
+    private GradientKernels() {
+    }
+
+    /**
+     * Computes the gradient magnitudes and directions of the rows fromRow (inclusive) to toRow (exclusive).
+     * The direction of a pixel is the quantized angle Math.atan2(gx, gy), where gx and gy are the responses
+     * of the two masks. Border pixels get a magnitude of 0.
+     *
+     * @param gx The first mask.
+     * @param gy The second mask.
+     * @param image The intensities to differentiate.
+     * @param fromRow The first row to compute.
+     * @param toRow The row after the last row to compute.
+     * @param magnitudes The array that receives the gradient magnitudes.
+     * @param directions The array that receives the quantized directions.
+     */
+    static void apply3x3(int[][] gx, int[][] gy, GrayBuffer image, int fromRow, int toRow,
+                         float[] magnitudes, byte[] directions) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] samples = image.getSamples();
+
+        for (int y = fromRow; y < toRow; y++) {
+            int rowOffset = (y - fromRow) * width;
+            Arrays.fill(magnitudes, rowOffset, rowOffset + width, 0);
+            Arrays.fill(directions, rowOffset, rowOffset + width, GradientDirection.DEGREES_0);
+            if (y < 1 || y >= height - 1) continue;
+
+            for (int x = 1; x < width - 1; x++) {
+                int px = 0;
+                int py = 0;
+                for (int i = -1; i <= 1; i++) {
+                    for (int j = -1; j <= 1; j++) {
+                        int pixel = samples[(y + j) * width + x + i] & 0xff;
+                        px += gx[i + 1][j + 1] * pixel;
+                        py += gy[i + 1][j + 1] * pixel;
+                    }
+                }
+                magnitudes[rowOffset + x] = (float) Math.sqrt(px * px + py * py);
+                directions[rowOffset + x] = GradientDirection.quantize(px, py);
+            }
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package org.knu.bll.algorithms.edges;
 
+import org.knu.bll.CancellationToken;
 import org.knu.bll.ProgressListener;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
 import org.knu.bll.helpers.ImageHelper;
 
-import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
  * The PrewittOperator class implements the EdgeDetectionOperator interface to apply the Prewitt edge detection
@@ -17,12 +22,22 @@ import java.awt.image.BufferedImage;
 public class PrewittOperator implements EdgeDetectionOperator {
     private final int[][] GX;
     private final int[][] GY;
-    private double[][] gradientDirections;
+    private final TileScheduler scheduler;
 
     /**
-     * Constructs a PrewittOperator with predefined Prewitt masks for gradient calculation.
+     * Constructs a PrewittOperator with predefined Prewitt masks for gradient calculation that runs on the shared scheduler.
      */
     public PrewittOperator() {
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs a PrewittOperator with predefined Prewitt masks for gradient calculation.
+     *
+     * @param scheduler The TileScheduler that runs the row bands.
+     */
+    public PrewittOperator(TileScheduler scheduler) {
+        this.scheduler = scheduler;
         GX = new int[][]{
                 {1, 0, -1},
                 {1, 0, -1},
@@ -38,46 +53,49 @@ public class PrewittOperator implements EdgeDetectionOperator {
     /**
      * Applies the Prewitt edge detection operator to the given image.
      *
-     * @param image    The original image to which the edge detection operator will be applied.
-     *                 This image should not be null.
+     * @param image    The original pixels to which the edge detection operator will be applied.
+     *                 This buffer should not be null.
      * @param listener A ProgressListener to receive progress updates during the edge detection
      *                 operation. This listener should not be null.
-     * @return A new BufferedImage that represents the edge-detected (gradient magnitude) version of the original image.
+     * @return A new opaque PixelBuffer that represents the edge-detected (gradient magnitude) version of the original pixels.
      * If the input image is null, the method should throw a NullPointerException.
      * @throws NullPointerException if the image is null.
      * @throws NullPointerException if the listener is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
      */
     @Override
-    public BufferedImage applyOperator(BufferedImage image, ProgressListener listener) {
+    public PixelBuffer applyOperator(PixelBuffer image, ProgressListener listener) {
         if (image == null) throw new NullPointerException("Image cannot be null");
         if (listener == null) throw new NullPointerException("Listener cannot be null");
 
 
         int width = image.getWidth();
         int height = image.getHeight();
-        BufferedImage outputImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-        gradientDirections = new double[width][height];
-
-        listener.onProgressStart(width);
-        for (int x = 1; x < width - 1; x++) {
-            for (int y = 1; y < height - 1; y++) {
-                processPixel(image, outputImage, x, y);
+        PixelBuffer outputImage = PixelBuffer.create(width, height, false);
+
+        List<Tile> bands = scheduler.splitBands(width, height, 1);
+        CancellationToken token = CancellationToken.of(listener);
+        listener.onProgressStart(bands.size());
+        scheduler.forEach(bands, listener, band -> {
+            for (int y = Math.max(1, band.getY()); y < Math.min(height - 1, band.getEndY()); y++) {
+                token.throwIfCancelled();
+                for (int x = 1; x < width - 1; x++) {
+                    processPixel(image, outputImage, x, y);
+                }
             }
-            listener.onProgressUpdate();
-        }
+        });
         return outputImage;
     }
 
     /**
      * Processes a single pixel to calculate its gradient using the Prewitt operator.
      *
-     * @param image       The original image.
-     * @param outputImage The image to store the edge-detected result.
+     * @param image       The original pixels.
+     * @param outputImage The buffer to store the edge-detected result.
      * @param x           The x-coordinate of the pixel.
      * @param y           The y-coordinate of the pixel.
      */
-    private void processPixel(BufferedImage image, BufferedImage outputImage, int x, int y) {
+    private void processPixel(PixelBuffer image, PixelBuffer outputImage, int x, int y) {
         int px = 0;
         int py = 0;
 
@@ -91,34 +109,47 @@ public class PrewittOperator implements EdgeDetectionOperator {
         }
 
         allocateBorder(outputImage, x, y, px, py);
-        gradientDirections[x][y] = Math.atan2(px, py);
     }
 
     /**
      * Allocates the border pixel with the calculated gradient magnitude.
      *
-     * @param outputImage The image to store the edge-detected result.
+     * @param outputImage The buffer to store the edge-detected result.
      * @param x           The x-coordinate of the pixel.
      * @param y           The y-coordinate of the pixel.
      * @param px          The gradient in the x-direction.
      * @param py          The gradient in the y-direction.
      */
-    private void allocateBorder(BufferedImage outputImage, int x, int y, int px, int py) {
+    private void allocateBorder(PixelBuffer outputImage, int x, int y, int px, int py) {
         int gradient = (int) Math.min(255, Math.hypot(px, py));
         int newPixel = (gradient << 16) | (gradient << 8) | gradient;
         outputImage.setRGB(x, y, newPixel);
     }
 
     /**
-     * Returns the gradient directions calculated during the edge detection process.
+     * Computes the gradient magnitudes and the quantized gradient directions of a range of rows with the
+     * Prewitt masks.
      *
-     * @return A 2D array representing the gradient directions for each pixel.
+     * @param image      The intensities to differentiate. This buffer should not be null and is not modified.
+     * @param fromRow    The first row to compute.
+     * @param toRow      The row after the last row to compute.
+     * @param magnitudes The array that receives the gradient magnitudes.
+     * @param directions The array that receives the quantized directions.
      */
     @Override
-    public double[][] getGradientDirections() {
-        return gradientDirections;
+    public void computeGradients(GrayBuffer image, int fromRow, int toRow, float[] magnitudes, byte[] directions) {
+        GradientKernels.apply3x3(GX, GY, image, fromRow, toRow, magnitudes, directions);
     }
 
+    /**
+     * Returns the TileScheduler the operator runs on.
+     *
+     * @return The TileScheduler of the operator.
+     */
+    @Override
+    public TileScheduler getScheduler() {
+        return scheduler;
+    }
 
     /**
      * Returns a string representation of the Prewitt edge detection operator.
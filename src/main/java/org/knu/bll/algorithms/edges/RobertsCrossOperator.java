@@ -1,9 +1,15 @@
 package org.knu.bll.algorithms.edges;
 
+import org.knu.bll.CancellationToken;
 import org.knu.bll.ProgressListener;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
 import org.knu.bll.helpers.ImageHelper;
 
-import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The RobertsCrossOperator class implements the EdgeDetectionOperator interface to apply the Roberts Cross edge
@@ -24,68 +30,134 @@ public class RobertsCrossOperator implements EdgeDetectionOperator {
             {0, 1},
             {-1, 0}
     };
-    private double[][] gradientDirection;
+    private final TileScheduler scheduler;
+
+    /**
+     * Constructs a RobertsCrossOperator that runs on the shared scheduler.
+     */
+    public RobertsCrossOperator() {
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs a RobertsCrossOperator.
+     *
+     * @param scheduler The TileScheduler that runs the row bands.
+     */
+    public RobertsCrossOperator(TileScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
 
     /**
      * Applies the Roberts Cross edge detection operator to the given image.
      *
-     * @param image The original image to which the edge detection operator will be applied.
-     *              This image should not be null.
+     * @param image The original pixels to which the edge detection operator will be applied.
+     *              This buffer should not be null.
      * @param listener A ProgressListener to receive progress updates during the edge detection
      *                 operation. This listener should not be null.
-     * @return A new BufferedImage that represents the edge-detected (gradient magnitude) version of the original image.
+     * @return A new opaque PixelBuffer that represents the edge-detected (gradient magnitude) version of the original pixels.
      *         If the input image is null, the method should throw a NullPointerException.
      * @throws NullPointerException if the image is null.
      * @throws NullPointerException if the listener is null.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
      */
     @Override
-    public BufferedImage applyOperator(BufferedImage image, ProgressListener listener) {
+    public PixelBuffer applyOperator(PixelBuffer image, ProgressListener listener) {
         if (image == null) throw new NullPointerException("Image cannot be null");
         if (listener == null)  throw new NullPointerException("Listener cannot be null");
 
 
         int width = image.getWidth();
         int height = image.getHeight();
-        gradientDirection = new double[width][height];
+        PixelBuffer outputImage = PixelBuffer.create(width, height, false);
 
-        BufferedImage outputImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        List<Tile> bands = scheduler.splitBands(width, height, 1);
+        CancellationToken token = CancellationToken.of(listener);
+        listener.onProgressStart(bands.size());
+        scheduler.forEach(bands, listener, band -> {
+            for (int y = Math.max(1, band.getY()); y < Math.min(height - 1, band.getEndY()); y++) {
+                token.throwIfCancelled();
+                for (int x = 1; x < width - 1; x++) {
+                    processPixel(image, outputImage, x, y);
+                }
+            }
+        });
+
+        return outputImage;
+    }
 
-        listener.onProgressStart(width);
-        for (int x = 1; x < width - 1; x++) {
-            for (int y = 1; y < height - 1; y++) {
-                double px = 0;
-                double py = 0;
-                // Apply masks to get gradients
+    /**
+     * Processes a single pixel to calculate its gradient using the Roberts Cross operator.
+     *
+     * @param image       The original pixels.
+     * @param outputImage The buffer to store the edge-detected result.
+     * @param x           The x-coordinate of the pixel.
+     * @param y           The y-coordinate of the pixel.
+     */
+    private void processPixel(PixelBuffer image, PixelBuffer outputImage, int x, int y) {
+        double px = 0;
+        double py = 0;
+        // Apply masks to get gradients
+        for (int nx = 0; nx <= 1; nx++) {
+            for (int ny = 0; ny <= 1; ny++) {
+                int brightness = ImageHelper.getGradient(image.getRGB(x + nx - 1, y + ny - 1));
+                px += brightness * GX[nx][ny];
+                py += brightness * GY[nx][ny];
+            }
+        }
+
+        int gradient = Math.min(255, (int) Math.sqrt(px * px + py * py));
+        outputImage.setRGB(x, y, (gradient << 16) | (gradient << 8) | gradient);
+    }
+
+    /**
+     * Computes the gradient magnitudes and the quantized gradient directions of a range of rows with the
+     * Roberts Cross masks. The masks cover the pixel and its neighbours above and to the left.
+     *
+     * @param image      The intensities to differentiate. This buffer should not be null and is not modified.
+     * @param fromRow    The first row to compute.
+     * @param toRow      The row after the last row to compute.
+     * @param magnitudes The array that receives the gradient magnitudes.
+     * @param directions The array that receives the quantized directions.
+     */
+    @Override
+    public void computeGradients(GrayBuffer image, int fromRow, int toRow, float[] magnitudes, byte[] directions) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] samples = image.getSamples();
+
+        for (int y = fromRow; y < toRow; y++) {
+            int rowOffset = (y - fromRow) * width;
+            Arrays.fill(magnitudes, rowOffset, rowOffset + width, 0);
+            Arrays.fill(directions, rowOffset, rowOffset + width, GradientDirection.DEGREES_0);
+            if (y < 1 || y >= height - 1) continue;
+
+            for (int x = 1; x < width - 1; x++) {
+                int px = 0;
+                int py = 0;
                 for (int nx = 0; nx <= 1; nx++) {
                     for (int ny = 0; ny <= 1; ny++) {
-                        int brightness = ImageHelper.getGradient(image.getRGB(x + nx - 1, y + ny - 1));
+                        int brightness = samples[(y + ny - 1) * width + x + nx - 1] & 0xff;
                         px += brightness * GX[nx][ny];
                         py += brightness * GY[nx][ny];
                     }
                 }
-
-                int gradient = Math.min(255, (int) Math.sqrt(px * px + py * py));
-                outputImage.setRGB(x, y, (gradient << 16) | (gradient << 8) | gradient);
-
-                gradientDirection[x][y] = Math.atan(py / px) - ((3 * Math.PI) / 4);
+                magnitudes[rowOffset + x] = (float) Math.sqrt(px * px + py * py);
+                directions[rowOffset + x] = GradientDirection.quantize(Math.atan((double) py / px) - ((3 * Math.PI) / 4));
             }
-            listener.onProgressUpdate();
         }
-
-        return outputImage;
     }
 
     /**
-     * Returns the gradient directions calculated during the edge detection process.
+     * Returns the TileScheduler the operator runs on.
      *
-     * @return A 2D array representing the gradient directions for each pixel.
+     * @return The TileScheduler of the operator.
      */
     @Override
-    public double[][] getGradientDirections() {
-        return gradientDirection;
+    public TileScheduler getScheduler() {
+        return scheduler;
     }
 
-
     /**
      * Returns a string representation of the Roberts Cross edge detection operator.
      *
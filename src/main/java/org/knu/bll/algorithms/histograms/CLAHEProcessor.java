@@ -1,16 +1,39 @@
 package org.knu.bll.algorithms.histograms;
 
+import org.knu.bll.CancellationToken;
 import org.knu.bll.ProgressListener;
-import org.knu.bll.helpers.ImageHelper;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
  * The CLAHEProcessor class implements the Contrast Limited Adaptive Histogram Equalization (CLAHE) algorithm
  * to enhance the contrast of an image. This class divides the image into tiles, applies histogram equalization
  * to each tile, and then uses bilinear interpolation to combine the results.
+ * The tile histograms and the interpolation run in parallel on a {@link TileScheduler}.
  */
 public class CLAHEProcessor {
+    private final TileScheduler scheduler;
+
+    /**
+     * Constructs a CLAHEProcessor that runs on the shared scheduler.
+     */
+    public CLAHEProcessor() {
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs a CLAHEProcessor.
+     *
+     * @param scheduler The TileScheduler that runs the tiles and row bands.
+     */
+    public CLAHEProcessor(TileScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
 
     /**
      * Applies the CLAHE algorithm to the given image.
@@ -28,14 +51,34 @@ public class CLAHEProcessor {
      * @throws NullPointerException if the listener is null.
      */
     public BufferedImage applyCLAHE(BufferedImage original, int tileSize, double clipLimit, int cdfBlur, ProgressListener l) {
+        return applyCLAHE(PixelBuffer.wrap(original), tileSize, clipLimit, cdfBlur, l).toImage();
+    }
+
+    /**
+     * Applies the CLAHE algorithm to the given pixel buffer.
+     *
+     * @param original  The original pixels to which the CLAHE algorithm will be applied.
+     *                  This buffer should not be null and is not modified.
+     * @param tileSize  The size of the tiles into which the image will be divided.
+     * @param clipLimit The clip limit to apply to the histograms.
+     * @param cdfBlur   The blur power to apply to the CDFs.
+     * @param l         A ProgressListener to receive progress updates during the CLAHE process.
+     *                  This listener should not be null.
+     * @return A new opaque gray PixelBuffer that represents the contrast-enhanced version of the original pixels.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public PixelBuffer applyCLAHE(PixelBuffer original, int tileSize, double clipLimit, int cdfBlur, ProgressListener l) {
+        GrayBuffer gray = original.toGray();
         int width = original.getWidth();
         int height = original.getHeight();
         int numTilesX = (int) Math.ceil((double) width / tileSize);
         int numTilesY = (int) Math.ceil((double) height / tileSize);
-        l.onProgressStart(4);
+        List<Tile> tiles = scheduler.splitTiles(width, height, tileSize, 0);
+        List<Tile> bands = scheduler.splitBands(width, height, 0);
+        CancellationToken token = CancellationToken.of(l);
+        l.onProgressStart(tiles.size() + bands.size() + 2);
 
-        int[][] histograms = computeHistograms(original, numTilesX, numTilesY, tileSize);
-        l.onProgressUpdate();
+        int[][] histograms = computeHistograms(gray, tiles, l);
 
         clipHistograms(histograms, clipLimit);
         l.onProgressUpdate();
@@ -43,36 +86,32 @@ public class CLAHEProcessor {
         int[][] cdfs = computeCDFs(histograms, cdfBlur, tileSize);
         l.onProgressUpdate();
 
-        BufferedImage result = new BufferedImage(width, height, original.getType());
-        applyBilinearInterpolation(original, result, cdfs, tileSize, numTilesX, numTilesY);
-        l.onProgressUpdate();
+        scheduler.forEach(bands, l, band -> applyBilinearInterpolation(gray, cdfs, tileSize, numTilesX, numTilesY,
+                band.getY(), band.getEndY(), token));
 
-        return result;
+        return gray.toPixelBuffer();
     }
 
     /**
      * Computes the histograms for each tile in the image.
      *
-     * @param image     The original image.
-     * @param numTilesX The number of tiles in the x-direction.
-     * @param numTilesY The number of tiles in the y-direction.
-     * @param tileSize  The size of the tiles.
+     * @param image The intensities of the original image.
+     * @param tiles The tiles in row-major order.
+     * @param l     A ProgressListener that receives one update per tile.
      * @return A 2D array representing the histograms for each tile.
      */
-    private int[][] computeHistograms(BufferedImage image, int numTilesX, int numTilesY, int tileSize) {
-        int[][] histograms = new int[numTilesX * numTilesY][256];
-        for (int ty = 0; ty < numTilesY; ty++) {
-            for (int tx = 0; tx < numTilesX; tx++) {
-                int[] histogram = new int[256];
-                for (int y = ty * tileSize; y < Math.min((ty + 1) * tileSize, image.getHeight()); y++) {
-                    for (int x = tx * tileSize; x < Math.min((tx + 1) * tileSize, image.getWidth()); x++) {
-                        int pixel = ImageHelper.getGrayByte(image.getRGB(x, y));
-                        histogram[pixel]++;
-                    }
+    private int[][] computeHistograms(GrayBuffer image, List<Tile> tiles, ProgressListener l) {
+        int[][] histograms = new int[tiles.size()][];
+        scheduler.forEach(tiles, l, tile -> {
+            int[] histogram = new int[256];
+            for (int y = tile.getY(); y < tile.getEndY(); y++) {
+                for (int x = tile.getX(); x < tile.getEndX(); x++) {
+                    int pixel = image.get(x, y);
+                    histogram[pixel]++;
                 }
-                histograms[ty * numTilesX + tx] = histogram;
             }
-        }
+            histograms[tile.getIndex()] = histogram;
+        });
         return histograms;
     }
 
@@ -163,23 +202,29 @@ public class CLAHEProcessor {
     }
 
     /**
-     * Applies bilinear interpolation to combine the results of the CDFs.
+     * Applies bilinear interpolation to combine the results of the CDFs for the rows fromRow (inclusive)
+     * to toRow (exclusive).
+     * The intensities are replaced in place, every pixel only depends on its own original value.
      *
-     * @param original  The original image.
-     * @param result    The image to store the contrast-enhanced result.
+     * @param image     The intensities of the original image, overwritten with the result.
      * @param cdfs      The CDFs for each tile.
      * @param tileSize  The size of the tiles.
      * @param numTilesX The number of tiles in the x-direction.
      * @param numTilesY The number of tiles in the y-direction.
+     * @param fromRow   The first row to interpolate.
+     * @param toRow     The row after the last row to interpolate.
+     * @param token     The token polled before every row.
      */
-    private void applyBilinearInterpolation(BufferedImage original, BufferedImage result, int[][] cdfs, int tileSize, int numTilesX, int numTilesY) {
-        for (int y = 0; y < result.getHeight(); y++) {
-            for (int x = 0; x < result.getWidth(); x++) {
+    private void applyBilinearInterpolation(GrayBuffer image, int[][] cdfs, int tileSize, int numTilesX, int numTilesY,
+                                            int fromRow, int toRow, CancellationToken token) {
+        for (int y = fromRow; y < toRow; y++) {
+            token.throwIfCancelled();
+            for (int x = 0; x < image.getWidth(); x++) {
                 int tx = Math.min(x / tileSize, numTilesX - 1);
                 int ty = Math.min(y / tileSize, numTilesY - 1);
-                int pixel = ImageHelper.getGrayByte(original.getRGB(x, y));
+                int pixel = image.get(x, y);
                 int newPixel = bilinearInterpolate(cdfs, tx, ty, numTilesX, numTilesY, pixel, x, y, tileSize);
-                result.setRGB(x, y, ImageHelper.byteToRGB(newPixel));
+                image.set(x, y, newPixel);
             }
         }
     }
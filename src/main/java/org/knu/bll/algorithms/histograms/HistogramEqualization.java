@@ -1,8 +1,12 @@
 package org.knu.bll.algorithms.histograms;
 
 import org.knu.bll.ProgressListener;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
 
 /**
  * The HistogramEqualization class provides methods to apply histogram equalization and CLAHE to an image.
@@ -13,6 +17,23 @@ import java.awt.image.BufferedImage;
  * @since 2023-10-01
  */
 public class HistogramEqualization {
+    private final TileScheduler scheduler;
+
+    /**
+     * Constructs a HistogramEqualization facade whose processors run on the shared scheduler.
+     */
+    public HistogramEqualization() {
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs a HistogramEqualization facade.
+     *
+     * @param scheduler The TileScheduler passed to the processors.
+     */
+    public HistogramEqualization(TileScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
 
     /**
      * Applies histogram equalization to the given image.
@@ -31,7 +52,45 @@ public class HistogramEqualization {
         if (original == null) throw new NullPointerException("Original image cannot be null");
         if (listener == null) throw new NullPointerException("Listener cannot be null");
 
-        return new HistogramEqualizerProcessor().histogramEqualization(original, channelsToEqualize, listener);
+        return new HistogramEqualizerProcessor(scheduler).histogramEqualization(original, channelsToEqualize, listener);
+    }
+
+    /**
+     * Applies histogram equalization to the given pixel buffer.
+     *
+     * @param original The original pixels to which histogram equalization will be applied.
+     *                 This buffer should not be null.
+     * @param channelsToEqualize A boolean array indicating which color channels to equalize.
+     * @param listener A ProgressListener to receive progress updates during the histogram equalization
+     *                process. This listener should not be null.
+     * @return A new PixelBuffer that represents the histogram-equalized version of the original pixels.
+     * @throws NullPointerException if the original buffer is null.
+     * @throws NullPointerException if the listener is null.
+     */
+    public PixelBuffer histogramEqualization(PixelBuffer original, boolean[] channelsToEqualize, ProgressListener listener) {
+        if (original == null) throw new NullPointerException("Original image cannot be null");
+        if (listener == null) throw new NullPointerException("Listener cannot be null");
+
+        return new HistogramEqualizerProcessor(scheduler).histogramEqualization(original, channelsToEqualize, listener);
+    }
+
+    /**
+     * Applies histogram equalization to an image that is too large for the heap, writing the result to a tiled TIFF file.
+     *
+     * @param original The original image. This source should not be null.
+     * @param channelsToEqualize A boolean array indicating which color channels to equalize.
+     * @param output The file to write. An existing file is replaced.
+     * @param listener A ProgressListener to receive progress updates during the histogram equalization
+     *                process. This listener should not be null.
+     * @throws NullPointerException if the original source is null.
+     * @throws NullPointerException if the listener is null.
+     */
+    public void histogramEqualization(TiledImageSource original, boolean[] channelsToEqualize, File output,
+                                      ProgressListener listener) {
+        if (original == null) throw new NullPointerException("Original image cannot be null");
+        if (listener == null) throw new NullPointerException("Listener cannot be null");
+
+        new HistogramEqualizerProcessor(scheduler).histogramEqualization(original, channelsToEqualize, output, listener);
     }
 
     /**
@@ -53,6 +112,27 @@ public class HistogramEqualization {
         if (original == null) throw new NullPointerException("Original image cannot be null");
         if (l == null) throw new NullPointerException("Listener cannot be null");
 
-        return new CLAHEProcessor().applyCLAHE(original, tileSize, clipLimit, cdfBlur, l);
+        return new CLAHEProcessor(scheduler).applyCLAHE(original, tileSize, clipLimit, cdfBlur, l);
+    }
+
+    /**
+     * Applies the CLAHE algorithm to the given pixel buffer.
+     *
+     * @param original The original pixels to which the CLAHE algorithm will be applied.
+     *                 This buffer should not be null.
+     * @param tileSize The size of the tiles into which the image will be divided.
+     * @param clipLimit The clip limit to apply to the histograms.
+     * @param cdfBlur The blur power to apply to the CDFs.
+     * @param l A ProgressListener to receive progress updates during the CLAHE process.
+     *          This listener should not be null.
+     * @return A new PixelBuffer that represents the contrast-enhanced version of the original pixels.
+     * @throws NullPointerException if the original buffer is null.
+     * @throws NullPointerException if the listener is null.
+     */
+    public PixelBuffer applyCLAHE(PixelBuffer original, int tileSize, double clipLimit, int cdfBlur, ProgressListener l) {
+        if (original == null) throw new NullPointerException("Original image cannot be null");
+        if (l == null) throw new NullPointerException("Listener cannot be null");
+
+        return new CLAHEProcessor(scheduler).applyCLAHE(original, tileSize, clipLimit, cdfBlur, l);
     }
 }
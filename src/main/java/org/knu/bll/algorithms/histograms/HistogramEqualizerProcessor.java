@@ -1,15 +1,44 @@
 package org.knu.bll.algorithms.histograms;
 
+import org.knu.bll.CancellationToken;
 import org.knu.bll.ProgressListener;
+import org.knu.bll.StreamingProcessor;
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
 import org.knu.bll.helpers.ImageHelper;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
 
 /**
  * The HistogramEqualizerProcessor class implements histogram equalization to enhance the contrast of an image.
  * This class equalizes the histograms of the specified color channels to achieve a balanced gray level distribution.
+ * Counting the histograms and mapping the pixels run on row bands in parallel by a {@link TileScheduler}.
+ * <p>
+ * Images that are too large for the heap are equalized in two streaming passes: the first counts the histograms of
+ * all tiles, the second maps every tile through the new intensities and writes it to a tiled file.
  */
 public class HistogramEqualizerProcessor {
+    private final TileScheduler scheduler;
+
+    /**
+     * Constructs a HistogramEqualizerProcessor that runs on the shared scheduler.
+     */
+    public HistogramEqualizerProcessor() {
+        this(TileScheduler.shared());
+    }
+
+    /**
+     * Constructs a HistogramEqualizerProcessor.
+     *
+     * @param scheduler The TileScheduler that runs the row bands.
+     */
+    public HistogramEqualizerProcessor(TileScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
 
     /**
      * Applies histogram equalization to the given image.
@@ -25,13 +54,30 @@ public class HistogramEqualizerProcessor {
      * @throws NullPointerException if the listener is null.
      */
     public BufferedImage histogramEqualization(BufferedImage original, boolean[] channelsToEqualize, ProgressListener listener) {
+        return histogramEqualization(PixelBuffer.wrap(original), channelsToEqualize, listener).toImage();
+    }
+
+    /**
+     * Applies histogram equalization to the given pixel buffer.
+     *
+     * @param original           The original pixels to which histogram equalization will be applied.
+     *                           This buffer should not be null and is not modified.
+     * @param channelsToEqualize A boolean array indicating which color channels to equalize.
+     * @param listener           A ProgressListener to receive progress updates during the histogram equalization
+     *                           process. This listener should not be null.
+     * @return A new opaque PixelBuffer that represents the histogram-equalized version of the original pixels.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public PixelBuffer histogramEqualization(PixelBuffer original, boolean[] channelsToEqualize, ProgressListener listener) {
         int width = original.getWidth();
         int height = original.getHeight();
         int totalPixels = width * height;
-        listener.onProgressStart(5);
+        List<Tile> bands = scheduler.splitBands(width, height, 0);
+        listener.onProgressStart(2 * bands.size() + 3);
 
-        int[][] histograms = ImageHelper.calculateCountIntensities(original, 256);
-        listener.onProgressUpdate();
+        int[][] histograms = scheduler.reduce(bands, listener,
+                band -> ImageHelper.calculateCountIntensities(original, 256, band.getY(), band.getEndY()),
+                this::mergeHistograms);
 
         double[][] normalizedHistograms = normalizeHistogram(channelsToEqualize, histograms, totalPixels);
         listener.onProgressUpdate();
@@ -42,27 +88,95 @@ public class HistogramEqualizerProcessor {
         int[][] newValues = getNewIntensities(channelsToEqualize, cdfs);
         listener.onProgressUpdate();
 
-        BufferedImage equalizedImage = applyHistogram(original, channelsToEqualize, width, height, newValues);
-        listener.onProgressUpdate();
+        PixelBuffer equalizedImage = applyHistogram(original, channelsToEqualize, width, height, newValues, bands, listener);
 
         return equalizedImage;
     }
 
+    /**
+     * Applies histogram equalization to an image that is too large for the heap in two streaming passes, writing the
+     * result to a tiled TIFF file. The result equals equalizing the whole image.
+     *
+     * @param source             The original image. This source should not be null.
+     * @param channelsToEqualize A boolean array indicating which color channels to equalize.
+     * @param output             The file to write. An existing file is replaced.
+     * @param listener           A ProgressListener that receives one update per tile of each pass and one for the new
+     *                           intensities. This listener should not be null.
+     * @throws NullPointerException if the source or the listener is null.
+     * @throws IllegalArgumentException if the output is the file of the source.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     * @throws RuntimeException if the source cannot be read or the output cannot be written.
+     */
+    public void histogramEqualization(TiledImageSource source, boolean[] channelsToEqualize, File output,
+                                      ProgressListener listener) {
+        if (source == null) throw new NullPointerException("Original image cannot be null");
+        if (listener == null) throw new NullPointerException("Listener cannot be null");
+
+        StreamingProcessor streaming = new StreamingProcessor(scheduler);
+        List<Tile> tiles = streaming.splitTiles(source, 0);
+        listener.onProgressStart(2 * tiles.size() + 1);
+
+        long[][] histograms = streaming.reduce(source, tiles, listener,
+                tile -> toLong(ImageHelper.calculateCountIntensities(tile, 256)), this::mergeHistograms);
+
+        long totalPixels = (long) source.getWidth() * source.getHeight();
+        double[][] normalizedHistograms = new double[4][256];
+        for (int i = 0; i < 4; i++) {
+            if (channelsToEqualize[i])
+                normalizedHistograms[i] = normalizeHistogram(histograms[i], totalPixels);
+        }
+        int[][] newValues = getNewIntensities(channelsToEqualize, calculateCDF(channelsToEqualize, normalizedHistograms));
+        listener.onProgressUpdate();
+
+        streaming.apply(source, tiles, output, listener, (tile, inner) -> {
+            PixelBuffer equalizedTile = PixelBuffer.create(tile.getWidth(), tile.getHeight(), false);
+            applyHistogram(tile, equalizedTile, channelsToEqualize, newValues, 0, tile.getHeight(),
+                    CancellationToken.of(inner));
+            return equalizedTile;
+        });
+    }
+
     /**
      * Applies the histogram equalization to the original image using the new intensity values.
      *
-     * @param original           The original image.
+     * @param original           The original pixels.
      * @param channelsToEqualize A boolean array indicating which color channels to equalize.
      * @param width              The width of the image.
      * @param height             The height of the image.
      * @param newValues          The new intensity values for each color channel.
-     * @return A new BufferedImage that represents the histogram-equalized version of the original image.
+     * @param bands              The row bands to map in parallel.
+     * @param listener           A ProgressListener that receives one update per band.
+     * @return A new PixelBuffer that represents the histogram-equalized version of the original pixels.
+     */
+    private PixelBuffer applyHistogram(PixelBuffer original, boolean[] channelsToEqualize, int width, int height, int[][] newValues,
+                                       List<Tile> bands, ProgressListener listener) {
+        PixelBuffer equalizedImage = PixelBuffer.create(width, height, false);
+        CancellationToken token = CancellationToken.of(listener);
+        scheduler.forEach(bands, listener, band -> applyHistogram(original, equalizedImage, channelsToEqualize, newValues,
+                band.getY(), band.getEndY(), token));
+        return equalizedImage;
+    }
+
+    /**
+     * Maps the rows fromRow (inclusive) to toRow (exclusive) to the new intensity values.
+     *
+     * @param original           The original pixels.
+     * @param equalizedImage     The buffer to store the equalized result.
+     * @param channelsToEqualize A boolean array indicating which color channels to equalize.
+     * @param newValues          The new intensity values for each color channel.
+     * @param fromRow            The first row to map.
+     * @param toRow              The row after the last row to map.
+     * @param token              The token polled before every row.
      */
-    private BufferedImage applyHistogram(BufferedImage original, boolean[] channelsToEqualize, int width, int height, int[][] newValues) {
-        BufferedImage equalizedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        for (int y = 0; y < height; y++) {
+    private void applyHistogram(PixelBuffer original, PixelBuffer equalizedImage, boolean[] channelsToEqualize, int[][] newValues,
+                                int fromRow, int toRow, CancellationToken token) {
+        int width = original.getWidth();
+        int[] pixels = original.getPixels();
+        int[] equalizedPixels = equalizedImage.getPixels();
+        for (int y = fromRow; y < toRow; y++) {
+            token.throwIfCancelled();
             for (int x = 0; x < width; x++) {
-                int rgb = original.getRGB(x, y);
+                int rgb = pixels[y * width + x];
 
                 int red = ImageHelper.getRedByte(rgb);
                 int green = ImageHelper.getGreenByte(rgb);
@@ -73,10 +187,58 @@ public class HistogramEqualizerProcessor {
                 int newBlue = channelsToEqualize[2] ? newValues[2][blue] : blue;
 
                 int newRGB = (newRed << 16) | (newGreen << 8) | newBlue;
-                equalizedImage.setRGB(x, y, newRGB);
+                equalizedPixels[y * width + x] = newRGB;
             }
         }
-        return equalizedImage;
+    }
+
+    /**
+     * Adds the histograms of two row bands.
+     *
+     * @param first  The histograms of the first band, updated in place.
+     * @param second The histograms of the second band.
+     * @return The first array holding the combined histograms.
+     */
+    private int[][] mergeHistograms(int[][] first, int[][] second) {
+        for (int channel = 0; channel < first.length; channel++) {
+            for (int bin = 0; bin < first[channel].length; bin++) {
+                first[channel][bin] += second[channel][bin];
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Adds the histograms of two ranges of tiles.
+     *
+     * @param first  The histograms of the first range, updated in place.
+     * @param second The histograms of the second range.
+     * @return The first array holding the combined histograms.
+     */
+    private long[][] mergeHistograms(long[][] first, long[][] second) {
+        for (int channel = 0; channel < first.length; channel++) {
+            for (int bin = 0; bin < first[channel].length; bin++) {
+                first[channel][bin] += second[channel][bin];
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Widens the histograms of one tile, so that the counts of an image of more than 2^31 pixels can be summed.
+     *
+     * @param histograms The histograms of a tile.
+     * @return The same counts as longs.
+     */
+    private static long[][] toLong(int[][] histograms) {
+        long[][] counts = new long[histograms.length][];
+        for (int channel = 0; channel < histograms.length; channel++) {
+            counts[channel] = new long[histograms[channel].length];
+            for (int bin = 0; bin < histograms[channel].length; bin++) {
+                counts[channel][bin] = histograms[channel][bin];
+            }
+        }
+        return counts;
     }
 
     /**
@@ -143,6 +305,21 @@ public class HistogramEqualizerProcessor {
         return normalizedHistogram;
     }
 
+    /**
+     * Normalizes a histogram of an image of any size by dividing each bin by the total number of pixels.
+     *
+     * @param histogram   The histogram to be normalized.
+     * @param totalPixels The total number of pixels in the image.
+     * @return A normalized histogram.
+     */
+    private double[] normalizeHistogram(long[] histogram, long totalPixels) {
+        double[] normalizedHistogram = new double[histogram.length];
+        for (int i = 0; i < histogram.length; i++) {
+            normalizedHistogram[i] = (double) histogram[i] / totalPixels;
+        }
+        return normalizedHistogram;
+    }
+
     /**
      * Computes the new intensity values based on the CDF.
      *
@@ -0,0 +1,203 @@
+package org.knu.bll.buffers;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * The GrayBuffer class stores a single 8-bit channel as a row-major byte array.
+ * It is used by algorithms that only need intensities, such as edge detection and histogram processing.
+ * <p>
+ * TYPE_BYTE_GRAY images are wrapped without copying. Note that such an image keeps linear gray samples,
+ * so the values seen through this buffer are the raw raster samples and not the sRGB values reported by
+ * BufferedImage.getRGB.
+ */
+public final class GrayBuffer {
+    private final int width;
+    private final int height;
+    private final byte[] samples;
+    private BufferedImage image;
+
+    /**
+     * Constructs a GrayBuffer over the given sample array.
+     *
+     * @param width   The width of the image.
+     * @param height  The height of the image.
+     * @param samples The samples in row-major order, at least width * height long.
+     * @throws IllegalArgumentException if the dimensions do not match the array.
+     */
+    public GrayBuffer(int width, int height, byte[] samples) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Buffer dimensions must be positive");
+        }
+        if (samples.length < width * height) {
+            throw new IllegalArgumentException("Sample array is smaller than " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.samples = samples;
+    }
+
+    /**
+     * Creates a new zero-filled buffer.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return A new GrayBuffer.
+     */
+    public static GrayBuffer create(int width, int height) {
+        return new GrayBuffer(width, height, new byte[width * height]);
+    }
+
+    /**
+     * Wraps the given image in a GrayBuffer. TYPE_BYTE_GRAY images are shared without copying,
+     * every other image is converted with {@link PixelBuffer#toGray()}.
+     *
+     * @param image The image to wrap. This image should not be null.
+     * @return A GrayBuffer that represents the intensities of the image.
+     * @throws NullPointerException if the image is null.
+     */
+    public static GrayBuffer wrap(BufferedImage image) {
+        if (image == null) throw new NullPointerException("Image cannot be null");
+
+        byte[] shared = sharedSamples(image);
+        if (shared != null) {
+            GrayBuffer buffer = new GrayBuffer(image.getWidth(), image.getHeight(), shared);
+            buffer.image = image;
+            return buffer;
+        }
+        return PixelBuffer.wrap(image).toGray();
+    }
+
+    /**
+     * Creates a GrayBuffer from pixels whose red, green and blue channels hold the same intensity, such as
+     * {@link #toPixelBuffer()} or a blur of it. The blue channel is taken as is, so the intensities are not
+     * changed by the rounding of the luma weights in {@link PixelBuffer#toGray()}.
+     *
+     * @param pixels The gray pixels. This buffer should not be null.
+     * @return A new GrayBuffer with the intensities of the pixels.
+     * @throws NullPointerException if the pixels are null.
+     */
+    public static GrayBuffer fromGrayPixels(PixelBuffer pixels) {
+        if (pixels == null) throw new NullPointerException("Image cannot be null");
+
+        int[] source = pixels.getPixels();
+        byte[] samples = new byte[pixels.getWidth() * pixels.getHeight()];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (byte) source[i];
+        }
+        return new GrayBuffer(pixels.getWidth(), pixels.getHeight(), samples);
+    }
+
+    /**
+     * Returns the sample array of the image when it can be shared without copying.
+     *
+     * @param image The image to inspect.
+     * @return The DataBufferByte array of the image, or null if the raster layout does not allow sharing.
+     */
+    private static byte[] sharedSamples(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+            return null;
+        }
+        WritableRaster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        if (!(dataBuffer instanceof DataBufferByte) || dataBuffer.getNumBanks() != 1 || dataBuffer.getOffset() != 0) {
+            return null;
+        }
+        if (!(raster.getSampleModel() instanceof ComponentSampleModel sampleModel)
+                || sampleModel.getScanlineStride() != image.getWidth()
+                || sampleModel.getPixelStride() != 1
+                || raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0) {
+            return null;
+        }
+        return ((DataBufferByte) dataBuffer).getData();
+    }
+
+    /**
+     * Returns the width of the buffer.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the buffer.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the backing sample array. Sample (x, y) is stored at index y * width + x.
+     *
+     * @return The sample array.
+     */
+    public byte[] getSamples() {
+        return samples;
+    }
+
+    /**
+     * Returns the sample at the given coordinates.
+     *
+     * @param x The x-coordinate of the pixel.
+     * @param y The y-coordinate of the pixel.
+     * @return The sample value between 0 and 255.
+     */
+    public int get(int x, int y) {
+        return samples[y * width + x] & 0xff;
+    }
+
+    /**
+     * Sets the sample at the given coordinates.
+     *
+     * @param x     The x-coordinate of the pixel.
+     * @param y     The y-coordinate of the pixel.
+     * @param value The sample value between 0 and 255.
+     */
+    public void set(int x, int y, int value) {
+        samples[y * width + x] = (byte) value;
+    }
+
+    /**
+     * Converts the buffer to an opaque RGB buffer with the sample replicated into every color channel.
+     *
+     * @return A new PixelBuffer.
+     */
+    public PixelBuffer toPixelBuffer() {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            int gray = samples[i] & 0xff;
+            pixels[i] = 0xff000000 | (gray << 16) | (gray << 8) | gray;
+        }
+        return new PixelBuffer(width, height, pixels, false);
+    }
+
+    /**
+     * Converts the buffer to a TYPE_BYTE_GRAY image that shares the sample array.
+     *
+     * @return A BufferedImage backed by this buffer.
+     */
+    public BufferedImage toImage() {
+        if (image == null) {
+            ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY),
+                    new int[]{8}, false, true, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            DataBufferByte dataBuffer = new DataBufferByte(samples, width * height);
+            WritableRaster raster = Raster.createInterleavedRaster(dataBuffer, width, height, width, 1,
+                    new int[]{0}, null);
+            image = new BufferedImage(colorModel, raster, false, null);
+        }
+        return image;
+    }
+}
@@ -0,0 +1,194 @@
+package org.knu.bll.buffers;
+
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The ImagePyramid class holds an image together with successively halved copies of it, so that a zoomed-out view
+ * can draw from a level close to the display resolution instead of scaling the full image on every repaint.
+ * <p>
+ * Level 0 is the source image and every further level is a 2x2 box average of the previous one, rounded up for odd
+ * sizes, down to a single pixel. Levels are computed lazily by {@link #build(int)}, which is meant to be called on a
+ * background thread; readers use {@link #getAvailableLevel(int)} to fall back to the nearest finer level meanwhile.
+ * The pyramid adds about a third of the source size in memory once every level has been built.
+ */
+public final class ImagePyramid {
+    private final BufferedImage source;
+    private final TileScheduler scheduler;
+    private final AtomicReferenceArray<BufferedImage> levels;
+
+    /**
+     * Constructs an ImagePyramid that builds its levels on the shared scheduler.
+     *
+     * @param source The full-resolution image. This image should not be null.
+     * @throws NullPointerException if the image is null.
+     */
+    public ImagePyramid(BufferedImage source) {
+        this(source, TileScheduler.shared());
+    }
+
+    /**
+     * Constructs an ImagePyramid.
+     *
+     * @param source The full-resolution image. This image should not be null.
+     * @param scheduler The TileScheduler that computes the levels.
+     * @throws NullPointerException if the image is null.
+     */
+    public ImagePyramid(BufferedImage source, TileScheduler scheduler) {
+        if (source == null) throw new NullPointerException("Image cannot be null");
+        this.source = source;
+        this.scheduler = scheduler;
+        this.levels = new AtomicReferenceArray<>(levelCount(source.getWidth(), source.getHeight()));
+        levels.set(0, source);
+    }
+
+    /**
+     * Returns the level whose resolution is the smallest one that is still at least the display resolution.
+     *
+     * @param scale The display scale of the source image, 1 for full size.
+     * @return The level index, 0 for scales of 1 and above.
+     * @throws IllegalArgumentException if the scale is not positive.
+     */
+    public static int levelFor(double scale) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Scale must be positive");
+        }
+        if (scale >= 1) return 0;
+        return (int) Math.floor(Math.log(1 / scale) / Math.log(2) + 1e-9);
+    }
+
+    /**
+     * Returns the source image.
+     *
+     * @return The level 0 image.
+     */
+    public BufferedImage getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the number of levels, including the source.
+     *
+     * @return The number of halvings until the image is one pixel, plus one.
+     */
+    public int getLevelCount() {
+        return levels.length();
+    }
+
+    /**
+     * Returns a level if it has been built.
+     *
+     * @param level The level index.
+     * @return The level image, or null if it has not been built yet.
+     * @throws IndexOutOfBoundsException if the level does not exist.
+     */
+    public BufferedImage getLevel(int level) {
+        return levels.get(level);
+    }
+
+    /**
+     * Returns the coarsest built level that is not coarser than the requested one.
+     *
+     * @param level The requested level index. Levels past the last one are clamped.
+     * @return The index of a built level, at most the requested one.
+     */
+    public int getAvailableLevel(int level) {
+        int available = Math.min(Math.max(level, 0), levels.length() - 1);
+        while (levels.get(available) == null) {
+            available--;
+        }
+        return available;
+    }
+
+    /**
+     * Builds the requested level and every finer level that is still missing. Concurrent calls build each level once.
+     *
+     * @param level The level index. Levels past the last one are clamped.
+     * @return The level image.
+     */
+    public synchronized BufferedImage build(int level) {
+        int target = Math.min(Math.max(level, 0), levels.length() - 1);
+        int built = getAvailableLevel(target);
+        while (built < target) {
+            BufferedImage next = halve(levels.get(built)).toImage();
+            levels.set(++built, next);
+        }
+        return levels.get(target);
+    }
+
+    /**
+     * Counts the levels of an image of the given size.
+     *
+     * @param width The width of the source image.
+     * @param height The height of the source image.
+     * @return The number of levels.
+     */
+    private static int levelCount(int width, int height) {
+        int count = 1;
+        while (width > 1 || height > 1) {
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Averages every 2x2 block of the image into one pixel. On odd sizes the last row and column are repeated.
+     * Images whose pixels cannot be shared, such as the byte rasters of decoded JPEGs, are read band by band, so
+     * only the rows of the bands in progress are converted instead of a copy of the whole image.
+     *
+     * @param image The image to reduce.
+     * @return A new buffer of half the size, rounded up.
+     */
+    private PixelBuffer halve(BufferedImage image) {
+        int inWidth = image.getWidth();
+        int inHeight = image.getHeight();
+        int width = (inWidth + 1) / 2;
+        int height = (inHeight + 1) / 2;
+        int[] shared = PixelBuffer.sharedPixels(image);
+        boolean alpha = shared != null ? image.getType() == BufferedImage.TYPE_INT_ARGB
+                : image.getColorModel().hasAlpha();
+        PixelBuffer output = PixelBuffer.create(width, height, alpha);
+        int[] out = output.getPixels();
+
+        scheduler.forEach(scheduler.splitBands(width, height, 0), null, (Tile band) -> {
+            int firstRow = shared != null ? 0 : 2 * band.getY();
+            int[] in = shared != null ? shared
+                    : PixelBuffer.readRows(image, firstRow, Math.min(2 * band.getEndY(), inHeight) - firstRow);
+            for (int y = band.getY(); y < band.getEndY(); y++) {
+                int row0 = (2 * y - firstRow) * inWidth;
+                int row1 = (Math.min(2 * y + 1, inHeight - 1) - firstRow) * inWidth;
+                for (int x = 0; x < width; x++) {
+                    int x0 = 2 * x;
+                    int x1 = Math.min(x0 + 1, inWidth - 1);
+                    out[y * width + x] = average(in[row0 + x0], in[row0 + x1], in[row1 + x0], in[row1 + x1], alpha);
+                }
+            }
+        });
+        return output;
+    }
+
+    /**
+     * Averages four packed pixels channel by channel, rounding to nearest.
+     *
+     * @param a The first pixel.
+     * @param b The second pixel.
+     * @param c The third pixel.
+     * @param d The fourth pixel.
+     * @param alpha True if the alpha byte is meaningful.
+     * @return The averaged pixel, opaque if the pixels have no alpha.
+     */
+    private static int average(int a, int b, int c, int d, boolean alpha) {
+        int alphaByte = alpha
+                ? ((a >>> 24) + (b >>> 24) + (c >>> 24) + (d >>> 24) + 2) >> 2
+                : 0xff;
+        int red = (((a >> 16) & 0xff) + ((b >> 16) & 0xff) + ((c >> 16) & 0xff) + ((d >> 16) & 0xff) + 2) >> 2;
+        int green = (((a >> 8) & 0xff) + ((b >> 8) & 0xff) + ((c >> 8) & 0xff) + ((d >> 8) & 0xff) + 2) >> 2;
+        int blue = ((a & 0xff) + (b & 0xff) + (c & 0xff) + (d & 0xff) + 2) >> 2;
+        return (alphaByte << 24) | (red << 16) | (green << 8) | blue;
+    }
+}
@@ -0,0 +1,333 @@
+package org.knu.bll.buffers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * The PixelBuffer class stores an image as a row-major array of packed ARGB integers.
+ * Algorithms read and write the array directly instead of going through BufferedImage.getRGB/setRGB,
+ * so the color model is only involved when an image enters or leaves the business layer.
+ * <p>
+ * TYPE_INT_RGB and TYPE_INT_ARGB images are wrapped without copying: the buffer shares the
+ * DataBufferInt of the image, so writes to the buffer are visible in the image and vice versa.
+ * Any other image type is converted once into a new TYPE_INT_ARGB buffer. TYPE_3BYTE_BGR and TYPE_4BYTE_ABGR
+ * images, which most decoders produce, are converted straight from their interleaved bytes without going through
+ * the color model of every pixel.
+ * <p>
+ * For buffers without alpha the top byte of every pixel is undefined and must be ignored.
+ */
+public final class PixelBuffer {
+    private static final int RED_MASK = 0x00ff0000;
+    private static final int GREEN_MASK = 0x0000ff00;
+    private static final int BLUE_MASK = 0x000000ff;
+    private static final int ALPHA_MASK = 0xff000000;
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final boolean alpha;
+    private BufferedImage image;
+
+    /**
+     * Constructs a PixelBuffer over the given pixel array.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @param pixels The packed pixels in row-major order, at least width * height long.
+     * @param alpha  True if the alpha byte of every pixel is meaningful.
+     * @throws IllegalArgumentException if the dimensions do not match the array.
+     */
+    public PixelBuffer(int width, int height, int[] pixels, boolean alpha) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Buffer dimensions must be positive");
+        }
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Pixel array is smaller than " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+        this.alpha = alpha;
+    }
+
+    /**
+     * Creates a new zero-filled buffer.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @param alpha  True if the buffer should keep an alpha channel.
+     * @return A new PixelBuffer.
+     */
+    public static PixelBuffer create(int width, int height, boolean alpha) {
+        return new PixelBuffer(width, height, new int[width * height], alpha);
+    }
+
+    /**
+     * Creates a new zero-filled buffer with the same dimensions and alpha mode as the given one.
+     *
+     * @param template The buffer whose geometry is copied.
+     * @return A new PixelBuffer.
+     */
+    public static PixelBuffer createCompatible(PixelBuffer template) {
+        return create(template.width, template.height, template.alpha);
+    }
+
+    /**
+     * Wraps the given image in a PixelBuffer. TYPE_INT_RGB and TYPE_INT_ARGB images with a plain
+     * packed raster are shared without copying, every other image is copied into a TYPE_INT_ARGB buffer.
+     *
+     * @param image The image to wrap. This image should not be null.
+     * @return A PixelBuffer that represents the pixels of the image.
+     * @throws NullPointerException if the image is null.
+     */
+    public static PixelBuffer wrap(BufferedImage image) {
+        if (image == null) throw new NullPointerException("Image cannot be null");
+
+        int[] shared = sharedPixels(image);
+        if (shared != null) {
+            PixelBuffer buffer = new PixelBuffer(image.getWidth(), image.getHeight(), shared,
+                    image.getType() == BufferedImage.TYPE_INT_ARGB);
+            buffer.image = image;
+            return buffer;
+        }
+        return copyOf(image);
+    }
+
+    /**
+     * Copies the given image into a new TYPE_INT_ARGB buffer, never sharing the image raster.
+     *
+     * @param image The image to copy. This image should not be null.
+     * @return A new PixelBuffer holding a copy of the image pixels.
+     */
+    public static PixelBuffer copyOf(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = interleavedPixels(image);
+        if (pixels == null) {
+            pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        }
+        return new PixelBuffer(width, height, pixels, true);
+    }
+
+    /**
+     * Reads a range of rows of an image as packed ARGB pixels without converting the rest of the image.
+     *
+     * @param image The image to read.
+     * @param y The first row.
+     * @param rows The number of rows.
+     * @return The packed ARGB pixels of the rows, rows * width long.
+     */
+    static int[] readRows(BufferedImage image, int y, int rows) {
+        int[] pixels = interleavedPixels(image, y, rows);
+        return pixels != null ? pixels : image.getRGB(0, y, image.getWidth(), rows, null, 0, image.getWidth());
+    }
+
+    /**
+     * Converts a TYPE_3BYTE_BGR or TYPE_4BYTE_ABGR image with a plain interleaved raster to packed ARGB pixels
+     * by reading its bytes directly. The result equals BufferedImage.getRGB for these types.
+     *
+     * @param image The image to convert.
+     * @return The packed ARGB pixels, or null if the image type or raster layout is not supported.
+     */
+    private static int[] interleavedPixels(BufferedImage image) {
+        return interleavedPixels(image, 0, image.getHeight());
+    }
+
+    /**
+     * Converts a range of rows of a TYPE_3BYTE_BGR or TYPE_4BYTE_ABGR image with a plain interleaved raster to
+     * packed ARGB pixels by reading its bytes directly.
+     *
+     * @param image The image to convert.
+     * @param y The first row.
+     * @param rows The number of rows.
+     * @return The packed ARGB pixels of the rows, or null if the image type or raster layout is not supported.
+     */
+    private static int[] interleavedPixels(BufferedImage image, int y, int rows) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_3BYTE_BGR && type != BufferedImage.TYPE_4BYTE_ABGR) {
+            return null;
+        }
+        WritableRaster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        if (!(dataBuffer instanceof DataBufferByte) || dataBuffer.getNumBanks() != 1 || dataBuffer.getOffset() != 0) {
+            return null;
+        }
+        int width = image.getWidth();
+        int bands = raster.getNumBands();
+        if (!(raster.getSampleModel() instanceof PixelInterleavedSampleModel sampleModel)
+                || sampleModel.getPixelStride() != bands
+                || sampleModel.getScanlineStride() != width * bands
+                || raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0) {
+            return null;
+        }
+
+        byte[] data = ((DataBufferByte) dataBuffer).getData();
+        int[] offsets = sampleModel.getBandOffsets();
+        int red = offsets[0];
+        int green = offsets[1];
+        int blue = offsets[2];
+        int[] pixels = new int[width * rows];
+        int start = y * width * bands;
+        if (bands == 4) {
+            int alpha = offsets[3];
+            for (int i = 0, b = start; i < pixels.length; i++, b += 4) {
+                pixels[i] = (data[b + alpha] & 0xff) << 24 | (data[b + red] & 0xff) << 16
+                        | (data[b + green] & 0xff) << 8 | data[b + blue] & 0xff;
+            }
+        } else {
+            for (int i = 0, b = start; i < pixels.length; i++, b += 3) {
+                pixels[i] = ALPHA_MASK | (data[b + red] & 0xff) << 16 | (data[b + green] & 0xff) << 8
+                        | data[b + blue] & 0xff;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Returns the pixel array of the image when it can be shared without copying.
+     *
+     * @param image The image to inspect.
+     * @return The DataBufferInt array of the image, or null if the raster layout does not allow sharing.
+     */
+    static int[] sharedPixels(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            return null;
+        }
+        WritableRaster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        if (!(dataBuffer instanceof DataBufferInt) || dataBuffer.getNumBanks() != 1 || dataBuffer.getOffset() != 0) {
+            return null;
+        }
+        if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel)
+                || sampleModel.getScanlineStride() != image.getWidth()
+                || raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0) {
+            return null;
+        }
+        return ((DataBufferInt) dataBuffer).getData();
+    }
+
+    /**
+     * Returns the width of the buffer.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the buffer.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the backing pixel array. Pixel (x, y) is stored at index y * width + x.
+     *
+     * @return The packed pixel array.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Checks whether the alpha byte of the pixels is meaningful.
+     *
+     * @return True if the buffer keeps an alpha channel.
+     */
+    public boolean hasAlpha() {
+        return alpha;
+    }
+
+    /**
+     * Returns the pixel at the given coordinates with the same semantics as BufferedImage.getRGB,
+     * i.e. opaque alpha for buffers without an alpha channel.
+     *
+     * @param x The x-coordinate of the pixel.
+     * @param y The y-coordinate of the pixel.
+     * @return The packed ARGB value.
+     */
+    public int getRGB(int x, int y) {
+        int rgb = pixels[y * width + x];
+        return alpha ? rgb : rgb | ALPHA_MASK;
+    }
+
+    /**
+     * Returns the pixel at the given coordinates, clamping them to the buffer edges.
+     *
+     * @param x The x-coordinate of the pixel.
+     * @param y The y-coordinate of the pixel.
+     * @return The packed ARGB value of the nearest pixel inside the buffer.
+     */
+    public int getClampedRGB(int x, int y) {
+        return getRGB(Math.min(Math.max(x, 0), width - 1), Math.min(Math.max(y, 0), height - 1));
+    }
+
+    /**
+     * Sets the pixel at the given coordinates.
+     *
+     * @param x   The x-coordinate of the pixel.
+     * @param y   The y-coordinate of the pixel.
+     * @param rgb The packed ARGB value.
+     */
+    public void setRGB(int x, int y, int rgb) {
+        pixels[y * width + x] = rgb;
+    }
+
+    /**
+     * Converts the buffer to a BufferedImage. Buffers created by {@link #wrap(BufferedImage)} return the
+     * wrapped image, other buffers are exposed through a TYPE_INT_RGB or TYPE_INT_ARGB image that shares
+     * the pixel array.
+     *
+     * @return A BufferedImage backed by this buffer.
+     */
+    public BufferedImage toImage() {
+        if (image == null) {
+            DataBufferInt dataBuffer = new DataBufferInt(pixels, width * height);
+            DirectColorModel colorModel = alpha
+                    ? new DirectColorModel(32, RED_MASK, GREEN_MASK, BLUE_MASK, ALPHA_MASK)
+                    : new DirectColorModel(24, RED_MASK, GREEN_MASK, BLUE_MASK);
+            WritableRaster raster = Raster.createPackedRaster(dataBuffer, width, height, width,
+                    colorModel.getMasks(), null);
+            image = new BufferedImage(colorModel, raster, false, null);
+        }
+        return image;
+    }
+
+    /**
+     * Creates a deep copy of the buffer that does not share the pixel array.
+     *
+     * @return A new PixelBuffer with the same pixels.
+     */
+    public PixelBuffer copy() {
+        return new PixelBuffer(width, height, pixels.clone(), alpha);
+    }
+
+    /**
+     * Converts the buffer to a grayscale plane using the luminance weights of ImageHelper.getGrayByte.
+     *
+     * @return A new GrayBuffer with the luminance of every pixel.
+     */
+    public GrayBuffer toGray() {
+        GrayBuffer gray = GrayBuffer.create(width, height);
+        byte[] samples = gray.getSamples();
+        for (int i = 0; i < width * height; i++) {
+            int px = pixels[i];
+            samples[i] = (byte) (int) (0.299 * ((px >> 16) & 0xff) + 0.587 * ((px >> 8) & 0xff) + 0.114 * (px & 0xff));
+        }
+        return gray;
+    }
+}
@@ -0,0 +1,188 @@
+package org.knu.bll.buffers;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The TileCache class keeps decoded tiles of {@link TiledImageSource}s in memory up to a byte budget. Tiles are
+ * evicted in least recently used order whenever a new tile would exceed the budget, so any number of sources can be
+ * browsed and processed with a fixed amount of heap. All methods are thread-safe.
+ */
+public final class TileCache {
+    private static TileCache shared;
+
+    private final long budgetBytes;
+    private final LinkedHashMap<Key, PixelBuffer> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private long usedBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructs a TileCache.
+     *
+     * @param budgetBytes The memory the cached tiles may use.
+     * @throws IllegalArgumentException if the budget is not positive.
+     */
+    public TileCache(long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Cache budget must be positive");
+        }
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Returns the cache shared by all sources, whose budget is an eighth of the maximum heap size.
+     *
+     * @return The shared TileCache.
+     */
+    public static synchronized TileCache shared() {
+        if (shared == null) {
+            shared = new TileCache(Runtime.getRuntime().maxMemory() / 8);
+        }
+        return shared;
+    }
+
+    /**
+     * Returns a cached tile and marks it as recently used.
+     *
+     * @param owner The source the tile belongs to.
+     * @param column The tile column.
+     * @param row The tile row.
+     * @return The tile, or null if it is not cached.
+     */
+    public synchronized PixelBuffer get(Object owner, int column, int row) {
+        PixelBuffer tile = tiles.get(new Key(owner, column, row));
+        if (tile != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return tile;
+    }
+
+    /**
+     * Returns a cached tile without counting the lookup, for a second check after a miss.
+     *
+     * @param owner The source the tile belongs to.
+     * @param column The tile column.
+     * @param row The tile row.
+     * @return The tile, or null if it is not cached.
+     */
+    synchronized PixelBuffer peek(Object owner, int column, int row) {
+        return tiles.get(new Key(owner, column, row));
+    }
+
+    /**
+     * Adds a tile and evicts the least recently used tiles until the budget is met again. The new tile is kept even
+     * if it alone exceeds the budget.
+     *
+     * @param owner The source the tile belongs to.
+     * @param column The tile column.
+     * @param row The tile row.
+     * @param tile The decoded tile.
+     */
+    public synchronized void put(Object owner, int column, int row, PixelBuffer tile) {
+        PixelBuffer previous = tiles.put(new Key(owner, column, row), tile);
+        if (previous != null) {
+            usedBytes -= sizeOf(previous);
+        }
+        usedBytes += sizeOf(tile);
+        Iterator<Map.Entry<Key, PixelBuffer>> eldest = tiles.entrySet().iterator();
+        while (usedBytes > budgetBytes && tiles.size() > 1) {
+            PixelBuffer evicted = eldest.next().getValue();
+            eldest.remove();
+            usedBytes -= sizeOf(evicted);
+        }
+    }
+
+    /**
+     * Removes every tile of a source.
+     *
+     * @param owner The source whose tiles are removed.
+     */
+    public synchronized void invalidate(Object owner) {
+        Iterator<Map.Entry<Key, PixelBuffer>> entries = tiles.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Key, PixelBuffer> entry = entries.next();
+            if (entry.getKey().owner == owner) {
+                usedBytes -= sizeOf(entry.getValue());
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the memory the cached tiles may use.
+     *
+     * @return The budget in bytes.
+     */
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Returns the memory the cached tiles use.
+     *
+     * @return The size of all cached tiles in bytes.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns how many lookups found their tile.
+     *
+     * @return The number of cache hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns how many lookups did not find their tile.
+     *
+     * @return The number of cache misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the memory of one tile.
+     *
+     * @param tile The tile.
+     * @return The size of its pixels in bytes.
+     */
+    private static long sizeOf(PixelBuffer tile) {
+        return (long) tile.getWidth() * tile.getHeight() * Integer.BYTES;
+    }
+
+    /**
+     * The Key class identifies a tile by its source and position.
+     */
+    private static final class Key {
+        private final Object owner;
+        private final int column;
+        private final int row;
+
+        Key(Object owner, int column, int row) {
+            this.owner = owner;
+            this.column = column;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return owner == key.owner && column == key.column && row == key.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(owner), column, row);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package org.knu.bll.buffers;
+
+import org.knu.bll.Tile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * The TiledImageSource class gives access to an image file that may be far larger than the heap by decoding only the
+ * regions that are requested. The image is divided into a grid of tiles: the native tiles of a tiled TIFF, which the
+ * JDK TIFF reader decodes directly, or, for other formats, bands of full rows, or squares when a band would take more
+ * than a sixteenth of the cache, which are decoded with {@link ImageReadParam#setSourceRegion}. Decoded tiles are kept in a {@link TileCache}, so repeated reads of the same
+ * area are served from memory while the total memory stays within the budget of the cache.
+ * <p>
+ * Only tiled TIFF files are read in time proportional to the requested region; readers of formats such as PNG or
+ * JPEG skip the data in front of a region by decoding it. Decoding is serialized on the single reader of the file,
+ * the cache is shared between threads, so all methods are thread-safe.
+ */
+public final class TiledImageSource implements AutoCloseable {
+    /**
+     * The edge length of the tiles of files that are not tiled themselves.
+     */
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    private final String path;
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final TileCache cache;
+    private final int width;
+    private final int height;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final boolean nativeTiles;
+    private final boolean alpha;
+    private boolean closed;
+
+    /**
+     * Constructs a TiledImageSource on an opened reader.
+     *
+     * @param path The file path, used in error messages.
+     * @param input The stream the reader reads from.
+     * @param reader The reader, with its input set.
+     * @param cache The cache for the decoded tiles.
+     * @param tileSize The tile height, and the tile width if bands are too large, used when the file is not tiled.
+     * @throws IOException if the header of the image cannot be read.
+     */
+    private TiledImageSource(String path, ImageInputStream input, ImageReader reader, TileCache cache, int tileSize)
+            throws IOException {
+        this.path = path;
+        this.input = input;
+        this.reader = reader;
+        this.cache = cache;
+        this.width = reader.getWidth(0);
+        this.height = reader.getHeight(0);
+        this.nativeTiles = reader.isImageTiled(0);
+        boolean bands = (long) width * tileSize * Integer.BYTES <= cache.getBudgetBytes() / 16;
+        this.tileWidth = nativeTiles ? reader.getTileWidth(0) : bands ? width : Math.min(tileSize, width);
+        this.tileHeight = nativeTiles ? reader.getTileHeight(0) : Math.min(tileSize, height);
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        this.alpha = types.hasNext() && types.next().getColorModel().hasAlpha();
+    }
+
+    /**
+     * Opens an image file with the shared cache and the default tile size.
+     *
+     * @param path The file path of the image.
+     * @return The opened source, to be closed by the caller.
+     * @throws RuntimeException if the file does not exist, has an unsupported format or cannot be read.
+     */
+    public static TiledImageSource open(String path) {
+        return open(path, TileCache.shared(), DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Opens an image file. Only the header is read.
+     *
+     * @param path The file path of the image.
+     * @param cache The cache for the decoded tiles.
+     * @param tileSize The tile height, and the tile width if bands are too large, used when the file is not tiled.
+     * @return The opened source, to be closed by the caller.
+     * @throws IllegalArgumentException if the tile size is not positive.
+     * @throws RuntimeException if the file does not exist, has an unsupported format or cannot be read.
+     */
+    public static TiledImageSource open(String path, TileCache cache, int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        File file = new File(path);
+        if (!file.exists()) {
+            throw new RuntimeException("File does not exist: " + file.getAbsolutePath());
+        }
+        ImageInputStream input = null;
+        try {
+            input = ImageIO.createImageInputStream(file);
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new RuntimeException("Unsupported image format: " + path);
+            }
+            ImageReader reader = readers.next();
+            reader.setInput(input, true, true);
+            return new TiledImageSource(path, input, reader, cache, tileSize);
+        } catch (IOException e) {
+            closeQuietly(input);
+            throw new RuntimeException("Error loading image from " + path, e);
+        } catch (RuntimeException e) {
+            closeQuietly(input);
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether an image of the given size should be opened as a tiled source rather than decoded at once,
+     * because its pixels would take more than a quarter of the maximum heap size.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return True if the image is too large to be decoded at once.
+     */
+    public static boolean shouldTile(int width, int height) {
+        return (long) width * height * Integer.BYTES > Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * Returns the path of the image file.
+     *
+     * @return The file path the source was opened with.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the width of the tiles. The tiles of the last column may be narrower.
+     *
+     * @return The tile width in pixels.
+     */
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    /**
+     * Returns the height of the tiles. The tiles of the last row may be lower.
+     *
+     * @return The tile height in pixels.
+     */
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * Returns the number of tile columns.
+     *
+     * @return The number of tiles across the image.
+     */
+    public int getColumns() {
+        return (width + tileWidth - 1) / tileWidth;
+    }
+
+    /**
+     * Returns the number of tile rows.
+     *
+     * @return The number of tiles down the image.
+     */
+    public int getRows() {
+        return (height + tileHeight - 1) / tileHeight;
+    }
+
+    /**
+     * Checks whether the tiles are the native tiles of the file.
+     *
+     * @return True if the file is tiled and its tiles are decoded directly.
+     */
+    public boolean hasNativeTiles() {
+        return nativeTiles;
+    }
+
+    /**
+     * Checks whether the image has an alpha channel.
+     *
+     * @return True if the decoded pixels carry alpha.
+     */
+    public boolean hasAlpha() {
+        return alpha;
+    }
+
+    /**
+     * Returns the cache of the decoded tiles.
+     *
+     * @return The TileCache of this source.
+     */
+    public TileCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns one tile, decoding it if it is not cached.
+     *
+     * @param column The tile column.
+     * @param row The tile row.
+     * @return The pixels of the tile. The buffer is shared with the cache and must not be modified.
+     * @throws IndexOutOfBoundsException if the tile is outside the grid.
+     * @throws IllegalStateException if the source is closed.
+     * @throws RuntimeException if the tile cannot be decoded.
+     */
+    public PixelBuffer getTile(int column, int row) {
+        if (column < 0 || row < 0 || column >= getColumns() || row >= getRows()) {
+            throw new IndexOutOfBoundsException("Tile " + column + "," + row + " is outside the image");
+        }
+        PixelBuffer tile = cache.get(this, column, row);
+        if (tile != null) return tile;
+
+        synchronized (reader) {
+            tile = cache.peek(this, column, row);
+            if (tile == null) {
+                tile = decodeTile(column, row);
+                cache.put(this, column, row, tile);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Reads a region of the image from its tiles.
+     *
+     * @param region The region to read, in image coordinates.
+     * @return A new PixelBuffer with the pixels of the region.
+     * @throws IllegalArgumentException if the region is empty or not inside the image.
+     * @throws IllegalStateException if the source is closed.
+     * @throws RuntimeException if a tile cannot be decoded.
+     */
+    public PixelBuffer read(Rectangle region) {
+        if (region.isEmpty() || !new Rectangle(0, 0, width, height).contains(region)) {
+            throw new IllegalArgumentException("Region must be a non-empty part of the image");
+        }
+        int[] pixels = new int[region.width * region.height];
+        int firstColumn = region.x / tileWidth;
+        int firstRow = region.y / tileHeight;
+        int lastColumn = (region.x + region.width - 1) / tileWidth;
+        int lastRow = (region.y + region.height - 1) / tileHeight;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                PixelBuffer tile = getTile(column, row);
+                int tileX = column * tileWidth;
+                int tileY = row * tileHeight;
+                int x0 = Math.max(region.x, tileX);
+                int x1 = Math.min(region.x + region.width, tileX + tile.getWidth());
+                int y0 = Math.max(region.y, tileY);
+                int y1 = Math.min(region.y + region.height, tileY + tile.getHeight());
+                int[] tilePixels = tile.getPixels();
+                for (int y = y0; y < y1; y++) {
+                    System.arraycopy(tilePixels, (y - tileY) * tile.getWidth() + x0 - tileX,
+                            pixels, (y - region.y) * region.width + x0 - region.x, x1 - x0);
+                }
+            }
+        }
+        return new PixelBuffer(region.width, region.height, pixels, alpha);
+    }
+
+    /**
+     * Reads the pixels a {@link Tile} of the scheduler needs, including its halo.
+     *
+     * @param tile The tile to read, with coordinates inside this image.
+     * @return A new PixelBuffer with the pixels from the halo start to the halo end of the tile.
+     * @throws IllegalStateException if the source is closed.
+     * @throws RuntimeException if a tile cannot be decoded.
+     */
+    public PixelBuffer read(Tile tile) {
+        return read(new Rectangle(tile.getHaloX(), tile.getHaloY(),
+                tile.getHaloEndX() - tile.getHaloX(), tile.getHaloEndY() - tile.getHaloY()));
+    }
+
+    /**
+     * Decodes a region with only every step-th pixel of every step-th row, bypassing the cache. This is how reduced
+     * views of the image are read without decoding it at full resolution into memory.
+     *
+     * @param region The region to read, in image coordinates.
+     * @param step The subsampling step in both directions.
+     * @return A new image of about region / step pixels.
+     * @throws IllegalArgumentException if the step is not positive or the region is not inside the image.
+     * @throws IllegalStateException if the source is closed.
+     * @throws RuntimeException if the region cannot be decoded.
+     */
+    public BufferedImage readSubsampled(Rectangle region, int step) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("Subsampling step must be positive");
+        }
+        if (region.isEmpty() || !new Rectangle(0, 0, width, height).contains(region)) {
+            throw new IllegalArgumentException("Region must be a non-empty part of the image");
+        }
+        synchronized (reader) {
+            checkOpen();
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(region);
+            param.setSourceSubsampling(step, step, 0, 0);
+            try {
+                return reader.read(0, param);
+            } catch (IOException e) {
+                throw new RuntimeException("Error loading image from " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Releases the reader and the file, and removes the tiles of this source from the cache.
+     */
+    @Override
+    public void close() {
+        synchronized (reader) {
+            if (closed) return;
+            closed = true;
+            reader.dispose();
+            closeQuietly(input);
+        }
+        cache.invalidate(this);
+    }
+
+    /**
+     * Decodes one tile. Must be called while holding the reader lock.
+     *
+     * @param column The tile column.
+     * @param row The tile row.
+     * @return The decoded pixels.
+     * @throws IllegalStateException if the source is closed.
+     * @throws RuntimeException if the tile cannot be decoded.
+     */
+    private PixelBuffer decodeTile(int column, int row) {
+        checkOpen();
+        try {
+            BufferedImage image;
+            if (nativeTiles) {
+                image = reader.readTile(0, column, row);
+            } else {
+                int x = column * tileWidth;
+                int y = row * tileHeight;
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle(x, y, Math.min(tileWidth, width - x), Math.min(tileHeight, height - y)));
+                image = reader.read(0, param);
+            }
+            int w = image.getWidth();
+            int h = image.getHeight();
+            return new PixelBuffer(w, h, image.getRGB(0, 0, w, h, null, 0, w), alpha);
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading tile " + column + "," + row + " from " + path, e);
+        }
+    }
+
+    /**
+     * Fails if the source has been closed.
+     *
+     * @throws IllegalStateException if the source is closed.
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Image source is closed: " + path);
+        }
+    }
+
+    /**
+     * Closes a stream, ignoring errors.
+     *
+     * @param input The stream to close, or null.
+     */
+    private static void closeQuietly(ImageInputStream input) {
+        if (input == null) return;
+        try {
+            input.close();
+        } catch (IOException ignored) {
+            // the stream is only read, nothing is lost
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.knu.bll.buffers;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * The TiledImageWriter class writes an image that may be far larger than the heap to a tiled TIFF file, one region at
+ * a time. The file is created with all its tiles up front by {@link ImageWriter#prepareWriteEmpty}, and every
+ * {@link #write(int, int, PixelBuffer)} replaces the pixels of a region in place, so only the region being written is
+ * held in memory. Regions should be aligned to the tile grid of the file; a region that covers only part of a tile
+ * makes the writer read and rewrite that tile.
+ * <p>
+ * The JDK TIFF writer is not thread-safe, so writes are serialized on the writer.
+ */
+public final class TiledImageWriter implements AutoCloseable {
+    /**
+     * The edge length of the tiles of the written files.
+     */
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    private static final int TIFF_TILE_MULTIPLE = 16;
+
+    private final File file;
+    private final ImageOutputStream output;
+    private final ImageWriter writer;
+    private final int width;
+    private final int height;
+    private final boolean alpha;
+    private boolean closed;
+
+    /**
+     * Constructs a TiledImageWriter on an opened writer whose empty image has been prepared.
+     *
+     * @param file The file being written, used in error messages.
+     * @param output The stream the writer writes to.
+     * @param writer The writer, ready to replace pixels.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param alpha Whether the image has an alpha channel.
+     */
+    private TiledImageWriter(File file, ImageOutputStream output, ImageWriter writer, int width, int height, boolean alpha) {
+        this.file = file;
+        this.output = output;
+        this.writer = writer;
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+    }
+
+    /**
+     * Creates a tiled TIFF file with the default tile size. An existing file is replaced.
+     *
+     * @param file The file to write.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param alpha Whether the image has an alpha channel.
+     * @return The opened writer, to be closed by the caller.
+     * @throws IllegalArgumentException if the dimensions are not positive.
+     * @throws RuntimeException if the file cannot be created or written to.
+     */
+    public static TiledImageWriter create(File file, int width, int height, boolean alpha) {
+        return create(file, width, height, alpha, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Creates a tiled TIFF file. An existing file is replaced. The pixels of the file are undefined until they are
+     * written.
+     *
+     * @param file The file to write.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param alpha Whether the image has an alpha channel.
+     * @param tileSize The edge length of the tiles, a multiple of 16 as TIFF requires.
+     * @return The opened writer, to be closed by the caller.
+     * @throws IllegalArgumentException if the dimensions are not positive or the tile size is not a positive multiple of 16.
+     * @throws RuntimeException if the file cannot be created or written to.
+     */
+    public static TiledImageWriter create(File file, int width, int height, boolean alpha, int tileSize) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image dimensions must be positive");
+        }
+        if (tileSize <= 0 || tileSize % TIFF_TILE_MULTIPLE != 0) {
+            throw new IllegalArgumentException("Tile size must be a positive multiple of " + TIFF_TILE_MULTIPLE);
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("TIFF");
+        if (!writers.hasNext()) {
+            throw new RuntimeException("No TIFF writer is available");
+        }
+        ImageWriter writer = writers.next();
+        ImageOutputStream output = null;
+        try {
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Failed to replace file: " + file.getAbsolutePath());
+            }
+            output = ImageIO.createImageOutputStream(file);
+            if (output == null) {
+                throw new IOException("Failed to create file: " + file.getAbsolutePath());
+            }
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setTiling(tileSize, tileSize, 0, 0);
+            ImageTypeSpecifier type = ImageTypeSpecifier.createFromBufferedImageType(
+                    alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            writer.prepareWriteEmpty(null, type, width, height, null, null, param);
+            writer.endWriteEmpty();
+            writer.prepareReplacePixels(0, new Rectangle(0, 0, width, height));
+            return new TiledImageWriter(file, output, writer, width, height, alpha);
+        } catch (IOException e) {
+            writer.dispose();
+            closeQuietly(output);
+            throw new RuntimeException("Error saving image to file: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the file being written.
+     *
+     * @return The output file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the pixels of a region of the image.
+     *
+     * @param x The x-coordinate of the region in the image.
+     * @param y The y-coordinate of the region in the image.
+     * @param pixels The pixels of the region. This buffer should not be null.
+     * @throws NullPointerException if the pixels are null.
+     * @throws IllegalArgumentException if the region is not inside the image.
+     * @throws IllegalStateException if the writer is closed.
+     * @throws RuntimeException if the region cannot be written.
+     */
+    public synchronized void write(int x, int y, PixelBuffer pixels) {
+        if (pixels == null) throw new NullPointerException("Image cannot be null");
+        if (!new Rectangle(0, 0, width, height).contains(new Rectangle(x, y, pixels.getWidth(), pixels.getHeight()))) {
+            throw new IllegalArgumentException("Region must be a part of the image");
+        }
+        if (closed) {
+            throw new IllegalStateException("Image writer is closed: " + file.getAbsolutePath());
+        }
+        BufferedImage image = new BufferedImage(pixels.getWidth(), pixels.getHeight(),
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, pixels.getWidth(), pixels.getHeight(), pixels.getPixels(), 0, pixels.getWidth());
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setDestinationOffset(new Point(x, y));
+        try {
+            writer.replacePixels(image, param);
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving image to file: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Finishes the file and releases the writer.
+     *
+     * @throws RuntimeException if the file cannot be finished.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            writer.endReplacePixels();
+            writer.dispose();
+            output.close();
+        } catch (IOException e) {
+            writer.dispose();
+            closeQuietly(output);
+            throw new RuntimeException("Error saving image to file: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Closes a stream, ignoring errors.
+     *
+     * @param output The stream to close, or null.
+     */
+    private static void closeQuietly(ImageOutputStream output) {
+        if (output == null) return;
+        try {
+            output.close();
+        } catch (IOException ignored) {
+            // the stream is closed after an earlier error, which is reported instead
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package org.knu.bll.helpers;
 
+import org.knu.bll.CancellationToken;
+import org.knu.bll.ProgressListener;
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
 
@@ -46,6 +51,19 @@ public class ImageHelper {
         }
     }
 
+    /**
+     * Converts the given pixel buffer to grayscale in place.
+     *
+     * @param coloredImage The pixels to be converted to grayscale.
+     */
+    public static void convertToGrayscale(PixelBuffer coloredImage) {
+        int[] pixels = coloredImage.getPixels();
+        int size = coloredImage.getWidth() * coloredImage.getHeight();
+        for (int i = 0; i < size; i++) {
+            pixels[i] = getGrayColorRGB(pixels[i]);
+        }
+    }
+
     /**
      * Converts an RGB value to a grayscale value.
      *
@@ -171,25 +189,93 @@ public class ImageHelper {
      * @return A 2D array representing the histograms for the red, green, blue, and gray components.
      */
     public static int[][] calculateCountIntensities(BufferedImage image, int numBins) {
+        return calculateCountIntensities(PixelBuffer.wrap(image), numBins);
+    }
+
+    /**
+     * Calculates the histograms for the red, green, blue, and gray components of the given pixel buffer.
+     *
+     * @param image The pixels to calculate the histograms for.
+     * @param numBins The number of bins in the histograms.
+     * @return A 2D array representing the histograms for the red, green, blue, and gray components.
+     */
+    public static int[][] calculateCountIntensities(PixelBuffer image, int numBins) {
+        return calculateCountIntensities(image, numBins, 0, image.getHeight());
+    }
+
+    /**
+     * Calculates the histograms for the red, green, blue, and gray components of the rows fromRow (inclusive)
+     * to toRow (exclusive) of the given pixel buffer.
+     *
+     * @param image The pixels to calculate the histograms for.
+     * @param numBins The number of bins in the histograms.
+     * @param fromRow The first row to count.
+     * @param toRow The row after the last row to count.
+     * @return A 2D array representing the histograms for the red, green, blue, and gray components.
+     */
+    public static int[][] calculateCountIntensities(PixelBuffer image, int numBins, int fromRow, int toRow) {
         int[][] histogram = new int[4][numBins];
-        int width = image.getWidth();
-        int height = image.getHeight();
+        int[] pixels = image.getPixels();
+        int size = toRow * image.getWidth();
 
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int rgb = image.getRGB(x, y);
-                int red = countColorsByBin(getRedByte(rgb), numBins);
-                int green = countColorsByBin(getGreenByte(rgb), numBins);
-                int blue = countColorsByBin(getBlueByte(rgb), numBins);
-                int gray = countColorsByBin(getGradient(rgb), numBins);
-
-                histogram[0][red]++;
-                histogram[1][green]++;
-                histogram[2][blue]++;
-                histogram[3][gray]++;
+        for (int i = fromRow * image.getWidth(); i < size; i++) {
+            int rgb = pixels[i];
+            int red = countColorsByBin(getRedByte(rgb), numBins);
+            int green = countColorsByBin(getGreenByte(rgb), numBins);
+            int blue = countColorsByBin(getBlueByte(rgb), numBins);
+            int gray = countColorsByBin(getGradient(rgb), numBins);
+
+            histogram[0][red]++;
+            histogram[1][green]++;
+            histogram[2][blue]++;
+            histogram[3][gray]++;
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Calculates the histograms for the red, green, blue, and gray components of a tiled image, reading it tile by
+     * tile. When a bin would exceed the range of an int, all bins are divided by the same factor, so the histograms
+     * keep their shape.
+     *
+     * @param source The tiled image to calculate the histograms for.
+     * @param numBins The number of bins in the histograms.
+     * @param listener A ProgressListener that advances once per tile row. This listener should not be null.
+     * @return A 2D array representing the histograms for the red, green, blue, and gray components.
+     * @throws java.util.concurrent.CancellationException if the operation was cancelled.
+     */
+    public static int[][] calculateCountIntensities(TiledImageSource source, int numBins, ProgressListener listener) {
+        CancellationToken token = CancellationToken.of(listener);
+        long[][] counts = new long[4][numBins];
+        listener.onProgressStart(source.getRows());
+        for (int row = 0; row < source.getRows(); row++) {
+            for (int column = 0; column < source.getColumns(); column++) {
+                token.throwIfCancelled();
+                PixelBuffer tile = source.getTile(column, row);
+                int[][] tileCounts = calculateCountIntensities(tile, numBins);
+                for (int channel = 0; channel < 4; channel++) {
+                    for (int bin = 0; bin < numBins; bin++) {
+                        counts[channel][bin] += tileCounts[channel][bin];
+                    }
+                }
             }
+            listener.onProgressUpdate();
         }
 
+        long max = 0;
+        for (long[] channel : counts) {
+            for (long count : channel) {
+                max = Math.max(max, count);
+            }
+        }
+        long divisor = max / Integer.MAX_VALUE + 1;
+        int[][] histogram = new int[4][numBins];
+        for (int channel = 0; channel < 4; channel++) {
+            for (int bin = 0; bin < numBins; bin++) {
+                histogram[channel][bin] = (int) (counts[channel][bin] / divisor);
+            }
+        }
         return histogram;
     }
 
@@ -0,0 +1,22 @@
+package org.knu.bll.memento;
+
+/**
+ * The EvictableHistory interface is a history registered with a {@link HistoryBudget}, whose oldest stored states
+ * the budget can evict when the histories of all images exceed the global limit.
+ */
+interface EvictableHistory {
+
+    /**
+     * Returns the age of the state this history would evict first.
+     *
+     * @return The sequence number of the oldest evictable state, or Long.MAX_VALUE if no state can be evicted.
+     */
+    long getOldestSequence();
+
+    /**
+     * Releases the state this history would evict first.
+     *
+     * @return True if a state was released, false if no state can be evicted.
+     */
+    boolean evictOldest();
+}
@@ -0,0 +1,140 @@
+package org.knu.bll.memento;
+
+/**
+ * The HistoryAccount class counts the memory of the tiles stored in the history of one image
+ * and forwards every change to the {@link HistoryBudget} shared by all histories.
+ * <p>
+ * The account keeps three sizes: the heap memory the tiles occupy in their current form, the memory they would
+ * occupy uncompressed, and the bytes spilled to disk. It also measures how long restoring a state takes.
+ */
+final class HistoryAccount {
+    private final HistoryBudget budget;
+    private long heapBytes;
+    private long rawBytes;
+    private long diskBytes;
+    private int restores;
+    private long totalRestoreNanos;
+    private long lastRestoreNanos;
+    private long maxRestoreNanos;
+
+    /**
+     * Constructs a HistoryAccount.
+     *
+     * @param budget The budget that receives the changes of this account.
+     */
+    HistoryAccount(HistoryBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Charges a newly stored tile.
+     *
+     * @param heap The heap bytes of the tile.
+     * @param raw The uncompressed bytes of the tile.
+     * @param disk The spilled bytes of the tile.
+     */
+    void allocate(long heap, long raw, long disk) {
+        synchronized (this) {
+            heapBytes += heap;
+            rawBytes += raw;
+            diskBytes += disk;
+        }
+        budget.allocate(heap, disk);
+    }
+
+    /**
+     * Returns memory that is no longer stored, or heap memory saved by compression.
+     *
+     * @param heap The heap bytes to return.
+     * @param raw The uncompressed bytes to return.
+     * @param disk The spilled bytes to return.
+     */
+    void free(long heap, long raw, long disk) {
+        allocate(-heap, -raw, -disk);
+    }
+
+    /**
+     * Records that a tile was moved from the heap to disk.
+     *
+     * @param heap The heap bytes the tile no longer occupies.
+     * @param disk The bytes written to disk.
+     */
+    void spill(long heap, long disk) {
+        allocate(-heap, 0, disk);
+    }
+
+    /**
+     * Records how long restoring a state took.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    synchronized void recordRestore(long nanos) {
+        restores++;
+        totalRestoreNanos += nanos;
+        lastRestoreNanos = nanos;
+        maxRestoreNanos = Math.max(maxRestoreNanos, nanos);
+    }
+
+    /**
+     * Returns the heap memory currently charged to this account.
+     *
+     * @return The number of bytes.
+     */
+    synchronized long getBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * Returns the memory the tiles of this account would occupy uncompressed.
+     *
+     * @return The number of bytes.
+     */
+    synchronized long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * Returns the bytes of this account that are spilled to disk.
+     *
+     * @return The number of bytes.
+     */
+    synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    /**
+     * Returns the number of restored states.
+     *
+     * @return The number of restores.
+     */
+    synchronized int getRestores() {
+        return restores;
+    }
+
+    /**
+     * Returns the mean duration of a restore.
+     *
+     * @return The duration in milliseconds, or 0 if nothing has been restored.
+     */
+    synchronized double getAverageRestoreMillis() {
+        return restores == 0 ? 0 : totalRestoreNanos / 1e6 / restores;
+    }
+
+    /**
+     * Returns the duration of the last restore.
+     *
+     * @return The duration in milliseconds.
+     */
+    synchronized double getLastRestoreMillis() {
+        return lastRestoreNanos / 1e6;
+    }
+
+    /**
+     * Returns the longest duration of a restore.
+     *
+     * @return The duration in milliseconds.
+     */
+    synchronized double getMaxRestoreMillis() {
+        return maxRestoreNanos / 1e6;
+    }
+}
@@ -0,0 +1,273 @@
+package org.knu.bll.memento;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The HistoryBudget class limits the memory of the undo and redo histories. Every {@link ImageCaretaker} and
+ * {@link OperationHistory} keeps its own history within the per-tab limit, and the budget evicts the oldest states
+ * of all registered histories when their total exceeds the global limit.
+ * <p>
+ * The limits apply to heap memory. A background thread of the budget compresses the tiles of older states, and
+ * a history whose heap memory exceeds the spill threshold moves its oldest compressed tiles to a temporary file,
+ * so states are evicted only when compression and spilling are not enough.
+ */
+public class HistoryBudget {
+    private static final long MEGABYTE = 1024 * 1024;
+    private static HistoryBudget sharedBudget;
+
+    private final Set<EvictableHistory> histories = Collections.newSetFromMap(new WeakHashMap<>());
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "history-compactor");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private long tabLimit;
+    private long globalLimit;
+    private long spillThreshold;
+    private long usedBytes;
+    private long diskBytes;
+    private long nextSequence;
+
+    /**
+     * Constructs a HistoryBudget with a quarter of the maximum heap per tab and half of it for all tabs.
+     * Histories start spilling to disk at half of the per-tab limit.
+     */
+    public HistoryBudget() {
+        this(Runtime.getRuntime().maxMemory() / 4, Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    /**
+     * Constructs a HistoryBudget that starts spilling to disk at half of the per-tab limit.
+     *
+     * @param tabLimit The maximum number of bytes the history of one image may keep.
+     * @param globalLimit The maximum number of bytes the histories of all images may keep together.
+     * @throws IllegalArgumentException if a limit is not positive.
+     */
+    public HistoryBudget(long tabLimit, long globalLimit) {
+        this(tabLimit, globalLimit, tabLimit / 2);
+    }
+
+    /**
+     * Constructs a HistoryBudget.
+     *
+     * @param tabLimit The maximum number of bytes the history of one image may keep.
+     * @param globalLimit The maximum number of bytes the histories of all images may keep together.
+     * @param spillThreshold The heap bytes of one history above which its oldest compressed tiles are spilled to disk.
+     * @throws IllegalArgumentException if a limit is not positive or the spill threshold is negative.
+     */
+    public HistoryBudget(long tabLimit, long globalLimit, long spillThreshold) {
+        validateLimit(tabLimit);
+        validateLimit(globalLimit);
+        validateSpillThreshold(spillThreshold);
+        this.tabLimit = tabLimit;
+        this.globalLimit = globalLimit;
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * Returns the budget used by histories that were constructed without one.
+     *
+     * @return The shared HistoryBudget.
+     */
+    public static synchronized HistoryBudget shared() {
+        if (sharedBudget == null) {
+            sharedBudget = new HistoryBudget();
+        }
+        return sharedBudget;
+    }
+
+    /**
+     * Returns the maximum memory of the history of one image.
+     *
+     * @return The per-tab limit in bytes.
+     */
+    public synchronized long getTabLimit() {
+        return tabLimit;
+    }
+
+    /**
+     * Sets the maximum memory of the history of one image. Histories above the new limit are trimmed
+     * the next time they store a state.
+     *
+     * @param tabLimit The per-tab limit in bytes.
+     * @throws IllegalArgumentException if the limit is not positive.
+     */
+    public synchronized void setTabLimit(long tabLimit) {
+        validateLimit(tabLimit);
+        this.tabLimit = tabLimit;
+    }
+
+    /**
+     * Returns the maximum memory of the histories of all images.
+     *
+     * @return The global limit in bytes.
+     */
+    public synchronized long getGlobalLimit() {
+        return globalLimit;
+    }
+
+    /**
+     * Sets the maximum memory of the histories of all images and evicts the oldest states above it.
+     *
+     * @param globalLimit The global limit in bytes.
+     * @throws IllegalArgumentException if the limit is not positive.
+     */
+    public void setGlobalLimit(long globalLimit) {
+        validateLimit(globalLimit);
+        synchronized (this) {
+            this.globalLimit = globalLimit;
+        }
+        enforce();
+    }
+
+    /**
+     * Returns the heap bytes of one history above which its oldest compressed tiles are spilled to disk.
+     *
+     * @return The spill threshold in bytes.
+     */
+    public synchronized long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * Sets the heap bytes of one history above which its oldest compressed tiles are spilled to disk.
+     *
+     * @param spillThreshold The spill threshold in bytes. 0 spills every compressed tile.
+     * @throws IllegalArgumentException if the threshold is negative.
+     */
+    public synchronized void setSpillThreshold(long spillThreshold) {
+        validateSpillThreshold(spillThreshold);
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * Returns the heap memory the histories of all images keep.
+     *
+     * @return The number of bytes.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns the bytes the histories of all images have spilled to disk.
+     *
+     * @return The number of bytes.
+     */
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    /**
+     * Registers a history so that its states can be evicted by the global limit.
+     *
+     * @param history The history to register.
+     */
+    synchronized void register(EvictableHistory history) {
+        histories.add(history);
+    }
+
+    /**
+     * Removes a history from the budget.
+     *
+     * @param history The history to remove.
+     */
+    synchronized void unregister(EvictableHistory history) {
+        histories.remove(history);
+    }
+
+    /**
+     * Returns a number that orders stored states by age across all histories.
+     *
+     * @return A number greater than all numbers returned before.
+     */
+    synchronized long nextSequence() {
+        return nextSequence++;
+    }
+
+    /**
+     * Charges a change of the stored memory. Negative sizes return memory.
+     *
+     * @param heap The change of the heap bytes.
+     * @param disk The change of the spilled bytes.
+     */
+    synchronized void allocate(long heap, long disk) {
+        usedBytes += heap;
+        diskBytes += disk;
+    }
+
+    /**
+     * Runs the compaction of a history on the background thread of the budget.
+     *
+     * @param task The compaction to run.
+     */
+    void submitCompaction(Runnable task) {
+        compactor.execute(task);
+    }
+
+    /**
+     * Evicts the oldest states of all histories until the used memory fits the global limit
+     * or no history has a state left. The histories are queried outside the lock of the budget,
+     * so the budget lock is never held while a history is locked.
+     */
+    void enforce() {
+        while (getUsedBytes() > getGlobalLimit()) {
+            List<EvictableHistory> registered;
+            synchronized (this) {
+                registered = new ArrayList<>(histories);
+            }
+
+            EvictableHistory oldest = null;
+            long oldestSequence = Long.MAX_VALUE;
+            for (EvictableHistory history : registered) {
+                long sequence = history.getOldestSequence();
+                if (sequence < oldestSequence) {
+                    oldestSequence = sequence;
+                    oldest = history;
+                }
+            }
+            if (oldest == null || !oldest.evictOldest()) return;
+        }
+    }
+
+    /**
+     * Formats a number of bytes for reports.
+     *
+     * @param bytes The number of bytes.
+     * @return The size in megabytes with one decimal.
+     */
+    static String formatBytes(long bytes) {
+        return String.format("%.1f MB", bytes / (double) MEGABYTE);
+    }
+
+    /**
+     * Validates a spill threshold.
+     *
+     * @param threshold The threshold in bytes.
+     * @throws IllegalArgumentException if the threshold is negative.
+     */
+    private static void validateSpillThreshold(long threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Spill threshold cannot be negative");
+        }
+    }
+
+    /**
+     * Validates a memory limit.
+     *
+     * @param limit The limit in bytes.
+     * @throws IllegalArgumentException if the limit is not positive.
+     */
+    private static void validateLimit(long limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("History limit must be positive");
+        }
+    }
+}
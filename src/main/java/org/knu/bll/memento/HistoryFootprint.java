@@ -0,0 +1,206 @@
+package org.knu.bll.memento;
+
+import java.util.Locale;
+
+/**
+ * The HistoryFootprint class is a snapshot of the memory kept by the undo and redo history of one image
+ * and by the histories of all images, together with the compression ratio and the restore latency of the history.
+ */
+public final class HistoryFootprint {
+    private final int undoStates;
+    private final int redoStates;
+    private final long historyBytes;
+    private final long rawBytes;
+    private final long diskBytes;
+    private final long tabLimit;
+    private final long totalBytes;
+    private final long totalDiskBytes;
+    private final long globalLimit;
+    private final int restores;
+    private final double averageRestoreMillis;
+    private final double lastRestoreMillis;
+    private final double maxRestoreMillis;
+
+    /**
+     * Constructs a HistoryFootprint.
+     *
+     * @param undoStates The number of states that can be undone.
+     * @param redoStates The number of states that can be redone.
+     * @param historyBytes The heap memory kept by the history of the image.
+     * @param rawBytes The memory the history of the image would keep without compression.
+     * @param diskBytes The bytes the history of the image has spilled to disk.
+     * @param tabLimit The maximum memory of the history of one image.
+     * @param totalBytes The heap memory kept by the histories of all images.
+     * @param totalDiskBytes The bytes the histories of all images have spilled to disk.
+     * @param globalLimit The maximum memory of the histories of all images.
+     * @param restores The number of states the history has restored.
+     * @param averageRestoreMillis The mean duration of a restore in milliseconds.
+     * @param lastRestoreMillis The duration of the last restore in milliseconds.
+     * @param maxRestoreMillis The longest duration of a restore in milliseconds.
+     */
+    public HistoryFootprint(int undoStates, int redoStates, long historyBytes, long rawBytes, long diskBytes,
+                            long tabLimit, long totalBytes, long totalDiskBytes, long globalLimit, int restores,
+                            double averageRestoreMillis, double lastRestoreMillis, double maxRestoreMillis) {
+        this.undoStates = undoStates;
+        this.redoStates = redoStates;
+        this.historyBytes = historyBytes;
+        this.rawBytes = rawBytes;
+        this.diskBytes = diskBytes;
+        this.tabLimit = tabLimit;
+        this.totalBytes = totalBytes;
+        this.totalDiskBytes = totalDiskBytes;
+        this.globalLimit = globalLimit;
+        this.restores = restores;
+        this.averageRestoreMillis = averageRestoreMillis;
+        this.lastRestoreMillis = lastRestoreMillis;
+        this.maxRestoreMillis = maxRestoreMillis;
+    }
+
+    /**
+     * Returns the number of states that can be undone.
+     *
+     * @return The number of undo states.
+     */
+    public int getUndoStates() {
+        return undoStates;
+    }
+
+    /**
+     * Returns the number of states that can be redone.
+     *
+     * @return The number of redo states.
+     */
+    public int getRedoStates() {
+        return redoStates;
+    }
+
+    /**
+     * Returns the heap memory kept by the history of the image.
+     *
+     * @return The number of bytes.
+     */
+    public long getHistoryBytes() {
+        return historyBytes;
+    }
+
+    /**
+     * Returns the memory the history of the image would keep without compression.
+     *
+     * @return The number of bytes.
+     */
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * Returns the bytes the history of the image has spilled to disk.
+     *
+     * @return The number of bytes.
+     */
+    public long getDiskBytes() {
+        return diskBytes;
+    }
+
+    /**
+     * Returns the compression ratio of the history of the image: the uncompressed size divided by
+     * the bytes kept on the heap and on disk.
+     *
+     * @return The compression ratio, or 1 if the history is empty.
+     */
+    public double getCompressionRatio() {
+        long stored = historyBytes + diskBytes;
+        return stored <= 0 ? 1 : rawBytes / (double) stored;
+    }
+
+    /**
+     * Returns the maximum memory of the history of one image.
+     *
+     * @return The per-tab limit in bytes.
+     */
+    public long getTabLimit() {
+        return tabLimit;
+    }
+
+    /**
+     * Returns the heap memory kept by the histories of all images.
+     *
+     * @return The number of bytes.
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Returns the bytes the histories of all images have spilled to disk.
+     *
+     * @return The number of bytes.
+     */
+    public long getTotalDiskBytes() {
+        return totalDiskBytes;
+    }
+
+    /**
+     * Returns the maximum memory of the histories of all images.
+     *
+     * @return The global limit in bytes.
+     */
+    public long getGlobalLimit() {
+        return globalLimit;
+    }
+
+    /**
+     * Returns the number of states the history has restored.
+     *
+     * @return The number of restores.
+     */
+    public int getRestores() {
+        return restores;
+    }
+
+    /**
+     * Returns the mean duration of a restore.
+     *
+     * @return The duration in milliseconds, or 0 if nothing has been restored.
+     */
+    public double getAverageRestoreMillis() {
+        return averageRestoreMillis;
+    }
+
+    /**
+     * Returns the duration of the last restore.
+     *
+     * @return The duration in milliseconds.
+     */
+    public double getLastRestoreMillis() {
+        return lastRestoreMillis;
+    }
+
+    /**
+     * Returns the longest duration of a restore.
+     *
+     * @return The duration in milliseconds.
+     */
+    public double getMaxRestoreMillis() {
+        return maxRestoreMillis;
+    }
+
+    /**
+     * Returns a readable summary of the footprint.
+     *
+     * @return The number of states, the memory of this history and of all histories, and the metrics.
+     */
+    @Override
+    public String toString() {
+        return "Undo states: " + undoStates + ", redo states: " + redoStates + "\n"
+                + "This image: " + HistoryBudget.formatBytes(historyBytes)
+                + " of " + HistoryBudget.formatBytes(tabLimit)
+                + ", " + HistoryBudget.formatBytes(diskBytes) + " on disk\n"
+                + "All images: " + HistoryBudget.formatBytes(totalBytes)
+                + " of " + HistoryBudget.formatBytes(globalLimit)
+                + ", " + HistoryBudget.formatBytes(totalDiskBytes) + " on disk\n"
+                + String.format(Locale.ROOT, "Compression ratio: %.2f (%s uncompressed)%n",
+                getCompressionRatio(), HistoryBudget.formatBytes(rawBytes))
+                + String.format(Locale.ROOT, "Restores: %d, last %.1f ms, average %.1f ms, max %.1f ms",
+                restores, lastRestoreMillis, averageRestoreMillis, maxRestoreMillis);
+    }
+}
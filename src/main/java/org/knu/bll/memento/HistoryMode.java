@@ -0,0 +1,11 @@
+package org.knu.bll.memento;
+
+/**
+ * The HistoryMode enum selects how the undo and redo history of an image is kept.
+ */
+public enum HistoryMode {
+    /** Every state is stored as a tiled snapshot by an {@link ImageCaretaker}. */
+    SNAPSHOTS,
+    /** Operations are recorded by an {@link OperationHistory} and states are recomputed from checkpoints. */
+    OPERATION_LOG
+}
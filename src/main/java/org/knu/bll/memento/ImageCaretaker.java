@@ -1,13 +1,56 @@
 package org.knu.bll.memento;
 
-import java.util.Stack;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The ImageCaretaker class manages the undo and redo operations for image states using the Memento pattern.
+ * <p>
+ * The caretaker owns the mementos it stores and keeps their memory within the limits of a {@link HistoryBudget}.
+ * When the history of this image exceeds the per-tab limit, the oldest undo states are released first and the
+ * farthest redo states after them; the budget evicts the oldest states of all images above the global limit.
+ * <p>
+ * After every stored state the caretaker compacts its history on the background thread of the budget. The tiles
+ * of all states except the {@value #RAW_STATES} newest undo and redo states are compressed, and while the heap
+ * memory of the history exceeds the spill threshold the tiles of the oldest states are moved to a
+ * {@link SpillFile} instead. Tiles shared with the newest states stay raw, so an undo or redo of one step is immediate.
  */
-public class ImageCaretaker {
-    private final Stack<ImageMemento> undoStack = new Stack<>();
-    private final Stack<ImageMemento> redoStack = new Stack<>();
+public class ImageCaretaker implements EvictableHistory {
+    private static final int RAW_STATES = 2;
+
+    private final Deque<ImageMemento> undoStack = new ArrayDeque<>();
+    private final Deque<ImageMemento> redoStack = new ArrayDeque<>();
+    private final HistoryBudget budget;
+    private final HistoryAccount account;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private SpillFile spillFile;
+    private boolean closed;
+
+    /**
+     * Constructs an ImageCaretaker that uses the shared budget.
+     */
+    public ImageCaretaker() {
+        this(HistoryBudget.shared());
+    }
+
+    /**
+     * Constructs an ImageCaretaker.
+     *
+     * @param budget The budget that limits the memory of the history.
+     */
+    public ImageCaretaker(HistoryBudget budget) {
+        this.budget = budget;
+        this.account = new HistoryAccount(budget);
+        budget.register(this);
+    }
 
     /**
      * Saves the current state of the image for undo operations.
@@ -15,8 +58,9 @@ public class ImageCaretaker {
      * @param memento The memento object representing the current state of the image.
      */
     public void saveState(ImageMemento memento) {
-        undoStack.push(memento);
-        redoStack.clear();
+        store(undoStack, memento);
+        releaseAll(redoStack);
+        trim();
     }
 
     /**
@@ -25,7 +69,8 @@ public class ImageCaretaker {
      * @param memento The memento object representing the current state of the image.
      */
     public void saveToRedo(ImageMemento memento) {
-        redoStack.push(memento);
+        store(redoStack, memento);
+        trim();
     }
 
     /**
@@ -34,33 +79,28 @@ public class ImageCaretaker {
      * @param memento The memento object representing the current state of the image.
      */
     public void saveToUndo(ImageMemento memento) {
-        undoStack.push(memento);
+        store(undoStack, memento);
+        trim();
     }
 
     /**
      * Performs an undo operation by restoring the previous state of the image.
+     * The caller takes over the returned memento and is responsible for releasing it.
      *
      * @return The memento object representing the previous state of the image, or null if the undo stack is empty.
      */
-    public ImageMemento undo() {
-        if (!undoStack.isEmpty()) {
-            ImageMemento memento = undoStack.pop();
-            return memento;
-        }
-        return null;
+    public synchronized ImageMemento undo() {
+        return undoStack.poll();
     }
 
     /**
      * Performs a redo operation by restoring the next state of the image.
+     * The caller takes over the returned memento and is responsible for releasing it.
      *
      * @return The memento object representing the next state of the image, or null if the redo stack is empty.
      */
-    public ImageMemento redo() {
-        if (!redoStack.isEmpty()) {
-            ImageMemento memento = redoStack.pop();
-            return memento;
-        }
-        return null;
+    public synchronized ImageMemento redo() {
+        return redoStack.poll();
     }
 
     /**
@@ -68,7 +108,7 @@ public class ImageCaretaker {
      *
      * @return True if an undo operation can be performed, false otherwise.
      */
-    public boolean canUndo() {
+    public synchronized boolean canUndo() {
         return !undoStack.isEmpty();
     }
 
@@ -77,7 +117,191 @@ public class ImageCaretaker {
      *
      * @return True if a redo operation can be performed, false otherwise.
      */
-    public boolean canRedo() {
+    public synchronized boolean canRedo() {
         return !redoStack.isEmpty();
     }
+
+    /**
+     * Releases every stored state and deletes the spill file. The history stays registered with its budget and can
+     * store new states afterwards. Mementos taken out of the history by undo or redo should be released before.
+     */
+    public synchronized void clear() {
+        releaseAll(undoStack);
+        releaseAll(redoStack);
+        if (spillFile != null) {
+            spillFile.close();
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Clears the history and removes it from its budget for good. Called when the image is closed; the history must
+     * not store states afterwards.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            clear();
+        }
+        budget.unregister(this);
+    }
+
+    /**
+     * Reports the memory kept by this history and by the histories of all images, the compression ratio
+     * of this history and how long restoring its states took.
+     *
+     * @return The current HistoryFootprint.
+     */
+    public synchronized HistoryFootprint getFootprint() {
+        return new HistoryFootprint(undoStack.size(), redoStack.size(), account.getBytes(), account.getRawBytes(),
+                account.getDiskBytes(), budget.getTabLimit(), budget.getUsedBytes(), budget.getDiskBytes(),
+                budget.getGlobalLimit(), account.getRestores(), account.getAverageRestoreMillis(),
+                account.getLastRestoreMillis(), account.getMaxRestoreMillis());
+    }
+
+    /**
+     * Compacts the older states of the history, oldest first: their tiles are spilled to disk while the history
+     * exceeds the spill threshold and compressed afterwards. This runs on the background thread of the budget.
+     * If the spill file cannot be written, the remaining tiles are only compressed.
+     */
+    void compact() {
+        compactionScheduled.set(false);
+        List<ImageMemento> coldUndo = new ArrayList<>();
+        List<ImageMemento> coldRedo = new ArrayList<>();
+        Set<SharedTile> pinned = Collections.newSetFromMap(new IdentityHashMap<>());
+        synchronized (this) {
+            if (closed) return;
+            splitByAge(undoStack, coldUndo, pinned);
+            splitByAge(redoStack, coldRedo, pinned);
+        }
+
+        List<ImageMemento> oldestFirst = new ArrayList<>(coldUndo.size() + coldRedo.size());
+        oldestFirst.addAll(coldUndo);
+        Collections.reverse(oldestFirst);
+        for (int i = coldRedo.size() - 1; i >= 0; i--) {
+            oldestFirst.add(coldRedo.get(i));
+        }
+        SpillFile file = account.getBytes() > budget.getSpillThreshold() ? getSpillFile() : null;
+        try {
+            for (ImageMemento memento : oldestFirst) {
+                memento.compact(file, pinned, account, budget.getSpillThreshold());
+            }
+        } catch (UncheckedIOException e) {
+            for (ImageMemento memento : oldestFirst) {
+                memento.compact(null, pinned, account, budget.getSpillThreshold());
+            }
+        }
+    }
+
+    /**
+     * Returns the age of the state this history would evict first.
+     *
+     * @return The sequence number of the oldest state, or Long.MAX_VALUE if the history is empty.
+     */
+    @Override
+    public synchronized long getOldestSequence() {
+        ImageMemento oldest = findOldest();
+        return oldest == null ? Long.MAX_VALUE : oldest.getSequence();
+    }
+
+    /**
+     * Releases the state this history would evict first.
+     *
+     * @return True if a state was released, false if the history is empty.
+     */
+    @Override
+    public synchronized boolean evictOldest() {
+        Deque<ImageMemento> stack = !undoStack.isEmpty() ? undoStack : redoStack;
+        ImageMemento oldest = stack.pollLast();
+        if (oldest == null) return false;
+        oldest.release();
+        return true;
+    }
+
+    /**
+     * Finds the state this history would evict first: the oldest undo state, or the farthest redo state
+     * when nothing can be undone.
+     *
+     * @return The memento, or null if the history is empty.
+     */
+    private ImageMemento findOldest() {
+        return !undoStack.isEmpty() ? undoStack.peekLast() : redoStack.peekLast();
+    }
+
+    /**
+     * Charges a memento to this history and pushes it on a stack.
+     *
+     * @param stack The stack to push the memento on.
+     * @param memento The memento to store.
+     */
+    private void store(Deque<ImageMemento> stack, ImageMemento memento) {
+        long sequence = budget.nextSequence();
+        synchronized (this) {
+            memento.attach(account, sequence);
+            stack.push(memento);
+        }
+        if (compactionScheduled.compareAndSet(false, true)) {
+            budget.submitCompaction(this::compact);
+        }
+    }
+
+    /**
+     * Splits a stack into the newest states, whose tiles are pinned, and the older states, which are compacted.
+     *
+     * @param stack The stack with the newest state first.
+     * @param cold The list that receives the older states, newest first.
+     * @param pinned The set that receives the tiles of the newest states.
+     */
+    private static void splitByAge(Deque<ImageMemento> stack, List<ImageMemento> cold, Set<SharedTile> pinned) {
+        int depth = 0;
+        for (ImageMemento memento : stack) {
+            if (depth++ < RAW_STATES) {
+                memento.collectTiles(pinned);
+            } else {
+                cold.add(memento);
+            }
+        }
+    }
+
+    /**
+     * Returns the spill file of this history and creates it on first use.
+     *
+     * @return The spill file, or null if it cannot be created or the history has been closed.
+     */
+    private synchronized SpillFile getSpillFile() {
+        if (spillFile == null && !closed) {
+            try {
+                spillFile = new SpillFile(account);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return spillFile;
+    }
+
+    /**
+     * Evicts the oldest states until this history fits the per-tab limit, then lets the budget
+     * enforce the global limit.
+     */
+    private void trim() {
+        synchronized (this) {
+            long limit = budget.getTabLimit();
+            while (account.getBytes() > limit) {
+                if (!evictOldest()) break;
+            }
+        }
+        budget.enforce();
+    }
+
+    /**
+     * Releases and removes every memento of a stack.
+     *
+     * @param stack The stack to clear.
+     */
+    private synchronized void releaseAll(Deque<ImageMemento> stack) {
+        for (ImageMemento memento : stack) {
+            memento.release();
+        }
+        stack.clear();
+    }
 }
@@ -0,0 +1,107 @@
+package org.knu.bll.memento;
+
+import org.knu.bll.ProgressListener;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The ImageCommand class records one image operation together with its parameters, so that an
+ * {@link OperationHistory} can recompute a state instead of storing it. The command measures how long
+ * the operation takes every time it runs; the history uses that cost to decide where to keep checkpoints.
+ */
+public final class ImageCommand {
+    private final String name;
+    private final boolean deterministic;
+    private final ImageOperation operation;
+    private volatile long costNanos;
+
+    /**
+     * Constructs an ImageCommand.
+     *
+     * @param name A short description of the operation and its parameters.
+     * @param deterministic True if applying the operation to the same image always gives the same result.
+     * @param operation The operation with its parameters bound.
+     * @throws NullPointerException if the operation is null.
+     */
+    public ImageCommand(String name, boolean deterministic, ImageOperation operation) {
+        if (operation == null) throw new NullPointerException("Operation cannot be null");
+        this.name = name;
+        this.deterministic = deterministic;
+        this.operation = operation;
+    }
+
+    /**
+     * Creates a command for a deterministic operation.
+     *
+     * @param name A short description of the operation and its parameters.
+     * @param operation The operation with its parameters bound.
+     * @return A new ImageCommand.
+     */
+    public static ImageCommand of(String name, ImageOperation operation) {
+        return new ImageCommand(name, true, operation);
+    }
+
+    /**
+     * Creates a command for an operation whose result may differ between runs, such as a randomly
+     * initialized clustering. The history always keeps the result of such a command as a checkpoint.
+     *
+     * @param name A short description of the operation and its parameters.
+     * @param operation The operation with its parameters bound.
+     * @return A new ImageCommand.
+     */
+    public static ImageCommand nonDeterministic(String name, ImageOperation operation) {
+        return new ImageCommand(name, false, operation);
+    }
+
+    /**
+     * Applies the operation and measures its duration.
+     *
+     * @param image The input image. This image should not be null and is not modified.
+     * @param listener A ProgressListener to receive progress updates of the operation.
+     * @return The result of the operation.
+     * @throws InterruptedException if the thread is interrupted during the operation.
+     */
+    public BufferedImage apply(BufferedImage image, ProgressListener listener) throws InterruptedException {
+        long start = System.nanoTime();
+        BufferedImage result = operation.apply(image, listener);
+        costNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Returns the description of the command.
+     *
+     * @return The name of the operation and its parameters.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Checks whether the command always gives the same result for the same image.
+     *
+     * @return True if the command can be replayed.
+     */
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * Returns how long the last run of the operation took.
+     *
+     * @return The duration in nanoseconds, or 0 if the command has not run yet.
+     */
+    public long getCostNanos() {
+        return costNanos;
+    }
+
+    /**
+     * Returns the description of the command.
+     *
+     * @return The name of the operation and its parameters.
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -1,28 +1,258 @@
 package org.knu.bll.memento;
 
+import org.knu.bll.Tile;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.PixelBuffer;
+
 import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Set;
 
 /**
  * The ImageMemento class represents a memento object that stores the state of an image.
+ * <p>
+ * The pixels are stored as a grid of {@link SharedTile}s. A memento captured against an earlier one shares every
+ * tile whose pixels did not change, so a history only duplicates the tiles an operation actually modified.
+ * A memento holds one reference to each of its tiles until it is released. The tiles of older mementos may be
+ * compressed or spilled to disk by their history; {@link #getState()} decodes them transparently, so it should be
+ * called off the event dispatch thread for older states.
  */
 public class ImageMemento {
-    private final BufferedImage state;
+    private final int width;
+    private final int height;
+    private final boolean alpha;
+    private final List<Tile> layout;
+    private final SharedTile[] tiles;
+    private final TileScheduler scheduler;
+    private HistoryAccount account;
+    private long sequence = Long.MAX_VALUE;
+    private volatile boolean released;
 
     /**
      * Constructs a new ImageMemento object with the given image state.
      *
-     * @param state The state of the image to be stored.
+     * @param state The state of the image to be stored. The pixels are copied.
+     * @throws NullPointerException if the state is null.
      */
     public ImageMemento(BufferedImage state) {
-        this.state = state;
+        this(capture(state, null, TileScheduler.shared(), ImageOriginator.DEFAULT_TILE_SIZE));
+    }
+
+    /**
+     * Constructs an ImageMemento that takes over the tile references of another one.
+     *
+     * @param source The memento whose tiles are taken over. It must not be used afterwards.
+     */
+    private ImageMemento(ImageMemento source) {
+        this(source.width, source.height, source.alpha, source.layout, source.tiles, source.scheduler);
+    }
+
+    /**
+     * Constructs an ImageMemento from captured tiles.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param alpha True if the image has an alpha channel.
+     * @param layout The regions of the tiles.
+     * @param tiles The tiles, one reference of each is owned by the memento.
+     * @param scheduler The TileScheduler that decodes the tiles.
+     */
+    private ImageMemento(int width, int height, boolean alpha, List<Tile> layout, SharedTile[] tiles,
+                         TileScheduler scheduler) {
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.layout = layout;
+        this.tiles = tiles;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Captures the pixels of an image. Tiles whose pixels are equal to the corresponding tile of the baseline
+     * are shared with it, all other tiles are copied. The tiles are compared and copied in parallel.
+     *
+     * @param image The image to capture.
+     * @param baseline An earlier memento of an image with the same size, or null to copy every tile.
+     * @param scheduler The TileScheduler that runs the tiles.
+     * @param tileSize The edge length of a tile.
+     * @return A new ImageMemento.
+     * @throws NullPointerException if the image is null.
+     */
+    static ImageMemento capture(BufferedImage image, ImageMemento baseline, TileScheduler scheduler, int tileSize) {
+        if (image == null) throw new NullPointerException("Image cannot be null");
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = PixelBuffer.wrap(image).getPixels();
+        boolean compatible = baseline != null && !baseline.released && baseline.width == width
+                && baseline.height == height && baseline.layout.get(0).getWidth() == Math.min(tileSize, width)
+                && baseline.layout.get(0).getHeight() == Math.min(tileSize, height);
+        List<Tile> layout = compatible ? baseline.layout : scheduler.splitTiles(width, height, tileSize, 0);
+
+        SharedTile[] tiles = new SharedTile[layout.size()];
+        scheduler.forEach(layout, null, tile -> {
+            SharedTile previous = compatible ? baseline.tiles[tile.getIndex()] : null;
+            if (previous != null && previous.matches(pixels, width, tile) && previous.retain()) {
+                tiles[tile.getIndex()] = previous;
+            } else {
+                tiles[tile.getIndex()] = SharedTile.copyOf(pixels, width, tile);
+            }
+        });
+        return new ImageMemento(width, height, image.getColorModel().hasAlpha(), layout, tiles, scheduler);
     }
 
     /**
-     * Returns the state of the image stored in this memento.
+     * Returns the state of the image stored in this memento. Compressed and spilled tiles are decoded in parallel,
+     * and the time it takes is recorded by the history that stores the memento.
      *
-     * @return The state of the image.
+     * @return A new image assembled from the tiles.
+     * @throws IllegalStateException if the memento has been released.
+     * @throws java.io.UncheckedIOException if a spilled tile cannot be read.
      */
     public BufferedImage getState() {
+        long start = System.nanoTime();
+        BufferedImage state = decode();
+        if (account != null) {
+            account.recordRestore(System.nanoTime() - start);
+        }
         return state;
     }
+
+    /**
+     * Assembles the stored image without recording the restore time.
+     *
+     * @return A new image assembled from the tiles.
+     * @throws IllegalStateException if the memento has been released.
+     * @throws java.io.UncheckedIOException if a spilled tile cannot be read.
+     */
+    BufferedImage decode() {
+        if (released) {
+            throw new IllegalStateException("Memento has been released");
+        }
+        PixelBuffer buffer = PixelBuffer.create(width, height, alpha);
+        int[] pixels = buffer.getPixels();
+        scheduler.forEach(layout, null, tile -> tiles[tile.getIndex()].copyTo(pixels, width, tile));
+        return buffer.toImage();
+    }
+
+    /**
+     * Returns the width of the stored image.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the stored image.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the memory of the tiles of this memento, including tiles it shares with other mementos.
+     *
+     * @return The number of bytes.
+     */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (SharedTile tile : tiles) {
+            size += tile.getSizeInBytes();
+        }
+        return size;
+    }
+
+    /**
+     * Releases the tiles of this memento. Tiles that are not shared with another memento are freed.
+     * Releasing a memento twice has no effect.
+     */
+    public void release() {
+        if (released) return;
+        released = true;
+        for (SharedTile tile : tiles) {
+            tile.release();
+        }
+    }
+
+    /**
+     * Creates a second memento of the same state that holds its own references to the tiles.
+     *
+     * @return A new ImageMemento, or null if this memento has been released.
+     */
+    ImageMemento share() {
+        if (released) return null;
+        SharedTile[] shared = tiles.clone();
+        for (int i = 0; i < shared.length; i++) {
+            if (!shared[i].retain()) {
+                for (int j = 0; j < i; j++) {
+                    shared[j].release();
+                }
+                return null;
+            }
+        }
+        ImageMemento memento = new ImageMemento(width, height, alpha, layout, shared, scheduler);
+        memento.account = account;
+        return memento;
+    }
+
+    /**
+     * Charges the tiles to the account of the history that stores this memento and records its age.
+     *
+     * @param account The account of the history.
+     * @param sequence The age of the memento across all histories.
+     */
+    void attach(HistoryAccount account, long sequence) {
+        this.account = account;
+        this.sequence = sequence;
+        for (SharedTile tile : tiles) {
+            tile.attach(account);
+        }
+    }
+
+    /**
+     * Adds the tiles of this memento to a set.
+     *
+     * @param set The set that receives the tiles.
+     */
+    void collectTiles(Set<SharedTile> set) {
+        if (released) return;
+        for (SharedTile tile : tiles) {
+            set.add(tile);
+        }
+    }
+
+    /**
+     * Compacts the tiles of this memento that are not pinned. Tiles are spilled to disk while the history
+     * keeps more heap memory than the spill threshold, and compressed otherwise.
+     *
+     * @param file The spill file to write to, or null to only compress.
+     * @param pinned The tiles that must stay raw because recent states use them.
+     * @param account The account of the history.
+     * @param spillThreshold The heap bytes of the history above which tiles are spilled.
+     * @throws java.io.UncheckedIOException if the spill file cannot be written.
+     */
+    void compact(SpillFile file, Set<SharedTile> pinned, HistoryAccount account, long spillThreshold) {
+        for (SharedTile tile : tiles) {
+            if (released) break;
+            if (pinned.contains(tile)) continue;
+            if (file != null && account.getBytes() > spillThreshold) {
+                tile.spill(file);
+            } else {
+                tile.compress();
+            }
+        }
+    }
+
+    /**
+     * Returns the age of the memento across all histories.
+     *
+     * @return The sequence number assigned when the memento was stored, or Long.MAX_VALUE if it was never stored.
+     */
+    long getSequence() {
+        return sequence;
+    }
 }
@@ -0,0 +1,23 @@
+package org.knu.bll.memento;
+
+import org.knu.bll.ProgressListener;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The ImageOperation interface is an image operation whose parameters are already bound,
+ * such as a blur with a fixed kernel size. It is the action of an {@link ImageCommand}.
+ */
+@FunctionalInterface
+public interface ImageOperation {
+
+    /**
+     * Applies the operation to an image.
+     *
+     * @param image The input image. This image should not be null and is not modified.
+     * @param listener A ProgressListener to receive progress updates of the operation.
+     * @return The result of the operation.
+     * @throws InterruptedException if the thread is interrupted during the operation.
+     */
+    BufferedImage apply(BufferedImage image, ProgressListener listener) throws InterruptedException;
+}
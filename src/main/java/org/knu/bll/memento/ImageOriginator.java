@@ -1,12 +1,44 @@
 package org.knu.bll.memento;
 
+import org.knu.bll.TileScheduler;
+
 import java.awt.image.BufferedImage;
 
 /**
  * The ImageOriginator class represents the originator in the Memento pattern, which can save and restore its state.
+ * <p>
+ * The originator keeps the memento of the state it last saved or restored as a baseline. The next memento is
+ * captured against that baseline, so tiles the operation in between did not modify are shared instead of copied.
  */
 public class ImageOriginator {
+    static final int DEFAULT_TILE_SIZE = 256;
+
+    private final TileScheduler scheduler;
+    private final int tileSize;
     private BufferedImage currentImage;
+    private ImageMemento baseline;
+
+    /**
+     * Constructs an ImageOriginator that captures tiles of the default size on the shared scheduler.
+     */
+    public ImageOriginator() {
+        this(TileScheduler.shared(), DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Constructs an ImageOriginator.
+     *
+     * @param scheduler The TileScheduler that compares and copies the tiles.
+     * @param tileSize The edge length of a tile.
+     * @throws IllegalArgumentException if the tile size is not positive.
+     */
+    public ImageOriginator(TileScheduler scheduler, int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        this.scheduler = scheduler;
+        this.tileSize = tileSize;
+    }
 
     /**
      * Sets the current state of the image.
@@ -27,20 +59,56 @@ public class ImageOriginator {
     }
 
     /**
-     * Saves the current state of the image as a memento.
+     * Saves the current state of the image as a memento. Only the tiles that differ from the last saved
+     * or restored state are copied.
      *
      * @return A memento object representing the current state of the image.
+     * @throws NullPointerException if there is no current state.
      */
     public ImageMemento save() {
-        return new ImageMemento(currentImage);
+        ImageMemento memento = ImageMemento.capture(currentImage, baseline, scheduler, tileSize);
+        setBaseline(memento.share());
+        return memento;
     }
 
     /**
-     * Restores the state of the image from a memento.
+     * Restores the state of the image from a memento. The originator takes over the memento
+     * and uses it as the baseline of the next save, so the caller must not store it again.
      *
      * @param memento The memento object representing the state to restore.
      */
     public void restore(ImageMemento memento) {
-        this.currentImage = memento.getState();
+        restore(memento, memento.getState());
+    }
+
+    /**
+     * Restores a state that has already been assembled from a memento, for example on a background thread.
+     * The originator takes over the memento and uses it as the baseline of the next save.
+     *
+     * @param memento The memento object representing the state to restore.
+     * @param state The image returned by {@link ImageMemento#getState()} of the memento.
+     */
+    public void restore(ImageMemento memento, BufferedImage state) {
+        this.currentImage = state;
+        setBaseline(memento);
+    }
+
+    /**
+     * Releases the baseline. The next save copies every tile.
+     */
+    public void clear() {
+        setBaseline(null);
+    }
+
+    /**
+     * Replaces the baseline and releases the previous one.
+     *
+     * @param memento The new baseline, or null.
+     */
+    private void setBaseline(ImageMemento memento) {
+        if (baseline != null) {
+            baseline.release();
+        }
+        baseline = memento;
     }
 }
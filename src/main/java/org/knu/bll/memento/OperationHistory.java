@@ -0,0 +1,387 @@
+package org.knu.bll.memento;
+
+import org.knu.bll.CancellationToken;
+import org.knu.bll.ProgressListener;
+import org.knu.bll.TileScheduler;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The OperationHistory class keeps the undo and redo history of an image as a log of {@link ImageCommand}s with
+ * sparse checkpoints, instead of a snapshot of every state. A state is recomputed by restoring the nearest
+ * checkpoint at or before it and replaying the commands after that checkpoint.
+ * <p>
+ * The checkpoint interval adapts to the measured cost of the operations: the result of a command is kept as
+ * a checkpoint when replaying the commands since the previous checkpoint would take longer than the maximum replay
+ * time, so cheap operations share one checkpoint while expensive ones get their own. Results of non-deterministic
+ * commands are always kept. Checkpoints are tiled mementos charged to a {@link HistoryBudget}; above the per-tab
+ * limit the oldest checkpoints are dropped together with the commands before them.
+ * <p>
+ * The history is registered with its budget, which drops its oldest checkpoints the same way when the histories of
+ * all images exceed the global limit. Only undo states are dropped and the checkpoint the current state is
+ * recomputed from is kept, so the checkpoints of the current and the redo states may stay above the global limit.
+ * Call {@link #close()} when the image is closed to remove the history from the budget.
+ */
+public class OperationHistory implements EvictableHistory {
+    private static final long DEFAULT_MAX_REPLAY_NANOS = 1_000_000_000L;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final HistoryBudget budget;
+    private final HistoryAccount account;
+    private final TileScheduler scheduler;
+    private long maxReplayNanos;
+    private int position;
+
+    /**
+     * Constructs an OperationHistory that uses the shared budget and scheduler and replays at most one second.
+     */
+    public OperationHistory() {
+        this(HistoryBudget.shared(), TileScheduler.shared(), DEFAULT_MAX_REPLAY_NANOS);
+    }
+
+    /**
+     * Constructs an OperationHistory.
+     *
+     * @param budget The budget that limits the memory of the checkpoints.
+     * @param scheduler The TileScheduler that captures and restores the checkpoints.
+     * @param maxReplayNanos The longest replay in nanoseconds before a checkpoint is kept.
+     * @throws IllegalArgumentException if the maximum replay time is negative.
+     */
+    public OperationHistory(HistoryBudget budget, TileScheduler scheduler, long maxReplayNanos) {
+        validateMaxReplay(maxReplayNanos);
+        this.budget = budget;
+        this.account = new HistoryAccount(budget);
+        this.scheduler = scheduler;
+        this.maxReplayNanos = maxReplayNanos;
+        budget.register(this);
+    }
+
+    /**
+     * Records a command that has just been applied. Redo states after the current position are discarded.
+     *
+     * @param before The image the command was applied to. It becomes the first checkpoint of an empty history.
+     * @param command The applied command. Its cost should have been measured by {@link ImageCommand#apply}.
+     * @param result The result of the command, which becomes the current state.
+     * @throws NullPointerException if an image or the command is null.
+     */
+    public void record(BufferedImage before, ImageCommand command, BufferedImage result) {
+        if (command == null) throw new NullPointerException("Command cannot be null");
+        if (result == null) throw new NullPointerException("Image cannot be null");
+        synchronized (this) {
+            if (entries.isEmpty()) {
+                entries.add(new Entry(null, checkpoint(before)));
+                position = 0;
+            }
+            truncateRedo();
+
+            long replayNanos = command.getCostNanos();
+            for (int i = position; i > 0 && entries.get(i).checkpoint == null; i--) {
+                replayNanos += entries.get(i).command.getCostNanos();
+            }
+            ImageMemento checkpoint = !command.isDeterministic() || replayNanos > maxReplayNanos
+                    ? checkpoint(result) : null;
+            entries.add(new Entry(command, checkpoint));
+            position++;
+
+            trim();
+        }
+        budget.enforce();
+    }
+
+    /**
+     * Recomputes a state of the history from the nearest checkpoint. When the target lies ahead of the current
+     * position and no checkpoint lies in between, the commands are replayed from the current image instead.
+     * The replay checks for interruption between commands, so it can be cancelled by interrupting the thread, and the
+     * replayed operations poll the cancellation token of the listener, which stops them midway.
+     * The position is not changed; call {@link #moveTo(int)} once the state has been shown.
+     *
+     * @param target The index of the state to recompute, between 0 and {@link #getSize()} - 1.
+     * @param currentImage The image of the current position, or null to always start at a checkpoint.
+     * @param listener A ProgressListener to receive progress updates of the replayed operations.
+     * @return The recomputed image.
+     * @throws InterruptedException if the thread is interrupted during the replay.
+     * @throws IllegalArgumentException if the target is out of range.
+     * @throws java.util.concurrent.CancellationException if the token of the listener was cancelled.
+     */
+    public BufferedImage reconstruct(int target, BufferedImage currentImage, ProgressListener listener)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        List<ImageCommand> commands = new ArrayList<>();
+        ImageMemento base = null;
+        synchronized (this) {
+            if (target < 0 || target >= entries.size()) {
+                throw new IllegalArgumentException("History has no state " + target);
+            }
+            int from = target;
+            while (entries.get(from).checkpoint == null) {
+                from--;
+            }
+            if (currentImage != null && position <= target && position >= from) {
+                from = position;
+            } else {
+                base = entries.get(from).checkpoint.share();
+            }
+            for (int i = from + 1; i <= target; i++) {
+                commands.add(entries.get(i).command);
+            }
+        }
+
+        BufferedImage image = currentImage;
+        if (base != null) {
+            try {
+                image = base.decode();
+            } finally {
+                base.release();
+            }
+        }
+        for (ImageCommand command : commands) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Replay was cancelled");
+            }
+            CancellationToken.of(listener).throwIfCancelled();
+            image = command.apply(image, listener);
+        }
+        account.recordRestore(System.nanoTime() - start);
+        return image;
+    }
+
+    /**
+     * Moves the current position after the state at the target has been recomputed and shown.
+     *
+     * @param target The index of the new current state.
+     * @throws IllegalArgumentException if the target is out of range.
+     */
+    public synchronized void moveTo(int target) {
+        if (target < 0 || target >= entries.size()) {
+            throw new IllegalArgumentException("History has no state " + target);
+        }
+        position = target;
+    }
+
+    /**
+     * Returns the index of the current state.
+     *
+     * @return The number of commands that can be undone.
+     */
+    public synchronized int getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the number of states in the history, including the first one.
+     *
+     * @return The number of states, or 0 if nothing has been recorded.
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Checks if an undo operation can be performed.
+     *
+     * @return True if a state before the current one exists.
+     */
+    public synchronized boolean canUndo() {
+        return position > 0;
+    }
+
+    /**
+     * Checks if a redo operation can be performed.
+     *
+     * @return True if a state after the current one exists.
+     */
+    public synchronized boolean canRedo() {
+        return position < entries.size() - 1;
+    }
+
+    /**
+     * Returns the longest replay before a checkpoint is kept.
+     *
+     * @return The maximum replay time in nanoseconds.
+     */
+    public synchronized long getMaxReplayNanos() {
+        return maxReplayNanos;
+    }
+
+    /**
+     * Sets the longest replay before a checkpoint is kept. It applies to commands recorded afterwards.
+     *
+     * @param maxReplayNanos The maximum replay time in nanoseconds. 0 keeps a checkpoint for every state.
+     * @throws IllegalArgumentException if the time is negative.
+     */
+    public synchronized void setMaxReplayNanos(long maxReplayNanos) {
+        validateMaxReplay(maxReplayNanos);
+        this.maxReplayNanos = maxReplayNanos;
+    }
+
+    /**
+     * Returns the number of states that are kept as checkpoints.
+     *
+     * @return The number of checkpoints.
+     */
+    public synchronized int getCheckpointCount() {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.checkpoint != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reports the memory kept by the checkpoints and by the histories of all images, and how long
+     * recomputing states took.
+     *
+     * @return The current HistoryFootprint.
+     */
+    public synchronized HistoryFootprint getFootprint() {
+        int redo = Math.max(0, entries.size() - 1 - position);
+        return new HistoryFootprint(position, redo, account.getBytes(), account.getRawBytes(),
+                account.getDiskBytes(), budget.getTabLimit(), budget.getUsedBytes(), budget.getDiskBytes(),
+                budget.getGlobalLimit(), account.getRestores(), account.getAverageRestoreMillis(),
+                account.getLastRestoreMillis(), account.getMaxRestoreMillis());
+    }
+
+    /**
+     * Releases every checkpoint and forgets all commands. The history stays registered with its budget and can
+     * record new commands afterwards.
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries) {
+            entry.release();
+        }
+        entries.clear();
+        position = 0;
+    }
+
+    /**
+     * Clears the history and removes it from its budget. Called when the image is closed.
+     */
+    public void close() {
+        clear();
+        budget.unregister(this);
+    }
+
+    /**
+     * Returns the age of the checkpoint the budget would drop first: the oldest one, if a later checkpoint at or
+     * before the current position remains to recompute the current state from.
+     *
+     * @return The sequence number of the oldest checkpoint, or Long.MAX_VALUE if no checkpoint can be dropped.
+     */
+    @Override
+    public synchronized long getOldestSequence() {
+        return findNextCheckpoint() > position ? Long.MAX_VALUE : entries.get(0).checkpoint.getSequence();
+    }
+
+    /**
+     * Drops the oldest checkpoint and the commands up to the next checkpoint.
+     *
+     * @return True if a checkpoint was dropped, false if the current state needs the oldest checkpoint.
+     */
+    @Override
+    public synchronized boolean evictOldest() {
+        int next = findNextCheckpoint();
+        if (next > position) return false;
+
+        List<Entry> dropped = entries.subList(0, next);
+        for (Entry entry : dropped) {
+            entry.release();
+        }
+        dropped.clear();
+        position -= next;
+        return true;
+    }
+
+    /**
+     * Captures a checkpoint, sharing unchanged tiles with the latest checkpoint, and charges it to this history.
+     *
+     * @param image The image to capture.
+     * @return The checkpoint.
+     */
+    private ImageMemento checkpoint(BufferedImage image) {
+        ImageMemento baseline = null;
+        for (int i = entries.size() - 1; i >= 0 && baseline == null; i--) {
+            baseline = entries.get(i).checkpoint;
+        }
+        ImageMemento memento = ImageMemento.capture(image, baseline, scheduler, ImageOriginator.DEFAULT_TILE_SIZE);
+        memento.attach(account, budget.nextSequence());
+        return memento;
+    }
+
+    /**
+     * Discards the states after the current position.
+     */
+    private void truncateRedo() {
+        List<Entry> redo = entries.subList(position + 1, entries.size());
+        for (Entry entry : redo) {
+            entry.release();
+        }
+        redo.clear();
+    }
+
+    /**
+     * Drops the oldest checkpoint and the commands up to the next checkpoint until the history fits the per-tab
+     * limit. A checkpoint at or before the current position is always kept.
+     */
+    private void trim() {
+        long limit = budget.getTabLimit();
+        while (account.getBytes() > limit) {
+            if (!evictOldest()) return;
+        }
+    }
+
+    /**
+     * Finds the second checkpoint of the history, which becomes the oldest one when the first is dropped.
+     *
+     * @return The index of the next checkpoint after the first state, or a value greater than the current position
+     *         if no checkpoint lies between them.
+     */
+    private int findNextCheckpoint() {
+        int next = 1;
+        while (next <= position && entries.get(next).checkpoint == null) {
+            next++;
+        }
+        return next;
+    }
+
+    /**
+     * Validates the maximum replay time.
+     *
+     * @param nanos The time in nanoseconds.
+     * @throws IllegalArgumentException if the time is negative.
+     */
+    private static void validateMaxReplay(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("Maximum replay time cannot be negative");
+        }
+    }
+
+    /**
+     * The Entry class is one state of the history: the command that produced it and an optional checkpoint.
+     */
+    private static final class Entry {
+        private final ImageCommand command;
+        private final ImageMemento checkpoint;
+
+        /**
+         * Constructs an Entry.
+         *
+         * @param command The command that produced the state, or null for the first state.
+         * @param checkpoint The stored state, or null if it is recomputed.
+         */
+        private Entry(ImageCommand command, ImageMemento checkpoint) {
+            this.command = command;
+            this.checkpoint = checkpoint;
+        }
+
+        /**
+         * Releases the checkpoint of the entry.
+         */
+        private void release() {
+            if (checkpoint != null) {
+                checkpoint.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package org.knu.bll.memento;
+
+import org.knu.bll.Tile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The SharedTile class holds the pixels of one tile of a history state. A tile is immutable once it has been
+ * captured, so states whose pixels did not change in a tile share one SharedTile instead of copying it.
+ * Every state that uses the tile holds one reference; the memory of the tile is returned to its
+ * {@link HistoryAccount} when the last reference is released.
+ * <p>
+ * A tile is stored in one of three forms. A new tile keeps its raw pixels. Tiles of older states are compressed
+ * into four deflated byte planes (alpha, red, green and blue), which compress better than interleaved pixels, and
+ * compressed tiles can be spilled to a {@link SpillFile} so that they no longer occupy the heap. Every form
+ * decodes to the same pixels. Tiles charge their account for heap memory only; the spill file charges its own size.
+ */
+final class SharedTile {
+    private static final long OVERHEAD_BYTES = 64;
+    private static final int PLANES = 4;
+
+    private final int length;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private HistoryAccount account;
+    private int[] pixels;
+    private byte[] compressed;
+    private SpillFile spillFile;
+    private long spillOffset;
+    private int spillLength;
+
+    /**
+     * Constructs a SharedTile with one reference.
+     *
+     * @param pixels The pixels of the tile in row-major order. The array is owned by the tile.
+     */
+    private SharedTile(int[] pixels) {
+        this.pixels = pixels;
+        this.length = pixels.length;
+    }
+
+    /**
+     * Copies the pixels of a tile out of an image.
+     *
+     * @param image The pixels of the whole image.
+     * @param imageWidth The width of the image.
+     * @param tile The region to copy.
+     * @return A new SharedTile with one reference.
+     */
+    static SharedTile copyOf(int[] image, int imageWidth, Tile tile) {
+        int width = tile.getWidth();
+        int[] pixels = new int[width * tile.getHeight()];
+        for (int y = tile.getY(); y < tile.getEndY(); y++) {
+            System.arraycopy(image, y * imageWidth + tile.getX(), pixels, (y - tile.getY()) * width, width);
+        }
+        return new SharedTile(pixels);
+    }
+
+    /**
+     * Checks whether the tile holds exactly the pixels of a region of an image.
+     *
+     * @param image The pixels of the whole image.
+     * @param imageWidth The width of the image.
+     * @param tile The region to compare.
+     * @return True if every pixel of the region is equal to the pixel of this tile.
+     */
+    boolean matches(int[] image, int imageWidth, Tile tile) {
+        int width = tile.getWidth();
+        if (length != width * tile.getHeight()) return false;
+        int[] own = getPixels();
+        for (int y = tile.getY(); y < tile.getEndY(); y++) {
+            int from = y * imageWidth + tile.getX();
+            int local = (y - tile.getY()) * width;
+            if (!Arrays.equals(image, from, from + width, own, local, local + width)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the pixels of the tile into a region of an image.
+     *
+     * @param image The pixels of the whole image.
+     * @param imageWidth The width of the image.
+     * @param tile The region to write.
+     */
+    void copyTo(int[] image, int imageWidth, Tile tile) {
+        int width = tile.getWidth();
+        int[] own = getPixels();
+        for (int y = tile.getY(); y < tile.getEndY(); y++) {
+            System.arraycopy(own, (y - tile.getY()) * width, image, y * imageWidth + tile.getX(), width);
+        }
+    }
+
+    /**
+     * Adds a reference to the tile unless it has already been released.
+     *
+     * @return True if the reference was added, false if the tile is no longer alive.
+     */
+    boolean retain() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) return false;
+            if (references.compareAndSet(count, count + 1)) return true;
+        }
+    }
+
+    /**
+     * Releases one reference. When the last reference is released, the memory of the tile is returned
+     * to its account and its region of the spill file is freed.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            synchronized (this) {
+                if (account != null) {
+                    account.free(getHeapBytes(), getRawBytes(), 0);
+                    account = null;
+                }
+                if (spillFile != null) {
+                    spillFile.free(spillOffset, spillLength);
+                    spillFile = null;
+                }
+                pixels = null;
+                compressed = null;
+            }
+        }
+    }
+
+    /**
+     * Charges the memory of the tile to an account the first time the tile is stored in a history.
+     * Tiles that are already charged keep their account.
+     *
+     * @param owner The account of the history that stores the tile.
+     */
+    synchronized void attach(HistoryAccount owner) {
+        if (account != null || references.get() == 0) return;
+        account = owner;
+        owner.allocate(getHeapBytes(), getRawBytes(), 0);
+    }
+
+    /**
+     * Compresses the raw pixels of the tile.
+     * Tiles that are already compressed, spilled or released are left as they are.
+     *
+     * @return The number of heap bytes the compression saved.
+     */
+    long compress() {
+        int[] raw;
+        synchronized (this) {
+            if (pixels == null || references.get() == 0) return 0;
+            raw = pixels;
+        }
+        byte[] deflated = deflate(raw);
+
+        synchronized (this) {
+            if (pixels != raw || references.get() == 0) return 0;
+            long before = getHeapBytes();
+            pixels = null;
+            compressed = deflated;
+            long saved = before - getHeapBytes();
+            if (account != null) {
+                account.free(saved, 0, 0);
+            }
+            return saved;
+        }
+    }
+
+    /**
+     * Moves the pixels of the tile to a spill file, compressing them first if the tile is still raw.
+     * Tiles that are already spilled or released are left as they are.
+     *
+     * @param file The spill file to write to.
+     * @return The number of heap bytes the spill saved.
+     * @throws UncheckedIOException if the spill file cannot be written.
+     */
+    long spill(SpillFile file) {
+        int[] raw;
+        byte[] data;
+        synchronized (this) {
+            if (references.get() == 0 || pixels == null && compressed == null) return 0;
+            raw = pixels;
+            data = compressed;
+        }
+        if (data == null) {
+            data = deflate(raw);
+        }
+        long offset;
+        try {
+            offset = file.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        synchronized (this) {
+            boolean unchanged = raw != null ? pixels == raw : compressed == data;
+            if (!unchanged || references.get() == 0) {
+                file.free(offset, data.length);
+                return 0;
+            }
+            long before = getHeapBytes();
+            pixels = null;
+            compressed = null;
+            spillFile = file;
+            spillOffset = offset;
+            spillLength = data.length;
+            long saved = before - getHeapBytes();
+            if (account != null) {
+                account.spill(saved, 0);
+            }
+            return saved;
+        }
+    }
+
+    /**
+     * Returns the memory the tile occupies.
+     *
+     * @return The size of the pixels and the object headers in bytes.
+     */
+    long getSizeInBytes() {
+        return getRawBytes();
+    }
+
+    /**
+     * Returns the heap memory of the tile in its current form.
+     *
+     * @return The number of bytes; spilled tiles only count their object headers.
+     */
+    private long getHeapBytes() {
+        if (pixels != null) return (long) pixels.length * Integer.BYTES + OVERHEAD_BYTES;
+        if (compressed != null) return compressed.length + OVERHEAD_BYTES;
+        return OVERHEAD_BYTES;
+    }
+
+    /**
+     * Returns the memory of the raw pixels of the tile.
+     *
+     * @return The number of bytes of the uncompressed pixels and the object headers.
+     */
+    private long getRawBytes() {
+        return (long) length * Integer.BYTES + OVERHEAD_BYTES;
+    }
+
+    /**
+     * Returns the pixels of the tile, decoding them if the tile is compressed or spilled.
+     *
+     * @return The pixels in row-major order. The array must not be modified.
+     * @throws IllegalStateException if the tile has been released.
+     * @throws UncheckedIOException if the spill file cannot be read.
+     */
+    private int[] getPixels() {
+        byte[] data;
+        synchronized (this) {
+            if (pixels != null) return pixels;
+            if (compressed != null) {
+                data = compressed;
+            } else if (spillFile != null) {
+                try {
+                    data = spillFile.read(spillOffset, spillLength);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                throw new IllegalStateException("Tile has been released");
+            }
+        }
+        return inflate(data, length);
+    }
+
+    /**
+     * Compresses pixels into four deflated byte planes.
+     *
+     * @param pixels The pixels to compress.
+     * @return The compressed bytes.
+     */
+    private static byte[] deflate(int[] pixels) {
+        int length = pixels.length;
+        byte[] planes = new byte[length * PLANES];
+        for (int i = 0; i < length; i++) {
+            int argb = pixels[i];
+            planes[i] = (byte) (argb >>> 24);
+            planes[length + i] = (byte) (argb >>> 16);
+            planes[2 * length + i] = (byte) (argb >>> 8);
+            planes[3 * length + i] = (byte) argb;
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(planes);
+            deflater.finish();
+            byte[] output = new byte[planes.length / 2 + 64];
+            int size = 0;
+            while (!deflater.finished()) {
+                if (size == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                size += deflater.deflate(output, size, output.length - size);
+            }
+            return Arrays.copyOf(output, size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses four deflated byte planes into pixels.
+     *
+     * @param data The compressed bytes.
+     * @param length The number of pixels.
+     * @return The decoded pixels.
+     * @throws IllegalStateException if the data is corrupted.
+     */
+    private static int[] inflate(byte[] data, int length) {
+        byte[] planes = new byte[length * PLANES];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            int size = 0;
+            while (size < planes.length && !inflater.finished()) {
+                int inflated = inflater.inflate(planes, size, planes.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                size += inflated;
+            }
+            if (size != planes.length) {
+                throw new IllegalStateException("Compressed tile is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Compressed tile is corrupted", e);
+        } finally {
+            inflater.end();
+        }
+
+        int[] pixels = new int[length];
+        for (int i = 0; i < length; i++) {
+            pixels[i] = (planes[i] & 0xff) << 24 | (planes[length + i] & 0xff) << 16
+                    | (planes[2 * length + i] & 0xff) << 8 | planes[3 * length + i] & 0xff;
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,195 @@
+package org.knu.bll.memento;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The SpillFile class is a temporary file that holds compressed tiles which no longer fit the heap.
+ * The regions of freed tiles are kept in a free list of extents, merged with their neighbours, and new tiles are
+ * written into the first extent they fit before the file grows, so the file stays close to the size of the tiles
+ * alive in it however long the history runs. Free extents at the end of the file are truncated away.
+ * <p>
+ * Tiles are read back with positional reads into their own arrays, so reads neither map the file nor hold the lock
+ * of the file while they copy. The size of the file, not only the live tiles in it, is charged to the
+ * {@link HistoryAccount} of the history as disk memory.
+ */
+final class SpillFile {
+    private final Path path;
+    private final FileChannel channel;
+    private final HistoryAccount account;
+    private final TreeMap<Long, Integer> freeExtents = new TreeMap<>();
+    private long end;
+    private boolean closed;
+
+    /**
+     * Creates an empty spill file in the temporary directory.
+     *
+     * @param account The account that is charged the size of the file, or null to charge nothing.
+     * @throws IOException if the file cannot be created.
+     */
+    SpillFile(HistoryAccount account) throws IOException {
+        this.account = account;
+        path = Files.createTempFile("image-history-", ".tiles");
+        path.toFile().deleteOnExit();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Writes data into the first free extent it fits, or at the end of the file.
+     *
+     * @param data The bytes to write.
+     * @return The offset of the data in the file.
+     * @throws IOException if the file cannot be written or has been closed.
+     */
+    synchronized long write(byte[] data) throws IOException {
+        if (closed) throw new IOException("Spill file is closed");
+        long offset = allocate(data.length);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+        } catch (IOException e) {
+            release(offset, data.length);
+            throw e;
+        }
+        return offset;
+    }
+
+    /**
+     * Reads data back with positional reads. The region belongs to a live tile, so it is neither reused nor
+     * truncated while it is read, and the read does not need the lock of the file.
+     *
+     * @param offset The offset of the data.
+     * @param length The number of bytes.
+     * @return The bytes.
+     * @throws IOException if the file cannot be read or has been closed.
+     */
+    byte[] read(long offset, int length) throws IOException {
+        synchronized (this) {
+            if (closed) throw new IOException("Spill file is closed");
+        }
+        byte[] data = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Spill file ends before the tile at offset " + offset);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Frees the region of a tile so that later tiles can reuse it.
+     *
+     * @param offset The offset of the tile.
+     * @param length The number of bytes of the tile.
+     */
+    synchronized void free(long offset, int length) {
+        if (closed) return;
+        release(offset, length);
+    }
+
+    /**
+     * Returns the size of the file.
+     *
+     * @return The number of bytes the file occupies on disk, including free extents inside it.
+     */
+    synchronized long getSize() {
+        return end;
+    }
+
+    /**
+     * Closes and deletes the file. Tiles still stored in it can no longer be read.
+     */
+    synchronized void close() {
+        if (closed) return;
+        closed = true;
+        resize(0);
+        freeExtents.clear();
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // The file is deleted when the application exits.
+        }
+    }
+
+    /**
+     * Takes a region from the first free extent that is large enough, or from the end of the file.
+     *
+     * @param length The number of bytes of the region.
+     * @return The offset of the region.
+     */
+    private long allocate(int length) {
+        Iterator<Map.Entry<Long, Integer>> extents = freeExtents.entrySet().iterator();
+        while (extents.hasNext()) {
+            Map.Entry<Long, Integer> extent = extents.next();
+            int free = extent.getValue();
+            if (free >= length) {
+                long offset = extent.getKey();
+                extents.remove();
+                if (free > length) {
+                    freeExtents.put(offset + length, free - length);
+                }
+                return offset;
+            }
+        }
+        long offset = end;
+        resize(end + length);
+        return offset;
+    }
+
+    /**
+     * Returns a region to the free list, merging it with the adjacent free extents, and truncates the file when
+     * the merged extent reaches its end.
+     *
+     * @param offset The offset of the region.
+     * @param length The number of bytes of the region.
+     */
+    private void release(long offset, int length) {
+        long start = offset;
+        long stop = offset + length;
+        Map.Entry<Long, Integer> before = freeExtents.floorEntry(start);
+        if (before != null && before.getKey() + before.getValue() == start) {
+            start = before.getKey();
+            freeExtents.remove(start);
+        }
+        Integer after = freeExtents.remove(stop);
+        if (after != null) {
+            stop += after;
+        }
+
+        if (stop == end) {
+            try {
+                channel.truncate(start);
+                resize(start);
+                return;
+            } catch (IOException e) {
+                // The extent stays in the free list and is reused by later tiles.
+            }
+        }
+        freeExtents.put(start, (int) (stop - start));
+    }
+
+    /**
+     * Moves the end of the file and charges the change of its size to the account.
+     *
+     * @param size The new size of the file.
+     */
+    private void resize(long size) {
+        if (account != null) {
+            account.allocate(0, 0, size - end);
+        }
+        end = size;
+    }
+}
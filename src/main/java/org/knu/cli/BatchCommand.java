@@ -0,0 +1,217 @@
+package org.knu.cli;
+
+import org.knu.bll.FileService;
+import org.knu.bll.TileScheduler;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The BatchCommand class is the headless entry point of the application. It parses the command line,
+ * finds the input files and runs a {@link BatchProcessor} over them.
+ * <p>
+ * Usage: {@code --input <directory|glob> --pipeline "<spec>" --output <directory> [--format <ext>] [--workers <n>]}.
+ * A directory input processes every readable image directly inside it; a glob such as {@code photos/**.jpg}
+ * is matched relative to its leading directory. See {@link Pipeline} for the pipeline specification.
+ */
+public class BatchCommand {
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILURES = 1;
+    private static final int EXIT_USAGE = 2;
+    private static final String USAGE = "Usage: --input <directory|glob> --pipeline \"<spec>\" --output <directory>"
+            + " [--format <ext>] [--workers <n>]\n"
+            + "Example: --input 'photos/*.jpg' --pipeline \"gray | gauss:5,1.4 | sobel | otsu\" --output out\n"
+            + "Operations: gray, gauss:size[,sigma], box:size, median:size, sobel, prewitt, roberts,\n"
+            + "            canny:low,high[,size[,sigma]], otsu, localmean[:radius[,offset]],\n"
+            + "            kmeans:k[,tolerance[,maxIterations]], equalize,\n"
+            + "            minibatch:k[,batchSize[,batches]], palette:file[,driftRatio],\n"
+            + "            octree:k, mediancut:k, variancecut:k, clahe[:tileSize[,clipLimit[,cdfBlur]]]";
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    /**
+     * Constructs a BatchCommand.
+     *
+     * @param out The stream that receives progress and the final report.
+     * @param err The stream that receives usage and error messages.
+     */
+    public BatchCommand(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Runs a batch described by the command line arguments.
+     *
+     * @param args The command line arguments.
+     * @return The exit code: 0 if every image was processed, 1 if some images failed and 2 for invalid arguments.
+     */
+    public int run(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        String input = null;
+        String spec = null;
+        String output = null;
+        String format = null;
+        int workers = Math.min(4, Runtime.getRuntime().availableProcessors());
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--input":
+                        input = value(args, ++i);
+                        break;
+                    case "--pipeline":
+                        spec = value(args, ++i);
+                        break;
+                    case "--output":
+                        output = value(args, ++i);
+                        break;
+                    case "--format":
+                        format = value(args, ++i).toLowerCase(Locale.ROOT);
+                        break;
+                    case "--workers":
+                        workers = Integer.parseInt(value(args, ++i));
+                        break;
+                    case "--help":
+                        out.println(USAGE);
+                        return EXIT_OK;
+                    default:
+                        throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                }
+            }
+            if (input == null || spec == null || output == null) {
+                throw new IllegalArgumentException("--input, --pipeline and --output are required");
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        TileScheduler scheduler = new TileScheduler();
+        try {
+            Pipeline pipeline = Pipeline.parse(spec, scheduler);
+            Path base = findBaseDirectory(input);
+            List<Path> files = findInputFiles(input, base);
+            if (files.isEmpty()) {
+                err.println("No images found for " + input);
+                return EXIT_USAGE;
+            }
+
+            out.println("Processing " + files.size() + " images with " + pipeline + " using " + workers + " workers");
+            BatchReport report = new BatchProcessor(new FileService(), workers)
+                    .process(files, base, Paths.get(output), format, pipeline, out);
+            out.println(report);
+            return report.getFailedImages() == 0 ? EXIT_OK : EXIT_FAILURES;
+        } catch (IllegalArgumentException | IOException e) {
+            err.println(e.getMessage());
+            return EXIT_USAGE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Batch was interrupted");
+            return EXIT_FAILURES;
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Returns the value of an option.
+     *
+     * @param args The command line arguments.
+     * @param index The position of the value.
+     * @return The value.
+     * @throws IllegalArgumentException if the option has no value.
+     */
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * Returns the directory an input refers to: the input itself if it is a directory, the parent of a single file,
+     * otherwise the leading part of the glob that contains no wildcards.
+     *
+     * @param input The input directory or glob.
+     * @return The base directory of the input.
+     */
+    static Path findBaseDirectory(String input) {
+        Path path = Paths.get(input);
+        if (Files.isDirectory(path)) return path;
+        if (Files.isRegularFile(path)) return path.getParent() != null ? path.getParent() : Paths.get("");
+
+        Path base = path.isAbsolute() ? path.getRoot() : Paths.get("");
+        for (Path part : path) {
+            if (isGlob(part.toString())) break;
+            base = base.resolve(part);
+        }
+        return base;
+    }
+
+    /**
+     * Finds the image files of an input in a stable order.
+     *
+     * @param input The input directory or glob.
+     * @param base The base directory of the input.
+     * @return The matching files that ImageIO can read.
+     * @throws IOException if a directory cannot be listed.
+     */
+    static List<Path> findInputFiles(String input, Path base) throws IOException {
+        Set<String> readable = Set.of(ImageIO.getReaderFileSuffixes());
+        Path path = Paths.get(input);
+
+        Stream<Path> candidates;
+        if (Files.isDirectory(path)) {
+            candidates = Files.list(path);
+        } else if (Files.isRegularFile(path)) {
+            candidates = Stream.of(path);
+        } else {
+            String pattern = base.relativize(path).toString();
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            candidates = Files.walk(base).filter(file -> matcher.matches(base.relativize(file)));
+        }
+
+        try (Stream<Path> files = candidates) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> readable.contains(extension(file)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Checks whether a path element contains glob wildcards.
+     *
+     * @param part The path element.
+     * @return True if the element contains '*', '?', '[' or '{'.
+     */
+    private static boolean isGlob(String part) {
+        return part.indexOf('*') >= 0 || part.indexOf('?') >= 0 || part.indexOf('[') >= 0 || part.indexOf('{') >= 0;
+    }
+
+    /**
+     * Gets the extension of a file.
+     *
+     * @param file The file.
+     * @return The extension in lowercase, or an empty string if the file has no extension.
+     */
+    private static String extension(Path file) {
+        String name = file.getFileName().toString();
+        int lastDot = name.lastIndexOf('.');
+        return lastDot == -1 ? "" : name.substring(lastDot + 1).toLowerCase(Locale.ROOT);
+    }
+}
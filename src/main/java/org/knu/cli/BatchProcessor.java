@@ -0,0 +1,202 @@
+package org.knu.cli;
+
+import org.knu.bll.FileService;
+import org.knu.bll.ProgressListener;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The BatchProcessor class applies a {@link Pipeline} to many image files and writes the results to an output
+ * directory. Every file is loaded, processed and saved by one worker thread, and a fixed number of workers run
+ * concurrently. While one worker decodes or encodes a file, the others keep the TileScheduler busy with their
+ * pipelines, so decoding, computing and encoding overlap. At most one image per worker is held in memory.
+ * <p>
+ * A file that fails is reported and skipped; the remaining files are still processed.
+ */
+public class BatchProcessor {
+    private static final Set<String> OPAQUE_FORMATS = Set.of("jpg", "jpeg", "bmp", "wbmp");
+
+    private final FileService fileService;
+    private final int workers;
+
+    /**
+     * Constructs a BatchProcessor.
+     *
+     * @param fileService The FileService used to load and save the images.
+     * @param workers The number of files processed concurrently.
+     * @throws IllegalArgumentException if the number of workers is not positive.
+     */
+    public BatchProcessor(FileService fileService, int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Number of workers must be positive");
+        }
+        this.fileService = fileService;
+        this.workers = workers;
+    }
+
+    /**
+     * Processes the given files. The output file of an input keeps its path relative to the base directory.
+     *
+     * @param files The input files.
+     * @param baseDirectory The directory the input files are relative to.
+     * @param outputDirectory The directory the results are written to. It is created if it does not exist.
+     * @param format The extension of the output files, or null to keep the extension of every input file.
+     * @param pipeline The pipeline applied to every image.
+     * @param log The stream that receives the failures and the progress every 100 images.
+     * @return A BatchReport with the counts and the throughput of the run.
+     * @throws InterruptedException if the thread is interrupted while waiting for the workers.
+     */
+    public BatchReport process(List<Path> files, Path baseDirectory, Path outputDirectory, String format,
+                               Pipeline pipeline, PrintStream log) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        CompletionService<Long> completion = new ExecutorCompletionService<>(executor);
+        int processed = 0;
+        int failed = 0;
+        long pixels = 0;
+
+        try {
+            for (Path file : files) {
+                Path target = outputDirectory.resolve(changeExtension(baseDirectory.relativize(file), format));
+                completion.submit(() -> processFile(file, target, pipeline));
+            }
+
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    pixels += completion.take().get();
+                    processed++;
+                } catch (ExecutionException e) {
+                    failed++;
+                    log.println("Failed: " + describe(e.getCause()));
+                }
+                if ((processed + failed) % 100 == 0 || processed + failed == files.size()) {
+                    log.printf("[%d/%d] images done%n", processed + failed, files.size());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        return new BatchReport(processed, failed, pixels, System.nanoTime() - start);
+    }
+
+    /**
+     * Loads one file, applies the pipeline and saves the result.
+     *
+     * @param source The input file.
+     * @param target The output file.
+     * @param pipeline The pipeline to apply.
+     * @return The number of pixels of the input image.
+     * @throws BatchException if the file cannot be loaded, processed or saved.
+     */
+    private long processFile(Path source, Path target, Pipeline pipeline) throws BatchException {
+        try {
+            PixelBuffer image = fileService.loadPixels(source.toString());
+            PixelBuffer result = pipeline.apply(image, createListener());
+            if (result.hasAlpha() && OPAQUE_FORMATS.contains(getExtension(target))) {
+                result = new PixelBuffer(result.getWidth(), result.getHeight(), result.getPixels(), false);
+            }
+
+            Path parent = target.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            fileService.saveImage(target.toFile(), result);
+            return (long) image.getWidth() * image.getHeight();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BatchException(source, e);
+        } catch (IOException | RuntimeException e) {
+            throw new BatchException(source, e);
+        }
+    }
+
+    /**
+     * Creates a ProgressListener that ignores all updates. Every image gets its own listener, so workers
+     * do not contend for the lock the TileScheduler takes on the listener.
+     *
+     * @return A new ProgressListener.
+     */
+    private static ProgressListener createListener() {
+        return new ProgressListener() {
+            @Override
+            public void onProgressStart(int maximum) {
+            }
+
+            @Override
+            public void onProgressUpdate() {
+            }
+        };
+    }
+
+    /**
+     * Replaces the extension of a file name.
+     *
+     * @param path The path of the file.
+     * @param format The new extension, or null to keep the current one.
+     * @return The path with the new extension.
+     */
+    private static Path changeExtension(Path path, String format) {
+        if (format == null) return path;
+        String name = path.getFileName().toString();
+        int lastDot = name.lastIndexOf('.');
+        String newName = (lastDot == -1 ? name : name.substring(0, lastDot)) + "." + format;
+        return path.resolveSibling(newName);
+    }
+
+    /**
+     * Gets the extension of a file.
+     *
+     * @param path The path of the file.
+     * @return The extension in lowercase, or an empty string if the file has no extension.
+     */
+    private static String getExtension(Path path) {
+        String name = path.getFileName().toString();
+        int lastDot = name.lastIndexOf('.');
+        return lastDot == -1 ? "" : name.substring(lastDot + 1).toLowerCase();
+    }
+
+    /**
+     * Describes a failure for the log.
+     *
+     * @param error The failure.
+     * @return The message of the failure and of its cause.
+     */
+    private static String describe(Throwable error) {
+        String message = error.getMessage();
+        Throwable cause = error.getCause();
+        if (cause != null && cause.getMessage() != null && !cause.getMessage().equals(message)) {
+            message += ": " + cause.getMessage();
+        }
+        return message;
+    }
+
+    /**
+     * The BatchException class reports that one file of a batch could not be processed.
+     */
+    static final class BatchException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs a BatchException.
+         *
+         * @param source The file that failed.
+         * @param cause The reason of the failure.
+         */
+        BatchException(Path source, Throwable cause) {
+            super(source.toString(), cause);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.knu.cli;
+
+/**
+ * The BatchReport class holds the outcome of a batch run: how many images were processed or failed,
+ * how many pixels were processed and how long the run took.
+ */
+public class BatchReport {
+    private final int processedImages;
+    private final int failedImages;
+    private final long processedPixels;
+    private final long elapsedNanos;
+
+    /**
+     * Constructs a BatchReport.
+     *
+     * @param processedImages The number of images that were written successfully.
+     * @param failedImages The number of images that could not be processed.
+     * @param processedPixels The number of input pixels of the successful images.
+     * @param elapsedNanos The wall-clock time of the run in nanoseconds.
+     */
+    public BatchReport(int processedImages, int failedImages, long processedPixels, long elapsedNanos) {
+        this.processedImages = processedImages;
+        this.failedImages = failedImages;
+        this.processedPixels = processedPixels;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the number of images that were written successfully.
+     *
+     * @return The number of processed images.
+     */
+    public int getProcessedImages() {
+        return processedImages;
+    }
+
+    /**
+     * Returns the number of images that could not be processed.
+     *
+     * @return The number of failed images.
+     */
+    public int getFailedImages() {
+        return failedImages;
+    }
+
+    /**
+     * Returns the wall-clock time of the run.
+     *
+     * @return The elapsed time in seconds.
+     */
+    public double getElapsedSeconds() {
+        return elapsedNanos / 1e9;
+    }
+
+    /**
+     * Returns the number of processed megapixels.
+     *
+     * @return The input pixels of the successful images in millions.
+     */
+    public double getMegapixels() {
+        return processedPixels / 1e6;
+    }
+
+    /**
+     * Returns the throughput in images.
+     *
+     * @return The processed images per second, or 0 if no time has elapsed.
+     */
+    public double getImagesPerSecond() {
+        return elapsedNanos == 0 ? 0 : processedImages / getElapsedSeconds();
+    }
+
+    /**
+     * Returns the throughput in pixels.
+     *
+     * @return The processed megapixels per second, or 0 if no time has elapsed.
+     */
+    public double getMegapixelsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getMegapixels() / getElapsedSeconds();
+    }
+
+    /**
+     * Returns a summary of the run.
+     *
+     * @return The counts, the elapsed time and the throughput.
+     */
+    @Override
+    public String toString() {
+        return String.format("Processed %d images (%.1f MP), %d failed, in %.2f s: %.2f images/s, %.2f MP/s",
+                processedImages, getMegapixels(), failedImages, getElapsedSeconds(),
+                getImagesPerSecond(), getMegapixelsPerSecond());
+    }
+}
@@ -0,0 +1,380 @@
+package org.knu.cli;
+
+import org.knu.bll.ProgressListener;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.algorithms.CannyFilter;
+import org.knu.bll.algorithms.blur.BoxBlur;
+import org.knu.bll.algorithms.blur.GaussBlur;
+import org.knu.bll.algorithms.blur.MedianBlur;
+import org.knu.bll.algorithms.clustering.ColorPalette;
+import org.knu.bll.algorithms.clustering.KMeansCluster;
+import org.knu.bll.algorithms.clustering.LocalMeanThresholding;
+import org.knu.bll.algorithms.clustering.MiniBatchKMeansCluster;
+import org.knu.bll.algorithms.clustering.OtsuThresholding;
+import org.knu.bll.algorithms.clustering.QuantizationMethod;
+import org.knu.bll.algorithms.clustering.QuantizerCluster;
+import org.knu.bll.algorithms.edges.PrewittOperator;
+import org.knu.bll.algorithms.edges.RobertsCrossOperator;
+import org.knu.bll.algorithms.edges.SobelOperator;
+import org.knu.bll.algorithms.histograms.HistogramEqualization;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Pipeline class is a sequence of image operations that is applied to every image of a batch.
+ * A pipeline is parsed from a specification such as {@code "gray | gauss:5,1.4 | sobel | otsu"}: operations are
+ * separated by '|', and the parameters of an operation follow its name after ':' separated by ','.
+ * <p>
+ * Supported operations:
+ * <ul>
+ *     <li>{@code gray} - converts the image to opaque grayscale.</li>
+ *     <li>{@code gauss:size[,sigma]}, {@code box:size}, {@code median:size} - blur filters.</li>
+ *     <li>{@code sobel}, {@code prewitt}, {@code roberts} - edge detection operators.</li>
+ *     <li>{@code canny:low,high[,size[,sigma]]} - Canny edge detection with a Gaussian blur and the Sobel operator.</li>
+ *     <li>{@code otsu}, {@code kmeans:k[,tolerance[,maxIterations]]}, {@code minibatch:k[,batchSize[,batches]]} -
+ *     clustering.</li>
+ *     <li>{@code localmean[:radius[,offset]]} - thresholding against the mean of the window around every pixel.</li>
+ *     <li>{@code palette:file[,driftRatio]} - K-Means warm-started from a palette file saved by
+ *     {@link ColorPalette#save(File)}; an image that has drifted from the palette is seeded afresh.</li>
+ *     <li>{@code octree:k}, {@code mediancut:k}, {@code variancecut:k} - single-pass color quantization.</li>
+ *     <li>{@code equalize} - histogram equalization of the red, green and blue channels.</li>
+ *     <li>{@code clahe[:tileSize[,clipLimit[,cdfBlur]]]} - contrast limited adaptive histogram equalization.</li>
+ * </ul>
+ * Operators keep no per-image state, so every operation is created once and one pipeline can process several
+ * images concurrently. All operators run their tiles on the given {@link TileScheduler}.
+ */
+public class Pipeline {
+    private static final double DEFAULT_CANNY_SIGMA = 1;
+    private static final int DEFAULT_CANNY_SIZE = 5;
+    private static final int DEFAULT_TILE_SIZE = 24;
+    private static final double DEFAULT_CLIP_LIMIT = 4;
+    private static final boolean[] RGB_CHANNELS = {true, true, true, false};
+
+    private final List<String> names;
+    private final List<PipelineStep> steps;
+
+    /**
+     * Constructs a Pipeline from already created steps.
+     *
+     * @param names The names of the steps, used for reporting.
+     * @param steps The steps in the order they are applied.
+     * @throws IllegalArgumentException if the pipeline is empty or the names do not match the steps.
+     */
+    public Pipeline(List<String> names, List<PipelineStep> steps) {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("Pipeline must contain at least one operation");
+        }
+        if (names.size() != steps.size()) {
+            throw new IllegalArgumentException("Every pipeline step must have a name");
+        }
+        this.names = List.copyOf(names);
+        this.steps = List.copyOf(steps);
+    }
+
+    /**
+     * Parses a pipeline specification.
+     *
+     * @param spec The specification, for example {@code "gray | gauss:5,1.4 | sobel | otsu"}.
+     * @param scheduler The TileScheduler the operators run on.
+     * @return The parsed Pipeline.
+     * @throws IllegalArgumentException if an operation is unknown or its parameters are invalid.
+     * @throws NullPointerException if the specification is null.
+     */
+    public static Pipeline parse(String spec, TileScheduler scheduler) {
+        if (spec == null) throw new NullPointerException("Pipeline specification cannot be null");
+
+        List<String> names = new ArrayList<>();
+        List<PipelineStep> steps = new ArrayList<>();
+        for (String operation : spec.split("\\|")) {
+            String trimmed = operation.trim();
+            if (trimmed.isEmpty()) {
+                throw new IllegalArgumentException("Empty operation in pipeline: " + spec);
+            }
+            int colon = trimmed.indexOf(':');
+            String name = (colon == -1 ? trimmed : trimmed.substring(0, colon)).trim().toLowerCase();
+            String[] params = colon == -1 ? new String[0] : trimmed.substring(colon + 1).split(",");
+            names.add(trimmed);
+            steps.add(createStep(name, params, scheduler));
+        }
+        return new Pipeline(names, steps);
+    }
+
+    /**
+     * Applies every step to the given pixels in order.
+     *
+     * @param image The input pixels. This buffer should not be null and is not modified.
+     * @param listener A ProgressListener that receives the progress of every step.
+     * @return The pixels produced by the last step.
+     * @throws InterruptedException if the thread is interrupted during the pipeline.
+     * @throws NullPointerException if the image is null.
+     */
+    public PixelBuffer apply(PixelBuffer image, ProgressListener listener) throws InterruptedException {
+        if (image == null) throw new NullPointerException("Image cannot be null");
+
+        PixelBuffer result = image;
+        for (PipelineStep step : steps) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Pipeline was interrupted");
+            }
+            result = step.apply(result, listener);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the names of the steps.
+     *
+     * @return An unmodifiable list of the step names in order.
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Creates the step for one operation.
+     *
+     * @param name The name of the operation.
+     * @param params The parameters of the operation.
+     * @param scheduler The TileScheduler the operators run on.
+     * @return The created step.
+     * @throws IllegalArgumentException if the operation is unknown or its parameters are invalid.
+     */
+    private static PipelineStep createStep(String name, String[] params, TileScheduler scheduler) {
+        switch (name) {
+            case "gray": {
+                expectParams(name, params, 0, 0);
+                return (image, listener) -> image.toGray().toPixelBuffer();
+            }
+            case "gauss": {
+                expectParams(name, params, 1, 2);
+                int size = parseKernelSize(name, params[0]);
+                double sigma = params.length > 1 ? parseDouble(name, params[1]) : GaussBlur.DEFAULT_SIGMA;
+                GaussBlur blur = new GaussBlur(scheduler, sigma);
+                return (image, listener) -> blur.applyFilter(image, size, listener);
+            }
+            case "box": {
+                expectParams(name, params, 1, 1);
+                int size = parseKernelSize(name, params[0]);
+                BoxBlur blur = new BoxBlur(scheduler);
+                return (image, listener) -> blur.applyFilter(image, size, listener);
+            }
+            case "median": {
+                expectParams(name, params, 1, 1);
+                int size = parseKernelSize(name, params[0]);
+                MedianBlur blur = new MedianBlur(scheduler);
+                return (image, listener) -> blur.applyFilter(image, size, listener);
+            }
+            case "sobel": {
+                expectParams(name, params, 0, 0);
+                SobelOperator operator = new SobelOperator(scheduler);
+                return operator::applyOperator;
+            }
+            case "prewitt": {
+                expectParams(name, params, 0, 0);
+                PrewittOperator operator = new PrewittOperator(scheduler);
+                return operator::applyOperator;
+            }
+            case "roberts": {
+                expectParams(name, params, 0, 0);
+                RobertsCrossOperator operator = new RobertsCrossOperator(scheduler);
+                return operator::applyOperator;
+            }
+            case "canny": {
+                expectParams(name, params, 2, 4);
+                int low = parseInt(name, params[0]);
+                int high = parseInt(name, params[1]);
+                int size = params.length > 2 ? parseKernelSize(name, params[2]) : DEFAULT_CANNY_SIZE;
+                double sigma = params.length > 3 ? parseDouble(name, params[3]) : DEFAULT_CANNY_SIGMA;
+                CannyFilter canny = new CannyFilter(scheduler);
+                GaussBlur blur = new GaussBlur(scheduler, sigma);
+                SobelOperator sobel = new SobelOperator(scheduler);
+                return (image, listener) -> canny.applyFilter(image, low, high, blur, size, sobel, listener);
+            }
+            case "otsu": {
+                expectParams(name, params, 0, 0);
+                OtsuThresholding otsu = new OtsuThresholding(scheduler);
+                return otsu::applyCluster;
+            }
+            case "localmean": {
+                expectParams(name, params, 0, 2);
+                int radius = params.length > 0 ? parseInt(name, params[0]) : LocalMeanThresholding.DEFAULT_RADIUS;
+                int offset = params.length > 1 ? parseInt(name, params[1]) : LocalMeanThresholding.DEFAULT_OFFSET;
+                if (radius < 0) throw new IllegalArgumentException("localmean: window radius must not be negative");
+                LocalMeanThresholding thresholding = new LocalMeanThresholding(scheduler, radius, offset);
+                return thresholding::applyCluster;
+            }
+            case "kmeans": {
+                expectParams(name, params, 1, 3);
+                int k = parseInt(name, params[0]);
+                double tolerance = params.length > 1 ? parseDouble(name, params[1]) : KMeansCluster.DEFAULT_TOLERANCE;
+                int maxIterations = params.length > 2
+                        ? parseInt(name, params[2]) : KMeansCluster.DEFAULT_MAX_ITERATIONS;
+                if (k <= 0) throw new IllegalArgumentException("kmeans: number of clusters must be positive");
+                if (!(tolerance >= 0)) throw new IllegalArgumentException("kmeans: tolerance must not be negative");
+                if (maxIterations <= 0) {
+                    throw new IllegalArgumentException("kmeans: maximum number of iterations must be positive");
+                }
+                KMeansCluster cluster = new KMeansCluster(scheduler, k, tolerance, maxIterations);
+                return cluster::applyCluster;
+            }
+            case "minibatch": {
+                expectParams(name, params, 1, 3);
+                int k = parseInt(name, params[0]);
+                int batchSize = params.length > 1
+                        ? parseInt(name, params[1]) : MiniBatchKMeansCluster.DEFAULT_BATCH_SIZE;
+                int batches = params.length > 2 ? parseInt(name, params[2]) : MiniBatchKMeansCluster.DEFAULT_BATCHES;
+                if (k <= 0) throw new IllegalArgumentException("minibatch: number of clusters must be positive");
+                if (batchSize <= 0) throw new IllegalArgumentException("minibatch: batch size must be positive");
+                if (batches <= 0) throw new IllegalArgumentException("minibatch: number of batches must be positive");
+                MiniBatchKMeansCluster cluster = new MiniBatchKMeansCluster(scheduler, k, batchSize, batches);
+                return cluster::applyCluster;
+            }
+            case "palette": {
+                expectParams(name, params, 1, 2);
+                double driftRatio = params.length > 1
+                        ? parseDouble(name, params[1]) : KMeansCluster.DEFAULT_DRIFT_RATIO;
+                if (!(driftRatio >= 1)) throw new IllegalArgumentException("palette: drift ratio must be at least 1");
+                ColorPalette palette = loadPalette(name, params[0]);
+                KMeansCluster cluster = new KMeansCluster(scheduler, palette.size(), KMeansCluster.DEFAULT_TOLERANCE,
+                        KMeansCluster.DEFAULT_MAX_ITERATIONS);
+                return (image, listener) -> cluster.applyCluster(image, palette, driftRatio, listener);
+            }
+            case "octree":
+                return createQuantizer(name, params, QuantizationMethod.OCTREE, scheduler);
+            case "mediancut":
+                return createQuantizer(name, params, QuantizationMethod.MEDIAN_CUT, scheduler);
+            case "variancecut":
+                return createQuantizer(name, params, QuantizationMethod.VARIANCE_CUT, scheduler);
+            case "equalize": {
+                expectParams(name, params, 0, 0);
+                HistogramEqualization equalization = new HistogramEqualization(scheduler);
+                return (image, listener) -> equalization.histogramEqualization(image, RGB_CHANNELS, listener);
+            }
+            case "clahe": {
+                expectParams(name, params, 0, 3);
+                int tileSize = params.length > 0 ? parseInt(name, params[0]) : DEFAULT_TILE_SIZE;
+                double clipLimit = params.length > 1 ? parseDouble(name, params[1]) : DEFAULT_CLIP_LIMIT;
+                int cdfBlur = params.length > 2 ? parseInt(name, params[2]) : 0;
+                if (tileSize <= 0) throw new IllegalArgumentException("clahe: tile size must be positive");
+                HistogramEqualization equalization = new HistogramEqualization(scheduler);
+                return (image, listener) -> equalization.applyCLAHE(image, tileSize, clipLimit, cdfBlur, listener);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + name);
+        }
+    }
+
+    /**
+     * Creates the step of a color quantization operation.
+     *
+     * @param name The name of the operation.
+     * @param params The parameters of the operation: the number of colors.
+     * @param method The quantization method.
+     * @param scheduler The TileScheduler the quantizer runs on.
+     * @return The created step.
+     * @throws IllegalArgumentException if the parameters are invalid.
+     */
+    private static PipelineStep createQuantizer(String name, String[] params, QuantizationMethod method,
+                                                TileScheduler scheduler) {
+        expectParams(name, params, 1, 1);
+        int k = parseInt(name, params[0]);
+        if (k <= 0) throw new IllegalArgumentException(name + ": number of colors must be positive");
+        QuantizerCluster quantizer = new QuantizerCluster(scheduler, method, k);
+        return quantizer::applyCluster;
+    }
+
+    /**
+     * Checks the number of parameters of an operation.
+     *
+     * @param name The name of the operation.
+     * @param params The parameters of the operation.
+     * @param min The minimum number of parameters.
+     * @param max The maximum number of parameters.
+     * @throws IllegalArgumentException if the number of parameters is out of range.
+     */
+    private static void expectParams(String name, String[] params, int min, int max) {
+        if (params.length < min || params.length > max) {
+            String expected = min == max ? String.valueOf(min) : min + " to " + max;
+            throw new IllegalArgumentException(name + ": expected " + expected + " parameters, got " + params.length);
+        }
+    }
+
+    /**
+     * Parses an odd positive kernel size.
+     *
+     * @param name The name of the operation.
+     * @param value The parameter to parse.
+     * @return The kernel size.
+     * @throws IllegalArgumentException if the value is not a positive odd integer.
+     */
+    private static int parseKernelSize(String name, String value) {
+        int size = parseInt(name, value);
+        if (size <= 0 || size % 2 == 0) {
+            throw new IllegalArgumentException(name + ": kernel size must be a positive odd number");
+        }
+        return size;
+    }
+
+    /**
+     * Loads a palette parameter. The palette is loaded once and shared by every image, so the images of a batch are
+     * all warm-started from the same colors.
+     *
+     * @param name The name of the operation.
+     * @param value The path of the palette file.
+     * @return The loaded palette.
+     * @throws IllegalArgumentException if the file cannot be read or is not a valid palette.
+     */
+    private static ColorPalette loadPalette(String name, String value) {
+        try {
+            return ColorPalette.load(new File(value.trim()));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses an integer parameter.
+     *
+     * @param name The name of the operation.
+     * @param value The parameter to parse.
+     * @return The parsed integer.
+     * @throws IllegalArgumentException if the value is not an integer.
+     */
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + ": invalid integer parameter '" + value.trim() + "'", e);
+        }
+    }
+
+    /**
+     * Parses a decimal parameter.
+     *
+     * @param name The name of the operation.
+     * @param value The parameter to parse.
+     * @return The parsed number.
+     * @throws IllegalArgumentException if the value is not a number.
+     */
+    private static double parseDouble(String name, String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + ": invalid number parameter '" + value.trim() + "'", e);
+        }
+    }
+
+    /**
+     * Returns the specification of the pipeline.
+     *
+     * @return The operations separated by " | ".
+     */
+    @Override
+    public String toString() {
+        return String.join(" | ", names);
+    }
+}
@@ -0,0 +1,23 @@
+package org.knu.cli;
+
+import org.knu.bll.ProgressListener;
+import org.knu.bll.buffers.PixelBuffer;
+
+/**
+ * The PipelineStep interface defines one operation of a batch {@link Pipeline}.
+ * A step takes the pixels produced by the previous step and returns new pixels; it must not keep state
+ * between calls, because the same step processes several images concurrently.
+ */
+@FunctionalInterface
+public interface PipelineStep {
+
+    /**
+     * Applies the operation to the given pixels.
+     *
+     * @param image The input pixels. This buffer should not be null.
+     * @param listener A ProgressListener to receive progress updates during the operation.
+     * @return The pixels produced by the operation.
+     * @throws InterruptedException if the thread is interrupted during the operation.
+     */
+    PixelBuffer apply(PixelBuffer image, ProgressListener listener) throws InterruptedException;
+}
@@ -1,22 +1,30 @@
 package org.knu.ui;
 
 import org.knu.bll.FileService;
+import org.knu.bll.ImageLoader;
+import org.knu.bll.LoadReport;
+import org.knu.bll.memento.HistoryMode;
+import org.knu.ui.swing.LoadingTabs;
 import org.knu.ui.swing.WorkingPanel;
 import org.knu.ui.swing.SingleImagePanel;
 import org.knu.ui.tools.SeparatorTool;
 import org.knu.ui.tools.Tool;
 
 import javax.swing.*;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.filechooser.FileView;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 
 public class SwingUI extends JFrame {
     private final FileService fileService;
+    private final ImageLoader imageLoader;
     private final WorkingPanel workingPanel;
     private JPanel settingsPanel;
 
@@ -25,9 +33,11 @@ public class SwingUI extends JFrame {
     private Tool currentTool;
 
     private boolean isSettingsPanelVisible = true;
+    private LoadReport lastLoadReport;
 
     public SwingUI(WorkingPanel workingPanel, FileService fileService, List<Tool> tools, List<JMenu> menus) {
         this.fileService = fileService;
+        this.imageLoader = new ImageLoader(fileService);
         this.workingPanel = workingPanel;
         this.menus = menus;
         this.workingPanel.setParentJFrame(this);
@@ -127,11 +137,30 @@ public class SwingUI extends JFrame {
         JMenuItem saveFile = new JMenuItem("Save File");
         saveFile.addActionListener(e -> saveFile());
         fileMenu.add(saveFile);
+        fileMenu.addMenuListener(new MenuListener() {
+            @Override
+            public void menuSelected(MenuEvent e) {
+                SingleImagePanel panel = workingPanel.getCurrentImagePanel();
+                saveFile.setEnabled(panel != null && panel.isImageInMemory());
+            }
+
+            @Override
+            public void menuDeselected(MenuEvent e) {
+            }
+
+            @Override
+            public void menuCanceled(MenuEvent e) {
+            }
+        });
 
         JMenuItem loadFile = new JMenuItem("Load Images");
         loadFile.addActionListener(e -> loadImages());
         fileMenu.add(loadFile);
 
+        JMenuItem loadReport = new JMenuItem("Load Report");
+        loadReport.addActionListener(e -> showLoadReport());
+        fileMenu.add(loadReport);
+
         fileMenu.addSeparator();
 
         JMenuItem closeFile = new JMenuItem("Close File");
@@ -177,53 +206,74 @@ public class SwingUI extends JFrame {
         redoButton.addActionListener(e -> workingPanel.redo());
         editMenu.add(redoButton);
 
+        JMenuItem historyButton = new JMenuItem("History Usage");
+        historyButton.addActionListener(e -> {
+            SingleImagePanel panel = workingPanel.getCurrentImagePanel();
+            if (panel != null) {
+                JOptionPane.showMessageDialog(this, panel.getHistoryFootprint().toString(),
+                        "History Usage", JOptionPane.INFORMATION_MESSAGE);
+            }
+        });
+        editMenu.add(historyButton);
+
+        JCheckBoxMenuItem operationLogButton = new JCheckBoxMenuItem("Operation Log History");
+        operationLogButton.addActionListener(e -> workingPanel.setHistoryMode(
+                operationLogButton.isSelected() ? HistoryMode.OPERATION_LOG : HistoryMode.SNAPSHOTS));
+        editMenu.add(operationLogButton);
+
         return editMenu;
     }
 
     private void loadImages() {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setMultiSelectionEnabled(true);
-        fileChooser.setFileFilter(new FileNameExtensionFilter("Image Files", "png", "jpg", "jpeg"));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Image Files", "png", "jpg", "jpeg", "tif", "tiff"));
 
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            // Show progress indicator
-            JProgressBar progressBar = new JProgressBar();
-            progressBar.setIndeterminate(true);
-            JOptionPane progressPane = new JOptionPane(progressBar, JOptionPane.PLAIN_MESSAGE);
-            JDialog dialog = progressPane.createDialog(this, "Loading Images");
-            progressPane.setVisible(true);
-
-            SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
-                @Override
-                protected Void doInBackground() throws Exception {
-                    for (File file : fileChooser.getSelectedFiles()) {
-                        BufferedImage image = fileService.loadImage(file.getPath());
-                        workingPanel.addNewTabImage(image, file.getName(), file.getAbsolutePath());
-                    }
-                    return null;
-                }
+            List<File> files = Arrays.asList(fileChooser.getSelectedFiles());
+            LoadingTabs tabs = new LoadingTabs(workingPanel, files, this::loadFinished);
+            imageLoader.load(files, tabs, workingPanel.startTask());
+        }
+    }
 
-                @Override
-                protected void done() {
-                    dialog.setVisible(false);
+    private void loadFinished(LoadReport report) {
+        lastLoadReport = report;
+        workingPanel.hideProgressBar();
+        if (report.getFailedImages() > 0) {
+            StringBuilder message = new StringBuilder("Failed to load " + report.getFailedImages() + " image(s):");
+            for (int i = 0; i < report.getFileCount(); i++) {
+                if (report.getError(i) != null) {
+                    message.append("\n").append(report.getFileName(i)).append(": ").append(report.getError(i));
                 }
-            };
-            worker.execute();
+            }
+            JOptionPane.showMessageDialog(this, message.toString(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
-
+    private void showLoadReport() {
+        if (lastLoadReport == null) {
+            JOptionPane.showMessageDialog(this, "No images have been loaded yet.",
+                    "Load Report", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        JTextArea details = new JTextArea(lastLoadReport.getDetails());
+        details.setEditable(false);
+        JScrollPane scrollPane = new JScrollPane(details);
+        scrollPane.setPreferredSize(new Dimension(600, 300));
+        JOptionPane.showMessageDialog(this, scrollPane, "Load Report", JOptionPane.INFORMATION_MESSAGE);
+    }
 
     private void saveFile() {
+        SingleImagePanel panel = workingPanel.getCurrentImagePanel();
+        if (panel == null || !panel.isImageInMemory()) return;
         JFileChooser fileChooser = new JFileChooser();
-        if (workingPanel.getCurrentImagePanel() != null)
-            fileChooser.setSelectedFile(new File(workingPanel.getCurrentImagePanel().getAbsolutePath()));
+        fileChooser.setSelectedFile(new File(panel.getAbsolutePath()));
         fileChooser.setFileFilter(new FileNameExtensionFilter("Image Files", "png", "jpg", "jpeg"));
 
         if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             String filePath = ensureImageExtension(fileChooser.getSelectedFile().getAbsolutePath());
             try {
-                fileService.saveImage(new File(filePath), workingPanel.getCurrentImagePanel().getBufferedImage());
+                fileService.saveImage(new File(filePath), panel.getBufferedImage());
             } catch (Exception e) {
                 JOptionPane.showMessageDialog(this, "Failed to save image: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -258,7 +308,7 @@ public class SwingUI extends JFrame {
                         "Are you sure?",
                         "Close All Files",
                         JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
-            workingPanel.getTabbedPane().removeAll();
+            workingPanel.removeAllPanels();
         }
     }
 
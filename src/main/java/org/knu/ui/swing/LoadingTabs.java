@@ -0,0 +1,114 @@
+package org.knu.ui.swing;
+
+import org.knu.bll.ImageLoadListener;
+import org.knu.bll.ImageThumbnail;
+import org.knu.bll.LoadReport;
+import org.knu.bll.buffers.TiledImageSource;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The LoadingTabs class turns the results of an {@link org.knu.bll.ImageLoader} into tabs of the working panel.
+ * Results arrive from the loader threads in any order and are handed to the event dispatch thread, where a tab is
+ * created as soon as the thumbnail of a file is ready and all files selected before it have a tab or have failed,
+ * so the tabs keep the selection order. The thumbnail is replaced by the full image when that is decoded, or stays
+ * as the overview of a file that is too large for memory and is drawn from its tiles. The tab of a file that fails
+ * or is cancelled is removed again.
+ */
+public class LoadingTabs implements ImageLoadListener {
+    private final WorkingPanel workingPanel;
+    private final List<File> files;
+    private final Consumer<LoadReport> onFinished;
+    private final SingleImagePanel[] panels;
+    private final ImageThumbnail[] thumbnails;
+    private final BufferedImage[] images;
+    private final TiledImageSource[] sources;
+    private final boolean[] failed;
+    private int nextTab;
+
+    public LoadingTabs(WorkingPanel workingPanel, List<File> files, Consumer<LoadReport> onFinished) {
+        this.workingPanel = workingPanel;
+        this.files = List.copyOf(files);
+        this.onFinished = onFinished;
+        panels = new SingleImagePanel[files.size()];
+        thumbnails = new ImageThumbnail[files.size()];
+        images = new BufferedImage[files.size()];
+        sources = new TiledImageSource[files.size()];
+        failed = new boolean[files.size()];
+    }
+
+    @Override
+    public void onPreview(int index, ImageThumbnail thumbnail) {
+        SwingUtilities.invokeLater(() -> {
+            thumbnails[index] = thumbnail;
+            createTabs();
+        });
+    }
+
+    @Override
+    public void onLoaded(int index, BufferedImage image) {
+        SwingUtilities.invokeLater(() -> {
+            if (panels[index] != null) {
+                panels[index].finishLoading(image);
+            } else {
+                images[index] = image;
+                createTabs();
+            }
+        });
+    }
+
+    @Override
+    public void onTiled(int index, TiledImageSource source) {
+        SwingUtilities.invokeLater(() -> {
+            if (panels[index] != null) {
+                panels[index].finishLoading(source);
+            } else {
+                sources[index] = source;
+                createTabs();
+            }
+        });
+    }
+
+    @Override
+    public void onFailed(int index, Exception error) {
+        SwingUtilities.invokeLater(() -> {
+            failed[index] = true;
+            thumbnails[index] = null;
+            if (panels[index] != null) {
+                panels[index].failLoading(error);
+                workingPanel.removePanel(panels[index]);
+                panels[index] = null;
+            }
+            createTabs();
+        });
+    }
+
+    @Override
+    public void onFinished(LoadReport report) {
+        SwingUtilities.invokeLater(() -> onFinished.accept(report));
+    }
+
+    private void createTabs() {
+        while (nextTab < files.size()) {
+            File file = files.get(nextTab);
+            if (images[nextTab] != null) {
+                workingPanel.addNewTabImage(images[nextTab], file.getName(), file.getAbsolutePath());
+                images[nextTab] = null;
+            } else if (thumbnails[nextTab] != null) {
+                panels[nextTab] = workingPanel.addLoadingTab(thumbnails[nextTab], file.getName(), file.getAbsolutePath());
+                if (sources[nextTab] != null) {
+                    panels[nextTab].finishLoading(sources[nextTab]);
+                    sources[nextTab] = null;
+                }
+            } else if (!failed[nextTab]) {
+                return;
+            }
+            thumbnails[nextTab] = null;
+            nextTab++;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.knu.ui.swing;
+
+import org.knu.bll.buffers.ImagePyramid;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * The PreviewProxy class is a reduced copy of the visible part of an image that a tool can process instead of the
+ * full image while its settings are being tuned. The region is the viewport plus a small margin and the scale is the
+ * display scale capped at 1, so the proxy has about as many pixels as the viewport regardless of the source size.
+ * The proxy is rendered lazily from the nearest built pyramid level and kept for the next preview of the same view.
+ */
+public final class PreviewProxy {
+    private final ImagePyramid pyramid;
+    private final Rectangle region;
+    private final double scale;
+    private BufferedImage image;
+
+    PreviewProxy(ImagePyramid pyramid, Rectangle region, double scale) {
+        this.pyramid = pyramid;
+        this.region = new Rectangle(region);
+        this.scale = scale;
+    }
+
+    /**
+     * Returns the proxy image, rendering it on first use. Can be called from any thread.
+     *
+     * @return The region of the source scaled by the proxy scale.
+     */
+    public synchronized BufferedImage getImage() {
+        if (image == null) {
+            image = render();
+        }
+        return image;
+    }
+
+    /**
+     * Returns the image the proxy was taken from.
+     *
+     * @return The full-resolution source image.
+     */
+    public BufferedImage getSource() {
+        return pyramid.getSource();
+    }
+
+    /**
+     * Returns the part of the source the proxy covers.
+     *
+     * @return The region in source pixel coordinates.
+     */
+    public Rectangle getRegion() {
+        return new Rectangle(region);
+    }
+
+    /**
+     * Returns the scale of the proxy relative to the source.
+     *
+     * @return The scale, at most 1.
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    boolean matches(BufferedImage source, Rectangle region, double scale) {
+        return pyramid.getSource() == source && this.region.equals(region) && this.scale == scale;
+    }
+
+    private BufferedImage render() {
+        int level = pyramid.getAvailableLevel(ImagePyramid.levelFor(scale));
+        BufferedImage levelImage = pyramid.getLevel(level);
+        int factor = 1 << level;
+        int width = Math.max(1, (int) Math.round(region.width * scale));
+        int height = Math.max(1, (int) Math.round(region.height * scale));
+        int sx0 = region.x / factor;
+        int sy0 = region.y / factor;
+        int sx1 = Math.min(levelImage.getWidth(), Math.max(sx0 + 1, -Math.floorDiv(-(region.x + region.width), factor)));
+        int sy1 = Math.min(levelImage.getHeight(), Math.max(sy0 + 1, -Math.floorDiv(-(region.y + region.height), factor)));
+
+        boolean alpha = levelImage.getColorModel().hasAlpha();
+        BufferedImage proxy = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = proxy.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(levelImage, 0, 0, width, height, sx0, sy0, sx1, sy1, null);
+        g.dispose();
+        return proxy;
+    }
+}
@@ -1,33 +1,77 @@
 package org.knu.ui.swing;
 
+import org.knu.bll.ImageThumbnail;
+import org.knu.bll.ProgressTracker;
+import org.knu.bll.buffers.TiledImageSource;
+import org.knu.bll.memento.HistoryFootprint;
+import org.knu.bll.memento.HistoryMode;
 import org.knu.bll.memento.ImageCaretaker;
+import org.knu.bll.memento.ImageCommand;
 import org.knu.bll.memento.ImageMemento;
 import org.knu.bll.memento.ImageOriginator;
+import org.knu.bll.memento.OperationHistory;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
 
 
 public class SingleImagePanel extends JPanel {
+    private static final int PREVIEW_MARGIN = 16;
+    private static final long PREVIEW_MAX_PIXELS = 640 * 1024;
+
     private final JLabel imageLabel;
     private final JScrollPane imageScrollPane;
+    private final ViewportRenderer renderer;
     private double currentScale = 1.0;
     private BufferedImage bufferedImage;
     private JFrame detachedFrame;
 
     private final ImageOriginator originator;
     private final ImageCaretaker caretaker;
+    private final OperationHistory operationHistory;
+    private final WorkingPanel workingPanel;
     private final String absolutePath;
+    private HistoryMode historyMode = HistoryMode.SNAPSHOTS;
+    private boolean restoring;
+    private SwingWorker<BufferedImage, Void> replay;
+    private ProgressTracker replayTask;
+    private int replayTarget;
+    private PreviewProxy previewProxy;
+    private BufferedImage previewImage;
+    private BufferedImage loadingPreview;
+    private int imageWidth;
+    private int imageHeight;
+    private volatile CompletableFuture<BufferedImage> loading;
+    private volatile TiledImageSource tiledSource;
 
     public SingleImagePanel(WorkingPanel workingPanel, BufferedImage bufferedImage, String name, String absolutePath) {
+        this(workingPanel, bufferedImage, null, name, absolutePath);
+    }
+
+    /**
+     * Creates a panel for an image that is still being decoded. The thumbnail is shown stretched to the size of the
+     * full image until {@link #finishLoading(BufferedImage)} is called. Meanwhile {@link #getBufferedImage()} returns
+     * null on the event dispatch thread and waits for the full image on any other thread, so an operation started
+     * during loading is applied to the full image.
+     */
+    public SingleImagePanel(WorkingPanel workingPanel, ImageThumbnail thumbnail, String name, String absolutePath) {
+        this(workingPanel, null, thumbnail, name, absolutePath);
+    }
+
+    private SingleImagePanel(WorkingPanel workingPanel, BufferedImage bufferedImage, ImageThumbnail thumbnail,
+                             String name, String absolutePath) {
+        this.workingPanel = workingPanel;
         originator = new ImageOriginator();
         caretaker = new ImageCaretaker();
+        operationHistory = new OperationHistory();
 
         setLayout(new BorderLayout());
         this.bufferedImage = bufferedImage;
         this.setName(name);
         this.absolutePath = absolutePath;
+        renderer = new ViewportRenderer(this::repaint);
 
         imageLabel = new JLabel() {
             @Override
@@ -41,18 +85,44 @@ public class SingleImagePanel extends JPanel {
                     if (currentScale < 0.05) {
                         currentScale = 0.05;
                     }
-                    g2d.scale(currentScale, currentScale);
-                    g2d.drawImage(icon.getImage(), 0, 0, this);
+                    if (renderer.getSource() != null) {
+                        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                        g2d.drawImage(loadingPreview, 0, 0, (int) Math.round(imageWidth * currentScale),
+                                (int) Math.round(imageHeight * currentScale), this);
+                        Rectangle clip = g2d.getClipBounds();
+                        renderer.paint(g2d, clip != null ? clip : getVisibleRect(), currentScale);
+                    } else if (icon.getImage() == renderer.getImage()) {
+                        Rectangle clip = g2d.getClipBounds();
+                        renderer.paint(g2d, clip != null ? clip : getVisibleRect(), currentScale);
+                        paintPreview(g2d);
+                    } else if (icon.getImage() == loadingPreview) {
+                        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                        g2d.drawImage(loadingPreview, 0, 0, (int) Math.round(imageWidth * currentScale),
+                                (int) Math.round(imageHeight * currentScale), this);
+                    } else {
+                        g2d.scale(currentScale, currentScale);
+                        g2d.drawImage(icon.getImage(), 0, 0, this);
+                    }
                     g2d.dispose();
                 }
             }
         };
 
-        ImageIcon image = new ImageIcon(bufferedImage);
-        imageLabel.setIcon(image);
+        if (thumbnail != null) {
+            loadingPreview = thumbnail.getImage();
+            imageWidth = thumbnail.getSourceWidth();
+            imageHeight = thumbnail.getSourceHeight();
+            loading = new CompletableFuture<>();
+            imageLabel.setIcon(new ImageIcon(loadingPreview));
+        } else {
+            imageWidth = bufferedImage.getWidth();
+            imageHeight = bufferedImage.getHeight();
+            renderer.setImage(bufferedImage);
+            imageLabel.setIcon(new ImageIcon(bufferedImage));
+        }
         imageLabel.setHorizontalAlignment(SwingConstants.CENTER);
         imageLabel.setBorder(BorderFactory.createLineBorder(Color.BLACK));
-        imageLabel.setPreferredSize(new Dimension(image.getIconWidth(), image.getIconHeight()));
+        imageLabel.setPreferredSize(new Dimension(imageWidth, imageHeight));
 
         imageScrollPane = new JScrollPane(imageLabel);
         imageScrollPane.getHorizontalScrollBar().setUnitIncrement(16);
@@ -65,8 +135,10 @@ public class SingleImagePanel extends JPanel {
     public void zoomImage(double scale, Point cursorPosition) {
         ImageIcon imageIcon = (ImageIcon) imageLabel.getIcon();
         if (imageIcon != null) {
-            int imageWidth = (int) (imageIcon.getIconWidth() * currentScale);
-            int imageHeight = (int) (imageIcon.getIconHeight() * currentScale);
+            int iconWidth = getIconWidth(imageIcon);
+            int iconHeight = getIconHeight(imageIcon);
+            int imageWidth = (int) (iconWidth * currentScale);
+            int imageHeight = (int) (iconHeight * currentScale);
 
             JViewport viewport = imageScrollPane.getViewport();
             Point viewPosition = viewport.getViewPosition();
@@ -78,8 +150,8 @@ public class SingleImagePanel extends JPanel {
 
             currentScale *= scale;
 
-            int newImageWidth = (int) (imageIcon.getIconWidth() * currentScale);
-            int newImageHeight = (int) (imageIcon.getIconHeight() * currentScale);
+            int newImageWidth = (int) (iconWidth * currentScale);
+            int newImageHeight = (int) (iconHeight * currentScale);
 
             imageLabel.setPreferredSize(new Dimension(newImageWidth, newImageHeight));
             imageLabel.revalidate();
@@ -95,7 +167,109 @@ public class SingleImagePanel extends JPanel {
         }
     }
 
+    private int getIconWidth(ImageIcon icon) {
+        return icon.getImage() == loadingPreview ? imageWidth : icon.getIconWidth();
+    }
+
+    private int getIconHeight(ImageIcon icon) {
+        return icon.getImage() == loadingPreview ? imageHeight : icon.getIconHeight();
+    }
+
+    /**
+     * Replaces the thumbnail of a loading panel with the decoded full image. Must be called on the event dispatch
+     * thread; operations waiting in {@link #getBufferedImage()} continue with the image.
+     */
+    public void finishLoading(BufferedImage image) {
+        CompletableFuture<BufferedImage> pending = loading;
+        if (pending == null) return;
+        loadingPreview = null;
+        updateImage(image);
+        imageLabel.setPreferredSize(new Dimension((int) (image.getWidth() * currentScale),
+                (int) (image.getHeight() * currentScale)));
+        imageLabel.revalidate();
+        loading = null;
+        pending.complete(image);
+        if (workingPanel.getCurrentImagePanel() == this) {
+            workingPanel.notifyTools();
+        }
+    }
+
+    /**
+     * Ends the loading of a panel whose image is too large for memory. The thumbnail stays as the overview and the
+     * visible part is drawn from the tiles of the source; operations that need the whole image in memory fail.
+     */
+    public void finishLoading(TiledImageSource source) {
+        CompletableFuture<BufferedImage> pending = loading;
+        if (pending == null) return;
+        tiledSource = source;
+        renderer.setSource(source);
+        imageLabel.repaint();
+        loading = null;
+        pending.complete(null);
+        if (workingPanel.getCurrentImagePanel() == this) {
+            workingPanel.notifyTools();
+        }
+    }
+
+    /**
+     * Returns the tiled source of an image that is too large for memory.
+     *
+     * @return The source, or null if the image is in memory.
+     */
+    public TiledImageSource getTiledSource() {
+        return tiledSource;
+    }
+
+    /**
+     * Releases the tiled source of the panel, if any, and removes its histories from the history budget.
+     * Called when the panel is closed.
+     */
+    public void close() {
+        caretaker.close();
+        operationHistory.close();
+        if (tiledSource != null) {
+            renderer.setSource(null);
+            tiledSource.close();
+            tiledSource = null;
+        }
+    }
+
+    /**
+     * Ends the loading of a panel whose image could not be decoded; operations waiting in {@link #getBufferedImage()}
+     * fail with the given cause.
+     */
+    public void failLoading(Exception error) {
+        CompletableFuture<BufferedImage> pending = loading;
+        if (pending == null) return;
+        loading = null;
+        pending.completeExceptionally(error);
+    }
+
+    /**
+     * Waits until the image of a loading panel has been decoded or opened as a tiled source. Returns at once on the
+     * event dispatch thread or when the panel is not loading.
+     *
+     * @return The decoded image if this call waited for one, otherwise null.
+     */
+    public BufferedImage awaitLoading() {
+        CompletableFuture<BufferedImage> pending = loading;
+        if (pending == null || SwingUtilities.isEventDispatchThread()) return null;
+        return pending.join();
+    }
+
+    public boolean isLoading() {
+        return loading != null;
+    }
+
+    /**
+     * Checks whether the full image is decoded and in memory, so {@link #getBufferedImage()} returns it on any thread.
+     */
+    public boolean isImageInMemory() {
+        return loading == null && tiledSource == null;
+    }
+
     public void updateImage(ImageIcon image) {
+        renderer.setImage(image.getImage() instanceof BufferedImage buffered ? buffered : null);
         imageLabel.setIcon(image);
         imageLabel.setText("");
         imageLabel.revalidate();
@@ -107,6 +281,11 @@ public class SingleImagePanel extends JPanel {
     }
 
     public BufferedImage getBufferedImage() {
+        BufferedImage loaded = awaitLoading();
+        if (loaded != null) return loaded;
+        if (tiledSource != null && !SwingUtilities.isEventDispatchThread()) {
+            throw new UnsupportedOperationException("The image is too large to be loaded into memory");
+        }
         return bufferedImage;
     }
 
@@ -136,30 +315,203 @@ public class SingleImagePanel extends JPanel {
         }
     }
 
-    public void undo() {
-        if (caretaker.canUndo()) {
-            originator.setState(getBufferedImage());
-            caretaker.saveToRedo(originator.save());
-            ImageMemento memento = caretaker.undo();
-            if (memento != null) {
-                originator.restore(memento);
-                updateImage(originator.getState());
-            }
+    public void commit(ImageCommand command, BufferedImage output) {
+        if (historyMode == HistoryMode.OPERATION_LOG) {
+            cancelReplay();
+            operationHistory.record(getBufferedImage(), command, output);
+        } else {
+            saveState();
+        }
+        updateImage(output);
+    }
+
+    public void undo(Runnable onRestored) {
+        if (historyMode == HistoryMode.OPERATION_LOG) {
+            replayTo(getPendingPosition() - 1, onRestored);
+            return;
+        }
+        if (restoring) return;
+        ImageMemento memento = caretaker.undo();
+        if (memento != null) {
+            restore(memento, true, onRestored);
+        }
+    }
+
+    public void redo(Runnable onRestored) {
+        if (historyMode == HistoryMode.OPERATION_LOG) {
+            replayTo(getPendingPosition() + 1, onRestored);
+            return;
+        }
+        if (restoring) return;
+        ImageMemento memento = caretaker.redo();
+        if (memento != null) {
+            restore(memento, false, onRestored);
         }
     }
 
-    public void redo() {
-        if (caretaker.canRedo()) {
-            originator.setState(getBufferedImage());
-            caretaker.saveToUndo(originator.save());
-            ImageMemento memento = caretaker.redo();
-            if (memento != null) {
-                originator.restore(memento);
-                updateImage(originator.getState());
+    private void restore(ImageMemento memento, boolean undo, Runnable onRestored) {
+        restoring = true;
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        new SwingWorker<BufferedImage, Void>() {
+            @Override
+            protected BufferedImage doInBackground() {
+                return memento.getState();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    BufferedImage state = get();
+                    originator.setState(getBufferedImage());
+                    if (undo) {
+                        caretaker.saveToRedo(originator.save());
+                    } else {
+                        caretaker.saveToUndo(originator.save());
+                    }
+                    originator.restore(memento, state);
+                    updateImage(state);
+                    onRestored.run();
+                } catch (Exception ex) {
+                    memento.release();
+                    JOptionPane.showMessageDialog(SingleImagePanel.this,
+                            "Error restoring image: " + ex.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                } finally {
+                    restoring = false;
+                    setCursor(Cursor.getDefaultCursor());
+                }
+            }
+        }.execute();
+    }
+
+    private int getPendingPosition() {
+        return replay != null ? replayTarget : operationHistory.getPosition();
+    }
+
+    private void replayTo(int target, Runnable onRestored) {
+        if (target < 0 || target >= operationHistory.getSize()) return;
+        cancelReplay();
+        replayTarget = target;
+        BufferedImage current = getBufferedImage();
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        ProgressTracker task = workingPanel.startTask();
+        replayTask = task;
+        replay = new SwingWorker<>() {
+            @Override
+            protected BufferedImage doInBackground() throws InterruptedException {
+                return operationHistory.reconstruct(target, current, task);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || replay != this) return;
+                replay = null;
+                replayTask = null;
+                try {
+                    BufferedImage state = get();
+                    operationHistory.moveTo(target);
+                    updateImage(state);
+                    onRestored.run();
+                } catch (Exception ex) {
+                    if (!WorkingPanel.isCancellation(ex)) {
+                        JOptionPane.showMessageDialog(SingleImagePanel.this,
+                                "Error restoring image: " + ex.getMessage(),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                } finally {
+                    setCursor(Cursor.getDefaultCursor());
+                    workingPanel.hideProgressBar();
+                }
             }
+        };
+        replay.execute();
+    }
+
+    private void cancelReplay() {
+        if (replay != null) {
+            SwingWorker<BufferedImage, Void> cancelled = replay;
+            replay = null;
+            replayTask.cancel();
+            replayTask = null;
+            cancelled.cancel(true);
+            setCursor(Cursor.getDefaultCursor());
+            workingPanel.hideProgressBar();
         }
     }
 
+    public PreviewProxy createPreviewProxy(PreviewProxy cached) {
+        BufferedImage image = getBufferedImage();
+        if (image == null || renderer.getImage() != image) return null;
+
+        double scale = Math.min(1, currentScale);
+        int margin = (int) Math.ceil(PREVIEW_MARGIN / scale);
+        Rectangle visible = imageLabel.getVisibleRect();
+        int x0 = (int) Math.floor(visible.x / currentScale) - margin;
+        int y0 = (int) Math.floor(visible.y / currentScale) - margin;
+        int x1 = (int) Math.ceil((visible.x + visible.width) / currentScale) + margin;
+        int y1 = (int) Math.ceil((visible.y + visible.height) / currentScale) + margin;
+        Rectangle region = new Rectangle(x0, y0, x1 - x0, y1 - y0)
+                .intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        if (region.isEmpty()) return null;
+        double pixels = region.width * scale * region.height * scale;
+        if (pixels > PREVIEW_MAX_PIXELS) {
+            scale *= Math.sqrt(PREVIEW_MAX_PIXELS / pixels);
+        }
+
+        if (cached != null && cached.matches(image, region, scale)) return cached;
+        return new PreviewProxy(renderer.getPyramid(), region, scale);
+    }
+
+    public void showPreview(PreviewProxy proxy, BufferedImage preview) {
+        previewProxy = proxy;
+        previewImage = preview;
+        imageLabel.repaint();
+    }
+
+    public void clearPreview() {
+        if (previewProxy != null) {
+            previewProxy = null;
+            previewImage = null;
+            imageLabel.repaint();
+        }
+    }
+
+    private void paintPreview(Graphics2D g2d) {
+        if (previewProxy == null || previewProxy.getSource() != bufferedImage) return;
+        Rectangle region = previewProxy.getRegion();
+        int x0 = (int) Math.round(region.x * currentScale);
+        int y0 = (int) Math.round(region.y * currentScale);
+        int x1 = (int) Math.round((region.x + region.width) * currentScale);
+        int y1 = (int) Math.round((region.y + region.height) * currentScale);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(previewImage, x0, y0, x1 - x0, y1 - y0, null);
+    }
+
+    public HistoryMode getHistoryMode() {
+        return historyMode;
+    }
+
+    public void setHistoryMode(HistoryMode historyMode) {
+        if (this.historyMode != historyMode) {
+            clearHistory();
+            this.historyMode = historyMode;
+        }
+    }
+
+    public HistoryFootprint getHistoryFootprint() {
+        if (historyMode == HistoryMode.OPERATION_LOG) {
+            return operationHistory.getFootprint();
+        }
+        return caretaker.getFootprint();
+    }
+
+    public void clearHistory() {
+        cancelReplay();
+        originator.clear();
+        caretaker.clear();
+        operationHistory.clear();
+    }
+
 
     private void updateImage(BufferedImage image) {
         setBufferedImage(image);
@@ -0,0 +1,310 @@
+package org.knu.ui.swing;
+
+import org.knu.bll.buffers.ImagePyramid;
+import org.knu.bll.buffers.TiledImageSource;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The ViewportRenderer class draws a possibly very large image at any zoom level while keeping repaints cheap.
+ * It draws from the {@link ImagePyramid} level closest to the display scale, and only the 256x256 tiles of that
+ * level that intersect the clip. Tiles are cached as images compatible with the display; when zoomed out they are
+ * cached already scaled, so panning only blits cached tiles and a zoom step rescales just the visible ones.
+ * Missing pyramid levels are built on a background thread; until then the nearest finer level is scaled.
+ * <p>
+ * An image that is too large for memory is drawn from a {@link TiledImageSource} instead. The display tiles of the
+ * pyramid level matching the scale are decoded on the background thread, at full resolution through the tile cache
+ * of the source or subsampled directly from the file when zoomed out, and are drawn as soon as they are ready;
+ * missing tiles leave whatever the caller painted underneath visible.
+ */
+public class ViewportRenderer {
+    static final int TILE_SIZE = 256;
+    private static final long DEFAULT_CACHE_BYTES = 64L << 20;
+    private static final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pyramid-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Runnable onLevelReady;
+    private final long cacheBytes;
+    private final LinkedHashMap<Long, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+    private double cachedScale;
+    private volatile ImagePyramid pyramid;
+    private int requestedLevel;
+    private volatile TiledImageSource source;
+    private volatile int sourceLevel;
+    private final Set<Long> pendingTiles = new HashSet<>();
+
+    /**
+     * Constructs a ViewportRenderer with a 64 MB tile cache.
+     *
+     * @param onLevelReady Called on the event dispatch thread when a requested pyramid level has been built.
+     */
+    public ViewportRenderer(Runnable onLevelReady) {
+        this(onLevelReady, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * Constructs a ViewportRenderer.
+     *
+     * @param onLevelReady Called on the event dispatch thread when a requested pyramid level has been built.
+     * @param cacheBytes The memory the cached display tiles may use.
+     * @throws IllegalArgumentException if the cache size is negative.
+     */
+    public ViewportRenderer(Runnable onLevelReady, long cacheBytes) {
+        if (cacheBytes < 0) {
+            throw new IllegalArgumentException("Cache size cannot be negative");
+        }
+        this.onLevelReady = onLevelReady;
+        this.cacheBytes = cacheBytes;
+    }
+
+    /**
+     * Replaces the image and drops the pyramid and the cached tiles of the previous one.
+     *
+     * @param image The image to draw, or null.
+     */
+    public void setImage(BufferedImage image) {
+        if (source == null && pyramid != null && pyramid.getSource() == image) return;
+        source = null;
+        pyramid = image == null ? null : new ImagePyramid(image);
+        requestedLevel = 0;
+        pendingTiles.clear();
+        clearTiles();
+    }
+
+    /**
+     * Replaces the image by a tiled source whose display tiles are decoded on demand.
+     *
+     * @param source The tiled image to draw, or null.
+     */
+    public void setSource(TiledImageSource source) {
+        if (this.source == source && pyramid == null) return;
+        this.source = source;
+        pyramid = null;
+        pendingTiles.clear();
+        clearTiles();
+    }
+
+    /**
+     * Returns the tiled source that is drawn.
+     *
+     * @return The source, or null if an image in memory is drawn.
+     */
+    public TiledImageSource getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the image that is drawn.
+     *
+     * @return The source image, or null.
+     */
+    public BufferedImage getImage() {
+        ImagePyramid current = pyramid;
+        return current == null ? null : current.getSource();
+    }
+
+    ImagePyramid getPyramid() {
+        return pyramid;
+    }
+
+    /**
+     * Draws the part of the scaled image that intersects the clip. Must be called on the event dispatch thread.
+     *
+     * @param g The graphics of the component, untransformed so that the image starts at the origin.
+     * @param clip The region to draw in component coordinates.
+     * @param scale The display scale of the image, 1 for full size.
+     */
+    public void paint(Graphics2D g, Rectangle clip, double scale) {
+        if (clip == null || clip.isEmpty()) return;
+        TiledImageSource tiled = source;
+        if (tiled != null) {
+            paintSource(g, clip, scale, tiled);
+            return;
+        }
+        ImagePyramid current = pyramid;
+        if (current == null) return;
+
+        int wanted = Math.min(ImagePyramid.levelFor(scale), current.getLevelCount() - 1);
+        int level = current.getAvailableLevel(wanted);
+        if (level < wanted) {
+            requestLevel(current, wanted);
+        }
+        BufferedImage levelImage = current.getLevel(level);
+        double levelScale = scale * (1 << level);
+        boolean prescaled = levelScale < 1;
+        if (scale != cachedScale) {
+            clearTiles();
+            cachedScale = scale;
+        }
+
+        int firstX = Math.max(0, (int) Math.floor(clip.x / levelScale) / TILE_SIZE);
+        int firstY = Math.max(0, (int) Math.floor(clip.y / levelScale) / TILE_SIZE);
+        int endX = Math.min(levelImage.getWidth(), (int) Math.ceil((clip.x + clip.width) / levelScale));
+        int endY = Math.min(levelImage.getHeight(), (int) Math.ceil((clip.y + clip.height) / levelScale));
+        for (int ty = firstY; ty * TILE_SIZE < endY; ty++) {
+            for (int tx = firstX; tx * TILE_SIZE < endX; tx++) {
+                int x = tx * TILE_SIZE;
+                int y = ty * TILE_SIZE;
+                int width = Math.min(TILE_SIZE, levelImage.getWidth() - x);
+                int height = Math.min(TILE_SIZE, levelImage.getHeight() - y);
+                int x0 = (int) Math.round(x * levelScale);
+                int y0 = (int) Math.round(y * levelScale);
+                int x1 = (int) Math.round((x + width) * levelScale);
+                int y1 = (int) Math.round((y + height) * levelScale);
+                if (x1 <= x0 || y1 <= y0) continue;
+
+                long key = ((long) level << 48) | ((long) tx << 24) | ty;
+                BufferedImage tile = tiles.get(key);
+                if (prescaled) {
+                    if (tile == null) {
+                        tile = cacheTile(key, g.getDeviceConfiguration(), levelImage,
+                                new Rectangle(x, y, width, height), x1 - x0, y1 - y0);
+                    }
+                    g.drawImage(tile, x0, y0, null);
+                } else {
+                    if (tile == null) {
+                        tile = cacheTile(key, g.getDeviceConfiguration(), levelImage,
+                                new Rectangle(x, y, width, height), width, height);
+                    }
+                    g.drawImage(tile, x0, y0, x1 - x0, y1 - y0, null);
+                }
+            }
+        }
+    }
+
+    private void paintSource(Graphics2D g, Rectangle clip, double scale, TiledImageSource tiled) {
+        int level = Math.min(ImagePyramid.levelFor(scale), levelCount(tiled) - 1);
+        sourceLevel = level;
+        int step = 1 << level;
+        int levelWidth = (tiled.getWidth() + step - 1) / step;
+        int levelHeight = (tiled.getHeight() + step - 1) / step;
+        double levelScale = scale * step;
+
+        int firstX = Math.max(0, (int) Math.floor(clip.x / levelScale) / TILE_SIZE);
+        int firstY = Math.max(0, (int) Math.floor(clip.y / levelScale) / TILE_SIZE);
+        int endX = Math.min(levelWidth, (int) Math.ceil((clip.x + clip.width) / levelScale));
+        int endY = Math.min(levelHeight, (int) Math.ceil((clip.y + clip.height) / levelScale));
+        for (int ty = firstY; ty * TILE_SIZE < endY; ty++) {
+            for (int tx = firstX; tx * TILE_SIZE < endX; tx++) {
+                int x = tx * TILE_SIZE;
+                int y = ty * TILE_SIZE;
+                int x0 = (int) Math.round(x * levelScale);
+                int y0 = (int) Math.round(y * levelScale);
+                int x1 = (int) Math.round(Math.min(x + TILE_SIZE, levelWidth) * levelScale);
+                int y1 = (int) Math.round(Math.min(y + TILE_SIZE, levelHeight) * levelScale);
+                if (x1 <= x0 || y1 <= y0) continue;
+
+                long key = ((long) level << 48) | ((long) tx << 24) | ty;
+                BufferedImage tile = tiles.get(key);
+                if (tile != null) {
+                    g.drawImage(tile, x0, y0, x1 - x0, y1 - y0, null);
+                } else {
+                    requestTile(tiled, key, level, tx, ty);
+                }
+            }
+        }
+    }
+
+    private static int levelCount(TiledImageSource tiled) {
+        int levels = 1;
+        while ((Math.max(tiled.getWidth(), tiled.getHeight()) >> (levels - 1)) > 1) {
+            levels++;
+        }
+        return levels;
+    }
+
+    private void requestTile(TiledImageSource target, long key, int level, int tx, int ty) {
+        if (!pendingTiles.add(key)) return;
+        builder.execute(() -> {
+            BufferedImage tile = null;
+            if (source == target && sourceLevel == level) {
+                int step = 1 << level;
+                int x = tx * TILE_SIZE * step;
+                int y = ty * TILE_SIZE * step;
+                Rectangle region = new Rectangle(x, y, Math.min(TILE_SIZE * step, target.getWidth() - x),
+                        Math.min(TILE_SIZE * step, target.getHeight() - y));
+                try {
+                    tile = step == 1 ? target.read(region).toImage() : target.readSubsampled(region, step);
+                } catch (RuntimeException ignored) {
+                    // the tile stays blank; it is not requested again for this source
+                    return;
+                }
+            }
+            BufferedImage decoded = tile;
+            SwingUtilities.invokeLater(() -> {
+                if (source != target) return;
+                if (decoded == null) {
+                    pendingTiles.remove(key);
+                    return;
+                }
+                putTile(key, decoded);
+                pendingTiles.remove(key);
+                onLevelReady.run();
+            });
+        });
+    }
+
+    private BufferedImage cacheTile(long key, GraphicsConfiguration configuration, BufferedImage levelImage,
+                                    Rectangle region, int width, int height) {
+        int transparency = levelImage.getColorModel().getTransparency();
+        BufferedImage tile = configuration != null
+                ? configuration.createCompatibleImage(width, height, transparency)
+                : new BufferedImage(width, height, transparency == Transparency.OPAQUE
+                ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D tileGraphics = tile.createGraphics();
+        tileGraphics.setComposite(AlphaComposite.Src);
+        if (width != region.width || height != region.height) {
+            tileGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        tileGraphics.drawImage(levelImage, 0, 0, width, height, region.x, region.y,
+                region.x + region.width, region.y + region.height, null);
+        tileGraphics.dispose();
+
+        putTile(key, tile);
+        return tile;
+    }
+
+    private void putTile(long key, BufferedImage tile) {
+        tiles.put(key, tile);
+        cachedBytes += (long) tile.getWidth() * tile.getHeight() * 4;
+        Iterator<Map.Entry<Long, BufferedImage>> eldest = tiles.entrySet().iterator();
+        while (cachedBytes > cacheBytes && tiles.size() > 1) {
+            BufferedImage evicted = eldest.next().getValue();
+            eldest.remove();
+            cachedBytes -= (long) evicted.getWidth() * evicted.getHeight() * 4;
+        }
+    }
+
+    private void clearTiles() {
+        tiles.clear();
+        cachedBytes = 0;
+    }
+
+    private void requestLevel(ImagePyramid target, int level) {
+        if (level <= requestedLevel) return;
+        requestedLevel = level;
+        builder.execute(() -> {
+            if (pyramid != target) return;
+            target.build(level);
+            SwingUtilities.invokeLater(() -> {
+                if (pyramid == target) {
+                    onLevelReady.run();
+                }
+            });
+        });
+    }
+}
@@ -1,28 +1,42 @@
 package org.knu.ui.swing;
 
+import org.knu.bll.ImageThumbnail;
+import org.knu.bll.ProgressTracker;
+import org.knu.bll.memento.HistoryMode;
+import org.knu.bll.memento.ImageCommand;
 import org.knu.ui.tools.Tool;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
 
 public class WorkingPanel extends JPanel {
     private final JTabbedPane tabbedPane;
     private SingleImagePanel activePanel;
     private final JProgressBar progressBar;
+    private final JButton cancelButton;
+    private final JPanel progressPanel;
+    private volatile ProgressTracker currentTask;
     private String title;
     private JFrame parentJframe;
     private Tool[] tools;
+    private HistoryMode historyMode = HistoryMode.SNAPSHOTS;
 
     public WorkingPanel() {
         setLayout(new BorderLayout());
 
         tabbedPane = createTabbedPane();
         progressBar = createProgressBar();
+        cancelButton = createCancelButton();
+        progressPanel = new JPanel(new BorderLayout());
+        progressPanel.add(progressBar, BorderLayout.CENTER);
+        progressPanel.add(cancelButton, BorderLayout.EAST);
+        progressPanel.setVisible(false);
 
         add(tabbedPane, BorderLayout.CENTER);
-        add(progressBar, BorderLayout.SOUTH);
+        add(progressPanel, BorderLayout.SOUTH);
 
     }
 
@@ -57,10 +71,23 @@ public class WorkingPanel extends JPanel {
 
     private JProgressBar createProgressBar() {
         JProgressBar progressBar = new JProgressBar();
-        progressBar.setVisible(false);
+        progressBar.setStringPainted(true);
         return progressBar;
     }
 
+    private JButton createCancelButton() {
+        JButton button = new JButton("Cancel");
+        button.setFocusPainted(false);
+        button.addActionListener(e -> {
+            ProgressTracker task = currentTask;
+            if (task != null) {
+                task.cancel();
+                button.setEnabled(false);
+            }
+        });
+        return button;
+    }
+
     private SingleImagePanel getSelectedPanel() {
         return (SingleImagePanel) tabbedPane.getSelectedComponent();
     }
@@ -68,8 +95,34 @@ public class WorkingPanel extends JPanel {
 
     public void addNewTabImage(BufferedImage image, String fileName, String absolutePath) {
         SingleImagePanel imagePanel = new SingleImagePanel(this, image, fileName, absolutePath);
+        imagePanel.setHistoryMode(historyMode);
+        imagePanel.setFocusable(true);
+        tabbedPane.addTab(fileName, imagePanel);
+    }
+
+    /**
+     * Adds a tab that shows the thumbnail of an image that is still being decoded.
+     *
+     * @return The panel of the new tab, to be completed with {@link SingleImagePanel#finishLoading(BufferedImage)}.
+     */
+    public SingleImagePanel addLoadingTab(ImageThumbnail thumbnail, String fileName, String absolutePath) {
+        SingleImagePanel imagePanel = new SingleImagePanel(this, thumbnail, fileName, absolutePath);
+        imagePanel.setHistoryMode(historyMode);
         imagePanel.setFocusable(true);
         tabbedPane.addTab(fileName, imagePanel);
+        return imagePanel;
+    }
+
+    public void removePanel(SingleImagePanel panel) {
+        panel.clearHistory();
+        panel.close();
+        int index = tabbedPane.indexOfComponent(panel);
+        if (index != -1) {
+            tabbedPane.removeTabAt(index);
+        } else if (panel.getDetachedFrame() != null) {
+            panel.getDetachedFrame().dispose();
+            panel.setDetachedFrame(null);
+        }
     }
 
     public SingleImagePanel getCurrentImagePanel() {
@@ -135,16 +188,75 @@ public class WorkingPanel extends JPanel {
     public void removeActivePanel() {
         int selectedIndex = tabbedPane.getSelectedIndex();
         if (selectedIndex != -1) {
+            SingleImagePanel panel = (SingleImagePanel) tabbedPane.getComponentAt(selectedIndex);
+            panel.clearHistory();
+            panel.close();
             tabbedPane.removeTabAt(selectedIndex);
         }
     }
 
+    public void removeAllPanels() {
+        for (int i = 0; i < tabbedPane.getTabCount(); i++) {
+            SingleImagePanel panel = (SingleImagePanel) tabbedPane.getComponentAt(i);
+            panel.clearHistory();
+            panel.close();
+        }
+        tabbedPane.removeAll();
+    }
+
     public void showProgressBar() {
-        progressBar.setVisible(true);
+        progressPanel.setVisible(true);
     }
 
     public void hideProgressBar() {
-        progressBar.setVisible(false);
+        progressPanel.setVisible(false);
+    }
+
+    /**
+     * Starts tracking a background operation. The returned listener is passed to the operation; the progress bar
+     * shows its state at most every 30 ms together with the estimated remaining time, and the Cancel button next
+     * to it cancels the operation through the listener's token. Can be called from any thread.
+     *
+     * @return The listener of the new operation.
+     */
+    public ProgressTracker startTask() {
+        ProgressTracker task = new ProgressTracker(tracker -> SwingUtilities.invokeLater(() -> showProgress(tracker)));
+        currentTask = task;
+        return task;
+    }
+
+    /**
+     * Checks whether an operation failed because it was cancelled.
+     *
+     * @param error The exception thrown by the operation, possibly wrapped by a SwingWorker.
+     * @return True if the exception or one of its causes is a CancellationException.
+     */
+    public static boolean isCancellation(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CancellationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void showProgress(ProgressTracker task) {
+        if (task != currentTask || task.getCancellationToken().isCancelled()) return;
+        if (!progressPanel.isVisible()) {
+            cancelButton.setEnabled(true);
+            progressPanel.setVisible(true);
+        }
+        progressBar.setMaximum(task.getMaximum());
+        progressBar.setValue((int) Math.min(task.getCompleted(), task.getMaximum()));
+        long eta = task.getEtaMillis();
+        int percent = (int) Math.round(task.getFraction() * 100);
+        progressBar.setString(eta < 0 ? percent + "%" : percent + "%, " + formatEta(eta) + " left");
+    }
+
+    private static String formatEta(long millis) {
+        long seconds = (millis + 999) / 1000;
+        if (seconds < 60) return seconds + " s";
+        return seconds / 60 + " min " + seconds % 60 + " s";
     }
 
     public JProgressBar getProgressBar() {
@@ -157,14 +269,31 @@ public class WorkingPanel extends JPanel {
         notifyTools();
     }
 
-    public void undo() {
-        getCurrentImagePanel().undo();
+    public void commit(ImageCommand command, BufferedImage output) {
+        getCurrentImagePanel().commit(command, output);
         notifyTools();
     }
 
+    public HistoryMode getHistoryMode() {
+        return historyMode;
+    }
+
+    public void setHistoryMode(HistoryMode historyMode) {
+        this.historyMode = historyMode;
+        for (int i = 0; i < tabbedPane.getTabCount(); i++) {
+            ((SingleImagePanel) tabbedPane.getComponentAt(i)).setHistoryMode(historyMode);
+        }
+        if (activePanel != null) {
+            activePanel.setHistoryMode(historyMode);
+        }
+    }
+
+    public void undo() {
+        getCurrentImagePanel().undo(this::notifyTools);
+    }
+
     public void redo() {
-        getCurrentImagePanel().redo();
-        notifyTools();
+        getCurrentImagePanel().redo(this::notifyTools);
     }
 
 
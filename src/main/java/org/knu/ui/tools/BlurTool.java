@@ -1,8 +1,8 @@
 package org.knu.ui.tools;
 
-import org.knu.bll.ProgressListener;
 import org.knu.bll.algorithms.blur.BlurFilter;
 import org.knu.bll.algorithms.blur.GaussBlur;
+import org.knu.bll.memento.ImageCommand;
 import org.knu.ui.swing.WorkingPanel;
 
 import javax.imageio.ImageIO;
@@ -20,6 +20,7 @@ public class BlurTool implements Tool {
     private final WorkingPanel workingPanel;
 
     private final JComboBox<BlurFilter> blurFiltersComboBox;
+    private final LivePreview preview;
 
     public BlurTool(BlurFilter[] blurFilters, WorkingPanel workingPanel) {
         this.workingPanel = workingPanel;
@@ -28,6 +29,8 @@ public class BlurTool implements Tool {
         this.kernel = new JSpinner(new SpinnerNumberModel(5,1,55,2));
         this.sigma = new JSpinner(new SpinnerNumberModel(2.5, 0.1, 150.0, 0.1));
         this.actionListener = e -> applyBlur();
+        this.preview = new LivePreview(workingPanel, this::createCommand);
+        preview.watch(kernel, sigma, blurFiltersComboBox);
     }
 
     @Override
@@ -62,7 +65,12 @@ public class BlurTool implements Tool {
 
         JButton applyButton = createApplyButton();
         panel.add(applyButton);
-        panel.add(Box.createVerticalStrut(40));
+        panel.add(Box.createVerticalStrut(10));
+
+        JCheckBox previewToggle = preview.getToggle();
+        previewToggle.setAlignmentX(Component.CENTER_ALIGNMENT);
+        panel.add(previewToggle);
+        panel.add(Box.createVerticalStrut(30));
 
         JPanel blurMethodPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         blurMethodPanel.add(new JLabel("Blur Method: "));
@@ -107,6 +115,13 @@ public class BlurTool implements Tool {
     }
 
     private void applyBlur() {
+        preview.clear();
+        BlurFilter blur = createBlur(1);
+        int kernelSize = (int) kernel.getValue();
+        if (StreamingTask.runIfTiled(workingPanel, "blur",
+                (source, output, listener) -> blur.applyFilter(source, kernelSize, output, listener))) {
+            return;
+        }
         workingPanel.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
         SwingWorker<BufferedImage, Void> worker = createSwingWorker();
         worker.execute();
@@ -114,33 +129,15 @@ public class BlurTool implements Tool {
 
     private SwingWorker<BufferedImage, Void> createSwingWorker() {
         return new SwingWorker<>() {
+            private ImageCommand command;
+
             @Override
             protected BufferedImage doInBackground() throws Exception {
                 try {
-                    int kernelSize = (int) kernel.getValue();
                     BufferedImage inputImage = workingPanel.getCurrentImagePanel().getBufferedImage();
 
-                    BlurFilter blur = (BlurFilter) blurFiltersComboBox.getSelectedItem();
-                    if (blur instanceof GaussBlur) {
-                        double sigmaValue = (double) sigma.getValue();
-                        ((GaussBlur) blur).setSigma(sigmaValue);
-                    }
-
-                    return blur.applyFilter(inputImage, kernelSize, new ProgressListener() {
-                        @Override
-                        public void onProgressStart(int maximum) {
-                            workingPanel.showProgressBar();
-                            workingPanel.getProgressBar().setMaximum(maximum);
-                            workingPanel.getProgressBar().setValue(0);
-                        }
-
-                        @Override
-                        public void onProgressUpdate() {
-                            workingPanel.getProgressBar().setValue(
-                                    workingPanel.getProgressBar().getValue() + 1
-                            );
-                        }
-                    });
+                    command = createCommand(1);
+                    return command.apply(inputImage, workingPanel.startTask());
                 } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(null, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                 }
@@ -152,14 +149,14 @@ public class BlurTool implements Tool {
                 try {
                     BufferedImage outputImage = get();
                     if (outputImage != null) {
-                        workingPanel.saveState();
-                        workingPanel.getCurrentImagePanel().setBufferedImage(outputImage);
-                        workingPanel.getCurrentImagePanel().updateImage(new ImageIcon(outputImage));
+                        workingPanel.commit(command, outputImage);
                     }
                 } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(workingPanel,
-                            "Error applying filter: " + ex.getMessage(),
-                            "Error", JOptionPane.ERROR_MESSAGE);
+                    if (!WorkingPanel.isCancellation(ex)) {
+                        JOptionPane.showMessageDialog(workingPanel,
+                                "Error applying filter: " + ex.getMessage(),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                    }
                 } finally {
                     workingPanel.setCursor(Cursor.getDefaultCursor());
                     workingPanel.hideProgressBar();
@@ -168,6 +165,20 @@ public class BlurTool implements Tool {
         };
     }
 
+    private ImageCommand createCommand(double scale) {
+        int kernelSize = LivePreview.scaleKernel((int) kernel.getValue(), scale);
+        BlurFilter blur = createBlur(scale);
+
+        return ImageCommand.of(blur + ", kernel " + kernelSize,
+                (image, listener) -> blur.applyFilter(image, kernelSize, listener));
+    }
+
+    private BlurFilter createBlur(double scale) {
+        BlurFilter selectedBlur = (BlurFilter) blurFiltersComboBox.getSelectedItem();
+        double sigmaValue = (double) sigma.getValue() * Math.min(1, scale);
+        return selectedBlur instanceof GaussBlur ? ((GaussBlur) selectedBlur).withSigma(sigmaValue) : selectedBlur;
+    }
+
     @Override
     public void activate() {
         // No default action
@@ -175,11 +186,11 @@ public class BlurTool implements Tool {
 
     @Override
     public void deactivate() {
-        // Cleanup resources if necessary
+        preview.clear();
     }
 
     @Override
     public void onImageFocusChanged() {
-
+        preview.clear();
     }
 }
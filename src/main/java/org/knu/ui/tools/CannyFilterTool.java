@@ -1,11 +1,11 @@
 package org.knu.ui.tools;
 
-import org.knu.bll.ProgressListener;
 import org.knu.bll.algorithms.CannyFilter;
 import org.knu.bll.algorithms.blur.BlurFilter;
 import org.knu.bll.algorithms.blur.GaussBlur;
 import org.knu.bll.algorithms.blur.NoneBlur;
 import org.knu.bll.algorithms.edges.EdgeDetectionOperator;
+import org.knu.bll.memento.ImageCommand;
 import org.knu.ui.swing.WorkingPanel;
 
 import javax.imageio.ImageIO;
@@ -27,6 +27,7 @@ public class CannyFilterTool implements Tool {
 
     private final JComboBox<BlurFilter> blurFiltersComboBox;
     private final JComboBox<EdgeDetectionOperator> edgeDetectionComboBox;
+    private final LivePreview preview;
 
     public CannyFilterTool(CannyFilter filter, BlurFilter[] blurFilters, EdgeDetectionOperator[] edgeDetect, WorkingPanel workingPanel) {
         this.cannyFilter = filter;
@@ -39,6 +40,8 @@ public class CannyFilterTool implements Tool {
         this.kernel = new JSpinner(new SpinnerNumberModel(5, 1, 55, 2));
         this.sigma = new JSpinner(new SpinnerNumberModel(1, 0, 150.0, 0.1));
         this.actionListener = e -> applyCanny();
+        this.preview = new LivePreview(workingPanel, this::createCommand);
+        preview.watch(lowThreshold, highThreshold, kernel, sigma, blurFiltersComboBox, edgeDetectionComboBox);
     }
 
     @Override
@@ -73,7 +76,12 @@ public class CannyFilterTool implements Tool {
 
         JButton applyButton = createApplyButton();
         panel.add(applyButton);
-        panel.add(Box.createVerticalStrut(40));
+        panel.add(Box.createVerticalStrut(10));
+
+        JCheckBox previewToggle = preview.getToggle();
+        previewToggle.setAlignmentX(Component.CENTER_ALIGNMENT);
+        panel.add(previewToggle);
+        panel.add(Box.createVerticalStrut(30));
 
         JPanel blurMethodPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         blurMethodPanel.add(new JLabel("Blur Method: "));
@@ -145,6 +153,16 @@ public class CannyFilterTool implements Tool {
     }
 
     private void applyCanny() {
+        preview.clear();
+        int kernelSize = (int) kernel.getValue();
+        int lth = (int) lowThreshold.getValue();
+        int hth = (int) highThreshold.getValue();
+        BlurFilter blur = createBlur(1);
+        EdgeDetectionOperator edge = (EdgeDetectionOperator) edgeDetectionComboBox.getSelectedItem();
+        if (StreamingTask.runIfTiled(workingPanel, "canny", (source, output, listener) ->
+                cannyFilter.applyFilter(source, lth, hth, blur, kernelSize, edge, output, listener))) {
+            return;
+        }
         workingPanel.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
         SwingWorker<BufferedImage, Void> worker = createSwingWorker();
         worker.execute();
@@ -152,36 +170,15 @@ public class CannyFilterTool implements Tool {
 
     private SwingWorker<BufferedImage, Void> createSwingWorker() {
         return new SwingWorker<>() {
+            private ImageCommand command;
+
             @Override
             protected BufferedImage doInBackground() throws Exception {
                 try {
-                    int kernelSize = (int) kernel.getValue();
-                    double sigmaValue = (double) sigma.getValue();
-                    int lth = (int) lowThreshold.getValue();
-                    int hth = (int) highThreshold.getValue();
-                    BlurFilter blur = (BlurFilter) blurFiltersComboBox.getSelectedItem();
-                    EdgeDetectionOperator edge = (EdgeDetectionOperator) edgeDetectionComboBox.getSelectedItem();
-
-                    if (blur instanceof GaussBlur)
-                        ((GaussBlur) blur).setSigma(sigmaValue);
-
                     BufferedImage inputImage = workingPanel.getCurrentImagePanel().getBufferedImage();
 
-                    return cannyFilter.applyFilter(inputImage, lth, hth, blur, kernelSize,edge , new ProgressListener() {
-                        @Override
-                        public void onProgressStart(int maximum) {
-                            workingPanel.showProgressBar();
-                            workingPanel.getProgressBar().setMaximum(maximum);
-                            workingPanel.getProgressBar().setValue(0);
-                        }
-
-                        @Override
-                        public void onProgressUpdate() {
-                            workingPanel.getProgressBar().setValue(
-                                    workingPanel.getProgressBar().getValue() + 1
-                            );
-                        }
-                    });
+                    command = createCommand(1);
+                    return command.apply(inputImage, workingPanel.startTask());
                 } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(null, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                 }
@@ -193,14 +190,14 @@ public class CannyFilterTool implements Tool {
                 try {
                     BufferedImage outputImage = get();
                     if (outputImage != null) {
-                        workingPanel.saveState();
-                        workingPanel.getCurrentImagePanel().setBufferedImage(outputImage);
-                        workingPanel.getCurrentImagePanel().updateImage(new ImageIcon(outputImage));
+                        workingPanel.commit(command, outputImage);
                     }
                 } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(workingPanel,
-                            "Error applying filter: " + ex.getMessage(),
-                            "Error", JOptionPane.ERROR_MESSAGE);
+                    if (!WorkingPanel.isCancellation(ex)) {
+                        JOptionPane.showMessageDialog(workingPanel,
+                                "Error applying filter: " + ex.getMessage(),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                    }
                 } finally {
                     workingPanel.setCursor(Cursor.getDefaultCursor());
                     workingPanel.hideProgressBar();
@@ -209,6 +206,23 @@ public class CannyFilterTool implements Tool {
         };
     }
 
+    private ImageCommand createCommand(double scale) {
+        int kernelSize = LivePreview.scaleKernel((int) kernel.getValue(), scale);
+        int lth = (int) lowThreshold.getValue();
+        int hth = (int) highThreshold.getValue();
+        BlurFilter blur = createBlur(scale);
+        EdgeDetectionOperator edge = (EdgeDetectionOperator) edgeDetectionComboBox.getSelectedItem();
+
+        return ImageCommand.of("Canny " + lth + "-" + hth + ", " + blur + ", " + edge,
+                (image, listener) -> cannyFilter.applyFilter(image, lth, hth, blur, kernelSize, edge, listener));
+    }
+
+    private BlurFilter createBlur(double scale) {
+        BlurFilter selectedBlur = (BlurFilter) blurFiltersComboBox.getSelectedItem();
+        double sigmaValue = (double) sigma.getValue() * Math.min(1, scale);
+        return selectedBlur instanceof GaussBlur ? ((GaussBlur) selectedBlur).withSigma(sigmaValue) : selectedBlur;
+    }
+
     @Override
     public void activate() {
         // No default action
@@ -216,11 +230,11 @@ public class CannyFilterTool implements Tool {
 
     @Override
     public void deactivate() {
-        // Cleanup resources if necessary
+        preview.clear();
     }
 
     @Override
     public void onImageFocusChanged() {
-
+        preview.clear();
     }
 }
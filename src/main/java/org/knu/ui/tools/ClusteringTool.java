@@ -1,8 +1,11 @@
 package org.knu.ui.tools;
 
-import org.knu.bll.ProgressListener;
 import org.knu.bll.algorithms.clustering.Cluster;
 import org.knu.bll.algorithms.clustering.KMeansCluster;
+import org.knu.bll.algorithms.clustering.MiniBatchKMeansCluster;
+import org.knu.bll.algorithms.clustering.OtsuThresholding;
+import org.knu.bll.algorithms.clustering.QuantizerCluster;
+import org.knu.bll.memento.ImageCommand;
 import org.knu.ui.swing.WorkingPanel;
 
 import javax.imageio.ImageIO;
@@ -19,6 +22,7 @@ public class ClusteringTool implements Tool {
     private final WorkingPanel workingPanel;
 
     private final JComboBox<Cluster> clusterJComboBox;
+    private final LivePreview preview;
 
     public ClusteringTool(Cluster[] blurFilters, WorkingPanel workingPanel) {
         this.workingPanel = workingPanel;
@@ -26,6 +30,8 @@ public class ClusteringTool implements Tool {
 
         this.kMeansSpinner = new JSpinner(new SpinnerNumberModel(3,1,55,1));
         this.actionListener = e -> applyBlur();
+        this.preview = new LivePreview(workingPanel, this::createCommand);
+        preview.watch(kMeansSpinner, clusterJComboBox);
     }
 
     @Override
@@ -60,7 +66,12 @@ public class ClusteringTool implements Tool {
 
         JButton applyButton = createApplyButton();
         panel.add(applyButton);
-        panel.add(Box.createVerticalStrut(40));
+        panel.add(Box.createVerticalStrut(10));
+
+        JCheckBox previewToggle = preview.getToggle();
+        previewToggle.setAlignmentX(Component.CENTER_ALIGNMENT);
+        panel.add(previewToggle);
+        panel.add(Box.createVerticalStrut(30));
 
         JPanel blurMethodPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         blurMethodPanel.add(new JLabel("Cluster Method: "));
@@ -83,7 +94,9 @@ public class ClusteringTool implements Tool {
         panel.add(Box.createVerticalStrut(15));
 
         clusterJComboBox.addActionListener(e -> {
-            if (clusterJComboBox.getSelectedItem() instanceof KMeansCluster) {
+            Object selected = clusterJComboBox.getSelectedItem();
+            if (selected instanceof KMeansCluster || selected instanceof MiniBatchKMeansCluster
+                    || selected instanceof QuantizerCluster) {
                 kMeansTextPanel.setVisible(true);
             } else {
                 kMeansTextPanel.setVisible(false);
@@ -103,6 +116,11 @@ public class ClusteringTool implements Tool {
     }
 
     private void applyBlur() {
+        preview.clear();
+        StreamingTask.Operation streaming = createStreamingOperation();
+        if (streaming != null && StreamingTask.runIfTiled(workingPanel, "clusters", streaming)) {
+            return;
+        }
         workingPanel.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
         SwingWorker<BufferedImage, Void> worker = createSwingWorker();
         worker.execute();
@@ -110,32 +128,15 @@ public class ClusteringTool implements Tool {
 
     private SwingWorker<BufferedImage, Void> createSwingWorker() {
         return new SwingWorker<>() {
+            private ImageCommand command;
+
             @Override
             protected BufferedImage doInBackground() throws Exception {
                 try {
                     BufferedImage inputImage = workingPanel.getCurrentImagePanel().getBufferedImage();
 
-                    Cluster cluster = (Cluster) clusterJComboBox.getSelectedItem();
-                    if (cluster instanceof KMeansCluster) {
-                        int kValue = (int) kMeansSpinner.getValue();
-                        ((KMeansCluster) cluster).setK(kValue);
-                    }
-
-                    return cluster.applyCluster(inputImage, new ProgressListener() {
-                        @Override
-                        public void onProgressStart(int maximum) {
-                            workingPanel.showProgressBar();
-                            workingPanel.getProgressBar().setMaximum(maximum);
-                            workingPanel.getProgressBar().setValue(0);
-                        }
-
-                        @Override
-                        public void onProgressUpdate() {
-                            workingPanel.getProgressBar().setValue(
-                                    workingPanel.getProgressBar().getValue() + 1
-                            );
-                        }
-                    });
+                    command = createCommand(1);
+                    return command.apply(inputImage, workingPanel.startTask());
                 } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(null, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                 }
@@ -147,14 +148,14 @@ public class ClusteringTool implements Tool {
                 try {
                     BufferedImage outputImage = get();
                     if (outputImage != null) {
-                        workingPanel.saveState();
-                        workingPanel.getCurrentImagePanel().setBufferedImage(outputImage);
-                        workingPanel.getCurrentImagePanel().updateImage(new ImageIcon(outputImage));
+                        workingPanel.commit(command, outputImage);
                     }
                 } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(workingPanel,
-                            "Error applying filter: " + ex.getMessage(),
-                            "Error", JOptionPane.ERROR_MESSAGE);
+                    if (!WorkingPanel.isCancellation(ex)) {
+                        JOptionPane.showMessageDialog(workingPanel,
+                                "Error applying filter: " + ex.getMessage(),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                    }
                 } finally {
                     workingPanel.setCursor(Cursor.getDefaultCursor());
                     workingPanel.hideProgressBar();
@@ -163,6 +164,51 @@ public class ClusteringTool implements Tool {
         };
     }
 
+    private StreamingTask.Operation createStreamingOperation() {
+        Cluster cluster = (Cluster) clusterJComboBox.getSelectedItem();
+        int kValue = (int) kMeansSpinner.getValue();
+
+        if (cluster instanceof KMeansCluster) {
+            KMeansCluster kMeans = (KMeansCluster) cluster;
+            return (source, output, listener) -> kMeans.applyCluster(source, kValue, output, listener);
+        }
+        if (cluster instanceof MiniBatchKMeansCluster) {
+            MiniBatchKMeansCluster miniBatch = (MiniBatchKMeansCluster) cluster;
+            return (source, output, listener) -> miniBatch.applyCluster(source, kValue, output, listener);
+        }
+        if (cluster instanceof QuantizerCluster) {
+            QuantizerCluster quantizer = (QuantizerCluster) cluster;
+            return (source, output, listener) -> quantizer.applyCluster(source, kValue, output, listener);
+        }
+        if (cluster instanceof OtsuThresholding) {
+            OtsuThresholding otsu = (OtsuThresholding) cluster;
+            return otsu::applyCluster;
+        }
+        return null;
+    }
+
+    private ImageCommand createCommand(double scale) {
+        Cluster cluster = (Cluster) clusterJComboBox.getSelectedItem();
+        int kValue = (int) kMeansSpinner.getValue();
+
+        if (cluster instanceof KMeansCluster) {
+            KMeansCluster kMeans = (KMeansCluster) cluster;
+            return ImageCommand.nonDeterministic(cluster + ", k " + kValue,
+                    (image, listener) -> kMeans.applyCluster(image, kValue, listener));
+        }
+        if (cluster instanceof MiniBatchKMeansCluster) {
+            MiniBatchKMeansCluster miniBatch = (MiniBatchKMeansCluster) cluster;
+            return ImageCommand.nonDeterministic(cluster + ", k " + kValue,
+                    (image, listener) -> miniBatch.applyCluster(image, kValue, listener));
+        }
+        if (cluster instanceof QuantizerCluster) {
+            QuantizerCluster quantizer = (QuantizerCluster) cluster;
+            return ImageCommand.of(cluster + ", k " + kValue,
+                    (image, listener) -> quantizer.applyCluster(image, kValue, listener));
+        }
+        return ImageCommand.of(String.valueOf(cluster), cluster::applyCluster);
+    }
+
     @Override
     public void activate() {
         // No default action
@@ -170,11 +216,11 @@ public class ClusteringTool implements Tool {
 
     @Override
     public void deactivate() {
-        // Cleanup resources if necessary
+        preview.clear();
     }
 
     @Override
     public void onImageFocusChanged() {
-
+        preview.clear();
     }
 }
@@ -1,7 +1,7 @@
 package org.knu.ui.tools;
 
-import org.knu.bll.ProgressListener;
 import org.knu.bll.algorithms.edges.EdgeDetectionOperator;
+import org.knu.bll.memento.ImageCommand;
 import org.knu.ui.swing.WorkingPanel;
 
 import javax.imageio.ImageIO;
@@ -76,6 +76,11 @@ public class EdgeDetectorOperatorTool implements Tool {
 
     private ActionListener createListener() {
         return e -> {
+            EdgeDetectionOperator detector = (EdgeDetectionOperator) edgeDetectionOperatorJComboBox.getSelectedItem();
+            if (StreamingTask.runIfTiled(workingPanel, String.valueOf(detector).toLowerCase(),
+                    (source, output, listener) -> detector.applyOperator(source, output, listener))) {
+                return;
+            }
             workingPanel.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
             SwingWorker<BufferedImage, Void> worker = createSwingWorker();
             worker.execute();
@@ -84,25 +89,14 @@ public class EdgeDetectorOperatorTool implements Tool {
 
     private SwingWorker<BufferedImage, Void> createSwingWorker() {
         return new SwingWorker<>() {
+            private ImageCommand command;
+
             @Override
             protected BufferedImage doInBackground() throws Exception {
                 BufferedImage inputImage = workingPanel.getCurrentImagePanel().getBufferedImage();
                 EdgeDetectionOperator detector = (EdgeDetectionOperator) edgeDetectionOperatorJComboBox.getSelectedItem();
-                return detector.applyOperator(inputImage, new ProgressListener() {
-                    @Override
-                    public void onProgressStart(int maximum) {
-                        workingPanel.showProgressBar();
-                        workingPanel.getProgressBar().setMaximum(maximum);
-                        workingPanel.getProgressBar().setValue(0);
-                    }
-
-                    @Override
-                    public void onProgressUpdate() {
-                        workingPanel.getProgressBar().setValue(
-                                workingPanel.getProgressBar().getValue() + 1
-                        );
-                    }
-                });
+                command = ImageCommand.of(String.valueOf(detector), detector::applyOperator);
+                return command.apply(inputImage, workingPanel.startTask());
             }
 
             @Override
@@ -110,14 +104,14 @@ public class EdgeDetectorOperatorTool implements Tool {
                 try {
                     BufferedImage outputImage = get();
                     if (outputImage != null) {
-                        workingPanel.saveState();
-                        workingPanel.getCurrentImagePanel().setBufferedImage(outputImage);
-                        workingPanel.getCurrentImagePanel().updateImage(new ImageIcon(outputImage));
+                        workingPanel.commit(command, outputImage);
                     }
                 } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(workingPanel,
-                            "Error applying: " + ex.getMessage(),
-                            "Error", JOptionPane.ERROR_MESSAGE);
+                    if (!WorkingPanel.isCancellation(ex)) {
+                        JOptionPane.showMessageDialog(workingPanel,
+                                "Error applying: " + ex.getMessage(),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                    }
                 } finally {
                     workingPanel.setCursor(Cursor.getDefaultCursor());
                     workingPanel.hideProgressBar();
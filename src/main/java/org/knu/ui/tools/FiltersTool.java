@@ -2,6 +2,8 @@ package org.knu.ui.tools;
 
 import org.knu.bll.algorithms.colors.ColorFilter;
 import org.knu.bll.algorithms.colors.GrayColorFilter;
+import org.knu.bll.memento.ImageCommand;
+import org.knu.ui.swing.SingleImagePanel;
 import org.knu.ui.swing.WorkingPanel;
 
 import javax.imageio.ImageIO;
@@ -16,6 +18,7 @@ public class FiltersTool implements Tool {
     private final WorkingPanel workingPanel;
     private final ColorFilter[] colorFilters;
     private final JComboBox<ColorFilter> comboBox;
+    private JButton applyButton;
 
     public FiltersTool(WorkingPanel workingPanel) {
         this.workingPanel = workingPanel;
@@ -57,7 +60,8 @@ public class FiltersTool implements Tool {
         panel.add(comboBox);
 
         panel.add(Box.createVerticalStrut(15));
-        JButton applyButton = createApplyButton();
+        applyButton = createApplyButton();
+        updateApplyButton();
         panel.add(applyButton);
         panel.add(Box.createVerticalStrut(40));
 
@@ -77,10 +81,16 @@ public class FiltersTool implements Tool {
 
     private ActionListener createListener() {
         return e -> {
-            BufferedImage outputImage = ((ColorFilter) comboBox.getSelectedItem()).applyColorFilter(workingPanel.getCurrentImagePanel().getBufferedImage());
-            workingPanel.saveState();
-            workingPanel.getCurrentImagePanel().setBufferedImage(outputImage);
-            workingPanel.getCurrentImagePanel().updateImage(new ImageIcon(outputImage));
+            SingleImagePanel panel = workingPanel.getCurrentImagePanel();
+            if (panel == null || !panel.isImageInMemory()) return;
+            ColorFilter filter = (ColorFilter) comboBox.getSelectedItem();
+            ImageCommand command = ImageCommand.of(String.valueOf(filter), (image, listener) -> filter.applyColorFilter(image));
+            try {
+                BufferedImage outputImage = command.apply(panel.getBufferedImage(), null);
+                workingPanel.commit(command, outputImage);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
         };
     }
 
@@ -97,7 +107,13 @@ public class FiltersTool implements Tool {
 
     @Override
     public void onImageFocusChanged() {
+        updateApplyButton();
+    }
 
+    private void updateApplyButton() {
+        if (applyButton == null) return;
+        SingleImagePanel panel = workingPanel.getCurrentImagePanel();
+        applyButton.setEnabled(panel != null && panel.isImageInMemory());
     }
 
 
@@ -1,7 +1,7 @@
 package org.knu.ui.tools;
 
-import org.knu.bll.ProgressListener;
 import org.knu.bll.algorithms.histograms.HistogramEqualization;
+import org.knu.bll.memento.ImageCommand;
 import org.knu.ui.swing.WorkingPanel;
 
 import javax.imageio.ImageIO;
@@ -23,6 +23,8 @@ public class HistogramEqualizerTool implements Tool {
     private final  JSpinner blockSize;
     private final  JSpinner clipLimit;
     private final  JSpinner cdfBlur;
+    private final LivePreview preview;
+    private boolean previewCLAHE;
 
     public HistogramEqualizerTool(HistogramEqualization equalizer,
                                   WorkingPanel workingPanel) {
@@ -37,6 +39,21 @@ public class HistogramEqualizerTool implements Tool {
         greenChannelCheckbox = new JCheckBox("Green", true);
         blueChanelCheckbox = new JCheckBox("Blue", true);
         grayChannelCheckbox = new JCheckBox("Gray", true);
+
+        preview = new LivePreview(workingPanel, scale -> previewCLAHE
+                ? createCLAHECommand(scale) : createEqualizationCommand());
+        for (JCheckBox checkBox : new JCheckBox[]{redChannelCheckbox, greenChannelCheckbox, blueChanelCheckbox}) {
+            checkBox.addActionListener(e -> {
+                previewCLAHE = false;
+                preview.settingsChanged();
+            });
+        }
+        for (JSpinner spinner : new JSpinner[]{blockSize, clipLimit, cdfBlur}) {
+            spinner.addChangeListener(e -> {
+                previewCLAHE = true;
+                preview.settingsChanged();
+            });
+        }
     }
 
     @Override
@@ -71,10 +88,12 @@ public class HistogramEqualizerTool implements Tool {
 
     @Override
     public void deactivate() {
+        preview.clear();
     }
 
     @Override
     public void onImageFocusChanged() {
+        preview.clear();
     }
 
     public JComponent createUI() {
@@ -102,6 +121,11 @@ public class HistogramEqualizerTool implements Tool {
         gbc2.gridy++;
         addLabeledComponent(checkBoxPanel, "Apply:", applyButton, gbc2);
 
+        JCheckBox previewToggle = preview.getToggle();
+        previewToggle.setAlignmentX(Component.CENTER_ALIGNMENT);
+        controlPanel.add(previewToggle);
+        controlPanel.add(Box.createVerticalStrut(10));
+
         controlPanel.add(checkBoxPanel);
 
         controlPanel.add(Box.createVerticalStrut(30));
@@ -139,7 +163,38 @@ public class HistogramEqualizerTool implements Tool {
         panel.add(component, gbc);
     }
 
+    private boolean[] getChannelsToEqualize() {
+        return new boolean[]{
+                redChannelCheckbox.isSelected(),
+                greenChannelCheckbox.isSelected(),
+                blueChanelCheckbox.isSelected(),
+                grayChannelCheckbox.isSelected()
+        };
+    }
+
+    private ImageCommand createEqualizationCommand() {
+        boolean[] channelsToEqualize = getChannelsToEqualize();
+
+        return ImageCommand.of("Histogram equalization", (image, listener) ->
+                equalizer.histogramEqualization(image, channelsToEqualize, listener));
+    }
+
+    private ImageCommand createCLAHECommand(double scale) {
+        int lt = LivePreview.scaleLength((int) blockSize.getValue(), scale);
+        int ht = (int) clipLimit.getValue();
+        int cdfBlurValue = (int) cdfBlur.getValue();
+
+        return ImageCommand.of("CLAHE " + lt + ", clip " + ht, (image, listener) ->
+                equalizer.applyCLAHE(image, lt, ht, cdfBlurValue, listener));
+    }
+
     private void applyHistogram() {
+        preview.clear();
+        boolean[] channelsToEqualize = getChannelsToEqualize();
+        if (StreamingTask.runIfTiled(workingPanel, "equalized", (source, output, listener) ->
+                equalizer.histogramEqualization(source, channelsToEqualize, output, listener))) {
+            return;
+        }
         workingPanel.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
         SwingWorker<BufferedImage, Void> worker = createSwingWorker_applyHistogram();
         worker.execute();
@@ -147,27 +202,15 @@ public class HistogramEqualizerTool implements Tool {
 
     private SwingWorker<BufferedImage, Void> createSwingWorker_applyHistogram() {
         return new SwingWorker<>() {
+            private ImageCommand command;
+
             @Override
             protected BufferedImage doInBackground() throws Exception {
                 try {
-                    boolean[] channelsToEqualize = new boolean[]{
-                            redChannelCheckbox.isSelected(),
-                            greenChannelCheckbox.isSelected(),
-                            blueChanelCheckbox.isSelected(),
-                            grayChannelCheckbox.isSelected()
-                    };
-
                     BufferedImage inputImage = workingPanel.getCurrentImagePanel().getBufferedImage();
 
-                    return equalizer.histogramEqualization(inputImage, channelsToEqualize, new ProgressListener() {
-                        @Override
-                        public void onProgressStart(int maximum) {
-                        }
-
-                        @Override
-                        public void onProgressUpdate() {
-                        }
-                    });
+                    command = createEqualizationCommand();
+                    return command.apply(inputImage, workingPanel.startTask());
                 } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(null, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                 }
@@ -179,14 +222,14 @@ public class HistogramEqualizerTool implements Tool {
                 try {
                     BufferedImage outputImage = get();
                     if (outputImage != null) {
-                        workingPanel.saveState();
-                        workingPanel.getCurrentImagePanel().setBufferedImage(outputImage);
-                        workingPanel.getCurrentImagePanel().updateImage(new ImageIcon(outputImage));
+                        workingPanel.commit(command, outputImage);
                     }
                 } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(workingPanel,
-                            "Error applying filter: " + ex.getMessage(),
-                            "Error", JOptionPane.ERROR_MESSAGE);
+                    if (!WorkingPanel.isCancellation(ex)) {
+                        JOptionPane.showMessageDialog(workingPanel,
+                                "Error applying filter: " + ex.getMessage(),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                    }
                 } finally {
                     workingPanel.setCursor(Cursor.getDefaultCursor());
                     workingPanel.hideProgressBar();
@@ -196,6 +239,7 @@ public class HistogramEqualizerTool implements Tool {
     }
 
     private void applyCLAHEHistogram() {
+        preview.clear();
         workingPanel.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
         SwingWorker<BufferedImage, Void> worker = createSwingWorker_applyCLAHEHistogram();
         worker.execute();
@@ -203,23 +247,14 @@ public class HistogramEqualizerTool implements Tool {
 
     private SwingWorker<BufferedImage, Void> createSwingWorker_applyCLAHEHistogram() {
         return new SwingWorker<>() {
+            private ImageCommand command;
+
             @Override
             protected BufferedImage doInBackground() throws Exception {
                 try {
-                    int lt = (int) blockSize.getValue();
-                    int ht = (int) clipLimit.getValue();
-                    int cdfBlurValue = (int) cdfBlur.getValue();
-
                     BufferedImage inputImage = workingPanel.getCurrentImagePanel().getBufferedImage();
-                    return equalizer.applyCLAHE(inputImage, lt, ht, cdfBlurValue, new ProgressListener() {
-                        @Override
-                        public void onProgressStart(int maximum) {
-                        }
-
-                        @Override
-                        public void onProgressUpdate() {
-                        }
-                    });
+                    command = createCLAHECommand(1);
+                    return command.apply(inputImage, workingPanel.startTask());
                 } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(null, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                 }
@@ -231,14 +266,14 @@ public class HistogramEqualizerTool implements Tool {
                 try {
                     BufferedImage outputImage = get();
                     if (outputImage != null) {
-                        workingPanel.saveState();
-                        workingPanel.getCurrentImagePanel().setBufferedImage(outputImage);
-                        workingPanel.getCurrentImagePanel().updateImage(new ImageIcon(outputImage));
+                        workingPanel.commit(command, outputImage);
                     }
                 } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(workingPanel,
-                            "Error applying filter: " + ex.getMessage(),
-                            "Error", JOptionPane.ERROR_MESSAGE);
+                    if (!WorkingPanel.isCancellation(ex)) {
+                        JOptionPane.showMessageDialog(workingPanel,
+                                "Error applying filter: " + ex.getMessage(),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                    }
                 } finally {
                     workingPanel.setCursor(Cursor.getDefaultCursor());
                     workingPanel.hideProgressBar();
@@ -0,0 +1,149 @@
+package org.knu.ui.tools;
+
+import org.knu.bll.ProgressTracker;
+import org.knu.bll.memento.ImageCommand;
+import org.knu.ui.swing.PreviewProxy;
+import org.knu.ui.swing.SingleImagePanel;
+import org.knu.ui.swing.WorkingPanel;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.util.function.DoubleFunction;
+
+/**
+ * The LivePreview class shows the effect of a tool's current settings while they are being changed, without
+ * touching the image or its history. The command built from the settings runs on a {@link PreviewProxy} of the
+ * visible part of the image instead of the full image, so a run takes about as long as processing the viewport.
+ * The command factory receives the proxy scale so that sizes given in pixels, such as kernel sizes, can be scaled
+ * to look the same on the proxy as on the full image.
+ * <p>
+ * Changes are debounced, and at most one preview runs at a time: settings changed during a run are coalesced into
+ * a single follow-up run with the latest values, so stale settings never queue up. A change of the settings also
+ * cancels the running preview through its cancellation token, so the operator stops within a row instead of
+ * finishing a result that is already stale. Results that arrive after the preview was cleared, for example by
+ * Apply, are discarded.
+ */
+class LivePreview {
+    private static final int DEBOUNCE_MILLIS = 30;
+    private final WorkingPanel workingPanel;
+    private final DoubleFunction<ImageCommand> commandFactory;
+    private final JCheckBox toggle;
+    private final Timer debounce;
+    private SwingWorker<BufferedImage, Void> running;
+    private ProgressTracker runningTask;
+    private boolean pending;
+    private int generation;
+    private PreviewProxy proxy;
+    private SingleImagePanel shownOn;
+
+    LivePreview(WorkingPanel workingPanel, DoubleFunction<ImageCommand> commandFactory) {
+        this.workingPanel = workingPanel;
+        this.commandFactory = commandFactory;
+        this.toggle = new JCheckBox("Live preview");
+        this.debounce = new Timer(DEBOUNCE_MILLIS, e -> run());
+        debounce.setRepeats(false);
+        toggle.addActionListener(e -> {
+            if (toggle.isSelected()) {
+                settingsChanged();
+            } else {
+                clear();
+            }
+        });
+    }
+
+    JCheckBox getToggle() {
+        return toggle;
+    }
+
+    static int scaleKernel(int size, double scale) {
+        if (scale >= 1) return size;
+        return Math.max(1, (int) Math.round(size * scale) | 1);
+    }
+
+    static int scaleLength(int length, double scale) {
+        if (scale >= 1 || length <= 0) return length;
+        return Math.max(1, (int) Math.round(length * scale));
+    }
+
+    void watch(JComponent... controls) {
+        for (JComponent control : controls) {
+            if (control instanceof JSpinner spinner) {
+                spinner.addChangeListener(e -> settingsChanged());
+            } else if (control instanceof JComboBox<?> comboBox) {
+                comboBox.addActionListener(e -> settingsChanged());
+            } else if (control instanceof AbstractButton button) {
+                button.addActionListener(e -> settingsChanged());
+            }
+        }
+    }
+
+    void settingsChanged() {
+        if (toggle.isSelected()) {
+            cancelRunning();
+            debounce.restart();
+        }
+    }
+
+    void clear() {
+        debounce.stop();
+        pending = false;
+        generation++;
+        cancelRunning();
+        if (shownOn != null) {
+            shownOn.clearPreview();
+            shownOn = null;
+        }
+    }
+
+    private void run() {
+        if (running != null) {
+            pending = true;
+            return;
+        }
+        SingleImagePanel panel = workingPanel.getCurrentImagePanel();
+        if (panel == null || !toggle.isSelected()) return;
+        PreviewProxy request = panel.createPreviewProxy(proxy);
+        if (request == null) return;
+
+        ImageCommand command = commandFactory.apply(request.getScale());
+        int runGeneration = generation;
+        ProgressTracker task = new ProgressTracker(null);
+        runningTask = task;
+        running = new SwingWorker<>() {
+            @Override
+            protected BufferedImage doInBackground() throws Exception {
+                return command.apply(request.getImage(), task);
+            }
+
+            @Override
+            protected void done() {
+                running = null;
+                runningTask = null;
+                proxy = request;
+                try {
+                    BufferedImage preview = get();
+                    if (runGeneration == generation && toggle.isSelected() && preview != null) {
+                        if (shownOn != null && shownOn != panel) {
+                            shownOn.clearPreview();
+                        }
+                        panel.showPreview(request, preview);
+                        shownOn = panel;
+                    }
+                } catch (Exception ex) {
+                    // A cancelled run or a setting the operator rejects leaves the previous preview in place
+                }
+                if (pending) {
+                    pending = false;
+                    run();
+                }
+            }
+        };
+        running.execute();
+    }
+
+    private void cancelRunning() {
+        if (runningTask != null) {
+            runningTask.cancel();
+        }
+    }
+}
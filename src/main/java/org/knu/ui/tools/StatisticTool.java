@@ -2,7 +2,9 @@
 package org.knu.ui.tools;
 
 import org.knu.bll.algorithms.ImageStatisticsCalculator;
+import org.knu.bll.buffers.TiledImageSource;
 import org.knu.bll.helpers.ImageHelper;
+import org.knu.ui.swing.SingleImagePanel;
 import org.knu.ui.swing.WorkingPanel;
 
 import javax.imageio.ImageIO;
@@ -199,7 +201,13 @@ public class StatisticTool implements Tool {
                 @Override
                 protected int[][] doInBackground() throws Exception {
                     int numBins = binSlider.getValue();
-                    return ImageHelper.calculateCountIntensities(workingPanel.getCurrentImagePanel().getBufferedImage(), numBins);
+                    SingleImagePanel panel = workingPanel.getCurrentImagePanel();
+                    panel.awaitLoading();
+                    TiledImageSource source = panel.getTiledSource();
+                    if (source != null) {
+                        return ImageHelper.calculateCountIntensities(source, numBins, workingPanel.startTask());
+                    }
+                    return ImageHelper.calculateCountIntensities(panel.getBufferedImage(), numBins);
                 }
 
                 @Override
@@ -228,7 +236,13 @@ public class StatisticTool implements Tool {
             @Override
             protected ImageStatisticsCalculator.ImageStatistics doInBackground() throws Exception {
                 try {
-                    return statisticsCalculator.calculateStatistics(workingPanel.getCurrentImagePanel().getBufferedImage());
+                    SingleImagePanel panel = workingPanel.getCurrentImagePanel();
+                    panel.awaitLoading();
+                    TiledImageSource source = panel.getTiledSource();
+                    if (source != null) {
+                        return statisticsCalculator.calculateStatistics(source, workingPanel.startTask());
+                    }
+                    return statisticsCalculator.calculateStatistics(panel.getBufferedImage());
                 } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(null, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                 }
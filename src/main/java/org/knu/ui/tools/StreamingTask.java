@@ -0,0 +1,117 @@
+package org.knu.ui.tools;
+
+import org.knu.bll.ImageThumbnail;
+import org.knu.bll.ProgressListener;
+import org.knu.bll.buffers.TiledImageSource;
+import org.knu.ui.swing.SingleImagePanel;
+import org.knu.ui.swing.WorkingPanel;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
+import java.io.File;
+
+/**
+ * The StreamingTask class applies a tool to an image that was opened tiled because it is too large for the heap.
+ * Such an image has no history to commit to, so the result is streamed into a tiled TIFF file chosen by the user,
+ * which is then opened tiled in a new tab.
+ */
+final class StreamingTask {
+    private static final int PREVIEW_SIZE = 512;
+
+    private StreamingTask() {
+    }
+
+    /**
+     * Runs the operation in the background if the current image is tiled.
+     *
+     * @param workingPanel The panel whose current image is processed.
+     * @param suffix The suffix of the suggested output file name.
+     * @param operation The streaming operation, built from the current settings of the tool.
+     * @return True if the current image is tiled and the operation was started or the user cancelled the file
+     *         selection, false if the tool should process the image in memory.
+     */
+    static boolean runIfTiled(WorkingPanel workingPanel, String suffix, Operation operation) {
+        SingleImagePanel panel = workingPanel.getCurrentImagePanel();
+        TiledImageSource source = panel == null ? null : panel.getTiledSource();
+        if (source == null) return false;
+
+        File output = chooseOutput(workingPanel, source, suffix);
+        if (output == null) return true;
+
+        workingPanel.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        new SwingWorker<ImageThumbnail, Void>() {
+            private TiledImageSource result;
+
+            @Override
+            protected ImageThumbnail doInBackground() throws Exception {
+                operation.apply(source, output, workingPanel.startTask());
+                result = TiledImageSource.open(output.getPath());
+                int width = result.getWidth();
+                int height = result.getHeight();
+                int step = Math.max(1, (Math.max(width, height) + PREVIEW_SIZE - 1) / PREVIEW_SIZE);
+                return new ImageThumbnail(result.readSubsampled(new Rectangle(0, 0, width, height), step), width, height);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    ImageThumbnail thumbnail = get();
+                    workingPanel.addLoadingTab(thumbnail, output.getName(), output.getAbsolutePath())
+                            .finishLoading(result);
+                } catch (Exception ex) {
+                    if (result != null) {
+                        result.close();
+                    }
+                    if (!WorkingPanel.isCancellation(ex)) {
+                        JOptionPane.showMessageDialog(workingPanel,
+                                "Error applying filter: " + ex.getMessage(),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                } finally {
+                    workingPanel.setCursor(Cursor.getDefaultCursor());
+                    workingPanel.hideProgressBar();
+                }
+            }
+        }.execute();
+        return true;
+    }
+
+    private static File chooseOutput(WorkingPanel workingPanel, TiledImageSource source, String suffix) {
+        File input = new File(source.getPath());
+        String name = input.getName();
+        int lastDot = name.lastIndexOf('.');
+        String baseName = lastDot == -1 ? name : name.substring(0, lastDot);
+
+        JFileChooser fileChooser = new JFileChooser(input.getParentFile());
+        fileChooser.setDialogTitle("The image is too large for memory. Save the result as");
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Tiled TIFF", "tif", "tiff"));
+        fileChooser.setSelectedFile(new File(input.getParentFile(), baseName + "-" + suffix + ".tif"));
+        if (fileChooser.showSaveDialog(workingPanel) != JFileChooser.APPROVE_OPTION) {
+            return null;
+        }
+        File output = fileChooser.getSelectedFile();
+        String lowerName = output.getName().toLowerCase();
+        if (!lowerName.endsWith(".tif") && !lowerName.endsWith(".tiff")) {
+            output = new File(output.getPath() + ".tif");
+        }
+        return output;
+    }
+
+    /**
+     * The Operation interface streams a tiled image into an output file.
+     */
+    @FunctionalInterface
+    interface Operation {
+
+        /**
+         * Streams the source into the output file.
+         *
+         * @param source The tiled image.
+         * @param output The file to write.
+         * @param listener The listener of the task.
+         * @throws Exception if the operation fails.
+         */
+        void apply(TiledImageSource source, File output, ProgressListener listener) throws Exception;
+    }
+}
@@ -0,0 +1,111 @@
+package org.knu.bll;
+
+import org.junit.jupiter.api.Test;
+import org.knu.bll.buffers.TiledImageSource;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageLoaderTest {
+    private static final int SIZE = 100;
+    private static final int PREVIEW_SIZE = 10;
+
+    @Test
+    void outOfMemoryFailsTheFileAndFinishesTheRun() throws Exception {
+        FileService service = new StubFileService() {
+            @Override
+            public BufferedImage loadImage(String path) {
+                if (path.startsWith("large")) {
+                    throw new OutOfMemoryError("Java heap space");
+                }
+                return super.loadImage(path);
+            }
+        };
+        ImageLoader loader = new ImageLoader(service, 2, PREVIEW_SIZE);
+
+        LoadReport report = load(loader, "large.png", "small.png");
+        assertFalse(report.isLoaded(0));
+        assertTrue(report.getError(0).contains("heap space"), report.getError(0));
+        assertTrue(report.isLoaded(1));
+    }
+
+    @Test
+    void fullDecodesShareTheDecodeMemory() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        FileService service = new StubFileService() {
+            @Override
+            public BufferedImage loadImage(String path) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return super.loadImage(path);
+            }
+        };
+        long twoImages = 2L * SIZE * SIZE * Integer.BYTES;
+        ImageLoader loader = new ImageLoader(service, 6, PREVIEW_SIZE, twoImages);
+
+        LoadReport report = load(loader, "1.png", "2.png", "3.png", "4.png", "5.png", "6.png");
+        assertEquals(6, report.getLoadedImages());
+        assertTrue(maxRunning.get() <= 2, "at most two decodes fit the decode memory, got " + maxRunning.get());
+    }
+
+    private static LoadReport load(ImageLoader loader, String... names) throws Exception {
+        List<File> files = new ArrayList<>();
+        for (String name : names) {
+            files.add(new File(name));
+        }
+        CompletableFuture<LoadReport> finished = new CompletableFuture<>();
+        loader.load(files, new ImageLoadListener() {
+            @Override
+            public void onPreview(int index, ImageThumbnail thumbnail) {
+            }
+
+            @Override
+            public void onLoaded(int index, BufferedImage image) {
+            }
+
+            @Override
+            public void onTiled(int index, TiledImageSource source) {
+            }
+
+            @Override
+            public void onFailed(int index, Exception error) {
+            }
+
+            @Override
+            public void onFinished(LoadReport report) {
+                finished.complete(report);
+            }
+        }, null);
+        return finished.get(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A FileService that decodes every path to a blank image without reading any file.
+     */
+    private static class StubFileService extends FileService {
+        @Override
+        public BufferedImage loadImage(String path) {
+            return new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        }
+
+        @Override
+        public ImageThumbnail loadPreview(String path, int maxSize) {
+            return new ImageThumbnail(new BufferedImage(maxSize, maxSize, BufferedImage.TYPE_INT_RGB), SIZE, SIZE);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.knu.bll;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.util.Random;
+
+/**
+ * The ParallelTest class is the base of the tests that run operations on a {@link TileScheduler}. It starts a
+ * scheduler of four threads before the tests of a class and shuts it down after them, and provides the fixtures
+ * these tests share.
+ */
+public abstract class ParallelTest {
+    protected static final ProgressListener NO_PROGRESS = ProgressListener.withoutProgress(CancellationToken.NONE);
+
+    protected static TileScheduler scheduler;
+
+    @BeforeAll
+    static void createScheduler() {
+        scheduler = new TileScheduler(4);
+    }
+
+    @AfterAll
+    static void shutdownScheduler() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Creates an opaque image of random colors.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param seed The seed of the colors, so that every run creates the same image.
+     * @return A new PixelBuffer without alpha.
+     */
+    protected static PixelBuffer randomImage(int width, int height, long seed) {
+        Random random = new Random(seed);
+        PixelBuffer image = PixelBuffer.create(width, height, false);
+        int[] pixels = image.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt(0x1000000);
+        }
+        return image;
+    }
+}
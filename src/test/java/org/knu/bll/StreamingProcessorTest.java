@@ -0,0 +1,71 @@
+package org.knu.bll;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.knu.bll.algorithms.blur.GaussBlur;
+import org.knu.bll.algorithms.edges.SobelOperator;
+import org.knu.bll.buffers.PixelBuffer;
+import org.knu.bll.buffers.TiledImageSource;
+import org.knu.bll.buffers.TiledImageWriter;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StreamingProcessorTest extends ParallelTest {
+    private static final int WIDTH = StreamingProcessor.DEFAULT_TILE_SIZE + 188;
+    private static final int HEIGHT = StreamingProcessor.DEFAULT_TILE_SIZE + 88;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void streamedBlurMatchesTheInMemoryBlur() {
+        PixelBuffer image = randomImage(WIDTH, HEIGHT, 1);
+        GaussBlur blur = new GaussBlur(scheduler, 2);
+        File output = directory.resolve("blurred.tif").toFile();
+        try (TiledImageSource source = TiledImageSource.open(writeTiff(image, "source-blur.tif").getPath())) {
+            blur.applyFilter(source, 9, output, NO_PROGRESS);
+        }
+        assertPixelsEqual(blur.applyFilter(image, 9, NO_PROGRESS), new FileService().loadPixels(output.getPath()));
+    }
+
+    @Test
+    void streamedEdgesMatchTheInMemoryEdges() {
+        PixelBuffer image = randomImage(WIDTH, HEIGHT, 2);
+        SobelOperator sobel = new SobelOperator(scheduler);
+        File output = directory.resolve("edges.tif").toFile();
+        try (TiledImageSource source = TiledImageSource.open(writeTiff(image, "source-edges.tif").getPath())) {
+            sobel.applyOperator(source, output, NO_PROGRESS);
+        }
+        assertPixelsEqual(sobel.applyOperator(image, NO_PROGRESS), new FileService().loadPixels(output.getPath()));
+    }
+
+    /**
+     * Writes an image to a tiled TIFF whose tiles do not line up with the streamed tiles.
+     */
+    private File writeTiff(PixelBuffer image, String name) {
+        File file = directory.resolve(name).toFile();
+        try (TiledImageWriter writer = TiledImageWriter.create(file, WIDTH, HEIGHT, false, 128)) {
+            writer.write(0, 0, image);
+        }
+        return file;
+    }
+
+    /**
+     * Compares every pixel, including those of the border tiles, which are smaller than the others.
+     */
+    private static void assertPixelsEqual(PixelBuffer expected, PixelBuffer actual) {
+        assertEquals(WIDTH, actual.getWidth());
+        assertEquals(HEIGHT, actual.getHeight());
+        int[] expectedRgb = new int[WIDTH * HEIGHT];
+        int[] actualRgb = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < expectedRgb.length; i++) {
+            expectedRgb[i] = expected.getPixels()[i] & 0xffffff;
+            actualRgb[i] = actual.getPixels()[i] & 0xffffff;
+        }
+        assertArrayEquals(expectedRgb, actualRgb);
+    }
+}
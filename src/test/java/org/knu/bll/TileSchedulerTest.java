@@ -0,0 +1,104 @@
+package org.knu.bll;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileSchedulerTest extends ParallelTest {
+
+    @Test
+    void bandsCoverEveryRowOnceAndClampTheirHalo() {
+        int width = 31;
+        int height = 203;
+        List<Tile> bands = scheduler.splitBands(width, height, 3);
+        assertTrue(bands.size() > 1);
+        int y = 0;
+        for (Tile band : bands) {
+            assertEquals(y, band.getY());
+            assertEquals(0, band.getX());
+            assertEquals(width, band.getWidth());
+            assertEquals(Math.max(0, band.getY() - 3), band.getHaloY());
+            assertEquals(Math.min(height, band.getEndY() + 3), band.getHaloEndY());
+            y = band.getEndY();
+        }
+        assertEquals(height, y);
+    }
+
+    @Test
+    void tilesCoverEveryPixelOnce() {
+        int width = 70;
+        int height = 45;
+        int[] covered = new int[width * height];
+        scheduler.forEach(scheduler.splitTiles(width, height, 16, 2), null, tile -> {
+            for (int y = tile.getY(); y < tile.getEndY(); y++) {
+                for (int x = tile.getX(); x < tile.getEndX(); x++) {
+                    covered[y * width + x]++;
+                }
+            }
+        });
+        for (int count : covered) {
+            assertEquals(1, count);
+        }
+    }
+
+    @Test
+    void reductionMergesTheTilesInOrder() {
+        List<Tile> bands = scheduler.splitBands(10, 100, 0);
+        List<Integer> order = scheduler.reduce(bands, null, tile -> new ArrayList<>(List.of(tile.getIndex())),
+                (left, right) -> {
+                    left.addAll(right);
+                    return left;
+                });
+        for (int i = 0; i < bands.size(); i++) {
+            assertEquals(i, order.get(i));
+        }
+    }
+
+    @Test
+    void everyFinishedTileIsReported() {
+        AtomicInteger updates = new AtomicInteger();
+        ProgressListener listener = new ProgressListener() {
+            @Override
+            public void onProgressStart(int maximum) {
+            }
+
+            @Override
+            public void onProgressUpdate() {
+                updates.incrementAndGet();
+            }
+        };
+        List<Tile> tiles = scheduler.splitTiles(100, 100, 10, 0);
+        scheduler.forEach(tiles, listener, tile -> {
+        });
+        assertEquals(tiles.size(), updates.get());
+    }
+
+    @Test
+    void cancelledTokenSkipsTheRemainingTiles() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger processed = new AtomicInteger();
+        List<Tile> tiles = scheduler.splitTiles(100, 100, 10, 0);
+        assertThrows(CancellationException.class, () -> scheduler.forEach(tiles,
+                ProgressListener.withoutProgress(token), tile -> {
+                    processed.incrementAndGet();
+                    token.cancel();
+                }));
+        assertTrue(processed.get() < tiles.size(), processed.get() + " of " + tiles.size() + " tiles ran");
+    }
+
+    @Test
+    void kernelExceptionsReachTheCaller() {
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> scheduler.forEach(scheduler.splitBands(10, 100, 0), null, tile -> {
+                    if (tile.getIndex() == 2) throw new IllegalStateException("tile 2");
+                }));
+        assertTrue(error.getMessage().contains("tile 2"), error.getMessage());
+    }
+}
@@ -0,0 +1,151 @@
+package org.knu.bll.algorithms;
+
+import org.junit.jupiter.api.Test;
+import org.knu.bll.ParallelTest;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.algorithms.blur.GaussBlur;
+import org.knu.bll.algorithms.edges.GradientDirection;
+import org.knu.bll.algorithms.edges.GradientField;
+import org.knu.bll.algorithms.edges.SobelOperator;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.util.ArrayDeque;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CannyFilterTest extends ParallelTest {
+    private static final int LOW = 40;
+    private static final int HIGH = 100;
+
+    @Test
+    void fusedBandsMatchTheStagedFilter() throws InterruptedException {
+        PixelBuffer image = shapes(97, 131, 1);
+        GaussBlur blur = new GaussBlur(scheduler, 1.4);
+        SobelOperator sobel = new SobelOperator(scheduler);
+
+        PixelBuffer fused = new CannyFilter(scheduler).applyFilter(image, LOW, HIGH, blur, 5, sobel, NO_PROGRESS);
+        int[] expected = staged(blur.applyFilter(image.toGray(), 5, NO_PROGRESS), sobel);
+        assertArrayEquals(expected, rgb(fused));
+
+        int edges = 0;
+        for (int value : expected) {
+            edges += value != 0 ? 1 : 0;
+        }
+        assertTrue(edges > 0, "the image has edges");
+    }
+
+    @Test
+    void resultDoesNotDependOnTheNumberOfBands() throws InterruptedException {
+        PixelBuffer image = shapes(120, 90, 2);
+        TileScheduler single = new TileScheduler(1);
+        try {
+            PixelBuffer sequential = new CannyFilter(single).applyFilter(image, LOW, HIGH, new GaussBlur(single), 3,
+                    new SobelOperator(single), NO_PROGRESS);
+            PixelBuffer parallel = new CannyFilter(scheduler).applyFilter(image, LOW, HIGH, new GaussBlur(scheduler),
+                    3, new SobelOperator(scheduler), NO_PROGRESS);
+            assertArrayEquals(rgb(sequential), rgb(parallel));
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    /**
+     * Runs the stages of the filter one after another on whole planes: gradients, non-maximum suppression, double
+     * thresholding and a breadth-first hysteresis from the strong pixels.
+     */
+    private static int[] staged(GrayBuffer smoothed, SobelOperator operator) {
+        int width = smoothed.getWidth();
+        int height = smoothed.getHeight();
+        GradientField gradients = operator.computeGradients(smoothed);
+        byte[] classes = new byte[width * height];
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                float magnitude = gradients.getMagnitude(x, y);
+                int dx;
+                int dy;
+                switch (gradients.getDirection(x, y)) {
+                    case GradientDirection.DEGREES_45:
+                        dx = 1;
+                        dy = 1;
+                        break;
+                    case GradientDirection.DEGREES_90:
+                        dx = 0;
+                        dy = 1;
+                        break;
+                    case GradientDirection.DEGREES_135:
+                        dx = -1;
+                        dy = 1;
+                        break;
+                    default:
+                        dx = 1;
+                        dy = 0;
+                        break;
+                }
+                if (magnitude < gradients.getMagnitude(x - dx, y - dy)
+                        || magnitude < gradients.getMagnitude(x + dx, y + dy)) {
+                    magnitude = 0;
+                }
+                if (magnitude >= HIGH) {
+                    classes[y * width + x] = EdgeTracker.STRONG_EDGE;
+                } else if (magnitude >= LOW && magnitude > 0) {
+                    classes[y * width + x] = EdgeTracker.WEAK_EDGE;
+                }
+            }
+        }
+
+        int[] pixels = new int[width * height];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i] == EdgeTracker.STRONG_EDGE) {
+                pixels[i] = 0xffffff;
+                queue.add(i);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int index = queue.poll();
+            int x = index % width;
+            int y = index / width;
+            for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+                for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                    int neighbor = ny * width + nx;
+                    if (classes[neighbor] != EdgeTracker.NO_EDGE && pixels[neighbor] == 0) {
+                        pixels[neighbor] = 0xffffff;
+                        queue.add(neighbor);
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Creates a noisy image of overlapping rectangles, so the edges form long chains of weak and strong pixels.
+     */
+    private static PixelBuffer shapes(int width, int height, long seed) {
+        PixelBuffer noise = randomImage(width, height, seed);
+        PixelBuffer image = PixelBuffer.create(width, height, false);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = 60;
+                if (x > width / 5 && x < 3 * width / 5 && y > height / 6 && y < 4 * height / 5) value += 70;
+                if ((x - 2 * width / 3) * (x - 2 * width / 3) + (y - height / 3) * (y - height / 3)
+                        < width * width / 25) {
+                    value += 90;
+                }
+                value += (noise.getPixels()[y * width + x] & 0xff) / 16;
+                image.getPixels()[y * width + x] = value << 16 | value << 8 | value;
+            }
+        }
+        return image;
+    }
+
+    private static int[] rgb(PixelBuffer image) {
+        int[] pixels = image.getPixels().clone();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] &= 0xffffff;
+        }
+        return pixels;
+    }
+}
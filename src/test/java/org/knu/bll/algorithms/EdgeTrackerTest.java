@@ -0,0 +1,101 @@
+package org.knu.bll.algorithms;
+
+import org.junit.jupiter.api.Test;
+import org.knu.bll.ParallelTest;
+import org.knu.bll.Tile;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EdgeTrackerTest extends ParallelTest {
+    private static final int EDGE_RGB = 0xffffffff;
+    private static final int BACKGROUND_RGB = 0xff000000;
+
+    @Test
+    void randomEdgesMatchBreadthFirstHysteresis() {
+        for (long seed = 1; seed <= 5; seed++) {
+            int width = 61;
+            int height = 97;
+            byte[] edges = randomEdges(width, height, seed);
+            List<Tile> bands = scheduler.splitBands(width, height, 1);
+            assertTrue(bands.size() > 1);
+            assertArrayEquals(hysteresis(edges, width, height), trace(edges, width, height, bands), "seed " + seed);
+        }
+    }
+
+    @Test
+    void chainAcrossEverySeamReachesStrongPixel() {
+        int width = 9;
+        int height = 80;
+        byte[] edges = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            edges[y * width + Math.abs(y % 16 - 8)] = EdgeTracker.WEAK_EDGE;
+        }
+        edges[(height - 1) * width + Math.abs((height - 1) % 16 - 8)] = EdgeTracker.STRONG_EDGE;
+        edges[4] = EdgeTracker.WEAK_EDGE;
+
+        List<Tile> bands = scheduler.splitBands(width, height, 1);
+        int[] expected = hysteresis(edges, width, height);
+        int[] actual = trace(edges, width, height, bands);
+        assertArrayEquals(expected, actual);
+        assertEquals(EDGE_RGB, actual[8], "a weak pixel at the top is connected to the strong pixel at the bottom");
+        assertEquals(BACKGROUND_RGB, actual[4], "a weak pixel without a strong neighbour is dropped");
+    }
+
+    private static int[] trace(byte[] edges, int width, int height, List<Tile> bands) {
+        PixelBuffer output = PixelBuffer.create(width, height, false);
+        new EdgeTracker(scheduler).trace(edges, output, bands, null);
+        return output.getPixels();
+    }
+
+    /**
+     * Keeps every edge pixel that a breadth-first search from the strong pixels reaches in 8-connectivity.
+     */
+    private static int[] hysteresis(byte[] edges, int width, int height) {
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, BACKGROUND_RGB);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int i = 0; i < edges.length; i++) {
+            if (edges[i] == EdgeTracker.STRONG_EDGE) {
+                pixels[i] = EDGE_RGB;
+                queue.add(i);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int index = queue.poll();
+            int x = index % width;
+            int y = index / width;
+            for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+                for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                    int neighbor = ny * width + nx;
+                    if (edges[neighbor] != EdgeTracker.NO_EDGE && pixels[neighbor] != EDGE_RGB) {
+                        pixels[neighbor] = EDGE_RGB;
+                        queue.add(neighbor);
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    private static byte[] randomEdges(int width, int height, long seed) {
+        Random random = new Random(seed);
+        byte[] edges = new byte[width * height];
+        for (int i = 0; i < edges.length; i++) {
+            double value = random.nextDouble();
+            if (value < 0.01) {
+                edges[i] = EdgeTracker.STRONG_EDGE;
+            } else if (value < 0.4) {
+                edges[i] = EdgeTracker.WEAK_EDGE;
+            }
+        }
+        return edges;
+    }
+}
@@ -0,0 +1,84 @@
+package org.knu.bll.algorithms;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IntegralImageTest {
+    private static final int WIDTH = 23;
+    private static final int HEIGHT = 17;
+
+    @Test
+    void rectangleSumsMatchDirectSums() {
+        int[] values = randomValues(1);
+        IntegralImage integral = new IntegralImage(values, WIDTH, HEIGHT, true);
+        Random random = new Random(2);
+        for (int i = 0; i < 500; i++) {
+            int x0 = random.nextInt(WIDTH + 10) - 5;
+            int y0 = random.nextInt(HEIGHT + 10) - 5;
+            int x1 = x0 + random.nextInt(WIDTH);
+            int y1 = y0 + random.nextInt(HEIGHT);
+            String window = x0 + "," + y0 + " to " + x1 + "," + y1;
+            assertEquals(directSum(values, x0, y0, x1, y1, false), integral.sum(x0, y0, x1, y1), window);
+            assertEquals(directSum(values, x0, y0, x1, y1, true), integral.sumOfSquares(x0, y0, x1, y1), window);
+            assertEquals(directCount(x0, y0, x1, y1), integral.count(x0, y0, x1, y1), window);
+        }
+    }
+
+    @Test
+    void windowStatisticsMatchDirectStatistics() {
+        int[] values = randomValues(3);
+        IntegralImage integral = new IntegralImage(values, WIDTH, HEIGHT, true);
+        for (int radius : new int[]{0, 1, 4, 30}) {
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    int x0 = x - radius;
+                    int y0 = y - radius;
+                    int x1 = x + radius + 1;
+                    int y1 = y + radius + 1;
+                    double count = directCount(x0, y0, x1, y1);
+                    double mean = directSum(values, x0, y0, x1, y1, false) / count;
+                    double variance = directSum(values, x0, y0, x1, y1, true) / count - mean * mean;
+                    String window = "radius " + radius + " at " + x + "," + y;
+                    assertEquals(mean, integral.windowMean(x, y, radius), 1e-9, window);
+                    assertEquals(variance, integral.windowVariance(x, y, radius), 1e-6, window);
+                }
+            }
+        }
+    }
+
+    @Test
+    void squaredSumsAreRequiredForVariances() {
+        IntegralImage integral = new IntegralImage(randomValues(4), WIDTH, HEIGHT, false);
+        assertThrows(IllegalStateException.class, () -> integral.windowVariance(0, 0, 1));
+    }
+
+    private static int[] randomValues(long seed) {
+        Random random = new Random(seed);
+        int[] values = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(256);
+        }
+        return values;
+    }
+
+    private static long directSum(int[] values, int x0, int y0, int x1, int y1, boolean squares) {
+        long sum = 0;
+        for (int y = Math.max(y0, 0); y < Math.min(y1, HEIGHT); y++) {
+            for (int x = Math.max(x0, 0); x < Math.min(x1, WIDTH); x++) {
+                long value = values[y * WIDTH + x];
+                sum += squares ? value * value : value;
+            }
+        }
+        return sum;
+    }
+
+    private static int directCount(int x0, int y0, int x1, int y1) {
+        int w = Math.min(x1, WIDTH) - Math.max(x0, 0);
+        int h = Math.min(y1, HEIGHT) - Math.max(y0, 0);
+        return w > 0 && h > 0 ? w * h : 0;
+    }
+}
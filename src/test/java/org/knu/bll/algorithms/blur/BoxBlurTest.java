@@ -0,0 +1,64 @@
+package org.knu.bll.algorithms.blur;
+
+import org.junit.jupiter.api.Test;
+import org.knu.bll.ParallelTest;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BoxBlurTest extends ParallelTest {
+    @Test
+    void runningSumsMatchDirectAverage() {
+        PixelBuffer image = randomImage(67, 53, 1);
+        for (int kernelSize : new int[]{1, 3, 9, 31}) {
+            PixelBuffer blurred = new BoxBlur(scheduler).applyFilter(image, kernelSize, NO_PROGRESS);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    assertEquals(average(image, x, y, kernelSize),
+                            blurred.getPixels()[y * image.getWidth() + x] & 0xffffff,
+                            "kernel " + kernelSize + " at " + x + "," + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    void grayPlaneMatchesDirectAverage() {
+        PixelBuffer image = randomImage(41, 37, 2);
+        GrayBuffer gray = image.toGray();
+        GrayBuffer blurred = new BoxBlur(scheduler).applyFilter(gray, 5, NO_PROGRESS);
+        PixelBuffer grayPixels = gray.toPixelBuffer();
+        for (int y = 0; y < gray.getHeight(); y++) {
+            for (int x = 0; x < gray.getWidth(); x++) {
+                assertEquals(average(grayPixels, x, y, 5) & 0xff,
+                        blurred.getSamples()[y * gray.getWidth() + x] & 0xff, "at " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    void evenKernelIsRejected() {
+        PixelBuffer image = randomImage(8, 8, 3);
+        assertThrows(IllegalArgumentException.class, () -> new BoxBlur(scheduler).applyFilter(image, 4, NO_PROGRESS));
+    }
+
+    /**
+     * Averages the window of one pixel directly, repeating the edge pixels outside the image.
+     */
+    private static int average(PixelBuffer image, int x, int y, int kernelSize) {
+        int radius = kernelSize / 2;
+        int[] sums = new int[3];
+        for (int ky = -radius; ky <= radius; ky++) {
+            for (int kx = -radius; kx <= radius; kx++) {
+                int rgb = image.getClampedRGB(x + kx, y + ky);
+                sums[0] += (rgb >> 16) & 0xff;
+                sums[1] += (rgb >> 8) & 0xff;
+                sums[2] += rgb & 0xff;
+            }
+        }
+        int count = kernelSize * kernelSize;
+        return (sums[0] / count << 16) | (sums[1] / count << 8) | sums[2] / count;
+    }
+}
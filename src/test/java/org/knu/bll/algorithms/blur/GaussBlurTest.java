@@ -0,0 +1,79 @@
+package org.knu.bll.algorithms.blur;
+
+import org.junit.jupiter.api.Test;
+import org.knu.bll.ParallelTest;
+import org.knu.bll.algorithms.convolution.Kernels;
+import org.knu.bll.buffers.GrayBuffer;
+import org.knu.bll.buffers.PixelBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GaussBlurTest extends ParallelTest {
+    @Test
+    void separablePassesMatchTwoDimensionalKernel() {
+        PixelBuffer image = randomImage(67, 53, 1);
+        for (int kernelSize : new int[]{1, 3, 7}) {
+            double sigma = 1.5;
+            PixelBuffer blurred = new GaussBlur(scheduler).applyFilter(image, kernelSize, sigma, NO_PROGRESS);
+            double[] kernel = Kernels.gaussian(kernelSize, sigma);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    int expected = convolve(image, x, y, kernel);
+                    int actual = blurred.getPixels()[y * image.getWidth() + x];
+                    for (int shift = 0; shift <= 16; shift += 8) {
+                        int difference = ((expected >> shift) & 0xff) - ((actual >> shift) & 0xff);
+                        assertTrue(Math.abs(difference) <= 1, "kernel " + kernelSize + " at " + x + "," + y);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void grayPlaneMatchesBlurredGrayPixels() {
+        PixelBuffer image = randomImage(41, 37, 2);
+        GrayBuffer gray = image.toGray();
+        GrayBuffer blurred = new GaussBlur(scheduler).applyFilter(gray, 5, NO_PROGRESS);
+        PixelBuffer expected = new GaussBlur(scheduler).applyFilter(gray.toPixelBuffer(), 5, NO_PROGRESS);
+        for (int i = 0; i < blurred.getSamples().length; i++) {
+            int difference = (blurred.getSamples()[i] & 0xff) - (expected.getPixels()[i] & 0xff);
+            assertTrue(Math.abs(difference) <= 1, "sample " + i);
+        }
+    }
+
+    @Test
+    void kernelOfOneKeepsImage() {
+        PixelBuffer image = randomImage(19, 23, 3);
+        PixelBuffer blurred = new GaussBlur(scheduler).applyFilter(image, 1, NO_PROGRESS);
+        for (int i = 0; i < image.getPixels().length; i++) {
+            assertEquals(image.getPixels()[i] & 0xffffff, blurred.getPixels()[i] & 0xffffff);
+        }
+    }
+
+    /**
+     * Convolves one pixel with the outer product of a kernel with itself, treating samples outside the image as
+     * zero and truncating the result, as the filter does.
+     */
+    private static int convolve(PixelBuffer image, int x, int y, double[] kernel) {
+        int radius = kernel.length / 2;
+        double[] sums = new double[3];
+        for (int ky = -radius; ky <= radius; ky++) {
+            for (int kx = -radius; kx <= radius; kx++) {
+                int px = x + kx;
+                int py = y + ky;
+                if (px < 0 || py < 0 || px >= image.getWidth() || py >= image.getHeight()) continue;
+                int rgb = image.getPixels()[py * image.getWidth() + px];
+                double weight = kernel[ky + radius] * kernel[kx + radius];
+                sums[0] += ((rgb >> 16) & 0xff) * weight;
+                sums[1] += ((rgb >> 8) & 0xff) * weight;
+                sums[2] += (rgb & 0xff) * weight;
+            }
+        }
+        return (toByte(sums[0]) << 16) | (toByte(sums[1]) << 8) | toByte(sums[2]);
+    }
+
+    private static int toByte(double value) {
+        return Math.min(255, Math.max(0, (int) value));
+    }
+}
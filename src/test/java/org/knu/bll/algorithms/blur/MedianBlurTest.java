@@ -0,0 +1,82 @@
+package org.knu.bll.algorithms.blur;
+
+import org.junit.jupiter.api.Test;
+import org.knu.bll.ParallelTest;
+import org.knu.bll.TileScheduler;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MedianBlurTest extends ParallelTest {
+    @Test
+    void histogramMedianMatchesSortedWindow() {
+        PixelBuffer image = randomImage(67, 53, 1);
+        for (int kernelSize : new int[]{1, 3, 7, 21}) {
+            PixelBuffer blurred = new MedianBlur(scheduler).applyFilter(image, kernelSize, NO_PROGRESS);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    assertEquals(median(image, x, y, kernelSize),
+                            blurred.getPixels()[y * image.getWidth() + x] & 0xffffff,
+                            "kernel " + kernelSize + " at " + x + "," + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    void resultDoesNotDependOnThreadCount() {
+        PixelBuffer image = randomImage(97, 131, 4);
+        TileScheduler single = new TileScheduler(1);
+        try {
+            PixelBuffer expected = new MedianBlur(single).applyFilter(image, 9, NO_PROGRESS);
+            for (int threads : new int[]{2, 3, 8}) {
+                TileScheduler parallel = new TileScheduler(threads);
+                try {
+                    PixelBuffer actual = new MedianBlur(parallel).applyFilter(image, 9, NO_PROGRESS);
+                    assertArrayEquals(expected.getPixels(), actual.getPixels(), threads + " threads");
+                } finally {
+                    parallel.shutdown();
+                }
+            }
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    void isolatedNoiseIsRemoved() {
+        PixelBuffer image = PixelBuffer.create(16, 16, false);
+        Arrays.fill(image.getPixels(), 0x336699);
+        image.setRGB(7, 7, 0xffffff);
+        image.setRGB(0, 15, 0x000000);
+        PixelBuffer blurred = new MedianBlur(scheduler).applyFilter(image, 3, NO_PROGRESS);
+        for (int rgb : blurred.getPixels()) {
+            assertEquals(0x336699, rgb & 0xffffff);
+        }
+    }
+
+    /**
+     * Takes the median of every channel of the window of one pixel by sorting it, repeating the edge pixels outside
+     * the image.
+     */
+    private static int median(PixelBuffer image, int x, int y, int kernelSize) {
+        int radius = kernelSize / 2;
+        int count = kernelSize * kernelSize;
+        int rgb = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int[] values = new int[count];
+            int n = 0;
+            for (int ky = -radius; ky <= radius; ky++) {
+                for (int kx = -radius; kx <= radius; kx++) {
+                    values[n++] = (image.getClampedRGB(x + kx, y + ky) >> shift) & 0xff;
+                }
+            }
+            Arrays.sort(values);
+            rgb |= values[count / 2] << shift;
+        }
+        return rgb;
+    }
+}
@@ -0,0 +1,154 @@
+package org.knu.bll.algorithms.clustering;
+
+import org.junit.jupiter.api.Test;
+import org.knu.bll.ParallelTest;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KMeansClusterTest extends ParallelTest {
+    @Test
+    void histogramMatchesPerPixelKMeansWhenEveryColorHasItsOwnBin() {
+        Random random = new Random(1);
+        int[] colors = new int[12];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = random.nextInt(0x1000000) & 0xf8f8f8 | 0x030303;
+        }
+        PixelBuffer image = PixelBuffer.create(40, 30, false);
+        for (int i = 0; i < image.getPixels().length; i++) {
+            image.getPixels()[i] = colors[random.nextInt(colors.length)];
+        }
+        double[] seed = components(new int[]{colors[0], colors[1], colors[2], colors[3]});
+
+        ClusteringResult result = new KMeansCluster(scheduler, 4, 0, 100)
+                .cluster(image, new ColorPalette(seed, 0), Double.POSITIVE_INFINITY, NO_PROGRESS);
+        double[] centroids = seed.clone();
+        int[] labels = lloyd(image, centroids);
+
+        assertArrayEquals(labels, result.getLabels());
+        assertArrayEquals(centroids, result.getPalette().getCentroids(), 1e-9);
+        assertEquals(inertia(image, labels, centroids), result.getInertia(), 1e-6);
+    }
+
+    @Test
+    void histogramInertiaIsCloseToPerPixelKMeans() {
+        PixelBuffer image = randomImage(64, 48, 2);
+        Random random = new Random(2);
+        int[] seedColors = new int[8];
+        for (int i = 0; i < seedColors.length; i++) {
+            seedColors[i] = image.getPixels()[random.nextInt(image.getPixels().length)];
+        }
+        double[] seed = components(seedColors);
+
+        ClusteringResult result = new KMeansCluster(scheduler, 8, 0, 100)
+                .cluster(image, new ColorPalette(seed, 0), Double.POSITIVE_INFINITY, NO_PROGRESS);
+        double[] centroids = seed.clone();
+        double reference = inertia(image, lloyd(image, centroids), centroids);
+
+        double measured = inertia(image, result.getLabels(), result.getPalette().getCentroids());
+        assertEquals(measured, result.getInertia(), measured * 1e-9, "the reported inertia is exact");
+        assertTrue(result.getInertia() <= reference * 1.05,
+                "histogram inertia " + result.getInertia() + " against per-pixel " + reference);
+    }
+
+    @Test
+    void hamerlyAndElkanBoundsGiveTheSameClustering() {
+        Random random = new Random(3);
+        PixelBuffer image = PixelBuffer.create(80, 60, false);
+        for (int i = 0; i < image.getPixels().length; i++) {
+            int base = (i % 80) * 3;
+            image.getPixels()[i] = (base << 16) | (random.nextInt(256) << 8) | (i / 80) * 4;
+        }
+        int[] seedColors = new int[16];
+        for (int i = 0; i < seedColors.length; i++) {
+            seedColors[i] = image.getPixels()[random.nextInt(image.getPixels().length)];
+        }
+        ColorPalette seed = new ColorPalette(components(seedColors), 0);
+
+        ClusteringResult hamerly = new KMeansCluster(scheduler, 16, 0, 100, KMeansBounds.HAMERLY)
+                .cluster(image, seed, Double.POSITIVE_INFINITY, NO_PROGRESS);
+        ClusteringResult elkan = new KMeansCluster(scheduler, 16, 0, 100, KMeansBounds.ELKAN)
+                .cluster(image, seed, Double.POSITIVE_INFINITY, NO_PROGRESS);
+
+        assertArrayEquals(hamerly.getLabels(), elkan.getLabels());
+        assertArrayEquals(hamerly.getPalette().getCentroids(), elkan.getPalette().getCentroids(), 1e-9);
+        assertEquals(hamerly.getIterations(), elkan.getIterations());
+    }
+
+    /**
+     * Runs Lloyd's algorithm on every pixel until no pixel changes its cluster. Ties go to the lower cluster and
+     * empty clusters keep their centroid.
+     *
+     * @return The cluster of every pixel; the centroids are updated in place.
+     */
+    private static int[] lloyd(PixelBuffer image, double[] centroids) {
+        int[] pixels = image.getPixels();
+        int k = centroids.length / 3;
+        int[] labels = new int[pixels.length];
+        Arrays.fill(labels, -1);
+        boolean changed = true;
+        for (int iteration = 0; iteration < 1000 && changed; iteration++) {
+            changed = false;
+            for (int i = 0; i < pixels.length; i++) {
+                int best = 0;
+                double bestDistance = Double.MAX_VALUE;
+                for (int c = 0; c < k; c++) {
+                    double distance = distance(pixels[i], centroids, c);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = c;
+                    }
+                }
+                if (labels[i] != best) {
+                    labels[i] = best;
+                    changed = true;
+                }
+            }
+            double[] sums = new double[3 * k];
+            long[] counts = new long[k];
+            for (int i = 0; i < pixels.length; i++) {
+                counts[labels[i]]++;
+                sums[3 * labels[i]] += (pixels[i] >> 16) & 0xff;
+                sums[3 * labels[i] + 1] += (pixels[i] >> 8) & 0xff;
+                sums[3 * labels[i] + 2] += pixels[i] & 0xff;
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) continue;
+                for (int channel = 0; channel < 3; channel++) {
+                    centroids[3 * c + channel] = sums[3 * c + channel] / counts[c];
+                }
+            }
+        }
+        return labels;
+    }
+
+    private static double inertia(PixelBuffer image, int[] labels, double[] centroids) {
+        double inertia = 0;
+        for (int i = 0; i < labels.length; i++) {
+            inertia += distance(image.getPixels()[i], centroids, labels[i]);
+        }
+        return inertia;
+    }
+
+    private static double distance(int rgb, double[] centroids, int cluster) {
+        double red = ((rgb >> 16) & 0xff) - centroids[3 * cluster];
+        double green = ((rgb >> 8) & 0xff) - centroids[3 * cluster + 1];
+        double blue = (rgb & 0xff) - centroids[3 * cluster + 2];
+        return red * red + green * green + blue * blue;
+    }
+
+    private static double[] components(int[] colors) {
+        double[] components = new double[3 * colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            components[3 * i] = (colors[i] >> 16) & 0xff;
+            components[3 * i + 1] = (colors[i] >> 8) & 0xff;
+            components[3 * i + 2] = colors[i] & 0xff;
+        }
+        return components;
+    }
+}
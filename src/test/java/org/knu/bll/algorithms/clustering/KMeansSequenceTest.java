@@ -0,0 +1,118 @@
+package org.knu.bll.algorithms.clustering;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.knu.bll.ParallelTest;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KMeansSequenceTest extends ParallelTest {
+    private static final int[] DAY = {0x1e3c5a, 0xd2a050, 0x50c878, 0xf0f0f0};
+    private static final int[] NIGHT = {0x0a0a28, 0x3c1414, 0x142814, 0x505050};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void similarFramesAreWarmStartedFromThePreviousPalette() {
+        KMeansSequence sequence = new KMeansSequence(new KMeansCluster(scheduler, 4), 4);
+        ClusteringResult first = sequence.next(frame(DAY, 0, 1), NO_PROGRESS);
+        assertFalse(first.isWarmStarted(), "the first frame has no palette to start from");
+
+        for (int i = 1; i <= 3; i++) {
+            ClusteringResult result = sequence.next(frame(DAY, i % 2, i + 1), NO_PROGRESS);
+            assertTrue(result.isWarmStarted(), "frame " + i);
+            assertTrue(result.getIterations() <= 2, "frame " + i + " took " + result.getIterations() + " iterations");
+        }
+        assertEquals(4, sequence.getFrames());
+        assertEquals(1, sequence.getReseeds());
+    }
+
+    @Test
+    void driftedFrameIsSeededAfresh() {
+        KMeansSequence sequence = new KMeansSequence(new KMeansCluster(scheduler, 4), 4);
+        sequence.next(frame(DAY, 0, 1), NO_PROGRESS);
+        ColorPalette day = sequence.getPalette();
+
+        PixelBuffer night = frame(NIGHT, 0, 2);
+        ClusteringResult result = sequence.next(night, NO_PROGRESS);
+        assertFalse(result.isWarmStarted(), "the night frame is far from the day palette");
+        assertEquals(2, sequence.getReseeds());
+        assertTrue(result.getPalette().getMeanSquaredError() <= day.getMeanSquaredError() * 1.5,
+                "the fresh seeding finds the night colors");
+
+        ClusteringResult forced = new KMeansCluster(scheduler, 4, 0, 1)
+                .cluster(night, day, Double.POSITIVE_INFINITY, NO_PROGRESS);
+        assertTrue(forced.isWarmStarted(), "an infinite drift ratio always warm-starts");
+    }
+
+    @Test
+    void handDesignedPaletteCountsAsDriftedUnlessTheTestIsDisabled() {
+        PixelBuffer image = frame(DAY, 0, 3);
+        int[][] colors = new int[DAY.length][];
+        for (int i = 0; i < DAY.length; i++) {
+            colors[i] = new int[]{(DAY[i] >> 16) & 0xff, (DAY[i] >> 8) & 0xff, DAY[i] & 0xff};
+        }
+        ColorPalette palette = ColorPalette.of(colors);
+        KMeansCluster cluster = new KMeansCluster(scheduler, 4);
+
+        assertFalse(cluster.cluster(image, palette, KMeansCluster.DEFAULT_DRIFT_RATIO, NO_PROGRESS).isWarmStarted());
+        assertTrue(cluster.cluster(image, palette, Double.POSITIVE_INFINITY, NO_PROGRESS).isWarmStarted());
+        assertThrows(IllegalArgumentException.class, () -> cluster.cluster(image, palette, 0.5, NO_PROGRESS));
+    }
+
+    @Test
+    void paletteSurvivesTheFileAndSerialization() throws IOException, ClassNotFoundException {
+        ColorPalette palette = new ColorPalette(new double[]{12.25, 0, 255, 100.5, 7, 33.125}, 4.75);
+
+        palette.save(directory.resolve("palette.txt").toFile());
+        assertPaletteEquals(palette, ColorPalette.load(directory.resolve("palette.txt").toFile()));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(palette);
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertPaletteEquals(palette, (ColorPalette) input.readObject());
+        }
+    }
+
+    private static void assertPaletteEquals(ColorPalette expected, ColorPalette actual) {
+        assertArrayEquals(expected.getCentroids(), actual.getCentroids(), 0);
+        assertEquals(expected.getMeanSquaredError(), actual.getMeanSquaredError(), 0);
+    }
+
+    /**
+     * Creates a frame of four vertical stripes of the given colors, brightened by a few levels, with a little noise
+     * in every channel.
+     */
+    private static PixelBuffer frame(int[] colors, int brightness, long seed) {
+        Random random = new Random(seed);
+        int width = 96;
+        int height = 64;
+        PixelBuffer image = PixelBuffer.create(width, height, false);
+        for (int i = 0; i < width * height; i++) {
+            int color = colors[i % width * colors.length / width];
+            int rgb = 0;
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                int value = ((color >> shift) & 0xff) + brightness + random.nextInt(7) - 3;
+                rgb |= Math.min(255, Math.max(0, value)) << shift;
+            }
+            image.getPixels()[i] = rgb;
+        }
+        return image;
+    }
+}
@@ -0,0 +1,42 @@
+package org.knu.bll.algorithms.clustering;
+
+import org.junit.jupiter.api.Test;
+import org.knu.bll.ParallelTest;
+import org.knu.bll.buffers.PixelBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LocalMeanThresholdingTest extends ParallelTest {
+    @Test
+    void pixelsAreComparedWithTheMeanOfTheirWindow() {
+        PixelBuffer image = randomImage(57, 43, 1);
+        byte[] gray = image.toGray().getSamples();
+        for (int radius : new int[]{0, 2, 7, 40}) {
+            for (int offset : new int[]{-3, 0, 5}) {
+                PixelBuffer binary = new LocalMeanThresholding(scheduler, radius, offset)
+                        .applyCluster(image, NO_PROGRESS);
+                for (int y = 0; y < image.getHeight(); y++) {
+                    for (int x = 0; x < image.getWidth(); x++) {
+                        int i = y * image.getWidth() + x;
+                        double mean = windowMean(gray, image.getWidth(), image.getHeight(), x, y, radius);
+                        int expected = (gray[i] & 0xff) > mean - offset ? 0xFFFFFF : 0;
+                        assertEquals(expected, binary.getPixels()[i] & 0xFFFFFF,
+                                "radius " + radius + ", offset " + offset + " at " + x + "," + y);
+                    }
+                }
+            }
+        }
+    }
+
+    private static double windowMean(byte[] gray, int width, int height, int x, int y, int radius) {
+        long sum = 0;
+        int count = 0;
+        for (int wy = Math.max(y - radius, 0); wy <= Math.min(y + radius, height - 1); wy++) {
+            for (int wx = Math.max(x - radius, 0); wx <= Math.min(x + radius, width - 1); wx++) {
+                sum += gray[wy * width + wx] & 0xff;
+                count++;
+            }
+        }
+        return (double) sum / count;
+    }
+}
@@ -0,0 +1,105 @@
+package org.knu.bll.algorithms.clustering;
+
+import org.junit.jupiter.api.Test;
+import org.knu.bll.ParallelTest;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MiniBatchKMeansClusterTest extends ParallelTest {
+    private static final int[] COLORS = {0x1e3c5a, 0xd2a050, 0x50c878, 0xf0f0f0};
+
+    @Test
+    void perCenterRateKeepsTheRunningMeanOfTheSamples() {
+        PixelBuffer image = PixelBuffer.create(64, 64, false);
+        for (int i = 0; i < image.getPixels().length; i++) {
+            image.getPixels()[i] = i % 2 == 0 ? 0x000000 : 0xc8c8c8;
+        }
+        ClusteringResult result = new MiniBatchKMeansCluster(scheduler, 1, 4096, 50).cluster(image, 1, NO_PROGRESS);
+
+        int[] centroid = result.getCentroid(0);
+        for (int channel = 0; channel < 3; channel++) {
+            assertEquals(100, centroid[channel], 2, "a single centroid is the mean of every sample it received");
+        }
+    }
+
+    @Test
+    void separatedColorsAreFoundAndEveryPixelIsLabeled() {
+        PixelBuffer image = noisyColors(120, 80, 1);
+        ClusteringResult result = new MiniBatchKMeansCluster(scheduler, 4, 1024, 40)
+                .cluster(image, 4, NO_PROGRESS);
+
+        int[] labelOfColor = new int[COLORS.length];
+        for (int color = 0; color < COLORS.length; color++) {
+            labelOfColor[color] = closest(result, COLORS[color]);
+            assertTrue(distance(result.getCentroidRGB(labelOfColor[color]), COLORS[color]) < 3 * 3 * 3,
+                    "centroid of color " + color);
+        }
+        int[] labels = result.getLabels();
+        for (int i = 0; i < labels.length; i++) {
+            assertEquals(labelOfColor[colorIndex(i, image.getWidth())], labels[i], "pixel " + i);
+        }
+        assertEquals(inertia(image, result), result.getInertia(), 1e-6, "the reported inertia is exact");
+    }
+
+    @Test
+    void comparisonReportsTheInertiaRatioAgainstFullKMeans() {
+        PixelBuffer image = noisyColors(100, 100, 2);
+        ClusteringComparison comparison = new MiniBatchKMeansCluster(scheduler, 4, 1024, 40)
+                .compare(image, 4, NO_PROGRESS);
+
+        assertEquals(inertia(image, comparison.getReference()), comparison.getReferenceInertia(), 1e-6);
+        assertEquals(comparison.getInertia() / comparison.getReferenceInertia(), comparison.getInertiaRatio(), 1e-9);
+        assertEquals(1, comparison.getInertiaRatio(), 0.05, "both find the same four colors");
+    }
+
+    /**
+     * Creates an image of four vertical stripes of the test colors with a little noise in every channel.
+     */
+    private static PixelBuffer noisyColors(int width, int height, long seed) {
+        Random random = new Random(seed);
+        PixelBuffer image = PixelBuffer.create(width, height, false);
+        for (int i = 0; i < width * height; i++) {
+            int color = COLORS[colorIndex(i, width)];
+            int rgb = 0;
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                int value = ((color >> shift) & 0xff) + random.nextInt(7) - 3;
+                rgb |= value << shift;
+            }
+            image.getPixels()[i] = rgb;
+        }
+        return image;
+    }
+
+    private static int colorIndex(int pixel, int width) {
+        return pixel % width * COLORS.length / width;
+    }
+
+    private static int closest(ClusteringResult result, int rgb) {
+        int best = 0;
+        for (int cluster = 1; cluster < result.getClusterCount(); cluster++) {
+            if (distance(result.getCentroidRGB(cluster), rgb) < distance(result.getCentroidRGB(best), rgb)) {
+                best = cluster;
+            }
+        }
+        return best;
+    }
+
+    private static double inertia(PixelBuffer image, ClusteringResult result) {
+        double inertia = 0;
+        for (int i = 0; i < result.getLabels().length; i++) {
+            inertia += distance(image.getPixels()[i], result.getCentroidRGB(result.getLabels()[i]));
+        }
+        return inertia;
+    }
+
+    private static int distance(int a, int b) {
+        int red = ((a >> 16) & 0xff) - ((b >> 16) & 0xff);
+        int green = ((a >> 8) & 0xff) - ((b >> 8) & 0xff);
+        int blue = (a & 0xff) - (b & 0xff);
+        return red * red + green * green + blue * blue;
+    }
+}
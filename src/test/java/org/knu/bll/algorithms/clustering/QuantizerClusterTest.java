@@ -0,0 +1,134 @@
+package org.knu.bll.algorithms.clustering;
+
+import org.junit.jupiter.api.Test;
+import org.knu.bll.ParallelTest;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantizerClusterTest extends ParallelTest {
+
+    @Test
+    void everyMethodReturnsExactlyKClusters() {
+        PixelBuffer image = randomImage(90, 70, 1);
+        for (QuantizationMethod method : QuantizationMethod.values()) {
+            QuantizerCluster quantizer = new QuantizerCluster(scheduler, method);
+            for (int k : new int[]{1, 2, 3, 5, 7, 9, 13, 64, 100}) {
+                ClusteringResult result = quantizer.cluster(image, k, NO_PROGRESS);
+                assertEquals(k, result.getClusterCount(), method + " k=" + k);
+                assertEquals(k, distinctLabels(result), method + " k=" + k);
+            }
+        }
+    }
+
+    @Test
+    void octreeMergesOnlyTheSmallestChildrenOfTheLastNode() {
+        PixelBuffer image = PixelBuffer.create(64, 64, false);
+        for (int i = 0; i < image.getPixels().length; i++) {
+            int shade = i % 16 * 8;
+            image.getPixels()[i] = i < 3000 ? shade << 16 | shade << 8 | shade : 0xff0000 | shade;
+        }
+        QuantizerCluster octree = new QuantizerCluster(scheduler, QuantizationMethod.OCTREE);
+        for (int k = 1; k <= 32; k++) {
+            assertEquals(k, distinctLabels(octree.cluster(image, k, NO_PROGRESS)), "k=" + k);
+        }
+    }
+
+    @Test
+    void imagesWithFewerColorsKeepEveryColor() {
+        int[] colors = {0x102030, 0x80a0c0, 0xf0e0d0};
+        PixelBuffer image = PixelBuffer.create(30, 30, false);
+        for (int i = 0; i < image.getPixels().length; i++) {
+            image.getPixels()[i] = colors[i % colors.length];
+        }
+        for (QuantizationMethod method : QuantizationMethod.values()) {
+            ClusteringResult result = new QuantizerCluster(scheduler, method).cluster(image, 8, NO_PROGRESS);
+            assertEquals(colors.length, result.getClusterCount(), method.toString());
+            assertEquals(0, result.getInertia(), 1e-9, method.toString());
+        }
+    }
+
+    @Test
+    void medianCutBalancesPixelsAndVarianceCutFollowsTheGap() {
+        PixelBuffer image = darkAndBright(120, 100, 2);
+        int dark = 0;
+        for (int rgb : image.getPixels()) {
+            dark += (rgb & 0xff) < 128 ? 1 : 0;
+        }
+
+        ClusteringResult median = new QuantizerCluster(scheduler, QuantizationMethod.MEDIAN_CUT)
+                .cluster(image, 2, NO_PROGRESS);
+        long[] sizes = clusterSizes(median);
+        double binShare = 0.75 / 8;
+        assertEquals(0.5, (double) sizes[0] / image.getPixels().length, binShare,
+                "median cut halves the pixels up to the bin of the median");
+
+        ClusteringResult variance = new QuantizerCluster(scheduler, QuantizationMethod.VARIANCE_CUT)
+                .cluster(image, 2, NO_PROGRESS);
+        int darkLabel = variance.getLabels()[0];
+        for (int i = 0; i < image.getPixels().length; i++) {
+            boolean isDark = (image.getPixels()[i] & 0xff) < 128;
+            assertEquals(isDark, variance.getLabels()[i] == darkLabel, "pixel " + i);
+        }
+        assertEquals(dark, clusterSizes(variance)[darkLabel]);
+        assertTrue(variance.getInertia() < median.getInertia());
+    }
+
+    @Test
+    void clustersGetTheExactMeansOfTheirPixels() {
+        PixelBuffer image = randomImage(50, 40, 3);
+        for (QuantizationMethod method : QuantizationMethod.values()) {
+            ClusteringResult result = new QuantizerCluster(scheduler, method).cluster(image, 6, NO_PROGRESS);
+            double[] sums = new double[3 * result.getClusterCount()];
+            long[] sizes = clusterSizes(result);
+            double inertia = 0;
+            double[] centroids = result.getPalette().getCentroids();
+            for (int i = 0; i < image.getPixels().length; i++) {
+                int rgb = image.getPixels()[i];
+                int label = result.getLabels()[i];
+                for (int channel = 0; channel < 3; channel++) {
+                    double value = (rgb >> (16 - 8 * channel)) & 0xff;
+                    sums[3 * label + channel] += value;
+                    inertia += (value - centroids[3 * label + channel]) * (value - centroids[3 * label + channel]);
+                }
+            }
+            for (int i = 0; i < sums.length; i++) {
+                assertEquals(sums[i] / sizes[i / 3], centroids[i], 1e-9, method + " component " + i);
+            }
+            assertEquals(inertia, result.getInertia(), inertia * 1e-9, method.toString());
+        }
+    }
+
+    /**
+     * Creates a gray image with three quarters of its pixels spread over the darkest quarter of the levels and the
+     * rest over the brightest quarter.
+     */
+    private static PixelBuffer darkAndBright(int width, int height, long seed) {
+        Random random = new Random(seed);
+        PixelBuffer image = PixelBuffer.create(width, height, false);
+        for (int i = 0; i < width * height; i++) {
+            int value = random.nextInt(4) < 3 ? random.nextInt(64) : 192 + random.nextInt(64);
+            image.getPixels()[i] = value << 16 | value << 8 | value;
+        }
+        return image;
+    }
+
+    private static long[] clusterSizes(ClusteringResult result) {
+        long[] sizes = new long[result.getClusterCount()];
+        for (int label : result.getLabels()) {
+            sizes[label]++;
+        }
+        return sizes;
+    }
+
+    private static int distinctLabels(ClusteringResult result) {
+        int distinct = 0;
+        for (long size : clusterSizes(result)) {
+            distinct += size > 0 ? 1 : 0;
+        }
+        return distinct;
+    }
+}
@@ -0,0 +1,31 @@
+package org.knu.bll.algorithms.convolution;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KernelsTest {
+
+    @Test
+    void gaussianCacheKeepsOnlyTheRecentlyUsedKernels() {
+        double[] kept = Kernels.gaussian(7, 1.5);
+        for (int zoom = 1; zoom <= 500; zoom++) {
+            Kernels.gaussian(7, 1.5 * zoom / 500);
+            assertSame(kept, Kernels.gaussian(7, 1.5), "a kernel in use stays cached");
+        }
+        assertTrue(Kernels.cachedGaussians() <= 32, Kernels.cachedGaussians() + " kernels are cached");
+
+        double[] evicted = Kernels.gaussian(5, 0.001);
+        for (int zoom = 1; zoom <= 100; zoom++) {
+            Kernels.gaussian(5, 2.0 + zoom);
+        }
+        double[] rebuilt = Kernels.gaussian(5, 0.001);
+        assertNotSame(evicted, rebuilt, "an unused kernel is evicted");
+        for (int i = 0; i < evicted.length; i++) {
+            assertEquals(evicted[i], rebuilt[i]);
+        }
+    }
+}
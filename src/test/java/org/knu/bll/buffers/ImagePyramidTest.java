@@ -0,0 +1,36 @@
+package org.knu.bll.buffers;
+
+import org.junit.jupiter.api.Test;
+import org.knu.bll.ParallelTest;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ImagePyramidTest extends ParallelTest {
+    @Test
+    void byteSourceIsHalvedLikeItsIntCopy() {
+        BufferedImage bytes = new BufferedImage(301, 217, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(11);
+        for (int y = 0; y < bytes.getHeight(); y++) {
+            for (int x = 0; x < bytes.getWidth(); x++) {
+                bytes.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        BufferedImage ints = new BufferedImage(bytes.getWidth(), bytes.getHeight(), BufferedImage.TYPE_INT_RGB);
+        ints.getGraphics().drawImage(bytes, 0, 0, null);
+
+        ImagePyramid expected = new ImagePyramid(ints, scheduler);
+        ImagePyramid actual = new ImagePyramid(bytes, scheduler);
+        for (int level = 1; level < expected.getLevelCount(); level++) {
+            BufferedImage a = expected.build(level);
+            BufferedImage b = actual.build(level);
+            assertEquals(a.getWidth(), b.getWidth());
+            assertEquals(a.getHeight(), b.getHeight());
+            assertArrayEquals(a.getRGB(0, 0, a.getWidth(), a.getHeight(), null, 0, a.getWidth()),
+                    b.getRGB(0, 0, b.getWidth(), b.getHeight(), null, 0, b.getWidth()), "level " + level);
+        }
+    }
+}
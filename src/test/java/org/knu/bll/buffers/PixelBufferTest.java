@@ -0,0 +1,83 @@
+package org.knu.bll.buffers;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PixelBufferTest {
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    @Test
+    void intImagesAreWrappedWithoutCopying() {
+        BufferedImage image = randomImage(BufferedImage.TYPE_INT_ARGB, 1);
+        PixelBuffer buffer = PixelBuffer.wrap(image);
+        assertTrue(buffer.hasAlpha());
+        assertSame(image, buffer.toImage());
+
+        buffer.setRGB(3, 4, 0x80123456);
+        assertEquals(0x80123456, image.getRGB(3, 4), "the buffer writes through to the image");
+        image.setRGB(5, 6, 0xff654321);
+        assertEquals(0xff654321, buffer.getRGB(5, 6), "the image writes through to the buffer");
+
+        assertFalse(PixelBuffer.wrap(randomImage(BufferedImage.TYPE_INT_RGB, 2)).hasAlpha());
+    }
+
+    @Test
+    void byteImagesAreCopiedWithTheColorsOfGetRgb() {
+        for (int type : new int[]{BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+                BufferedImage.TYPE_USHORT_565_RGB}) {
+            BufferedImage image = randomImage(type, type);
+            PixelBuffer buffer = PixelBuffer.wrap(image);
+            assertNotSame(image, buffer.toImage(), "type " + type);
+            assertArrayEquals(image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH), buffer.getPixels(), "type " + type);
+        }
+    }
+
+    @Test
+    void rowsOfByteImagesMatchTheirFullCopy() {
+        BufferedImage image = randomImage(BufferedImage.TYPE_3BYTE_BGR, 3);
+        int[] full = PixelBuffer.copyOf(image).getPixels();
+        int[] rows = PixelBuffer.readRows(image, 5, 7);
+        assertEquals(7 * WIDTH, rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            assertEquals(full[5 * WIDTH + i], rows[i], "pixel " + i);
+        }
+    }
+
+    @Test
+    void createdBuffersAreExposedAsSharedImages() {
+        PixelBuffer buffer = PixelBuffer.create(WIDTH, HEIGHT, false);
+        buffer.setRGB(1, 2, 0x00abcdef);
+        BufferedImage image = buffer.toImage();
+        assertEquals(0xffabcdef, image.getRGB(1, 2));
+        assertSame(buffer.getPixels(), PixelBuffer.wrap(image).getPixels(), "the exposed image is wrapped again");
+    }
+
+    @Test
+    void clampedReadsRepeatTheEdges() {
+        PixelBuffer buffer = PixelBuffer.wrap(randomImage(BufferedImage.TYPE_INT_RGB, 4));
+        assertEquals(buffer.getRGB(0, 0), buffer.getClampedRGB(-3, -1));
+        assertEquals(buffer.getRGB(WIDTH - 1, HEIGHT - 1), buffer.getClampedRGB(WIDTH + 2, HEIGHT));
+        assertEquals(buffer.getRGB(0, HEIGHT - 1), buffer.getClampedRGB(-1, HEIGHT + 5));
+    }
+
+    private static BufferedImage randomImage(int type, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,166 @@
+package org.knu.bll.memento;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageCaretakerTest {
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 300;
+    private static final long LIMIT = 1L << 30;
+
+    @Test
+    void undoAndRedoRestoreCompressedAndSpilledStates() throws InterruptedException {
+        HistoryBudget budget = new HistoryBudget(LIMIT, LIMIT, 0);
+        ImageCaretaker caretaker = new ImageCaretaker(budget);
+        List<BufferedImage> states = editSequence(6);
+
+        for (int i = 0; i < states.size() - 1; i++) {
+            caretaker.saveState(new ImageMemento(states.get(i)));
+        }
+        awaitCompaction(budget);
+        caretaker.compact();
+        HistoryFootprint spilled = caretaker.getFootprint();
+        assertTrue(spilled.getDiskBytes() > 0, "the oldest states are spilled");
+        assertTrue(spilled.getHistoryBytes() < spilled.getRawBytes(), "the stored states are compressed");
+
+        BufferedImage current = states.get(states.size() - 1);
+        for (int i = states.size() - 2; i >= 0; i--) {
+            ImageMemento memento = caretaker.undo();
+            assertNotNull(memento);
+            caretaker.saveToRedo(new ImageMemento(current));
+            current = memento.getState();
+            memento.release();
+            assertPixelsEqual(states.get(i), current, "undo to state " + i);
+        }
+        assertFalse(caretaker.canUndo());
+
+        awaitCompaction(budget);
+        caretaker.compact();
+        for (int i = 1; i < states.size(); i++) {
+            ImageMemento memento = caretaker.redo();
+            assertNotNull(memento);
+            caretaker.saveToUndo(new ImageMemento(current));
+            current = memento.getState();
+            memento.release();
+            assertPixelsEqual(states.get(i), current, "redo to state " + i);
+        }
+        assertFalse(caretaker.canRedo());
+
+        awaitCompaction(budget);
+        caretaker.clear();
+        assertEquals(0, budget.getUsedBytes());
+        assertEquals(0, budget.getDiskBytes());
+    }
+
+    @Test
+    void diskBytesFollowTheSpillFile() throws InterruptedException {
+        HistoryBudget budget = new HistoryBudget(LIMIT, LIMIT, 0);
+        ImageCaretaker caretaker = new ImageCaretaker(budget);
+        for (BufferedImage state : editSequence(5)) {
+            caretaker.saveState(new ImageMemento(state));
+        }
+        awaitCompaction(budget);
+        caretaker.compact();
+        long spilled = caretaker.getFootprint().getDiskBytes();
+        assertTrue(spilled > 0);
+
+        while (caretaker.canUndo()) {
+            caretaker.undo().release();
+        }
+        assertEquals(0, caretaker.getFootprint().getDiskBytes(), "freeing every tile truncates the spill file");
+        caretaker.clear();
+        assertEquals(0, budget.getDiskBytes());
+    }
+
+    @Test
+    void clearedHistoryKeepsSpillingAndIsEvictedByTheBudget() throws InterruptedException {
+        HistoryBudget budget = new HistoryBudget(LIMIT, LIMIT, 0);
+        ImageCaretaker caretaker = new ImageCaretaker(budget);
+        List<BufferedImage> states = editSequence(5);
+        for (BufferedImage state : states) {
+            caretaker.saveState(new ImageMemento(state));
+        }
+        awaitCompaction(budget);
+        caretaker.clear();
+        assertFalse(caretaker.canUndo());
+        assertEquals(0, budget.getUsedBytes());
+        assertEquals(0, budget.getDiskBytes());
+
+        for (BufferedImage state : states) {
+            caretaker.saveState(new ImageMemento(state));
+        }
+        awaitCompaction(budget);
+        caretaker.compact();
+        assertTrue(caretaker.getFootprint().getDiskBytes() > 0, "a cleared history spills to a new file");
+
+        budget.setGlobalLimit(1);
+        assertFalse(caretaker.canUndo(), "the budget still evicts the states of a cleared history");
+        assertEquals(0, budget.getUsedBytes());
+
+        caretaker.close();
+        assertEquals(0, budget.getDiskBytes());
+    }
+
+    /**
+     * Creates a sequence of images in which every image changes one region of the previous one, so consecutive
+     * states share most of their tiles.
+     */
+    private static List<BufferedImage> editSequence(int count) {
+        Random random = new Random(7);
+        List<BufferedImage> states = new ArrayList<>();
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, (x * 255 / WIDTH) << 16 | (y * 255 / HEIGHT) << 8 | random.nextInt(4));
+            }
+        }
+        states.add(image);
+        for (int i = 1; i < count; i++) {
+            BufferedImage next = copy(image);
+            int left = random.nextInt(WIDTH - 100);
+            int top = random.nextInt(HEIGHT - 100);
+            for (int y = top; y < top + 100; y++) {
+                for (int x = left; x < left + 100; x++) {
+                    next.setRGB(x, y, random.nextInt(0x1000000));
+                }
+            }
+            states.add(next);
+            image = next;
+        }
+        return states;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        copy.setData(image.getData());
+        return copy;
+    }
+
+    private static void assertPixelsEqual(BufferedImage expected, BufferedImage actual, String message) {
+        assertEquals(expected.getWidth(), actual.getWidth(), message);
+        assertEquals(expected.getHeight(), actual.getHeight(), message);
+        assertArrayEquals(expected.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH),
+                actual.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH), message);
+    }
+
+    /**
+     * Waits until the compactions the history submitted so far have run on the single thread of the budget.
+     */
+    private static void awaitCompaction(HistoryBudget budget) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        budget.submitCompaction(done::countDown);
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+    }
+}
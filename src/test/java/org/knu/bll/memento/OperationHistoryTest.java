@@ -0,0 +1,126 @@
+package org.knu.bll.memento;
+
+import org.junit.jupiter.api.Test;
+import org.knu.bll.ParallelTest;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationHistoryTest extends ParallelTest {
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+    private static final long LIMIT = 1L << 30;
+    private static final long NEVER = Long.MAX_VALUE;
+
+    @Test
+    void replayGivesTheResultsOfTheCommands() throws InterruptedException {
+        OperationHistory history = new OperationHistory(new HistoryBudget(LIMIT, LIMIT), scheduler, NEVER);
+        List<BufferedImage> states = recordEdits(history, 6);
+        assertEquals(1, history.getCheckpointCount(), "cheap commands share the first checkpoint");
+
+        for (int target = 0; target < states.size(); target++) {
+            assertPixelsEqual(states.get(target), history.reconstruct(target, null, NO_PROGRESS),
+                    "replay from the checkpoint to state " + target);
+        }
+        history.moveTo(2);
+        for (int target = 2; target < states.size(); target++) {
+            assertPixelsEqual(states.get(target), history.reconstruct(target, states.get(2), NO_PROGRESS),
+                    "replay from the current state to state " + target);
+        }
+        history.close();
+    }
+
+    @Test
+    void trimKeepsACheckpointAtOrBeforeTheCurrentState() throws InterruptedException {
+        HistoryBudget budget = new HistoryBudget(1, LIMIT);
+        OperationHistory history = new OperationHistory(budget, scheduler, NEVER);
+        List<BufferedImage> states = recordEdits(history, 5);
+        assertEquals(1, history.getCheckpointCount(), "the only checkpoint is kept above the per-tab limit");
+        assertEquals(states.size(), history.getSize());
+        assertPixelsEqual(states.get(4), history.reconstruct(4, null, NO_PROGRESS), "latest state");
+
+        history.clear();
+        history.setMaxReplayNanos(0);
+        states = recordEdits(history, 5);
+        assertEquals(1, history.getCheckpointCount(), "older checkpoints are dropped above the per-tab limit");
+        assertEquals(0, history.getPosition());
+        assertFalse(history.canUndo());
+        assertPixelsEqual(states.get(4), history.reconstruct(0, null, NO_PROGRESS), "latest state");
+        history.close();
+    }
+
+    @Test
+    void budgetDropsTheOldestCheckpointsAboveTheGlobalLimit() throws InterruptedException {
+        HistoryBudget budget = new HistoryBudget(LIMIT, LIMIT);
+        OperationHistory history = new OperationHistory(budget, scheduler, 0);
+        List<BufferedImage> states = recordEdits(history, 6);
+        assertEquals(6, history.getCheckpointCount());
+
+        history.moveTo(3);
+        budget.setGlobalLimit(1);
+        assertEquals(3, history.getCheckpointCount(), "every checkpoint before the current state is dropped");
+        assertEquals(0, history.getPosition());
+        assertTrue(history.canRedo());
+        for (int target = 0; target < history.getSize(); target++) {
+            assertPixelsEqual(states.get(target + 3), history.reconstruct(target, null, NO_PROGRESS),
+                    "state " + (target + 3));
+        }
+
+        history.close();
+        assertEquals(0, budget.getUsedBytes());
+        assertThrows(IllegalArgumentException.class, () -> history.reconstruct(0, null, NO_PROGRESS));
+    }
+
+    /**
+     * Applies a sequence of deterministic commands that each brighten one region of the image and records them.
+     *
+     * @return The states of the history, the original image first.
+     */
+    private static List<BufferedImage> recordEdits(OperationHistory history, int count) throws InterruptedException {
+        Random random = new Random(11);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        List<BufferedImage> states = new ArrayList<>();
+        states.add(image);
+        for (int i = 1; i < count; i++) {
+            int left = random.nextInt(WIDTH - 50);
+            int top = random.nextInt(HEIGHT - 50);
+            ImageCommand command = ImageCommand.of("brighten " + i, (input, listener) -> brighten(input, left, top));
+            BufferedImage result = command.apply(image, NO_PROGRESS);
+            history.record(image, command, result);
+            states.add(result);
+            image = result;
+        }
+        return states;
+    }
+
+    private static BufferedImage brighten(BufferedImage image, int left, int top) {
+        BufferedImage result = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        result.setData(image.getData());
+        for (int y = top; y < top + 50; y++) {
+            for (int x = left; x < left + 50; x++) {
+                result.setRGB(x, y, image.getRGB(x, y) | 0x404040);
+            }
+        }
+        return result;
+    }
+
+    private static void assertPixelsEqual(BufferedImage expected, BufferedImage actual, String message) {
+        assertEquals(expected.getWidth(), actual.getWidth(), message);
+        assertEquals(expected.getHeight(), actual.getHeight(), message);
+        assertArrayEquals(expected.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH),
+                actual.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH), message);
+    }
+}
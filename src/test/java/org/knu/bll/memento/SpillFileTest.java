@@ -0,0 +1,68 @@
+package org.knu.bll.memento;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SpillFileTest {
+
+    @Test
+    void freedExtentsAreReusedBeforeTheFileGrows() throws IOException {
+        SpillFile file = new SpillFile(null);
+        try {
+            long first = file.write(bytes(100, 1));
+            long second = file.write(bytes(50, 2));
+            file.write(bytes(30, 3));
+            assertEquals(180, file.getSize());
+
+            file.free(first, 100);
+            long reused = file.write(bytes(60, 4));
+            assertEquals(first, reused);
+            assertEquals(180, file.getSize());
+
+            file.free(second, 50);
+            long merged = file.write(bytes(90, 5));
+            assertEquals(60, merged, "the rest of the first extent and the second extent are merged");
+            assertEquals(180, file.getSize());
+            assertArrayEquals(bytes(60, 4), file.read(reused, 60));
+            assertArrayEquals(bytes(90, 5), file.read(merged, 90));
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    void freeExtentsAtTheEndTruncateTheFile() throws IOException {
+        HistoryBudget budget = new HistoryBudget(1 << 20, 1 << 20, 0);
+        HistoryAccount account = new HistoryAccount(budget);
+        SpillFile file = new SpillFile(account);
+        long first = file.write(bytes(100, 1));
+        long second = file.write(bytes(40, 2));
+        assertEquals(140, account.getDiskBytes());
+
+        file.free(second, 40);
+        assertEquals(100, file.getSize());
+        assertEquals(100, account.getDiskBytes());
+
+        file.free(first, 100);
+        assertEquals(0, file.getSize());
+        assertEquals(0, budget.getDiskBytes());
+
+        file.write(bytes(10, 3));
+        file.close();
+        assertEquals(0, account.getDiskBytes());
+        assertThrows(IOException.class, () -> file.read(0, 10));
+    }
+
+    private static byte[] bytes(int length, int value) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (value * 31 + i);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,74 @@
+package org.knu.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.knu.bll.FileService;
+import org.knu.bll.ParallelTest;
+import org.knu.bll.algorithms.blur.GaussBlur;
+import org.knu.bll.algorithms.edges.SobelOperator;
+import org.knu.bll.buffers.PixelBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineTest extends ParallelTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void specificationIsSplitIntoNamedSteps() {
+        Pipeline pipeline = Pipeline.parse(" gray |gauss:5, 1.4| sobel | otsu ", scheduler);
+        assertEquals(List.of("gray", "gauss:5, 1.4", "sobel", "otsu"), pipeline.getNames());
+        assertEquals("gray | gauss:5, 1.4 | sobel | otsu", pipeline.toString());
+    }
+
+    @Test
+    void invalidSpecificationsAreRejected() {
+        for (String spec : new String[]{"", "gray ||sobel", "blur:5", "gauss", "gauss:4", "gauss:5,x", "sobel:1",
+                "kmeans:0", "clahe:0", "localmean:-1"}) {
+            assertThrows(IllegalArgumentException.class, () -> Pipeline.parse(spec, scheduler), spec);
+        }
+    }
+
+    @Test
+    void stepsApplyTheOperatorsInOrder() throws InterruptedException {
+        PixelBuffer image = randomImage(53, 41, 1);
+        PixelBuffer expected = image.toGray().toPixelBuffer();
+        expected = new GaussBlur(scheduler, GaussBlur.DEFAULT_SIGMA).applyFilter(expected, 5, NO_PROGRESS);
+        expected = new SobelOperator(scheduler).applyOperator(expected, NO_PROGRESS);
+
+        PixelBuffer actual = Pipeline.parse("gray | gauss:5 | sobel", scheduler).apply(image, NO_PROGRESS);
+        assertArrayEquals(expected.getPixels(), actual.getPixels());
+    }
+
+    @Test
+    void batchWritesEveryImageAndCountsFailures() throws IOException, InterruptedException {
+        FileService fileService = new FileService();
+        Path input = Files.createDirectories(directory.resolve("input/nested"));
+        fileService.saveImage(input.resolve("a.png").toFile(), randomImage(30, 20, 2));
+        fileService.saveImage(input.resolve("b.png").toFile(), randomImage(40, 10, 3));
+        Files.writeString(input.resolve("broken.png"), "not an image");
+        List<Path> files = List.of(input.resolve("a.png"), input.resolve("b.png"), input.resolve("broken.png"));
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        BatchReport report = new BatchProcessor(fileService, 2).process(files, directory.resolve("input"),
+                directory.resolve("output"), "bmp", Pipeline.parse("gray | box:3", scheduler), new PrintStream(log));
+
+        assertEquals(2, report.getProcessedImages());
+        assertEquals(1, report.getFailedImages());
+        assertEquals((30 * 20 + 40 * 10) / 1e6, report.getMegapixels(), 1e-12);
+        assertTrue(Files.exists(directory.resolve("output/nested/a.bmp")));
+        assertTrue(Files.exists(directory.resolve("output/nested/b.bmp")));
+        assertTrue(log.toString().contains("broken.png"), log.toString());
+    }
+}